@@ -1,37 +1,252 @@
 package com.patrick;
 
+import com.patrick.application.ApproximateTokenEstimator;
 import com.patrick.application.ChatService;
+import com.patrick.application.ConversationSummarizer;
+import com.patrick.application.ModelRouter;
+import com.patrick.application.SessionManager;
+import com.patrick.application.TokenBudget;
+import com.patrick.domain.Conversation;
 import com.patrick.domain.Message;
+import com.patrick.infra.bulk.BulkRunner;
+import com.patrick.infra.cache.CachingAiClient;
+import com.patrick.infra.cache.HashingEmbedder;
+import com.patrick.infra.cache.HnswVectorIndex;
+import com.patrick.infra.cache.SemanticCachingAiClient;
 import com.patrick.infra.config.Env;
+import com.patrick.infra.config.HttpTransport;
+import com.patrick.infra.gemini.AiClient;
 import com.patrick.infra.gemini.GeminiClient;
+import com.patrick.infra.gemini.GeminiContextCache;
+import com.patrick.infra.gemini.HedgePolicy;
+import com.patrick.infra.gemini.RetryBudget;
+import com.patrick.infra.gemini.RetryPolicy;
+import com.patrick.infra.metrics.AiMetrics;
+import com.patrick.infra.metrics.MeteredAiClient;
+import com.patrick.infra.persistence.ConversationStore;
+import com.patrick.infra.resilience.CircuitBreakerAiClient;
+import com.patrick.infra.resilience.RateLimitingAiClient;
+import com.patrick.infra.server.ChatServer;
+import com.patrick.infra.tracing.RingBufferExporter;
+import com.patrick.infra.tracing.Tracer;
+import com.patrick.infra.tracing.TracingEventListener;
 import okhttp3.OkHttpClient;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Duration;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Main {
     public static void main(String[] args) throws Exception {
       String apikey = Env.get("GOOGLE_API_KEY_GEMINI", true);
       String modelId = Env.getOrDefault("MODEL_ID", "gemini-2.5-flash");
 
-      OkHttpClient httpClient = new OkHttpClient.Builder()
-              .callTimeout(Duration.ofSeconds(30))
-              .build();
+      OkHttpClient httpClient = HttpTransport.client(HttpTransport.Settings.fromEnv());
+        int traceSpans = Integer.parseInt(Env.getOrDefault("TRACE_BUFFER_SPANS", "0"));
+        RingBufferExporter traces = traceSpans > 0 ? new RingBufferExporter(traceSpans, "gemini-chat") : null;
+        Tracer tracer = traces == null ? Tracer.NOOP
+                : new Tracer(traces, Double.parseDouble(Env.getOrDefault("TRACE_SAMPLE_RATIO", "1.0")));
+        if (traces != null) {
+            httpClient = httpClient.newBuilder().eventListenerFactory(TracingEventListener.factory(tracer)).build();
+            String traceFile = Env.getOrDefault("TRACE_FILE", "");
+            if (!traceFile.isBlank()) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> writeTraces(traces, Path.of(traceFile))));
+            }
+        }
 
-        GeminiClient geminiClient = new GeminiClient(httpClient, "https://generativelanguage.googleapis.com", apikey);
+        String baseUrl = "https://generativelanguage.googleapis.com";
+        HttpTransport.prewarm(httpClient, baseUrl,
+                Integer.parseInt(Env.getOrDefault("HTTP_PREWARM_CONNECTIONS", "1")));
+        AiMetrics metrics = new AiMetrics();
+        metrics.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+        String metricsFile = Env.getOrDefault("METRICS_FILE", "");
+        if (!metricsFile.isBlank()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> writeMetrics(metrics, Path.of(metricsFile))));
+        }
+        GeminiClient geminiClient = new GeminiClient(httpClient, baseUrl, apikey)
+                .withRetryPolicy(RetryPolicy.defaults().withBudget(
+                        new RetryBudget(Double.parseDouble(Env.getOrDefault("RETRY_BUDGET_RATIO", "0.1")), 10)))
+                .withCallListener(metrics)
+                .withTracer(tracer);
+        String hedgePercentile = Env.getOrDefault("HEDGE_PERCENTILE", "");
+        if (!hedgePercentile.isBlank()) {
+            geminiClient = geminiClient.withHedging(new HedgePolicy(Double.parseDouble(hedgePercentile),
+                    Duration.ofMillis(50), 1000,
+                    new RetryBudget(Double.parseDouble(Env.getOrDefault("HEDGE_BUDGET_RATIO", "0.05")), 10)));
+        }
         String system = "You are a specialized english tutor. Help the user learn English by answering their questions and providing explanations.";
-        ChatService chatService = new ChatService(geminiClient, modelId, system, 5);
+        String contextCacheTtl = Env.getOrDefault("CONTEXT_CACHE_TTL_MINUTES", "");
+        if (!contextCacheTtl.isBlank()) {
+            geminiClient = geminiClient.withContextCache(new GeminiContextCache(httpClient, baseUrl, apikey,
+                    Duration.ofMinutes(Long.parseLong(contextCacheTtl)), GeminiContextCache.DEFAULT_MAX_ENTRIES,
+                    system::equals));
+        }
+        AiClient client = new CircuitBreakerAiClient(geminiClient, CircuitBreakerAiClient.Settings.defaults());
+        String rpm = Env.getOrDefault("RATE_LIMIT_RPM", "0");
+        String tpm = Env.getOrDefault("RATE_LIMIT_TPM", "0");
+        String modelQuotas = Env.getOrDefault("MODEL_QUOTAS", "");
+        if (!rpm.equals("0") || !tpm.equals("0") || !modelQuotas.isBlank()) {
+            RateLimitingAiClient.Settings defaults = RateLimitingAiClient.Settings.defaults();
+            client = new RateLimitingAiClient(client, parseQuotas(modelQuotas),
+                    new RateLimitingAiClient.Quota(Long.parseLong(rpm), Long.parseLong(tpm)),
+                    ApproximateTokenEstimator.INSTANCE,
+                    new RateLimitingAiClient.Settings(defaults.initialConcurrency(), defaults.minConcurrency(),
+                            defaults.maxConcurrency(), defaults.latencyTolerance(),
+                            Duration.ofMillis(Long.parseLong(Env.getOrDefault("RATE_LIMIT_MAX_WAIT_MS", "10000")))));
+        }
+        client = new MeteredAiClient(client, metrics);
+        AiClient uncached = client;
+        String semanticThreshold = Env.getOrDefault("SEMANTIC_CACHE_THRESHOLD", "");
+        if (!semanticThreshold.isBlank()) {
+            client = new SemanticCachingAiClient(client, new HashingEmbedder(),
+                    Double.parseDouble(semanticThreshold), 100_000,
+                    Duration.ofMinutes(Long.parseLong(Env.getOrDefault("SEMANTIC_CACHE_TTL_MINUTES", "60"))),
+                    SemanticCachingAiClient.DEFAULT_MAX_PARTITIONS, HnswVectorIndex::new, Clock.systemUTC());
+        }
+        int cacheEntries = Integer.parseInt(Env.getOrDefault("RESPONSE_CACHE_ENTRIES", "0"));
+        if (cacheEntries > 0) {
+            client = new CachingAiClient(client, cacheEntries,
+                    Duration.ofMinutes(Long.parseLong(Env.getOrDefault("RESPONSE_CACHE_TTL_MINUTES", "60"))),
+                    Long.parseLong(Env.getOrDefault("RESPONSE_CACHE_MAX_MB", "64")) * 1024 * 1024);
+        }
+        String historyBudget = Env.getOrDefault("HISTORY_TOKEN_BUDGET", "");
+        ChatService chatService = historyBudget.isBlank()
+                ? new ChatService(client, modelId, system, 5)
+                : new ChatService(client, modelId, system,
+                        new TokenBudget(ApproximateTokenEstimator.INSTANCE, Integer.parseInt(historyBudget)));
+        chatService = chatService.withTracer(tracer);
+        String lightModel = Env.getOrDefault("LIGHT_MODEL_ID", "");
+        String fallbackModel = Env.getOrDefault("FALLBACK_MODEL_ID", "");
+        if (!lightModel.isBlank() || !fallbackModel.isBlank()) {
+            ModelRouter router = new ModelRouter(modelId, ApproximateTokenEstimator.INSTANCE);
+            if (!lightModel.isBlank()) {
+                router = router.withRoute(lightModel,
+                                Integer.parseInt(Env.getOrDefault("LIGHT_MODEL_MAX_CHARS", "200")),
+                                Integer.parseInt(Env.getOrDefault("LIGHT_MODEL_MAX_TOKENS", "2000")))
+                        .withFallback(lightModel, modelId);
+            }
+            if (!fallbackModel.isBlank()) {
+                router = router.withFallback(modelId, fallbackModel);
+            }
+            String latencySlo = Env.getOrDefault("LATENCY_SLO_MS", "");
+            if (!latencySlo.isBlank()) {
+                router = router.withLatencySlo(Duration.ofMillis(Long.parseLong(latencySlo)));
+            }
+            chatService = chatService.withRouter(router);
+        }
+        String summaryAfter = Env.getOrDefault("SUMMARY_AFTER_TURNS", "");
+        if (!summaryAfter.isBlank()) {
+            ExecutorService summaries = Executors.newFixedThreadPool(2, r -> {
+                Thread t = new Thread(r, "conversation-summarizer");
+                t.setDaemon(true);
+                return t;
+            });
+            chatService = chatService.withSummarizer(new ConversationSummarizer(uncached,
+                    Env.getOrDefault("SUMMARY_MODEL_ID", modelId), Integer.parseInt(summaryAfter),
+                    Integer.parseInt(Env.getOrDefault("SUMMARY_KEEP_TURNS", "3")), summaries));
+        }
 
-        run (chatService, System.in, System.out);
+        if (args.length == 3 && args[0].equals("--bulk")) {
+            BulkRunner runner = new BulkRunner(chatService,
+                    Integer.parseInt(Env.getOrDefault("BULK_PARALLELISM", "8")));
+            try (BufferedReader prompts = Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8)) {
+                BulkRunner.Summary summary = runner.run(BulkRunner.prompts(prompts), Path.of(args[2]));
+                System.out.println("Bulk run finished: " + summary.succeeded() + " answered, " + summary.failed()
+                        + " failed, " + summary.skipped() + " already done");
+            }
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = Integer.parseInt(Env.getOrDefault("SERVER_PORT", "8080"));
+            Duration idleAfter = Duration.ofMinutes(Long.parseLong(Env.getOrDefault("SESSION_IDLE_MINUTES", "30")));
+            SessionManager sessions = new SessionManager(chatService,
+                    Long.parseLong(Env.getOrDefault("SESSION_MEMORY_BUDGET_MB", "256")) * 1024 * 1024, idleAfter);
+            String sessionStoreDir = Env.getOrDefault("CONVERSATION_STORE_DIR", "");
+            if (!sessionStoreDir.isBlank()) {
+                sessions = sessions.withStore(ConversationStore.open(Path.of(sessionStoreDir),
+                        ConversationStore.Settings.defaults()));
+            }
+            if (!idleAfter.isZero()) {
+                sessions.scheduleIdleEviction();
+            }
+            ChatServer server = new ChatServer(sessions, new InetSocketAddress(port), metrics, traces);
+            server.start();
+            System.out.println("Chat server listening on port " + server.port());
+            return;
+        }
+
+        String storeDir = Env.getOrDefault("CONVERSATION_STORE_DIR", "");
+        if (storeDir.isBlank()) {
+            run (chatService, System.in, System.out);
+            return;
+        }
+        try (ConversationStore store = ConversationStore.open(Path.of(storeDir), ConversationStore.Settings.defaults())) {
+            run(chatService, store, Env.getOrDefault("CHAT_SESSION_ID", "cli"), System.in, System.out);
+        }
+    }
+
+    private static void writeMetrics(AiMetrics metrics, Path file) {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            metrics.writePrometheus(out);
+        } catch (IOException e) {
+            System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeTraces(RingBufferExporter traces, Path file) {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            traces.writeOtlpJson(out);
+        } catch (IOException e) {
+            System.err.println("Could not write traces to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses {@code model=rpm/tpm} pairs separated by commas, e.g. {@code gemini-2.5-pro=150/2000000}.
+     */
+    static Map<String, RateLimitingAiClient.Quota> parseQuotas(String spec) {
+        Map<String, RateLimitingAiClient.Quota> quotas = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] modelAndLimits = entry.trim().split("=", 2);
+            String[] limits = modelAndLimits.length == 2 ? modelAndLimits[1].split("/", 2) : new String[0];
+            if (limits.length != 2) {
+                throw new IllegalArgumentException("MODEL_QUOTAS entries must look like model=rpm/tpm: " + entry);
+            }
+            quotas.put(modelAndLimits[0].trim(), new RateLimitingAiClient.Quota(
+                    Long.parseLong(limits[0].trim()), Long.parseLong(limits[1].trim())));
+        }
+        return quotas;
     }
 
     public static void run(ChatService service, InputStream in, PrintStream out) throws IOException{
-        List<Message> history = new ArrayList<>();
+        run(service, null, null, in, out);
+    }
+
+    /**
+     * Runs the chat loop, resuming {@code sessionId} from {@code store} and appending each turn to it when a store
+     * is given.
+     */
+    public static void run(ChatService service, ConversationStore store, String sessionId, InputStream in,
+                           PrintStream out) throws IOException {
+        Conversation conversation = store == null ? service.newConversation() : service.resume(store, sessionId);
         out.println("Welcome to the Chat Service! Type 'exit' to quit.");
 
         try (Scanner scanner = new Scanner(in)) {
@@ -46,8 +261,16 @@ public class Main {
                     break;
                 }
                 if (line.isBlank()) continue;
-                String answer = service.reply(history, line);
-                out.println("Gemini: " + answer);
+                out.print("Gemini: ");
+                service.converse(conversation, line, chunk -> {
+                    out.print(chunk);
+                    out.flush();
+                });
+                if (store != null) {
+                    List<Message> turn = conversation.lastTurns(1);
+                    store.append(sessionId, turn.get(0), turn.get(1));
+                }
+                out.println();
             }
         }
     }
@@ -1,55 +1,367 @@
 package com.patrick.application;
 
+import com.patrick.domain.Conversation;
 import com.patrick.domain.Message;
 import com.patrick.domain.Role;
+import com.patrick.domain.TokenEstimator;
 import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.persistence.ConversationStore;
+import com.patrick.infra.tracing.Span;
+import com.patrick.infra.tracing.Tracer;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class ChatService {
+    private static final int MAX_BUDGETED_TURNS = 100;
+
     private final AiClient client;
     private final String modelId;
     private final String systemPrompt;
     private final int maxTurns;
+    private final TokenBudget budget;
+    private final int systemPromptTokens;
+    private final ConversationSummarizer summarizer;
+    private final ModelRouter router;
+    private final Tracer tracer;
 
     public ChatService(AiClient client, String modelId, String systemPrompt, int maxTurns) {
         this.client = Objects.requireNonNull(client);
         this.modelId = Objects.requireNonNull(modelId);
         this.systemPrompt = systemPrompt == null ? "" : systemPrompt;
         this.maxTurns = Math.max(2, maxTurns);
+        this.budget = null;
+        this.systemPromptTokens = 0;
+        this.summarizer = null;
+        this.router = null;
+        this.tracer = Tracer.NOOP;
+    }
+
+    public ChatService(AiClient client, String modelId, String systemPrompt, TokenBudget budget) {
+        this.client = Objects.requireNonNull(client);
+        this.modelId = Objects.requireNonNull(modelId);
+        this.systemPrompt = systemPrompt == null ? "" : systemPrompt;
+        this.maxTurns = Integer.MAX_VALUE;
+        this.budget = Objects.requireNonNull(budget);
+        this.systemPromptTokens = budget.estimator().estimate(this.systemPrompt);
+        this.summarizer = null;
+        this.router = null;
+        this.tracer = Tracer.NOOP;
+    }
+
+    private ChatService(ChatService base, ConversationSummarizer summarizer, ModelRouter router, Tracer tracer) {
+        this.client = base.client;
+        this.modelId = base.modelId;
+        this.systemPrompt = base.systemPrompt;
+        this.maxTurns = base.maxTurns;
+        this.budget = base.budget;
+        this.systemPromptTokens = base.systemPromptTokens;
+        this.summarizer = summarizer;
+        this.router = router;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Returns a service that folds older turns of a {@link Conversation} into a rolling summary and sends that
+     * summary with the system prompt instead of the folded turns. Only {@code converse} uses it; plain lists
+     * have nowhere to keep a summary.
+     */
+    public ChatService withSummarizer(ConversationSummarizer summarizer) {
+        return new ChatService(this, Objects.requireNonNull(summarizer), router, tracer);
+    }
+
+    /**
+     * Returns a service that lets {@code router} choose the model of each request instead of always using
+     * {@code modelId}, and retries on the router's next model when one is unavailable. History is trimmed for
+     * whichever model is tried. A streamed reply only fails over before its first chunk.
+     */
+    public ChatService withRouter(ModelRouter router) {
+        return new ChatService(this, summarizer, Objects.requireNonNull(router), tracer);
+    }
+
+    /**
+     * Returns a service that traces each blocking turn as a {@code chat.turn} span, the root of the turn's trace
+     * unless the caller has a current span, with a {@code chat.trim} child for every history trim. Clients traced
+     * with the same {@link Tracer} add their spans under it.
+     */
+    public ChatService withTracer(Tracer tracer) {
+        return new ChatService(this, summarizer, router, Objects.requireNonNull(tracer));
     }
 
     public String reply(List<Message> history, String userInput) throws IOException {
         Objects.requireNonNull(history);
         Objects.requireNonNull(userInput);
 
-        List<Message> trimmed = trim(history, maxTurns);
-        String answer = client.generate(modelId, trimmed, userInput, systemPrompt);
+        Message user = new Message(Role.USER, userInput);
+        String answer = route(history, user,
+                model -> client.generate(model, trimFor(history, user, model), userInput, systemPrompt), () -> false);
 
-        history.add(new Message(Role.USER, userInput));
+        history.add(user);
         history.add(new Message(Role.MODEL, answer));
         return answer;
     }
 
-    public static List<Message> trim(List<Message> history, int maxTurns) {
-        if (history.isEmpty()){
-            return new ArrayList<>(history);
+    public String reply(List<Message> history, String userInput, Consumer<String> onChunk) throws IOException {
+        Objects.requireNonNull(history);
+        Objects.requireNonNull(userInput);
+        Objects.requireNonNull(onChunk);
+
+        Message user = new Message(Role.USER, userInput);
+        AtomicBoolean streamed = new AtomicBoolean();
+        String answer = route(history, user, model -> client.generateStream(model, trimFor(history, user, model),
+                userInput, systemPrompt, chunk -> {
+                    streamed.set(true);
+                    onChunk.accept(chunk);
+                }), streamed::get);
+
+        history.add(user);
+        history.add(new Message(Role.MODEL, answer));
+        return answer;
+    }
+
+    public String converse(Conversation conversation, String userInput) throws IOException {
+        Objects.requireNonNull(conversation);
+        Objects.requireNonNull(userInput);
+
+        Message user = new Message(Role.USER, userInput);
+        String prompt = systemPromptFor(conversation);
+        String answer = route(context(conversation), user,
+                model -> client.generate(model, trimFor(conversation, user, model), userInput, prompt), () -> false);
+
+        conversation.append(user, new Message(Role.MODEL, answer));
+        if (summarizer != null) {
+            summarizer.maybeSummarize(conversation);
+        }
+        return answer;
+    }
+
+    public String converse(Conversation conversation, String userInput, Consumer<String> onChunk) throws IOException {
+        Objects.requireNonNull(conversation);
+        Objects.requireNonNull(userInput);
+        Objects.requireNonNull(onChunk);
+
+        Message user = new Message(Role.USER, userInput);
+        String prompt = systemPromptFor(conversation);
+        AtomicBoolean streamed = new AtomicBoolean();
+        String answer = route(context(conversation), user, model -> client.generateStream(model,
+                trimFor(conversation, user, model), userInput, prompt, chunk -> {
+                    streamed.set(true);
+                    onChunk.accept(chunk);
+                }), streamed::get);
+
+        conversation.append(user, new Message(Role.MODEL, answer));
+        if (summarizer != null) {
+            summarizer.maybeSummarize(conversation);
+        }
+        return answer;
+    }
+
+    /**
+     * True while the summarizer is folding turns of {@code conversation} in the background.
+     */
+    public boolean isSummarizing(Conversation conversation) {
+        return summarizer != null && summarizer.isSummarizing(conversation);
+    }
+
+    public Conversation newConversation() {
+        int capacity = budget == null ? maxTurns : MAX_BUDGETED_TURNS;
+        if (summarizer != null) {
+            capacity = Math.max(capacity, summarizer.triggerTurns() * 2);
+        }
+        // Without a token budget only the last maxTurns are ever sent; older ones are kept for the summarizer.
+        return new Conversation(capacity, budget == null ? maxTurns : capacity);
+    }
+
+    /**
+     * A conversation for {@code sessionId} filled with its newest turns from {@code store}, as many as
+     * {@link #newConversation()} holds. Only those turns are read, however long the session is.
+     */
+    public Conversation resume(ConversationStore store, String sessionId) throws IOException {
+        Conversation conversation = newConversation();
+        List<Message> turns = store.lastTurns(sessionId, conversation.maxTurns());
+        for (int i = 0; i < turns.size(); i += 2) {
+            conversation.append(turns.get(i), turns.get(i + 1));
+        }
+        return conversation;
+    }
+
+    public CompletableFuture<String> replyAsync(List<Message> history, String userInput) {
+        Objects.requireNonNull(history);
+        Objects.requireNonNull(userInput);
+
+        Message user = new Message(Role.USER, userInput);
+        CompletableFuture<String> answer;
+        if (router == null) {
+            answer = client.generateAsync(modelId, trimFor(history, user, modelId), userInput, systemPrompt);
+        } else {
+            List<Message> snapshot = new ArrayList<>(history);
+            answer = routeAsync(router.candidates(userInput, contextTokens(snapshot, user)), 0,
+                    model -> client.generateAsync(model, trimFor(snapshot, user, model), userInput, systemPrompt));
+        }
+        return answer.thenApply(reply -> {
+            history.add(user);
+            history.add(new Message(Role.MODEL, reply));
+            return reply;
+        });
+    }
+
+    @FunctionalInterface
+    private interface ModelCall {
+        String send(String modelId) throws IOException;
+    }
+
+    /**
+     * Sends through {@code call} on {@code modelId}, or on the router's candidates in turn while failures say the
+     * model is unavailable and {@code committed} is still false.
+     */
+    private String route(List<Message> context, Message user, ModelCall call, BooleanSupplier committed)
+            throws IOException {
+        Span span = tracer.start("chat.turn");
+        try {
+            return route(context, user, call, committed, span);
+        } catch (IOException | RuntimeException e) {
+            span.setError(e);
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    private String route(List<Message> context, Message user, ModelCall call, BooleanSupplier committed, Span span)
+            throws IOException {
+        if (router == null) {
+            span.setAttribute("chat.model", modelId);
+            return call.send(modelId);
+        }
+        IOException failure = null;
+        for (String candidate : router.candidates(user.text(), contextTokens(context, user))) {
+            span.setAttribute("chat.model", candidate);
+            long start = System.nanoTime();
+            try {
+                String answer = call.send(candidate);
+                router.recordSuccess(candidate, System.nanoTime() - start);
+                return answer;
+            } catch (IOException e) {
+                router.recordFailure(candidate);
+                if (failure != null && failure != e) e.addSuppressed(failure);
+                if (!router.failsOver(e) || committed.getAsBoolean()) throw e;
+                failure = e;
+            }
         }
-        List<Message> copyList = new ArrayList<>(history);
+        throw failure;
+    }
 
-        List<Integer> pairEndIndexes = new ArrayList<>();
-        for (int position = copyList.size() - 1; position > 0; position --) {
-            if (copyList.get(position).role() == Role.MODEL && copyList.get(position - 1).role() == Role.USER) {
-                pairEndIndexes.add(position);
+    private CompletableFuture<String> routeAsync(List<String> candidates, int index,
+                                                 Function<String, CompletableFuture<String>> call) {
+        String candidate = candidates.get(index);
+        long start = System.nanoTime();
+        return call.apply(candidate).handle((answer, error) -> {
+            if (error == null) {
+                router.recordSuccess(candidate, System.nanoTime() - start);
+                return CompletableFuture.completedFuture(answer);
+            }
+            router.recordFailure(candidate);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof IOException io && router.failsOver(io) && index + 1 < candidates.size()) {
+                return routeAsync(candidates, index + 1, call);
             }
+            return CompletableFuture.<String>failedFuture(cause);
+        }).thenCompose(next -> next);
+    }
+
+    private int contextTokens(List<Message> context, Message user) {
+        int tokens = user.estimatedTokens(router.estimator());
+        for (Message msg : context) {
+            tokens += msg.estimatedTokens(router.estimator());
         }
-        if (pairEndIndexes.size() <= maxTurns) {
-            return copyList;
+        return tokens;
+    }
+
+    private List<Message> context(Conversation conversation) {
+        return router == null ? List.of() : conversation.lastTurns(conversation.unsummarizedTurns());
+    }
+
+    private String systemPromptFor(Conversation conversation) {
+        Conversation.Summary summary = conversation.summary();
+        if (summary.isEmpty()) {
+            return systemPrompt;
+        }
+        return systemPrompt + "\n\nSummary of the earlier conversation:\n" + summary.text();
+    }
+
+    private List<Message> trimFor(Conversation conversation, Message user, String model) {
+        try (Span span = tracer.start("chat.trim")) {
+            int unsummarized = conversation.unsummarizedTurns();
+            span.setAttribute("chat.history.messages", unsummarized * 2L);
+            if (budget == null) {
+                return sent(span, conversation.lastTurns(Math.min(maxTurns, unsummarized)));
+            }
+            int available = budget.tokensFor(model) - systemPromptTokens - user.estimatedTokens(budget.estimator())
+                    - budget.estimator().estimate(conversation.summary().text());
+            return sent(span, trimToBudget(conversation.lastTurns(unsummarized), available, budget.estimator()));
+        }
+    }
+
+    private List<Message> trimFor(List<Message> history, Message user, String model) {
+        try (Span span = tracer.start("chat.trim")) {
+            span.setAttribute("chat.history.messages", history.size());
+            if (budget == null) {
+                return sent(span, trim(history, maxTurns));
+            }
+            int available = budget.tokensFor(model) - systemPromptTokens - user.estimatedTokens(budget.estimator());
+            return sent(span, trimToBudget(history, available, budget.estimator()));
+        }
+    }
+
+    private static List<Message> sent(Span span, List<Message> messages) {
+        span.setAttribute("chat.context.messages", messages.size());
+        return messages;
+    }
+
+    public static List<Message> trimToBudget(List<Message> history, int budgetTokens, TokenEstimator estimator) {
+        int keepFromIndex = history.size();
+        int used = 0;
+        int position = history.size() - 1;
+        while (position >= 0) {
+            boolean pair = position > 0
+                    && history.get(position).role() == Role.MODEL
+                    && history.get(position - 1).role() == Role.USER;
+            int first = pair ? position - 1 : position;
+            int cost = 0;
+            for (int i = first; i <= position; i++) {
+                cost += history.get(i).estimatedTokens(estimator);
+            }
+            if (used + cost > budgetTokens) {
+                break;
+            }
+            used += cost;
+            keepFromIndex = first;
+            position = first - 1;
+        }
+        return new ArrayList<>(history.subList(keepFromIndex, history.size()));
+    }
+
+    public static List<Message> trim(List<Message> history, int maxTurns) {
+        int pairs = 0;
+        int keepFromIndex = 0;
+        for (int position = history.size() - 1; position > 0; position--) {
+            if (history.get(position).role() == Role.MODEL && history.get(position - 1).role() == Role.USER) {
+                pairs++;
+                if (pairs == maxTurns) {
+                    keepFromIndex = position - 1;
+                } else if (pairs > maxTurns) {
+                    return new ArrayList<>(history.subList(keepFromIndex, history.size()));
+                }
+            }
         }
-        int keepFromIndex = pairEndIndexes.get(pairEndIndexes.size() - maxTurns) - 1;
-        return copyList.subList(keepFromIndex, copyList.size());
+        return new ArrayList<>(history);
     }
 }
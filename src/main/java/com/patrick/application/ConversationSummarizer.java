@@ -0,0 +1,101 @@
+package com.patrick.application;
+
+import com.patrick.domain.Conversation;
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Folds older turns of a {@link Conversation} into a rolling summary once more than {@code triggerTurns} turns
+ * are unsummarized, keeping the newest {@code keepRecentTurns} verbatim. The model call runs on the supplied
+ * executor, off the reply path; the turns to fold are copied before the task is submitted, so the background
+ * thread never reads the conversation's ring. At most one summarization per conversation is in flight.
+ */
+public class ConversationSummarizer {
+    private static final Logger LOG = Logger.getLogger(ConversationSummarizer.class.getName());
+    private static final String SYSTEM_PROMPT = "You maintain a running summary of a conversation between an English "
+            + "student (user) and a tutor (model). Merge the previous summary with the new turns into a short "
+            + "summary that keeps the student's level, goals, recurring mistakes and topics already covered. "
+            + "Reply with the summary only.";
+
+    private final AiClient client;
+    private final String modelId;
+    private final int triggerTurns;
+    private final int keepRecentTurns;
+    private final Executor executor;
+    private final Set<Conversation> inFlight = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummarizer(AiClient client, String modelId, int triggerTurns, int keepRecentTurns,
+                                  Executor executor) {
+        this.client = Objects.requireNonNull(client);
+        this.modelId = Objects.requireNonNull(modelId);
+        this.executor = Objects.requireNonNull(executor);
+        if (keepRecentTurns < 1) throw new IllegalArgumentException("keepRecentTurns must be positive");
+        if (triggerTurns <= keepRecentTurns) throw new IllegalArgumentException("triggerTurns must exceed keepRecentTurns");
+        this.triggerTurns = triggerTurns;
+        this.keepRecentTurns = keepRecentTurns;
+    }
+
+    public int triggerTurns() {
+        return triggerTurns;
+    }
+
+    /**
+     * True while a summarization of {@code conversation} is in flight; once it turns false the summary, if any,
+     * has been written to the conversation.
+     */
+    public boolean isSummarizing(Conversation conversation) {
+        return inFlight.contains(conversation);
+    }
+
+    public boolean maybeSummarize(Conversation conversation) {
+        int unsummarized = conversation.unsummarizedTurns();
+        if (unsummarized <= triggerTurns || !inFlight.add(conversation)) {
+            return false;
+        }
+
+        int foldTurns = unsummarized - keepRecentTurns;
+        List<Message> fold = List.copyOf(conversation.lastTurns(unsummarized).subList(0, foldTurns * 2));
+        Conversation.Summary previous = conversation.summary();
+        long coveredTurns = conversation.totalTurns() - keepRecentTurns;
+        String prompt = prompt(previous, fold);
+
+        try {
+            executor.execute(() -> {
+                try {
+                    String text = client.generate(modelId, List.of(), prompt, SYSTEM_PROMPT);
+                    conversation.updateSummary(new Conversation.Summary(text, coveredTurns));
+                } catch (IOException | RuntimeException e) {
+                    LOG.log(Level.WARNING, "Conversation summarization failed, keeping previous summary", e);
+                } finally {
+                    inFlight.remove(conversation);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(conversation);
+            return false;
+        }
+        return true;
+    }
+
+    private static String prompt(Conversation.Summary previous, List<Message> fold) {
+        StringBuilder prompt = new StringBuilder();
+        if (!previous.isEmpty()) {
+            prompt.append("Previous summary:\n").append(previous.text()).append("\n\n");
+        }
+        prompt.append("New turns:\n");
+        for (Message msg : fold) {
+            prompt.append(msg.role().Wire()).append(": ").append(msg.text()).append('\n');
+        }
+        return prompt.toString();
+    }
+}
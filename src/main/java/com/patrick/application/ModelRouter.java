@@ -0,0 +1,210 @@
+package com.patrick.application;
+
+import com.patrick.domain.TokenEstimator;
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.resilience.CircuitOpenException;
+import com.patrick.infra.resilience.RateLimitExceededException;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the models a {@link ChatService} request is tried on, in order. The first route whose input-length and
+ * context-token limits the request fits chooses the preferred model (the default model otherwise); its
+ * fallbacks and then the default model follow. Models whose recent latency exceeds the SLO, or whose recent
+ * error rate is too high, are moved to the end of the list until they have been left alone for
+ * {@code recoveryAfter}. A request moves on to the next model only when the failure says the model is
+ * unavailable right now: an open circuit, a local rate limit, or a 429/503 from Gemini.
+ */
+public final class ModelRouter {
+    private static final double WEIGHT = 0.2;
+    private static final int MIN_SAMPLES = 5;
+    private static final double MAX_ERROR_RATE = 0.5;
+
+    private record Route(String modelId, int maxInputChars, int maxContextTokens) {
+    }
+
+    /**
+     * Snapshot of one model's traffic; {@code errorRate} and {@code latency} are exponentially weighted.
+     */
+    public record ModelStats(long requests, long failures, double errorRate, Duration latency) {
+    }
+
+    private final String defaultModel;
+    private final TokenEstimator estimator;
+    private final List<Route> routes;
+    private final Map<String, List<String>> fallbacks;
+    private final Duration latencySlo;
+    private final Duration recoveryAfter;
+    private final Clock clock;
+    private final Map<String, Stats> stats;
+
+    public ModelRouter(String defaultModel, TokenEstimator estimator) {
+        this(defaultModel, estimator, Clock.systemUTC());
+    }
+
+    public ModelRouter(String defaultModel, TokenEstimator estimator, Clock clock) {
+        this(defaultModel, estimator, List.of(), Map.of(), null, Duration.ofSeconds(30), clock,
+                new ConcurrentHashMap<>());
+    }
+
+    private ModelRouter(String defaultModel, TokenEstimator estimator, List<Route> routes,
+                        Map<String, List<String>> fallbacks, Duration latencySlo, Duration recoveryAfter, Clock clock,
+                        Map<String, Stats> stats) {
+        this.defaultModel = Objects.requireNonNull(defaultModel);
+        this.estimator = Objects.requireNonNull(estimator);
+        this.routes = routes;
+        this.fallbacks = fallbacks;
+        this.latencySlo = latencySlo;
+        this.recoveryAfter = recoveryAfter;
+        this.clock = Objects.requireNonNull(clock);
+        this.stats = stats;
+    }
+
+    /**
+     * Sends requests with at most {@code maxInputChars} of input and {@code maxContextTokens} estimated tokens of
+     * input plus history to {@code modelId}. Routes are checked in the order they were added.
+     */
+    public ModelRouter withRoute(String modelId, int maxInputChars, int maxContextTokens) {
+        Objects.requireNonNull(modelId);
+        if (maxInputChars < 0 || maxContextTokens < 0) throw new IllegalArgumentException("limits cannot be negative");
+        List<Route> copy = new ArrayList<>(routes);
+        copy.add(new Route(modelId, maxInputChars, maxContextTokens));
+        return new ModelRouter(defaultModel, estimator, List.copyOf(copy), fallbacks, latencySlo, recoveryAfter,
+                clock, stats);
+    }
+
+    /**
+     * Models to try, in order, when {@code modelId} is unavailable.
+     */
+    public ModelRouter withFallback(String modelId, String... fallbackModels) {
+        Objects.requireNonNull(modelId);
+        Map<String, List<String>> copy = new HashMap<>(fallbacks);
+        copy.put(modelId, List.of(fallbackModels));
+        return new ModelRouter(defaultModel, estimator, routes, Map.copyOf(copy), latencySlo, recoveryAfter, clock,
+                stats);
+    }
+
+    /**
+     * Deprioritizes models whose recent latency exceeds {@code slo}.
+     */
+    public ModelRouter withLatencySlo(Duration slo) {
+        return new ModelRouter(defaultModel, estimator, routes, fallbacks, Objects.requireNonNull(slo), recoveryAfter,
+                clock, stats);
+    }
+
+    public ModelRouter withRecoveryAfter(Duration recoveryAfter) {
+        return new ModelRouter(defaultModel, estimator, routes, fallbacks, latencySlo,
+                Objects.requireNonNull(recoveryAfter), clock, stats);
+    }
+
+    public String defaultModel() {
+        return defaultModel;
+    }
+
+    public TokenEstimator estimator() {
+        return estimator;
+    }
+
+    /**
+     * Models to try for a request, best first. Never empty.
+     */
+    public List<String> candidates(String userInput, int contextTokens) {
+        String preferred = defaultModel;
+        for (Route route : routes) {
+            if (userInput.length() <= route.maxInputChars() && contextTokens <= route.maxContextTokens()) {
+                preferred = route.modelId();
+                break;
+            }
+        }
+        Set<String> ordered = new LinkedHashSet<>();
+        ordered.add(preferred);
+        ordered.addAll(fallbacks.getOrDefault(preferred, List.of()));
+        ordered.add(defaultModel);
+
+        List<String> healthy = new ArrayList<>(ordered.size());
+        List<String> degraded = new ArrayList<>();
+        long now = clock.millis();
+        for (String model : ordered) {
+            Stats modelStats = stats.get(model);
+            if (modelStats != null && modelStats.degraded(now, latencySlo, recoveryAfter)) {
+                degraded.add(model);
+            } else {
+                healthy.add(model);
+            }
+        }
+        healthy.addAll(degraded);
+        return healthy;
+    }
+
+    /**
+     * Whether a request that failed with {@code failure} should be tried on the next model.
+     */
+    public boolean failsOver(IOException failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitOpenException || cause instanceof RateLimitExceededException) {
+                return true;
+            }
+            if (cause instanceof HttpStatusException status) {
+                return status.statusCode() == 429 || status.statusCode() == 503;
+            }
+        }
+        return false;
+    }
+
+    public void recordSuccess(String modelId, long latencyNanos) {
+        statsFor(modelId).record(false, latencyNanos, clock.millis());
+    }
+
+    public void recordFailure(String modelId) {
+        statsFor(modelId).record(true, 0, clock.millis());
+    }
+
+    public ModelStats stats(String modelId) {
+        Stats modelStats = stats.get(modelId);
+        return modelStats == null ? new ModelStats(0, 0, 0, Duration.ZERO) : modelStats.snapshot();
+    }
+
+    private Stats statsFor(String modelId) {
+        return stats.computeIfAbsent(modelId, id -> new Stats());
+    }
+
+    private static final class Stats {
+        private long requests;
+        private long failures;
+        private double errorRate;
+        private double latencyNanos;
+        private long lastUpdate;
+
+        synchronized void record(boolean failed, long nanos, long now) {
+            requests++;
+            errorRate += WEIGHT * ((failed ? 1 : 0) - errorRate);
+            if (failed) {
+                failures++;
+            } else {
+                latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + WEIGHT * (nanos - latencyNanos);
+            }
+            lastUpdate = now;
+        }
+
+        synchronized boolean degraded(long now, Duration latencySlo, Duration recoveryAfter) {
+            if (requests < MIN_SAMPLES || now - lastUpdate >= recoveryAfter.toMillis()) {
+                return false;
+            }
+            return errorRate > MAX_ERROR_RATE || (latencySlo != null && latencyNanos > latencySlo.toNanos());
+        }
+
+        synchronized ModelStats snapshot() {
+            return new ModelStats(requests, failures, errorRate, Duration.ofNanos((long) latencyNanos));
+        }
+    }
+}
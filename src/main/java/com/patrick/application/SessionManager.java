@@ -0,0 +1,395 @@
+package com.patrick.application;
+
+import com.patrick.domain.Conversation;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.persistence.ConversationStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps many sessions' {@link Conversation}s on top of one {@link ChatService}, with only recently used ones on
+ * the heap. A session is evicted once it has been idle for {@code idleAfter}, or least recently used first when
+ * the estimated size of resident conversations exceeds {@code memoryBudgetBytes}. An evicted session is kept as
+ * deflated bytes on the heap, or, with a {@link ConversationStore}, only on disk: every turn is written through
+ * to the store, so eviction just drops the conversation. Either way it is rehydrated on its next message.
+ * Turns within one session are serialized; different sessions never block each other, and eviction skips a
+ * session that is busy or whose summary is still being written, so a late summary never lands on a detached
+ * conversation. Idle sessions are evicted as requests come in, or on a timer with {@link #scheduleIdleEviction}.
+ */
+public class SessionManager {
+    private static final Logger LOG = Logger.getLogger(SessionManager.class.getName());
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+
+    private final ChatService service;
+    private final long memoryBudgetBytes;
+    private final Duration idleAfter;
+    private final Clock clock;
+    private final ConversationStore store;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Session> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+
+    public SessionManager(ChatService service, long memoryBudgetBytes, Duration idleAfter) {
+        this(service, memoryBudgetBytes, idleAfter, Clock.systemUTC(), null);
+    }
+
+    public SessionManager(ChatService service, long memoryBudgetBytes, Duration idleAfter, Clock clock) {
+        this(service, memoryBudgetBytes, idleAfter, clock, null);
+    }
+
+    private SessionManager(ChatService service, long memoryBudgetBytes, Duration idleAfter, Clock clock,
+                           ConversationStore store) {
+        this.service = Objects.requireNonNull(service);
+        if (memoryBudgetBytes < 0) throw new IllegalArgumentException("memoryBudgetBytes cannot be negative");
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.idleAfter = Objects.requireNonNull(idleAfter);
+        this.clock = Objects.requireNonNull(clock);
+        this.store = store;
+    }
+
+    /**
+     * Returns a manager that writes every turn to {@code store}, keeps evicted sessions only there, and resumes
+     * sessions it has never seen from it, such as those of a previous process. Use it on a fresh manager.
+     */
+    public SessionManager withStore(ConversationStore store) {
+        return new SessionManager(service, memoryBudgetBytes, idleAfter, clock, Objects.requireNonNull(store));
+    }
+
+    /**
+     * Replies to {@code userInput} in session {@code sessionId}, creating or rehydrating it as needed.
+     */
+    public String converse(String sessionId, String userInput) throws IOException {
+        Objects.requireNonNull(userInput);
+        String answer;
+        Session session = lock(sessionId);
+        try {
+            Conversation conversation = hydrate(sessionId, session);
+            try {
+                answer = service.converse(conversation, userInput);
+                if (store != null) {
+                    List<Message> turn = conversation.lastTurns(1);
+                    store.append(sessionId, turn.get(0), turn.get(1));
+                }
+            } finally {
+                touch(sessionId, session);
+            }
+        } finally {
+            session.lock.unlock();
+        }
+        evictIdle();
+        enforceBudget();
+        return answer;
+    }
+
+    /**
+     * Messages currently in the session's context, or null when the session is unknown.
+     */
+    public List<Message> messages(String sessionId) throws IOException {
+        if (!sessions.containsKey(sessionId) && (store == null || !store.contains(sessionId))) {
+            return null;
+        }
+        List<Message> messages;
+        Session session = lock(sessionId);
+        try {
+            messages = List.copyOf(hydrate(sessionId, session).messages());
+            touch(sessionId, session);
+        } finally {
+            session.lock.unlock();
+        }
+        enforceBudget();
+        return messages;
+    }
+
+    /**
+     * Forgets the session, resident or not.
+     */
+    public void remove(String sessionId) throws IOException {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            session.lock.lock();
+            try {
+                sessions.remove(sessionId, session);
+                session.removed = true;
+                release(sessionId, session);
+            } finally {
+                session.lock.unlock();
+            }
+        }
+        if (store != null) {
+            store.delete(sessionId);
+        }
+    }
+
+    /**
+     * Evicts every session idle for longer than {@code idleAfter}, returning how many were evicted. A zero
+     * {@code idleAfter} leaves eviction to the memory budget alone.
+     */
+    public int evictIdle() {
+        if (idleAfter.isZero()) {
+            return 0;
+        }
+        int evicted = 0;
+        for (Map.Entry<String, Session> entry : eldest(clock.millis() - idleAfter.toMillis(), Integer.MAX_VALUE)) {
+            if (evict(entry.getKey(), entry.getValue())) evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Runs {@link #evictIdle()} every quarter of {@code idleAfter} on a shared daemon thread, so the sessions of
+     * a server that stops receiving requests are evicted too. Cancel the returned future to stop it.
+     */
+    public ScheduledFuture<?> scheduleIdleEviction() {
+        return scheduleIdleEviction(DefaultScheduler.INSTANCE);
+    }
+
+    public ScheduledFuture<?> scheduleIdleEviction(ScheduledExecutorService scheduler) {
+        Objects.requireNonNull(scheduler);
+        if (idleAfter.isZero()) throw new IllegalArgumentException("idleAfter is zero, nothing to schedule");
+        long periodMs = Math.max(1, idleAfter.toMillis() / 4);
+        return scheduler.scheduleAtFixedRate(() -> {
+            try {
+                evictIdle();
+            } catch (RuntimeException e) {
+                // A throwing task is never run again, so one bad session must not stop the sweep.
+                LOG.log(Level.WARNING, "Idle session eviction failed", e);
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    public synchronized int residentCount() {
+        return resident.size();
+    }
+
+    public int evictedCount() {
+        return sessionCount() - residentCount();
+    }
+
+    /**
+     * Estimated heap taken by resident conversations.
+     */
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    private Session lock(String sessionId) {
+        Objects.requireNonNull(sessionId);
+        while (true) {
+            Session session = sessions.computeIfAbsent(sessionId, id -> new Session());
+            session.lock.lock();
+            if (!session.removed) {
+                return session;
+            }
+            session.lock.unlock();
+        }
+    }
+
+    private Conversation hydrate(String sessionId, Session session) throws IOException {
+        if (session.conversation == null) {
+            if (session.cold != null) {
+                session.conversation = inflate(session.cold);
+                session.cold = null;
+            } else if (store != null) {
+                session.conversation = service.resume(store, sessionId);
+                if (session.summary != null) {
+                    restoreSummary(session.conversation, session.summary, session.totalTurns);
+                    session.summary = null;
+                }
+            } else {
+                session.conversation = service.newConversation();
+            }
+        }
+        return session.conversation;
+    }
+
+    private void touch(String sessionId, Session session) {
+        long bytes = footprint(session.conversation);
+        synchronized (this) {
+            session.lastUsed = clock.millis();
+            if (resident.put(sessionId, session) == null) {
+                residentBytes += bytes;
+            } else {
+                residentBytes += bytes - session.bytes;
+            }
+            session.bytes = bytes;
+        }
+    }
+
+    private void enforceBudget() {
+        while (residentBytes() > memoryBudgetBytes) {
+            boolean evicted = false;
+            for (Map.Entry<String, Session> entry : eldest(Long.MAX_VALUE, 16)) {
+                if (evict(entry.getKey(), entry.getValue())) {
+                    evicted = true;
+                    break;
+                }
+            }
+            if (!evicted) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Up to {@code limit} least recently used resident sessions last used at or before {@code usedBefore}.
+     */
+    private synchronized List<Map.Entry<String, Session>> eldest(long usedBefore, int limit) {
+        List<Map.Entry<String, Session>> entries = new ArrayList<>();
+        Iterator<Map.Entry<String, Session>> it = resident.entrySet().iterator();
+        while (it.hasNext() && entries.size() < limit) {
+            Map.Entry<String, Session> entry = it.next();
+            if (entry.getValue().lastUsed > usedBefore) {
+                break;
+            }
+            entries.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        return entries;
+    }
+
+    private boolean evict(String sessionId, Session session) {
+        if (!session.lock.tryLock()) {
+            return false;
+        }
+        try {
+            if (session.conversation == null || service.isSummarizing(session.conversation)) {
+                return false;
+            }
+            if (store == null) {
+                session.cold = deflate(session.conversation);
+            } else {
+                Conversation.Summary summary = session.conversation.summary();
+                session.summary = summary.isEmpty() ? null : summary;
+                session.totalTurns = session.conversation.totalTurns();
+            }
+            session.conversation = null;
+            release(sessionId, session);
+            return true;
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    private synchronized void release(String sessionId, Session session) {
+        if (resident.remove(sessionId, session)) {
+            residentBytes -= session.bytes;
+        }
+        session.bytes = 0;
+    }
+
+    private static long footprint(Conversation conversation) {
+        long bytes = MESSAGE_OVERHEAD_BYTES + 2L * conversation.summary().text().length();
+        for (Message message : conversation.messages()) {
+            // The UTF-8 text plus the wire form Message caches for each request; compressed ones keep neither.
+            bytes += MESSAGE_OVERHEAD_BYTES + (message.isCompressed() ? message.utf8Length() / 2
+                    : 2L * message.utf8Length());
+        }
+        return bytes;
+    }
+
+    private byte[] deflate(Conversation conversation) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            List<Message> messages = conversation.messages();
+            out.writeLong(conversation.totalTurns());
+            writeString(out, conversation.summary().text());
+            out.writeLong(conversation.summary().coveredTurns());
+            out.writeInt(messages.size());
+            for (Message message : messages) {
+                writeString(out, message.text());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("In-memory deflate failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Conversation inflate(byte[] cold) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(cold)))) {
+            long totalTurns = in.readLong();
+            Conversation.Summary summary = new Conversation.Summary(readString(in), in.readLong());
+            Conversation conversation = service.newConversation();
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 2) {
+                conversation.append(new Message(Role.USER, readString(in)), new Message(Role.MODEL, readString(in)));
+            }
+            if (!summary.isEmpty()) {
+                restoreSummary(conversation, summary, totalTurns);
+            }
+            return conversation;
+        } catch (IOException e) {
+            throw new UncheckedIOException("In-memory inflate failed", e);
+        }
+    }
+
+    /**
+     * A rehydrated conversation only counts the turns it holds, so the summary's coverage is shifted to leave
+     * the same turns unsummarized as before eviction.
+     */
+    private static void restoreSummary(Conversation conversation, Conversation.Summary summary, long totalTurns) {
+        long unsummarized = totalTurns - summary.coveredTurns();
+        long covered = Math.max(0, conversation.totalTurns() - Math.min(conversation.totalTurns(), unsummarized));
+        conversation.updateSummary(new Conversation.Summary(summary.text(), covered));
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class DefaultScheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ReentrantLock rather than synchronized: a virtual thread blocked on I/O inside a monitor pins its carrier.
+    private static final class Session {
+        final ReentrantLock lock = new ReentrantLock();
+        Conversation conversation;
+        byte[] cold;
+        Conversation.Summary summary;
+        long totalTurns;
+        boolean removed;
+        // Guarded by the manager's monitor.
+        long lastUsed;
+        long bytes;
+    }
+}
@@ -0,0 +1,40 @@
+package com.patrick.application;
+
+import com.patrick.domain.TokenEstimator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public final class TokenBudget {
+    private final TokenEstimator estimator;
+    private final int defaultTokens;
+    private final Map<String, Integer> perModel;
+
+    public TokenBudget(TokenEstimator estimator, int defaultTokens) {
+        this(estimator, defaultTokens, Map.of());
+    }
+
+    private TokenBudget(TokenEstimator estimator, int defaultTokens, Map<String, Integer> perModel) {
+        this.estimator = Objects.requireNonNull(estimator);
+        if (defaultTokens < 1) throw new IllegalArgumentException("defaultTokens must be positive");
+        this.defaultTokens = defaultTokens;
+        this.perModel = perModel;
+    }
+
+    public TokenBudget withModel(String modelId, int tokens) {
+        Objects.requireNonNull(modelId);
+        if (tokens < 1) throw new IllegalArgumentException("tokens must be positive");
+        Map<String, Integer> copy = new HashMap<>(perModel);
+        copy.put(modelId, tokens);
+        return new TokenBudget(estimator, defaultTokens, Map.copyOf(copy));
+    }
+
+    public TokenEstimator estimator() {
+        return estimator;
+    }
+
+    public int tokensFor(String modelId) {
+        return perModel.getOrDefault(modelId, defaultTokens);
+    }
+}
@@ -0,0 +1,145 @@
+package com.patrick.domain;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Bounded history of complete USER/MODEL turns kept in a ring buffer. Once {@code maxTurns} turns are stored,
+ * each append overwrites the oldest one, so memory per session is fixed. {@link #lastTurns(int)} is an O(1)
+ * view over the ring (no copying); views reflect later appends, so read them before appending again.
+ * Not thread-safe: a conversation belongs to one session at a time. The only exception is the rolling
+ * {@link #summary()}, which may be replaced from a background thread.
+ * With a {@code hotTurns} window smaller than {@code maxTurns}, each turn that falls out of the newest
+ * {@code hotTurns} is {@linkplain Message#compress() compressed}: it is still kept and readable, but no longer
+ * expected to be sent to the model.
+ */
+public final class Conversation {
+    private final Message[] ring;
+    private final int hotTurns;
+    private int head;
+    private int size;
+    private long totalTurns;
+    private volatile Summary summary = Summary.NONE;
+
+    public Conversation(int maxTurns) {
+        this(maxTurns, maxTurns);
+    }
+
+    public Conversation(int maxTurns, int hotTurns) {
+        if (maxTurns < 1) throw new IllegalArgumentException("maxTurns must be positive");
+        if (hotTurns < 1) throw new IllegalArgumentException("hotTurns must be positive");
+        this.ring = new Message[maxTurns * 2];
+        this.hotTurns = hotTurns;
+    }
+
+    public void append(Message user, Message model) {
+        if (user == null || user.role() != Role.USER) throw new IllegalArgumentException("user must be a USER message");
+        if (model == null || model.role() != Role.MODEL) throw new IllegalArgumentException("model must be a MODEL message");
+
+        int tail = (head + size) % ring.length;
+        ring[tail] = user;
+        ring[(tail + 1) % ring.length] = model;
+        if (size == ring.length) {
+            head = (head + 2) % ring.length;
+        } else {
+            size += 2;
+        }
+        totalTurns++;
+        if (turns() > hotTurns) {
+            int cooled = (head + size - 2 * (hotTurns + 1)) % ring.length;
+            ring[cooled].compress();
+            ring[cooled + 1].compress();
+        }
+    }
+
+    public int maxTurns() {
+        return ring.length / 2;
+    }
+
+    public int turns() {
+        return size / 2;
+    }
+
+    public long totalTurns() {
+        return totalTurns;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Summary summary() {
+        return summary;
+    }
+
+    public void updateSummary(Summary summary) {
+        if (summary == null) throw new IllegalArgumentException("summary cannot be null");
+        if (summary.coveredTurns() > totalTurns) throw new IllegalArgumentException("summary covers unseen turns");
+        this.summary = summary;
+    }
+
+    public int unsummarizedTurns() {
+        return (int) Math.min(turns(), totalTurns - summary.coveredTurns());
+    }
+
+    public List<Message> messages() {
+        return new View(head, size);
+    }
+
+    public List<Message> lastTurns(int n) {
+        if (n < 0) throw new IllegalArgumentException("n cannot be negative");
+        int count = Math.min(n, turns()) * 2;
+        return new View((head + size - count) % ring.length, count);
+    }
+
+    private final class View extends AbstractList<Message> implements RandomAccess {
+        private final int start;
+        private final int count;
+
+        View(int start, int count) {
+            this.start = start;
+            this.count = count;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= count) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+            return ring[(start + index) % ring.length];
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * Compact text standing in for the first {@code coveredTurns} turns of the conversation.
+     */
+    public static final class Summary {
+        public static final Summary NONE = new Summary("", 0);
+
+        private final String text;
+        private final long coveredTurns;
+
+        public Summary(String text, long coveredTurns) {
+            if (text == null) throw new IllegalArgumentException("Text cannot be null");
+            if (coveredTurns < 0) throw new IllegalArgumentException("coveredTurns cannot be negative");
+            this.text = text;
+            this.coveredTurns = coveredTurns;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public long coveredTurns() {
+            return coveredTurns;
+        }
+
+        public boolean isEmpty() {
+            return text.isBlank();
+        }
+    }
+}
@@ -1,17 +1,42 @@
 package com.patrick.domain;
 
-import java.util.Objects;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+/**
+ * One turn of a conversation. The text is kept as UTF-8 bytes: no {@code String} header, and half the size for
+ * mostly-Latin text that a single emoji or symbol would push into a UTF-16 {@code String}. {@link #text()}
+ * decodes a fresh {@code String} on each call, so hot paths should go through the cached {@link #encoded} and
+ * {@link #estimatedTokens} forms or read the bytes through {@link #utf8()}. {@link #compress()} swaps the bytes for a deflated copy and drops the cached
+ * wire form, for turns that have left the window sent to the model. Equality and the cached hash depend only on
+ * role and text, so a compressed message still equals its original.
+ * <p>
+ * The encoding is lossy for text that is not well-formed UTF-16: a lone surrogate is stored as {@code '?'}, so
+ * {@link #text()} and equality see {@code "?"} where the text passed in had the surrogate.
+ */
 public class Message {
+    private static final int MIN_COMPRESSIBLE_BYTES = 128;
+
     private final Role role;
-    private final String text;
+    private final int length;
+    private volatile byte[] utf8;
+    private volatile byte[] deflated;
+    private int hash;
+    private volatile TokenCount tokens;
+    private volatile Encoded encoded;
 
     public Message(Role role, String text) {
         if (role == null) throw new IllegalArgumentException("Role cannot be null");
         if (text == null) throw new IllegalArgumentException("Text cannot be null");
 
         this.role = role;
-        this.text = text;
+        this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+        this.length = utf8.length;
     }
 
     public Role role() {
@@ -19,16 +44,142 @@ public class Message {
     }
 
     public String text() {
-        return text;
+        return new String(plain(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read-only view of the text's UTF-8 bytes, for hashing or copying it without decoding a {@code String}.
+     * A compressed message inflates a fresh copy.
+     */
+    public ByteBuffer utf8() {
+        return ByteBuffer.wrap(plain()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Length of the text in UTF-8 bytes, known without decoding it.
+     */
+    public int utf8Length() {
+        return length;
+    }
+
+    public boolean isCompressed() {
+        return utf8 == null;
+    }
+
+    /**
+     * Keeps the text deflated from now on and forgets the cached wire form. Texts too short to gain anything
+     * are left alone. Safe to call from any thread; readers see either form.
+     */
+    public synchronized void compress() {
+        byte[] plain = utf8;
+        if (plain == null || length < MIN_COMPRESSIBLE_BYTES) {
+            return;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(plain);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2);
+            byte[] chunk = new byte[Math.min(length, 4096)];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            if (out.size() >= length) {
+                return;
+            }
+            deflated = out.toByteArray();
+            utf8 = null;
+            encoded = null;
+        } finally {
+            deflater.end();
+        }
     }
 
-    @Override public String toString() { return role.name() + ": "+ text; }
+    /**
+     * Token estimate for the text, cached per estimator. Counted from the UTF-8 bytes, without decoding them into
+     * a {@code String} for estimators that support it.
+     */
+    public int estimatedTokens(TokenEstimator estimator) {
+        TokenCount cached = tokens;
+        if (cached == null || cached.estimator != estimator) {
+            cached = new TokenCount(estimator, length == 0 ? 0 : estimator.estimateUtf8(plain()));
+            tokens = cached;
+        }
+        return cached.value;
+    }
+
+    /**
+     * Wire form of this message for {@code encoder}, computed once and shared by every later request that
+     * carries the message in its history. The returned array must not be modified.
+     */
+    public byte[] encoded(MessageEncoder encoder) {
+        Encoded cached = encoded;
+        if (cached == null || cached.encoder != encoder) {
+            cached = new Encoded(encoder, encoder.encode(this));
+            if (!isCompressed()) {
+                encoded = cached;
+            }
+        }
+        return cached.bytes;
+    }
+
+    private byte[] plain() {
+        byte[] plain = utf8;
+        // compress() publishes the deflated form before clearing utf8, so a null here always finds it.
+        return plain != null ? plain : inflate(deflated, length);
+    }
+
+    private static byte[] inflate(byte[] deflated, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            byte[] plain = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                read += inflater.inflate(plain, read, length - read);
+            }
+            return plain;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed message", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override public String toString() { return role.name() + ": "+ text(); }
     @Override public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Message)) return false;
         Message msg = (Message) o;
-        return role == msg.role && text.equals(msg.text);
+        return role == msg.role && length == msg.length && hashCode() == msg.hashCode()
+                && Arrays.equals(plain(), msg.plain());
+    }
+    @Override public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * role.hashCode() + Arrays.hashCode(plain());
+            hash = h;
+        }
+        return h;
     }
-    @Override public int hashCode() { return Objects.hash(role, text);}
 
+    private static final class TokenCount {
+        final TokenEstimator estimator;
+        final int value;
+
+        TokenCount(TokenEstimator estimator, int value) {
+            this.estimator = estimator;
+            this.value = value;
+        }
+    }
+
+    private static final class Encoded {
+        final MessageEncoder encoder;
+        final byte[] bytes;
+
+        Encoded(MessageEncoder encoder, byte[] bytes) {
+            this.encoder = encoder;
+            this.bytes = bytes;
+        }
+    }
 }
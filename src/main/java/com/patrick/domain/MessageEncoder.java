@@ -0,0 +1,5 @@
+package com.patrick.domain;
+
+public interface MessageEncoder {
+    byte[] encode(Message message);
+}
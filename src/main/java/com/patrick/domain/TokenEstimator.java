@@ -0,0 +1,16 @@
+package com.patrick.domain;
+
+import java.nio.charset.StandardCharsets;
+
+public interface TokenEstimator {
+    int estimate(String text);
+
+    /**
+     * Estimate for text held as UTF-8 bytes, as {@link Message} keeps it. The default decodes it first; estimators
+     * that can count straight from the bytes override this.
+     */
+    default int estimateUtf8(byte[] utf8) {
+        if (utf8 == null) throw new IllegalArgumentException("utf8 cannot be null");
+        return estimate(new String(utf8, StandardCharsets.UTF_8));
+    }
+}
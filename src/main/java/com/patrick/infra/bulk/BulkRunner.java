@@ -0,0 +1,202 @@
+package com.patrick.infra.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.patrick.application.ChatService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Runs independent prompts through a {@link ChatService} with {@code parallelism} calls in flight, for offline
+ * jobs whose throughput is bound by per-call latency rather than quota. Prompts are pulled lazily, so the input
+ * can be far larger than memory. Each result is appended to a JSONL file as soon as it arrives, either
+ * {@code {"id": ..., "output": ...}} or {@code {"id": ..., "error": ...}}, and flushed line by line. That file is
+ * also the checkpoint: a rerun skips ids that already have an output, retries the ones that failed, and drops a
+ * line cut short by a crash. Rate limits and retries are left to the client the service wraps.
+ */
+public class BulkRunner {
+    private static final Logger LOG = Logger.getLogger(BulkRunner.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public record Prompt(String id, String text) {
+        public Prompt {
+            Objects.requireNonNull(id);
+            Objects.requireNonNull(text);
+        }
+    }
+
+    /**
+     * @param skipped prompts already answered by a previous run
+     */
+    public record Summary(int succeeded, int failed, int skipped) {
+    }
+
+    private final ChatService service;
+    private final int parallelism;
+
+    public BulkRunner(ChatService service, int parallelism) {
+        this.service = Objects.requireNonNull(service);
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Reads prompts from JSONL lines of the form {@code {"id": "...", "prompt": "..."}}, lazily. Blank lines are
+     * skipped.
+     */
+    public static Stream<Prompt> prompts(BufferedReader reader) {
+        return reader.lines().filter(line -> !line.isBlank()).map(line -> {
+            JsonNode node;
+            try {
+                node = MAPPER.readTree(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Malformed prompt line: " + line, e);
+            }
+            JsonNode id = node.get("id");
+            JsonNode prompt = node.get("prompt");
+            if (id == null || prompt == null || !prompt.isTextual()) {
+                throw new IllegalArgumentException("Prompt lines must look like {\"id\": ..., \"prompt\": \"...\"}: " + line);
+            }
+            return new Prompt(id.asText(), prompt.asText());
+        });
+    }
+
+    /**
+     * Answers every prompt without an output in {@code output} yet, appending results to it, and returns once all
+     * of them have been written. Fails with the first error writing the output, after stopping the workers.
+     */
+    public Summary run(Stream<Prompt> prompts, Path output) throws IOException {
+        Set<String> done = recover(output);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        Iterator<Prompt> source = prompts.iterator();
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "bulk-runner");
+            t.setDaemon(true);
+            return t;
+        });
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            List<Future<?>> tasks = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                tasks.add(workers.submit(() -> {
+                    Prompt prompt;
+                    while ((prompt = next(source, done, skipped)) != null) {
+                        ObjectNode line = MAPPER.createObjectNode().put("id", prompt.id());
+                        try {
+                            line.put("output", service.reply(new ArrayList<>(), prompt.text()));
+                            succeeded.incrementAndGet();
+                        } catch (IOException | RuntimeException e) {
+                            LOG.log(Level.WARNING, "Bulk prompt " + prompt.id() + " failed", e);
+                            line.put("error", String.valueOf(e.getMessage()));
+                            failed.incrementAndGet();
+                        }
+                        append(writer, line);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IOException("Bulk run failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during bulk run", e);
+        } finally {
+            workers.shutdownNow();
+        }
+        return new Summary(succeeded.get(), failed.get(), skipped.get());
+    }
+
+    /**
+     * Ids that already have an output in {@code output}. A trailing line without its newline was being written
+     * when the previous run died and is cut off, so appends start on a line boundary.
+     */
+    static Set<String> recover(Path output) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!Files.exists(output)) {
+            return done;
+        }
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long complete = channel.size();
+            ByteBuffer one = ByteBuffer.allocate(1);
+            while (complete > 0) {
+                one.clear();
+                channel.read(one, complete - 1);
+                if (one.get(0) == '\n') break;
+                complete--;
+            }
+            if (complete < channel.size()) {
+                LOG.warning("Dropping incomplete last line of " + output);
+                channel.truncate(complete);
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JsonNode node = MAPPER.readTree(line);
+                if (node.hasNonNull("output")) {
+                    done.add(node.get("id").asText());
+                }
+            }
+        }
+        return done;
+    }
+
+    private static Prompt next(Iterator<Prompt> source, Set<String> done, AtomicInteger skipped) {
+        synchronized (source) {
+            while (source.hasNext()) {
+                Prompt prompt = source.next();
+                if (!done.contains(prompt.id())) {
+                    return prompt;
+                }
+                skipped.incrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    private static void append(BufferedWriter writer, ObjectNode line) {
+        try {
+            String json = MAPPER.writeValueAsString(line);
+            synchronized (writer) {
+                writer.write(json);
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.patrick.infra.cache;
+
+public record CacheStats(long hits, long misses, long coalesced, long evictions, int entries, long bytes) {
+
+    public double hitRate() {
+        long lookups = hits + misses + coalesced;
+        return lookups == 0 ? 0.0 : (double) (hits + coalesced) / lookups;
+    }
+}
@@ -0,0 +1,313 @@
+package com.patrick.infra.cache;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.GeminiJson;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Exact-match response cache in front of another {@link AiClient}. The user input is trimmed before it is keyed and
+ * sent upstream, and requests are keyed by a SHA-256 digest of (modelId, systemPrompt, history, userInput);
+ * entries are bounded by count, TTL and an approximate byte budget, evicting least recently used first. Concurrent
+ * identical requests share a single upstream call. Failures and the {@linkplain GeminiJson#isPlaceholder
+ * placeholder} answers for empty responses are never cached.
+ */
+public class CachingAiClient implements AiClient {
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private final AiClient delegate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final Clock clock;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentMap<Key, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingAiClient(AiClient delegate, int maxEntries, Duration ttl, long maxBytes) {
+        this(delegate, maxEntries, ttl, maxBytes, Clock.systemUTC());
+    }
+
+    public CachingAiClient(AiClient delegate, int maxEntries, Duration ttl, long maxBytes, Clock clock) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.clock = Objects.requireNonNull(clock);
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("ttl must be positive");
+        if (maxBytes < 1) throw new IllegalArgumentException("maxBytes must be positive");
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        String input = trimmed(userInput);
+        return load(Key.of(modelId, history, input, systemPrompt), answer -> {},
+                () -> delegate.generate(modelId, history, input, systemPrompt));
+    }
+
+    @Override
+    public String generateStream(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                 Consumer<String> onChunk) throws IOException {
+        Objects.requireNonNull(onChunk);
+        String input = trimmed(userInput);
+        return load(Key.of(modelId, history, input, systemPrompt), onChunk,
+                () -> delegate.generateStream(modelId, history, input, systemPrompt, onChunk));
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                   String systemPrompt) {
+        String input = trimmed(userInput);
+        Key key = Key.of(modelId, history, input, systemPrompt);
+        String cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.thenApply(answer -> answer);
+        }
+        misses.increment();
+        CompletableFuture<String> upstream;
+        try {
+            upstream = delegate.generateAsync(modelId, history, input, systemPrompt);
+        } catch (RuntimeException e) {
+            inFlight.remove(key, leader);
+            leader.completeExceptionally(e);
+            throw e;
+        }
+        upstream.whenComplete((answer, error) -> {
+            if (error == null) {
+                store(key, answer);
+            }
+            inFlight.remove(key, leader);
+            if (error == null) {
+                leader.complete(answer);
+            } else {
+                leader.completeExceptionally(error);
+            }
+        });
+        return leader.thenApply(answer -> answer);
+    }
+
+    public CacheStats stats() {
+        synchronized (entries) {
+            return new CacheStats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), entries.size(), bytes);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    private static String trimmed(String userInput) {
+        if (userInput == null) throw new IllegalArgumentException("userInput cannot be null");
+        return userInput.trim();
+    }
+
+    private interface Loader {
+        String load() throws IOException;
+    }
+
+    private String load(Key key, Consumer<String> replay, Loader loader) throws IOException {
+        String cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            replay.accept(cached);
+            return cached;
+        }
+
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            coalesced.increment();
+            String answer = await(existing);
+            replay.accept(answer);
+            return answer;
+        }
+
+        try {
+            String raced = lookup(key);
+            if (raced != null) {
+                hits.increment();
+                leader.complete(raced);
+                replay.accept(raced);
+                return raced;
+            }
+            misses.increment();
+            String answer = loader.load();
+            store(key, answer);
+            leader.complete(answer);
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            leader.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, leader);
+        }
+    }
+
+    private static String await(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an identical request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private String lookup(Key key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtMillis <= clock.millis()) {
+                remove(key);
+                return null;
+            }
+            return entry.answer;
+        }
+    }
+
+    private void store(Key key, String answer) {
+        long size = ENTRY_OVERHEAD_BYTES + 2L * answer.length();
+        if (size > maxBytes || GeminiJson.isPlaceholder(answer)) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(answer, clock.millis() + ttlMillis, size));
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += size;
+
+            long now = clock.millis();
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (eldest.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+                Map.Entry<Key, Entry> next = eldest.next();
+                if (next.getKey().equals(key)) {
+                    continue;
+                }
+                bytes -= next.getValue().bytes;
+                eldest.remove();
+                if (next.getValue().expiresAtMillis > now) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    private static final class Entry {
+        final String answer;
+        final long expiresAtMillis;
+        final long bytes;
+
+        Entry(String answer, long expiresAtMillis, long bytes) {
+            this.answer = answer;
+            this.expiresAtMillis = expiresAtMillis;
+            this.bytes = bytes;
+        }
+    }
+
+    static final class Key {
+        private final long high;
+        private final long low;
+
+        private Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        static Key of(String modelId, List<Message> history, String userInput, String systemPrompt) {
+            if (modelId == null) throw new IllegalArgumentException("modelId cannot be null");
+            if (history == null) throw new IllegalArgumentException("history cannot be null");
+            if (userInput == null) throw new IllegalArgumentException("userInput cannot be null");
+
+            MessageDigest digest = sha256();
+            update(digest, modelId);
+            update(digest, systemPrompt == null ? "" : systemPrompt);
+            for (Message msg : history) {
+                digest.update((byte) msg.role().ordinal());
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(msg.utf8Length()).array());
+                digest.update(msg.utf8());
+            }
+            digest.update((byte) 0xFF);
+            update(digest, userInput);
+
+            ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+            return new Key(hash.getLong(), hash.getLong());
+        }
+
+        private static void update(MessageDigest digest, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            digest.update(bytes);
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return high == key.high && low == key.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31 + low);
+        }
+    }
+}
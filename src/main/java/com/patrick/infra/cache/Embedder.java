@@ -0,0 +1,43 @@
+package com.patrick.infra.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public interface Embedder {
+    int dimensions();
+
+    float[] embed(String text) throws IOException;
+
+    /**
+     * Last check on two texts whose embeddings are close enough to share an answer. Embeddings blur small edits that
+     * change what is asked; by default the texts must contain the same numbers, in the same order.
+     */
+    default boolean compatible(String a, String b) {
+        return numbers(a).equals(numbers(b));
+    }
+
+    static List<String> numbers(String text) {
+        List<String> numbers = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean digit = i < text.length() && Character.isDigit(text.charAt(i));
+            if (digit && start < 0) {
+                start = i;
+            } else if (!digit && start >= 0) {
+                numbers.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return numbers;
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float x : vector) norm += x * x;
+        if (norm == 0) return vector;
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) vector[i] *= scale;
+        return vector;
+    }
+}
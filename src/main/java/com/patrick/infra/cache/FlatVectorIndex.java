@@ -0,0 +1,81 @@
+package com.patrick.infra.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Exact brute-force index. All vectors live in one contiguous {@code float[]} so a lookup is a single linear,
+ * cache-friendly scan with no per-entry objects.
+ */
+public final class FlatVectorIndex implements VectorIndex {
+    private final int dimensions;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private float[] vectors;
+    private int size;
+
+    public FlatVectorIndex(int dimensions) {
+        this(dimensions, 1024);
+    }
+
+    public FlatVectorIndex(int dimensions, int initialCapacity) {
+        if (dimensions < 1) throw new IllegalArgumentException("dimensions must be positive");
+        this.dimensions = dimensions;
+        this.vectors = new float[Math.max(1, initialCapacity) * dimensions];
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int add(float[] vector) {
+        if (vector.length != dimensions) throw new IllegalArgumentException("expected " + dimensions + " dimensions");
+        lock.writeLock().lock();
+        try {
+            if ((size + 1) * (long) dimensions > vectors.length) {
+                long grown = Math.max((long) vectors.length * 2, (size + 1) * (long) dimensions);
+                if (grown > Integer.MAX_VALUE - 8) throw new IllegalStateException("index is full");
+                vectors = Arrays.copyOf(vectors, (int) grown);
+            }
+            System.arraycopy(vector, 0, vectors, size * dimensions, dimensions);
+            return size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Match nearest(float[] query) {
+        if (query.length != dimensions) throw new IllegalArgumentException("expected " + dimensions + " dimensions");
+        lock.readLock().lock();
+        try {
+            int best = -1;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            float[] data = vectors;
+            for (int id = 0, offset = 0; id < size; id++, offset += dimensions) {
+                float score = 0;
+                for (int d = 0; d < dimensions; d++) {
+                    score += data[offset + d] * query[d];
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = id;
+                }
+            }
+            return best < 0 ? null : new Match(best, bestScore);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.patrick.infra.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Offline embedder using the hashing trick over word unigrams and character trigrams. Vectors are L2-normalized,
+ * so cosine similarity is a plain dot product. Good at near-duplicates and light paraphrases (reordering,
+ * contractions, punctuation), not at synonyms. The same vectors also score one-word edits highly, so a match is
+ * only {@link #compatible} when no content word was swapped for another, as in "she don't" vs "he don't".
+ */
+public final class HashingEmbedder implements Embedder {
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+    private static final float QUESTION_WORD_SCALE = 0.15f;
+    // Content words sharing this many leading letters are taken as forms of one word ("mean", "meaning").
+    private static final int STEM_LENGTH = 4;
+    // Interrogatives, auxiliaries, pronouns and function words: they frame a question rather than carry its topic,
+    // and dominate short prompts otherwise. Content words stay at full weight even when they are common in questions.
+    private static final Set<String> QUESTION_WORDS = Set.of(
+            "what", "whats", "which", "when", "where", "why", "how",
+            "is", "are", "was", "were", "be", "s", "do", "does", "did", "can", "could", "should", "would", "will",
+            "i", "me", "my", "you", "your", "it", "this", "that", "there",
+            "the", "to", "of", "in", "with", "about", "or", "and"
+    );
+
+    private final int dimensions;
+
+    public HashingEmbedder() {
+        this(512);
+    }
+
+    public HashingEmbedder(int dimensions) {
+        if (dimensions < 8) throw new IllegalArgumentException("dimensions must be at least 8");
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (text == null) throw new IllegalArgumentException("text cannot be null");
+        char[] chars = normalize(text);
+        float[] vector = new float[dimensions];
+
+        int wordStart = -1;
+        for (int i = 0; i <= chars.length; i++) {
+            boolean boundary = i == chars.length || chars[i] == ' ';
+            if (!boundary && wordStart < 0) {
+                wordStart = i;
+            } else if (boundary && wordStart >= 0) {
+                addWord(vector, chars, wordStart, i);
+                wordStart = -1;
+            }
+        }
+        return Embedder.normalize(vector);
+    }
+
+    /**
+     * False when the texts differ in their numbers, or when each has a content word the other lacks: a substitution
+     * rather than a rewording. Question words are ignored, and words added on one side only are allowed.
+     */
+    @Override
+    public boolean compatible(String a, String b) {
+        if (!Embedder.super.compatible(a, b)) {
+            return false;
+        }
+        List<String> left = contentWords(a);
+        List<String> right = contentWords(b);
+        return !hasUnmatched(left, right) || !hasUnmatched(right, left);
+    }
+
+    private static List<String> contentWords(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : new String(normalize(text)).trim().split(" ")) {
+            if (!word.isEmpty() && !QUESTION_WORDS.contains(word)) words.add(word);
+        }
+        return words;
+    }
+
+    // Each word of the other text can match only once, so a repeated word that was replaced still shows.
+    private static boolean hasUnmatched(List<String> words, List<String> others) {
+        List<String> unused = new ArrayList<>(others);
+        for (String word : words) {
+            int match = 0;
+            while (match < unused.size() && !sameStem(word, unused.get(match))) match++;
+            if (match == unused.size()) return true;
+            unused.remove(match);
+        }
+        return false;
+    }
+
+    private static boolean sameStem(String a, String b) {
+        if (a.equals(b)) return true;
+        int common = 0;
+        while (common < a.length() && common < b.length() && a.charAt(common) == b.charAt(common)) common++;
+        return common >= STEM_LENGTH;
+    }
+
+    private void addWord(float[] vector, char[] chars, int from, int to) {
+        float scale = QUESTION_WORDS.contains(new String(chars, from, to - from)) ? QUESTION_WORD_SCALE : 1.0f;
+        add(vector, hash(chars, from, to, 0x9E3779B9), WORD_WEIGHT * scale);
+        // Trigrams include the surrounding spaces, so short words still produce " x " style features.
+        for (int i = from - 1; i + 3 <= to + 1; i++) {
+            add(vector, hash(chars, i, i + 3, 0x85EBCA6B), TRIGRAM_WEIGHT * scale);
+        }
+    }
+
+    private void add(float[] vector, int hash, float weight) {
+        int bucket = (hash >>> 1) % dimensions;
+        vector[bucket] += (hash & 1) == 0 ? weight : -weight;
+    }
+
+    // Lower-cases, maps every non letter/digit to a single space, drops plural 's' and pads both ends with a space.
+    private static char[] normalize(String text) {
+        char[] out = new char[text.length() + 2];
+        int length = 0;
+        out[length++] = ' ';
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                out[length++] = Character.toLowerCase(c);
+            } else if (out[length - 1] != ' ') {
+                length = stripPlural(out, length);
+                out[length++] = ' ';
+            }
+        }
+        if (out[length - 1] != ' ') {
+            length = stripPlural(out, length);
+            out[length++] = ' ';
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    private static int stripPlural(char[] out, int length) {
+        int wordStart = length;
+        while (out[wordStart - 1] != ' ') wordStart--;
+        boolean plural = length - wordStart > 4 && out[length - 1] == 's' && out[length - 2] != 's';
+        return plural ? length - 1 : length;
+    }
+
+    private static int hash(char[] chars, int from, int to, int seed) {
+        int h = seed;
+        for (int i = from; i < to; i++) {
+            h ^= chars[i];
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,297 @@
+package com.patrick.infra.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate index based on Hierarchical Navigable Small World graphs (Malkov and Yashunin). Lookups visit a
+ * logarithmic number of nodes instead of scanning every vector, trading a little recall for much lower latency
+ * on large caches. Vectors are stored in one contiguous {@code float[]}; each node keeps one neighbour array per
+ * level whose first slot holds the neighbour count.
+ */
+public final class HnswVectorIndex implements VectorIndex {
+    private static final Comparator<Candidate> CLOSEST_FIRST = (a, b) -> Float.compare(b.similarity, a.similarity);
+    private static final Comparator<Candidate> FARTHEST_FIRST = (a, b) -> Float.compare(a.similarity, b.similarity);
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Random random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[] vectors;
+    private int[][][] links;
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswVectorIndex(int dimensions) {
+        this(dimensions, 16, 200, 64, 42);
+    }
+
+    public HnswVectorIndex(int dimensions, int m, int efConstruction, int efSearch, long seed) {
+        if (dimensions < 1) throw new IllegalArgumentException("dimensions must be positive");
+        if (m < 2) throw new IllegalArgumentException("m must be at least 2");
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = Math.max(efSearch, 1);
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.random = new Random(seed);
+        this.vectors = new float[1024 * dimensions];
+        this.links = new int[1024][][];
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int add(float[] vector) {
+        if (vector.length != dimensions) throw new IllegalArgumentException("expected " + dimensions + " dimensions");
+        lock.writeLock().lock();
+        try {
+            int node = append(vector);
+            int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+            }
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return node;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedy(vector, current, l);
+            }
+            List<Candidate> entry = List.of(new Candidate(current, similarity(vector, current)));
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                List<Candidate> found = searchLayer(vector, entry, efConstruction, l);
+                int limit = l == 0 ? maxM0 : m;
+                for (int i = 0; i < Math.min(m, found.size()); i++) {
+                    int neighbour = found.get(i).id;
+                    connect(node, neighbour, l, limit);
+                    connect(neighbour, node, l, limit);
+                }
+                entry = found;
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Match nearest(float[] query) {
+        if (query.length != dimensions) throw new IllegalArgumentException("expected " + dimensions + " dimensions");
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return null;
+            }
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedy(query, current, l);
+            }
+            List<Candidate> found = searchLayer(query,
+                    List.of(new Candidate(current, similarity(query, current))), efSearch, 0);
+            Candidate best = found.get(0);
+            return new Match(best.id, best.similarity);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int append(float[] vector) {
+        if ((size + 1) * (long) dimensions > vectors.length) {
+            long grown = (long) vectors.length * 2;
+            if (grown > Integer.MAX_VALUE - 8) throw new IllegalStateException("index is full");
+            vectors = Arrays.copyOf(vectors, (int) grown);
+        }
+        if (size == links.length) {
+            links = Arrays.copyOf(links, links.length * 2);
+        }
+        System.arraycopy(vector, 0, vectors, size * dimensions, dimensions);
+        return size++;
+    }
+
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        float best = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = similarity(query, neighbours[i]);
+                if (score > best) {
+                    best = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Returns up to ef nodes closest to the query on the given level, best first.
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entry, int ef, int level) {
+        Visited seen = new Visited(ef);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(CLOSEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(FARTHEST_FIRST);
+        for (Candidate c : entry) {
+            seen.mark(c.id);
+            candidates.add(c);
+            results.add(c);
+        }
+        while (results.size() > ef) results.poll();
+
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (results.size() >= ef && closest.similarity < results.peek().similarity) {
+                break;
+            }
+            int[] neighbours = links[closest.id].length > level ? links[closest.id][level] : null;
+            if (neighbours == null) continue;
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int next = neighbours[i];
+                if (!seen.mark(next)) continue;
+                float score = similarity(query, next);
+                if (results.size() < ef || score > results.peek().similarity) {
+                    Candidate candidate = new Candidate(next, score);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) results.poll();
+                }
+            }
+        }
+        List<Candidate> ordered = new ArrayList<>(results);
+        ordered.sort(CLOSEST_FIRST);
+        return ordered;
+    }
+
+    private void connect(int from, int to, int level, int limit) {
+        int[] neighbours = links[from][level];
+        int count = neighbours[0];
+        for (int i = 1; i <= count; i++) {
+            if (neighbours[i] == to) return;
+        }
+        if (count < limit) {
+            neighbours[count + 1] = to;
+            neighbours[0] = count + 1;
+            return;
+        }
+        // Full: replace the neighbour least similar to 'from' if the new one is closer.
+        int worst = -1;
+        float worstScore = similarity(from, to);
+        for (int i = 1; i <= count; i++) {
+            float score = similarity(from, neighbours[i]);
+            if (score < worstScore) {
+                worstScore = score;
+                worst = i;
+            }
+        }
+        if (worst > 0) {
+            neighbours[worst] = to;
+        }
+    }
+
+    private float similarity(float[] query, int node) {
+        float score = 0;
+        int offset = node * dimensions;
+        for (int d = 0; d < dimensions; d++) {
+            score += vectors[offset + d] * query[d];
+        }
+        return score;
+    }
+
+    private float similarity(int a, int b) {
+        float score = 0;
+        int offsetA = a * dimensions;
+        int offsetB = b * dimensions;
+        for (int d = 0; d < dimensions; d++) {
+            score += vectors[offsetA + d] * vectors[offsetB + d];
+        }
+        return score;
+    }
+
+    private static final class Candidate {
+        final int id;
+        final float similarity;
+
+        Candidate(int id, float similarity) {
+            this.id = id;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * Nodes seen by one search, in an open-addressing table sized to the search rather than to the index: a search
+     * visits a few times {@code ef} nodes, and a per-thread array over the whole index would be reallocated for
+     * every virtual thread. Slots hold {@code id + 1}, so zero marks an empty slot.
+     */
+    private static final class Visited {
+        private int[] slots;
+        private int count;
+
+        Visited(int ef) {
+            slots = new int[Integer.highestOneBit(Math.max(ef, 4) * 8 - 1) << 1];
+        }
+
+        boolean mark(int id) {
+            int mask = slots.length - 1;
+            int slot = mix(id) & mask;
+            while (slots[slot] != 0) {
+                if (slots[slot] == id + 1) return false;
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+            if (++count * 2 > slots.length) grow();
+            return true;
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length - 1;
+            for (int value : old) {
+                if (value == 0) continue;
+                int slot = mix(value - 1) & mask;
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = value;
+            }
+        }
+
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
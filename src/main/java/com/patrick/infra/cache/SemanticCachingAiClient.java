@@ -0,0 +1,294 @@
+package com.patrick.infra.cache;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.GeminiJson;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Near-duplicate response cache. The user input is embedded and looked up in a per (modelId, systemPrompt)
+ * vector index; an answer cached for a question whose cosine similarity reaches {@code threshold}, and that the
+ * embedder finds {@linkplain Embedder#compatible compatible}, is returned without calling the model. Only turns without history are cached, since follow-up answers depend on context.
+ * Answers expire after {@code ttl}; a fresh answer for a near-duplicate of an indexed question replaces the old
+ * one in place. A full partition is compacted: expired entries are dropped, then the oldest until a quarter of it
+ * is free, and its index is rebuilt. Only the {@code maxPartitions} most recently used partitions are kept.
+ * Placeholder answers for blocked or empty responses are never cached.
+ */
+public class SemanticCachingAiClient implements AiClient {
+    public static final double DEFAULT_THRESHOLD = 0.85;
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    public static final int DEFAULT_MAX_PARTITIONS = 64;
+
+    private final AiClient delegate;
+    private final Embedder embedder;
+    private final double threshold;
+    private final int maxEntriesPerPartition;
+    private final long ttlMillis;
+    private final IntFunction<VectorIndex> indexFactory;
+    private final Clock clock;
+    private final LinkedHashMap<String, Partition> partitions;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SemanticCachingAiClient(AiClient delegate, Embedder embedder, double threshold, int maxEntriesPerPartition) {
+        this(delegate, embedder, threshold, maxEntriesPerPartition, FlatVectorIndex::new);
+    }
+
+    public SemanticCachingAiClient(AiClient delegate, Embedder embedder, double threshold, int maxEntriesPerPartition,
+                                   IntFunction<VectorIndex> indexFactory) {
+        this(delegate, embedder, threshold, maxEntriesPerPartition, DEFAULT_TTL, DEFAULT_MAX_PARTITIONS, indexFactory,
+                Clock.systemUTC());
+    }
+
+    public SemanticCachingAiClient(AiClient delegate, Embedder embedder, double threshold, int maxEntriesPerPartition,
+                                   Duration ttl, int maxPartitions, IntFunction<VectorIndex> indexFactory,
+                                   Clock clock) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.embedder = Objects.requireNonNull(embedder);
+        this.indexFactory = Objects.requireNonNull(indexFactory);
+        this.clock = Objects.requireNonNull(clock);
+        if (threshold <= 0 || threshold > 1) throw new IllegalArgumentException("threshold must be in (0, 1]");
+        if (maxEntriesPerPartition < 1) throw new IllegalArgumentException("maxEntriesPerPartition must be positive");
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("ttl must be positive");
+        if (maxPartitions < 1) throw new IllegalArgumentException("maxPartitions must be positive");
+        this.threshold = threshold;
+        this.maxEntriesPerPartition = maxEntriesPerPartition;
+        this.ttlMillis = ttl.toMillis();
+        this.partitions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Partition> eldest) {
+                if (size() <= maxPartitions) return false;
+                evictions.add(eldest.getValue().size());
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        validate(modelId, history, userInput);
+        if (!history.isEmpty()) {
+            bypassed.increment();
+            return delegate.generate(modelId, history, userInput, systemPrompt);
+        }
+        Partition partition = partition(modelId, systemPrompt);
+        String question = userInput.trim();
+        float[] query = embedder.embed(question);
+        String cached = partition.lookup(question, query);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        String answer = delegate.generate(modelId, history, userInput, systemPrompt);
+        store(partition, question, query, answer);
+        return answer;
+    }
+
+    @Override
+    public String generateStream(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                 Consumer<String> onChunk) throws IOException {
+        validate(modelId, history, userInput);
+        Objects.requireNonNull(onChunk);
+        if (!history.isEmpty()) {
+            bypassed.increment();
+            return delegate.generateStream(modelId, history, userInput, systemPrompt, onChunk);
+        }
+        Partition partition = partition(modelId, systemPrompt);
+        String question = userInput.trim();
+        float[] query = embedder.embed(question);
+        String cached = partition.lookup(question, query);
+        if (cached != null) {
+            hits.increment();
+            onChunk.accept(cached);
+            return cached;
+        }
+        misses.increment();
+        String answer = delegate.generateStream(modelId, history, userInput, systemPrompt, onChunk);
+        store(partition, question, query, answer);
+        return answer;
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                   String systemPrompt) {
+        validate(modelId, history, userInput);
+        if (!history.isEmpty()) {
+            bypassed.increment();
+            return delegate.generateAsync(modelId, history, userInput, systemPrompt);
+        }
+        Partition partition = partition(modelId, systemPrompt);
+        String question = userInput.trim();
+        float[] query;
+        try {
+            query = embedder.embed(question);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String cached = partition.lookup(question, query);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.increment();
+        return delegate.generateAsync(modelId, history, userInput, systemPrompt)
+                .thenApply(answer -> {
+                    store(partition, question, query, answer);
+                    return answer;
+                });
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long bypassed() {
+        return bypassed.sum();
+    }
+
+    /**
+     * Entries dropped by compaction or with their partition, expired or not.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (partitions) {
+            return partitions.values().stream().mapToInt(Partition::size).sum();
+        }
+    }
+
+    private static void validate(String modelId, List<Message> history, String userInput) {
+        if (modelId == null) throw new IllegalArgumentException("modelId cannot be null");
+        if (history == null) throw new IllegalArgumentException("history cannot be null");
+        if (userInput == null) throw new IllegalArgumentException("userInput cannot be null");
+    }
+
+    private static void store(Partition partition, String question, float[] query, String answer) {
+        if (!GeminiJson.isPlaceholder(answer)) {
+            partition.store(question, query, answer);
+        }
+    }
+
+    private Partition partition(String modelId, String systemPrompt) {
+        String key = modelId + '\u0000' + (systemPrompt == null ? "" : systemPrompt);
+        synchronized (partitions) {
+            return partitions.computeIfAbsent(key, k -> new Partition());
+        }
+    }
+
+    private record Entry(String question, float[] vector, String answer, long expiresAt) {
+    }
+
+    /**
+     * One index and the entries at its ids. Compaction replaces the whole generation, so a lookup always reads
+     * an id from the index it came from.
+     */
+    private static final class Generation {
+        final VectorIndex index;
+        final List<Entry> entries = new ArrayList<>();
+
+        Generation(VectorIndex index) {
+            this.index = index;
+        }
+
+        synchronized Entry get(int id) {
+            return id < entries.size() ? entries.get(id) : null;
+        }
+
+        synchronized void set(int id, Entry entry) {
+            entries.set(id, entry);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        void add(Entry entry) {
+            synchronized (this) {
+                entries.add(entry);
+            }
+            index.add(entry.vector());
+        }
+    }
+
+    private final class Partition {
+        private volatile Generation generation = new Generation(indexFactory.apply(embedder.dimensions()));
+
+        String lookup(String question, float[] query) {
+            Generation current = generation;
+            int id = match(current, question, query);
+            Entry entry = id < 0 ? null : current.get(id);
+            return entry != null && entry.expiresAt() > clock.millis() ? entry.answer() : null;
+        }
+
+        synchronized void store(String question, float[] query, String answer) {
+            long now = clock.millis();
+            Entry entry = new Entry(question, query, answer, now + ttlMillis);
+            Generation current = generation;
+            int id = match(current, question, query);
+            if (id >= 0) {
+                // The question is already indexed (expired, or answered by a concurrent miss): replace its answer.
+                current.set(id, entry);
+                return;
+            }
+            if (current.size() >= maxEntriesPerPartition) {
+                current = compact(current, now);
+                generation = current;
+            }
+            current.add(entry);
+        }
+
+        int size() {
+            return generation.size();
+        }
+
+        // Id of the indexed question close enough to stand in for this one, or -1.
+        private int match(Generation current, String question, float[] query) {
+            VectorIndex.Match match = current.index.nearest(query);
+            if (match == null || match.similarity() < threshold) {
+                return -1;
+            }
+            Entry entry = current.get(match.id());
+            return entry != null && embedder.compatible(question, entry.question()) ? match.id() : -1;
+        }
+
+        private Generation compact(Generation full, long now) {
+            List<Entry> live = new ArrayList<>();
+            synchronized (full) {
+                for (Entry entry : full.entries) {
+                    if (entry.expiresAt() > now) live.add(entry);
+                }
+            }
+            int keep = Math.min(live.size(), maxEntriesPerPartition - Math.max(1, maxEntriesPerPartition / 4));
+            live.sort(Comparator.comparingLong(Entry::expiresAt));
+            Generation compacted = new Generation(indexFactory.apply(embedder.dimensions()));
+            for (Entry entry : live.subList(live.size() - keep, live.size())) {
+                compacted.add(entry);
+            }
+            evictions.add(full.size() - keep);
+            return compacted;
+        }
+    }
+}
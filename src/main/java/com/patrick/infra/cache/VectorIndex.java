@@ -0,0 +1,18 @@
+package com.patrick.infra.cache;
+
+/**
+ * Nearest-neighbour index over L2-normalized vectors, scored by cosine similarity (dot product). Ids are dense
+ * and assigned in insertion order starting at zero.
+ */
+public interface VectorIndex {
+    int dimensions();
+
+    int size();
+
+    int add(float[] vector);
+
+    Match nearest(float[] query);
+
+    record Match(int id, float similarity) {
+    }
+}
@@ -0,0 +1,175 @@
+package com.patrick.infra.config;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the one {@link OkHttpClient} shared by every Gemini component from explicit settings instead of
+ * OkHttp's defaults: pool size and keep-alive, dispatcher limits (OkHttp allows only 5 async calls per host,
+ * which is all of our traffic), per-phase timeouts, and gzip of large request bodies. Over TLS OkHttp negotiates
+ * HTTP/2 and multiplexes calls over one connection per host; the pool still matters for HTTP/1.1 and for
+ * reconnects.
+ */
+public final class HttpTransport {
+    /**
+     * @param gzipMinBytes request bodies at least this long are sent gzip-compressed; 0 disables compression
+     * @param callTimeout  bound on a whole call including redirects; {@link Duration#ZERO} for none
+     */
+    public record Settings(int maxIdleConnections, Duration keepAlive, int maxRequests, int maxRequestsPerHost,
+                           Duration connectTimeout, Duration readTimeout, Duration writeTimeout, Duration callTimeout,
+                           long gzipMinBytes) {
+        public Settings {
+            if (maxIdleConnections < 0) throw new IllegalArgumentException("maxIdleConnections cannot be negative");
+            if (maxRequests < 1 || maxRequestsPerHost < 1) {
+                throw new IllegalArgumentException("dispatcher limits must be positive");
+            }
+            Objects.requireNonNull(keepAlive);
+            Objects.requireNonNull(connectTimeout);
+            Objects.requireNonNull(readTimeout);
+            Objects.requireNonNull(writeTimeout);
+            Objects.requireNonNull(callTimeout);
+            if (gzipMinBytes < 0) throw new IllegalArgumentException("gzipMinBytes cannot be negative");
+        }
+
+        /**
+         * 16 idle connections kept for 5 minutes, 64 calls in flight (all of them may go to one host), 10 s to
+         * connect, 30 s between reads or writes, 30 s per call, no compression.
+         */
+        public static Settings defaults() {
+            return new Settings(16, Duration.ofMinutes(5), 64, 64, Duration.ofSeconds(10), Duration.ofSeconds(30),
+                    Duration.ofSeconds(30), Duration.ofSeconds(30), 0);
+        }
+
+        /**
+         * {@link #defaults()} overridden by the {@code HTTP_*} environment variables.
+         */
+        public static Settings fromEnv() {
+            Settings d = defaults();
+            return new Settings(
+                    Integer.parseInt(Env.getOrDefault("HTTP_MAX_IDLE_CONNECTIONS", String.valueOf(d.maxIdleConnections()))),
+                    Duration.ofSeconds(Long.parseLong(Env.getOrDefault("HTTP_KEEP_ALIVE_SECONDS",
+                            String.valueOf(d.keepAlive().toSeconds())))),
+                    Integer.parseInt(Env.getOrDefault("HTTP_MAX_REQUESTS", String.valueOf(d.maxRequests()))),
+                    Integer.parseInt(Env.getOrDefault("HTTP_MAX_REQUESTS_PER_HOST", String.valueOf(d.maxRequestsPerHost()))),
+                    millis("HTTP_CONNECT_TIMEOUT_MS", d.connectTimeout()),
+                    millis("HTTP_READ_TIMEOUT_MS", d.readTimeout()),
+                    millis("HTTP_WRITE_TIMEOUT_MS", d.writeTimeout()),
+                    millis("HTTP_CALL_TIMEOUT_MS", d.callTimeout()),
+                    Long.parseLong(Env.getOrDefault("HTTP_GZIP_MIN_BYTES", String.valueOf(d.gzipMinBytes()))));
+        }
+
+        private static Duration millis(String key, Duration defaultValue) {
+            return Duration.ofMillis(Long.parseLong(Env.getOrDefault(key, String.valueOf(defaultValue.toMillis()))));
+        }
+    }
+
+    private HttpTransport() {
+    }
+
+    public static OkHttpClient client(Settings settings) {
+        return configure(new OkHttpClient.Builder(), settings).build();
+    }
+
+    /**
+     * Applies {@code settings} to {@code builder}, for callers that need to set more (socket factories in tests).
+     */
+    public static OkHttpClient.Builder configure(OkHttpClient.Builder builder, Settings settings) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(settings.maxRequests());
+        dispatcher.setMaxRequestsPerHost(settings.maxRequestsPerHost());
+        builder.dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(settings.maxIdleConnections(), settings.keepAlive().toMillis(),
+                        TimeUnit.MILLISECONDS))
+                .connectTimeout(settings.connectTimeout())
+                .readTimeout(settings.readTimeout())
+                .writeTimeout(settings.writeTimeout())
+                .callTimeout(settings.callTimeout());
+        if (settings.gzipMinBytes() > 0) {
+            builder.addInterceptor(new GzipRequestInterceptor(settings.gzipMinBytes()));
+        }
+        return builder;
+    }
+
+    /**
+     * Opens up to {@code connections} pooled connections to {@code baseUrl} in the background with {@code HEAD}
+     * requests, so the first real call skips DNS, TCP and TLS setup. Any response counts, since only the
+     * connection is wanted. The future completes once every attempt has finished and never fails.
+     */
+    public static CompletableFuture<Void> prewarm(OkHttpClient client, String baseUrl, int connections) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (connections < 1) {
+            done.complete(null);
+            return done;
+        }
+        AtomicInteger remaining = new AtomicInteger(connections);
+        Request request = new Request.Builder().url(baseUrl).head().build();
+        for (int i = 0; i < connections; i++) {
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    finish();
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    finish();
+                }
+
+                private void finish() {
+                    if (remaining.decrementAndGet() == 0) done.complete(null);
+                }
+            });
+        }
+        return done;
+    }
+
+    /**
+     * Compresses request bodies of at least {@code minBytes} whose length is known. Streaming bodies of unknown
+     * length are left alone, so nothing is buffered that wasn't already sized.
+     */
+    static final class GzipRequestInterceptor implements Interceptor {
+        private final long minBytes;
+
+        GzipRequestInterceptor(long minBytes) {
+            this.minBytes = minBytes;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            RequestBody body = request.body();
+            if (body == null || request.header("Content-Encoding") != null || body.contentLength() < minBytes) {
+                return chain.proceed(request);
+            }
+            Buffer compressed = new Buffer();
+            try (BufferedSink gzip = Okio.buffer(new GzipSink(compressed))) {
+                body.writeTo(gzip);
+            }
+            MediaType type = body.contentType();
+            return chain.proceed(request.newBuilder()
+                    .header("Content-Encoding", "gzip")
+                    .method(request.method(), RequestBody.create(compressed.readByteString(), type))
+                    .build());
+        }
+    }
+}
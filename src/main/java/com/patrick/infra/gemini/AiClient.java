@@ -3,7 +3,25 @@ package com.patrick.infra.gemini;
 import com.patrick.domain.Message;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface AiClient {
     String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException;
+
+    default String generateStream(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                  Consumer<String> onChunk) throws IOException {
+        String answer = generate(modelId, history, userInput, systemPrompt);
+        onChunk.accept(answer);
+        return answer;
+    }
+
+    default CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                    String systemPrompt) {
+        try {
+            return CompletableFuture.completedFuture(generate(modelId, history, userInput, systemPrompt));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
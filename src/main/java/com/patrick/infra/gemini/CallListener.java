@@ -0,0 +1,36 @@
+package com.patrick.infra.gemini;
+
+import java.io.IOException;
+
+/**
+ * Observes what {@link GeminiClient} sends and receives, one HTTP call at a time. Methods run on caller and
+ * OkHttp threads while a request is in flight, so implementations must be thread-safe, quick and must not throw.
+ */
+public interface CallListener {
+    CallListener NONE = new CallListener() {
+    };
+
+    /**
+     * An attempt of a request is about to be sent. Attempts count from 1, so a higher one is a retry.
+     */
+    default void onAttempt(String modelId, int attempt) {
+    }
+
+    /**
+     * Response headers of one call arrived, {@code elapsedNanos} after it was sent. Hedge copies are reported too.
+     */
+    default void onResponse(String modelId, int statusCode, long elapsedNanos, long requestBytes) {
+    }
+
+    /**
+     * One call failed without a response, e.g. on a timeout or a reset connection. Cancelled calls are not reported.
+     */
+    default void onFailure(String modelId, long elapsedNanos, long requestBytes, IOException error) {
+    }
+
+    /**
+     * The body of a successful response was read.
+     */
+    default void onBody(String modelId, GeminiJson.Usage usage) {
+    }
+}
@@ -1,142 +1,582 @@
 package com.patrick.infra.gemini;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.patrick.domain.Message;
-import com.patrick.domain.Role;
+import com.patrick.infra.tracing.Span;
+import com.patrick.infra.tracing.Tracer;
 import okhttp3.*;
+import okio.BufferedSource;
+import okio.Utf8;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Gemini REST client. Instances are safe for concurrent use: all per-request state (payload, retry attempt,
+ * backoff and last failure) lives on the calling stack or in the async callback chain, and {@link GeminiJson}
+ * is stateless. Share one instance (and its {@link OkHttpClient}) across threads.
+ */
 public class GeminiClient implements AiClient {
-    private static final MediaType JSON
-            = MediaType.get("application/json; charset=utf-8");
     private static final Logger LOG = Logger.getLogger(GeminiClient.class.getName());
+    private static final String NO_CANDIDATES = GeminiJson.NO_CANDIDATES;
+    private static final String EMPTY = GeminiJson.EMPTY;
     private final OkHttpClient httpClient;
-    private static final int MAX_RETRIES = 3;
-    private IOException last;
     private final String baseURL;
     private final String apiKey;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler;
+    private final GeminiContextCache contextCache;
+    private final RetryPolicy retryPolicy;
+    private final HedgePolicy hedgePolicy;
+    private final CallListener listener;
+    private final Tracer tracer;
 
     public GeminiClient(OkHttpClient http, String baseURL, String apiKey) {
+        this(http, baseURL, apiKey, DefaultScheduler.INSTANCE);
+    }
+
+    public GeminiClient(OkHttpClient http, String baseURL, String apiKey, ScheduledExecutorService scheduler) {
         this.httpClient = Objects.requireNonNull(http);
         this.baseURL = Objects.requireNonNull(baseURL);
         this.apiKey = Objects.requireNonNull(apiKey);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.contextCache = null;
+        this.retryPolicy = RetryPolicy.defaults();
+        this.hedgePolicy = null;
+        this.listener = CallListener.NONE;
+        this.tracer = Tracer.NOOP;
+    }
+
+    private GeminiClient(GeminiClient base, GeminiContextCache contextCache, RetryPolicy retryPolicy,
+                         HedgePolicy hedgePolicy, CallListener listener, Tracer tracer) {
+        this.httpClient = base.httpClient;
+        this.baseURL = base.baseURL;
+        this.apiKey = base.apiKey;
+        this.scheduler = base.scheduler;
+        this.contextCache = contextCache;
+        this.retryPolicy = retryPolicy;
+        this.hedgePolicy = hedgePolicy;
+        this.listener = listener;
+        this.tracer = tracer;
+    }
+
+    public GeminiClient withRetryPolicy(RetryPolicy retryPolicy) {
+        return new GeminiClient(this, contextCache, Objects.requireNonNull(retryPolicy), hedgePolicy, listener, tracer);
+    }
+
+    /**
+     * Returns a client that hedges slow {@code generateContent} attempts: a second identical request is sent once
+     * an attempt outlives the policy's latency percentile, the first success wins and the other call is
+     * cancelled. Retries apply to the pair as a whole. Hedged attempts go through the OkHttp dispatcher, so its
+     * per-host limit bounds them. Streaming requests are never hedged.
+     */
+    public GeminiClient withHedging(HedgePolicy hedgePolicy) {
+        return new GeminiClient(this, contextCache, retryPolicy, Objects.requireNonNull(hedgePolicy), listener, tracer);
+    }
+
+    /**
+     * Returns a client that references the system prompt through Gemini context caching instead of sending it
+     * on every request. If the cached content can't be created, or a request using it is rejected with a 4xx,
+     * the prompt is sent inline.
+     */
+    public GeminiClient withContextCache(GeminiContextCache contextCache) {
+        return new GeminiClient(this, Objects.requireNonNull(contextCache), retryPolicy, hedgePolicy, listener, tracer);
+    }
+
+    /**
+     * Returns a client that reports every attempt, HTTP call and response body to {@code listener}, e.g. to
+     * collect latency, status and token metrics.
+     */
+    public GeminiClient withCallListener(CallListener listener) {
+        return new GeminiClient(this, contextCache, retryPolicy, hedgePolicy, Objects.requireNonNull(listener), tracer);
+    }
+
+    /**
+     * Returns a client that traces blocking calls as a {@code gemini.generate} span, under the caller's current
+     * span, with {@code gemini.serialize} and {@code gemini.parse} (or {@code gemini.stream}, which includes
+     * waiting for chunks) children and token counts as attributes. The HTTP phases are traced by a
+     * {@link com.patrick.infra.tracing.TracingEventListener} on the OkHttp client. Asynchronous calls are only
+     * traced at the HTTP level.
+     */
+    public GeminiClient withTracer(Tracer tracer) {
+        return new GeminiClient(this, contextCache, retryPolicy, hedgePolicy, listener,
+                Objects.requireNonNull(tracer));
     }
 
     @Override
     public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        Span span = tracer.start("gemini.generate").setAttribute("gen_ai.request.model", modelId);
+        try (Response response = open(modelId, history, userInput, systemPrompt, "generateContent?", true)) {
+            try (Span parse = tracer.start("gemini.parse")) {
+                return readBody(modelId, response, parse);
+            }
+        } catch (IOException | RuntimeException e) {
+            span.setError(e);
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    @Override
+    public String generateStream(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                 Consumer<String> onChunk) throws IOException {
+        Objects.requireNonNull(onChunk);
+
+        Span span = tracer.start("gemini.generate").setAttribute("gen_ai.request.model", modelId)
+                .setAttribute("gemini.streaming", "true");
+        try (Response response = open(modelId, history, userInput, systemPrompt, "streamGenerateContent?alt=sse&",
+                false)) {
+            if (response.body() == null) {
+                onChunk.accept(NO_CANDIDATES);
+                return NO_CANDIDATES;
+            }
+            try (Span stream = tracer.start("gemini.stream")) {
+                return readEvents(modelId, response.body().source(), onChunk, stream);
+            }
+        } catch (IOException | RuntimeException e) {
+            span.setError(e);
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                   String systemPrompt) {
+        requireArguments(modelId, history, userInput);
+        String cached = null;
+        if (usesContextCache(systemPrompt)) {
+            cached = contextCache.current(modelId, systemPrompt);
+            if (cached == null) {
+                contextCache.refreshAsync(modelId, systemPrompt);
+            }
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        enqueueWithRetry(buildRequest(modelId, history, userInput, systemPrompt, "generateContent?", cached),
+                modelId, retryPolicy.start(), result);
+        if (cached == null) {
+            return result;
+        }
+
+        CompletableFuture<String> inline = new CompletableFuture<>();
+        inline.whenComplete((answer, error) -> {
+            if (inline.isCancelled()) result.cancel(true);
+        });
+        result.whenComplete((answer, error) -> {
+            if (error == null) {
+                inline.complete(answer);
+            } else if (!(error instanceof HttpStatusException status) || !rejectsCachedContent(status)) {
+                inline.completeExceptionally(error);
+            } else if (!inline.isDone()) {
+                LOG.warning("Request with cached content rejected, retrying with inline system prompt: " + error);
+                contextCache.invalidate(modelId, systemPrompt);
+                enqueueWithRetry(buildRequest(modelId, history, userInput, systemPrompt, "generateContent?", null),
+                        modelId, retryPolicy.start(), inline);
+            }
+        });
+        return inline;
+    }
+
+    private Response open(String modelId, List<Message> history, String userInput, String systemPrompt,
+                          String method, boolean hedge) throws IOException {
+        requireArguments(modelId, history, userInput);
+        if (usesContextCache(systemPrompt)) {
+            String cached = contextCache.cachedContentFor(modelId, systemPrompt);
+            if (cached != null) {
+                try {
+                    return executeWithRetry(serialize(modelId, history, userInput, systemPrompt, method, cached),
+                            modelId, hedge);
+                } catch (HttpStatusException e) {
+                    if (!rejectsCachedContent(e)) throw e;
+                    LOG.warning("Request with cached content rejected, retrying with inline system prompt: " + e);
+                    contextCache.invalidate(modelId, systemPrompt);
+                }
+            }
+        }
+        return executeWithRetry(serialize(modelId, history, userInput, systemPrompt, method, null), modelId, hedge);
+    }
+
+    private static boolean rejectsCachedContent(HttpStatusException e) {
+        return e.statusCode() >= 400 && e.statusCode() < 500 && !e.isRetryable();
+    }
+
+    private boolean usesContextCache(String systemPrompt) {
+        return contextCache != null && systemPrompt != null && !systemPrompt.isBlank()
+                && contextCache.caches(systemPrompt);
+    }
+
+    private static void requireArguments(String modelId, List<Message> history, String userInput) {
         if (modelId == null) throw new IllegalArgumentException("modelId cannot be null");
         if (history == null) throw new IllegalArgumentException("history cannot be null");
         if (userInput == null) throw new IllegalArgumentException("userInput cannot be null");
-        Objects.requireNonNull(modelId);
-        Objects.requireNonNull(history);
-        Objects.requireNonNull(userInput);
+    }
+
+    private void enqueueWithRetry(Request request, String modelId, RetryPolicy.Execution retry,
+                                  CompletableFuture<String> result) {
+        listener.onAttempt(modelId, retry.attempt());
+        Attempt attempt = new Attempt(request, modelId, true, retry);
+        result.whenComplete((answer, error) -> {
+            if (result.isCancelled()) attempt.response.cancel(true);
+        });
 
-        Map<String, Object> payload = new LinkedHashMap<>();
-        if (systemPrompt != null && !systemPrompt.isBlank()) {
-            Map<String, Object> system = new LinkedHashMap<>();
-            system.put("role", Role.SYSTEM.Wire());
-            system.put("parts", List.of(Map.of("text", systemPrompt)));
-            payload.put("systemInstruction", system);
+        attempt.response.whenComplete((response, error) -> {
+            if (error != null) {
+                retryLater(request, modelId, retry, asIOException(error), result);
+                return;
+            }
+            try (response) {
+                result.complete(readBody(modelId, response, Span.NOOP));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        attempt.start();
+    }
+
+    private void retryLater(Request request, String modelId, RetryPolicy.Execution retry, IOException error,
+                            CompletableFuture<String> result) {
+        if (result.isDone()) {
+            return;
         }
+        long delayMs = retry.nextDelayMillis(error);
+        if (delayMs < 0) {
+            result.completeExceptionally(retry.failure(error));
+            return;
+        }
+        scheduler.schedule(
+                () -> enqueueWithRetry(request, modelId, retry, result),
+                delayMs,
+                TimeUnit.MILLISECONDS
+        );
+    }
 
-        List<Map<String, Object>> contents = new ArrayList<>();
-        for (Message msg : history) {
-            contents.add(
-                    Map.of(
-                            "role", msg.role().Wire(),
-                            "parts", List.of(Map.of("text", msg.text()))
-                    )
-            );
+    private String readBody(String modelId, Response response, Span span) throws IOException {
+        if (response.body() == null) {
+            return NO_CANDIDATES;
         }
+        if (listener == CallListener.NONE && !span.isRecording()) {
+            return GeminiJson.readText(response.body().byteStream());
+        }
+        GeminiJson.Usage usage = new GeminiJson.Usage();
+        String text = GeminiJson.readText(response.body().byteStream(), usage);
+        listener.onBody(modelId, usage);
+        recordUsage(span, usage);
+        return text;
+    }
 
-        contents.add(Map.of(
-                "role", Role.USER.Wire(),
-                "parts", List.of(Map.of("text", userInput))
-        ));
+    private static void recordUsage(Span span, GeminiJson.Usage usage) {
+        span.setAttribute("gen_ai.usage.input_tokens", usage.promptTokens())
+                .setAttribute("gen_ai.usage.output_tokens", usage.candidatesTokens() + usage.thoughtsTokens())
+                .setAttribute("http.response.body.size", usage.bytes());
+    }
 
-        payload.put("contents", contents);
+    private HttpStatusException statusException(Response response) throws IOException {
+        String body = response.body() != null ? response.body().string() : "";
+        return new HttpStatusException(response.code(), body, retryPolicy.isRetryableStatus(response.code()),
+                RetryPolicy.parseRetryAfter(response.header("Retry-After"), body));
+    }
 
-        String url = String.format("%s/v1beta/models/%s:generateContent?key=%s",
+    private static final class DefaultScheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "gemini-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private Request serialize(String modelId, List<Message> history, String userInput, String systemPrompt,
+                              String method, String cachedContent) {
+        try (Span span = tracer.start("gemini.serialize")) {
+            Request request = buildRequest(modelId, history, userInput, systemPrompt, method, cachedContent);
+            span.setAttribute("http.request.body.size", requestBytes(request));
+            return request;
+        }
+    }
+
+    private Request buildRequest(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                 String method, String cachedContent) {
+        String url = String.format("%s/v1beta/models/%s:%skey=%s",
                 baseURL,
                 modelId,
+                method,
                 apiKey
         );
-        RequestBody body = RequestBody.create(
-                mapper.writeValueAsString(payload),
-                JSON
-        );
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(url)
-                .post(body)
+                .post(GeminiJson.requestBody(history, userInput, systemPrompt, cachedContent))
                 .header("Content-Type", "application/json")
                 .build();
-
-        return executeWithRetry(request);
     }
 
-    private String executeWithRetry(Request request) throws IOException {
-        long backoffMs = 250;
+    /**
+     * @param hedge whether attempts may be hedged, when a hedge policy is set; otherwise each attempt is sent
+     *              once on this thread
+     */
+    private Response executeWithRetry(Request request, String modelId, boolean hedge) throws IOException {
+        RetryPolicy.Execution retry = retryPolicy.start();
 
-        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
-            long start = System.nanoTime();
-
-            try (Response response = httpClient.newCall(request).execute()) {
-                long tookMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
-                int code = response.code();
-                String respBody = response.body() != null ? response.body().string() : "";
-                LOG.info(String.format("GeminiClient request took %d ms, attempt %d, response code %d",
-                        tookMs, attempt, code));
-                if (code >= 200 && code < 300) {
-                    return parseText(respBody);
+        while (true) {
+            IOException failure;
+            listener.onAttempt(modelId, retry.attempt());
+            try {
+                Response response = hedge && hedgePolicy != null
+                        ? new Attempt(request, modelId, true, retry).start().await()
+                        : execute(request, modelId, retry);
+                if (response.isSuccessful()) {
+                    return response;
                 }
-
-                if (code == 429 || code >= 500) {
-                    last = new IOException("Retryable status code: " + code + ", body: " + respBody);
-                } else {
-                    throw new IOException("Non-retryable status code: " + code + ", body: " + respBody);
+                try (response) {
+                    failure = statusException(response);
                 }
             } catch (IOException e) {
-                last = e;
+                failure = e;
+            }
+
+            long delayMs = retry.nextDelayMillis(failure);
+            if (delayMs < 0) {
+                throw retry.failure(failure);
             }
             try {
-                TimeUnit.MILLISECONDS.sleep(backoffMs);
+                TimeUnit.MILLISECONDS.sleep(delayMs);
             } catch (InterruptedException ie) {
                 Thread.currentThread().interrupt();
                 throw new IOException("Interrupted during backoff", ie);
             }
-            backoffMs *= 2;
         }
-        throw new IOException("Failed after " + MAX_RETRIES + " attempts", last);
     }
 
-    private String parseText(String body) throws IOException {
-        JsonNode root = mapper.readTree(body);
-        JsonNode candidates = root.get("candidates");
-        if (candidates != null && candidates.isArray() && candidates.size() > 0) {
-            JsonNode content = candidates.get(0).get("content");
-            if (content != null) {
-                JsonNode parts = content.get("parts");
-                if (parts != null && parts.isArray()) {
-                    if (parts.size() == 0) {
-                        return "[empty]";
+    private Response execute(Request request, String modelId, RetryPolicy.Execution retry) throws IOException {
+        long start = System.nanoTime();
+        Call call = httpClient.newCall(request);
+        call.timeout().timeout(retry.attemptTimeoutMillis(httpClient.callTimeoutMillis()), TimeUnit.MILLISECONDS);
+        Response response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            if (!call.isCanceled()) listener.onFailure(modelId, System.nanoTime() - start, requestBytes(request), e);
+            throw e;
+        }
+        long tookNanos = System.nanoTime() - start;
+        listener.onResponse(modelId, response.code(), tookNanos, requestBytes(request));
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine(String.format("GeminiClient request took %d ms, attempt %d, response code %d",
+                    Duration.ofNanos(tookNanos).toMillis(), retry.attempt(), response.code()));
+        }
+        return response;
+    }
+
+    private static long requestBytes(Request request) {
+        try {
+            return request.body() != null ? request.body().contentLength() : 0;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static IOException asIOException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof IOException io ? io : new IOException(cause);
+    }
+
+    /**
+     * One attempt of a request, sent a second time when the hedge policy finds it slow. {@link #response}
+     * completes with the first 2xx response, or with the last failure once every copy has failed; cancelling it
+     * cancels the calls still running.
+     */
+    private final class Attempt {
+        final CompletableFuture<Response> response = new CompletableFuture<>();
+        private final Request request;
+        private final String modelId;
+        private final String hedgeKey;
+        private final RetryPolicy.Execution retry;
+        private final long timeoutMillis;
+        private final List<Call> calls = new ArrayList<>();
+        private int pending;
+        private boolean answered;
+        private long firstSentNanos;
+
+        /**
+         * @param hedge whether to hedge the attempt, when a hedge policy is set; otherwise it is sent once
+         */
+        Attempt(Request request, String modelId, boolean hedge, RetryPolicy.Execution retry) {
+            this.request = request;
+            this.modelId = modelId;
+            this.hedgeKey = hedge && hedgePolicy != null ? modelId : null;
+            this.retry = retry;
+            this.timeoutMillis = retry.attemptTimeoutMillis(httpClient.callTimeoutMillis());
+            response.whenComplete((answer, error) -> {
+                if (response.isCancelled()) cancelCalls(null);
+            });
+        }
+
+        Attempt start() {
+            firstSentNanos = System.nanoTime();
+            send();
+            if (hedgeKey != null) {
+                hedgePolicy.onRequest();
+                long delayMs = hedgePolicy.hedgeDelayMillis(hedgeKey);
+                if (delayMs >= 0) {
+                    ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+                        if (!response.isDone() && hedgePolicy.tryHedge()) send();
+                    }, delayMs, TimeUnit.MILLISECONDS);
+                    response.whenComplete((answer, error) -> hedge.cancel(false));
+                }
+            }
+            return this;
+        }
+
+        Response await() throws IOException {
+            try {
+                return response.get();
+            } catch (ExecutionException e) {
+                throw asIOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response.cancel(true);
+                response.thenAccept(Response::close);
+                throw new InterruptedIOException("Interrupted while waiting for Gemini");
+            }
+        }
+
+        private void send() {
+            Call call = httpClient.newCall(request);
+            call.timeout().timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            int copy;
+            synchronized (this) {
+                if (response.isDone()) return;
+                calls.add(call);
+                copy = calls.size();
+                pending++;
+            }
+            long start = System.nanoTime();
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    if (!call.isCanceled()) {
+                        listener.onFailure(modelId, System.nanoTime() - start, requestBytes(request), e);
+                    }
+                    failed(e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response r) {
+                    long tookNanos = System.nanoTime() - start;
+                    listener.onResponse(modelId, r.code(), tookNanos, requestBytes(request));
+                    if (LOG.isLoggable(Level.FINE)) {
+                        LOG.fine(String.format("GeminiClient request took %d ms, attempt %d%s, response code %d",
+                                Duration.ofNanos(tookNanos).toMillis(), retry.attempt(), copy > 1 ? " (hedge)" : "",
+                                r.code()));
                     }
-                    StringBuilder sb = new StringBuilder();
-                    for (JsonNode p : parts) {
-                        JsonNode t = p.get("text");
-                        if (t != null)
-                            sb.append(t.asText());
+                    if (!r.isSuccessful()) {
+                        IOException failure;
+                        try (r) {
+                            failure = statusException(r);
+                        } catch (IOException e) {
+                            failure = e;
                         }
-                        return sb.toString().isBlank() ? "[empty]" : sb.toString();
+                        failed(failure);
+                        return;
+                    }
+                    if (!answer()) {
+                        r.close();
+                        return;
+                    }
+                    // The attempt's latency, from the first copy sent: a winning hedge's own time would drag the
+                    // percentile down, and the slow copy it beat would never be recorded. Recorded before the
+                    // caller is woken, so its next request already sees it.
+                    if (hedgeKey != null) hedgePolicy.record(hedgeKey, System.nanoTime() - firstSentNanos);
+                    if (response.complete(r)) {
+                        cancelCalls(call);
+                    } else {
+                        r.close();
                     }
                 }
+            });
+        }
+
+        /**
+         * Claims the attempt for the first successful copy; false for any later one.
+         */
+        private synchronized boolean answer() {
+            if (answered || response.isDone()) return false;
+            answered = true;
+            return true;
+        }
+
+        private void failed(IOException e) {
+            boolean last;
+            synchronized (this) {
+                last = --pending == 0;
             }
-        return "[no candidates]";
+            if (last) response.completeExceptionally(e);
+        }
+
+        private void cancelCalls(Call winner) {
+            List<Call> running;
+            synchronized (this) {
+                running = List.copyOf(calls);
+            }
+            for (Call call : running) {
+                if (call != winner) call.cancel();
+            }
+        }
+    }
+
+    private String readEvents(String modelId, BufferedSource source, Consumer<String> onChunk, Span span)
+            throws IOException {
+        StringBuilder answer = new StringBuilder();
+        StringBuilder data = new StringBuilder();
+        GeminiJson.Usage usage = listener == CallListener.NONE && !span.isRecording() ? null : new GeminiJson.Usage();
+        boolean sawCandidates = false;
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (usage != null) usage.bytes += Utf8.size(line) + 1;
+            if (line.isEmpty()) {
+                sawCandidates |= dispatchEvent(data, answer, onChunk, usage);
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) data.append('\n');
+                data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            }
+        }
+        sawCandidates |= dispatchEvent(data, answer, onChunk, usage);
+        if (usage != null) {
+            listener.onBody(modelId, usage);
+            recordUsage(span, usage);
+        }
+
+        if (!sawCandidates) {
+            onChunk.accept(NO_CANDIDATES);
+            return NO_CANDIDATES;
+        }
+        if (answer.toString().isBlank()) {
+            onChunk.accept(EMPTY);
+            return EMPTY;
+        }
+        return answer.toString();
+    }
+
+    private boolean dispatchEvent(StringBuilder data, StringBuilder answer, Consumer<String> onChunk,
+                                  GeminiJson.Usage usage) throws IOException {
+        if (data.length() == 0) {
+            return false;
+        }
+        String event = data.toString();
+        data.setLength(0);
+        return GeminiJson.readParts(event, text -> {
+            answer.append(text);
+            onChunk.accept(text);
+        }, usage);
     }
 }
@@ -0,0 +1,317 @@
+package com.patrick.infra.gemini;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.domain.Role;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps one Gemini {@code cachedContents} entry per (model, system prompt) so requests can reference the prompt
+ * by name instead of sending it inline. Entries are created on first use and their TTL is extended once they
+ * come within a tenth of it of expiring. When creating or refreshing fails, {@link #cachedContentFor} returns
+ * null and callers send the prompt inline; a failed prompt is not retried for {@code failureBackoff}.
+ * Calls for the same prompt are serialized, different prompts proceed independently. {@link #refreshAsync} does
+ * the same work on the cache's own executor, with at most one pending task per prompt. Only prompts accepted by
+ * {@code cacheable} are cached, since every distinct prompt is a billed entry: a prompt that changes often, such as
+ * one carrying a conversation summary, should go inline. At most {@code maxEntries} prompts are tracked; the least
+ * recently used is dropped and its cached content deleted on the executor.
+ */
+public class GeminiContextCache {
+    public static final int DEFAULT_MAX_ENTRIES = 16;
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Logger LOG = Logger.getLogger(GeminiContextCache.class.getName());
+    private static final Duration DEFAULT_FAILURE_BACKOFF = Duration.ofMinutes(5);
+
+    private final OkHttpClient httpClient;
+    private final String baseURL;
+    private final String apiKey;
+    private final Duration ttl;
+    private final Duration refreshMargin;
+    private final Duration failureBackoff;
+    private final Clock clock;
+    private final Executor executor;
+    private final int maxEntries;
+    private final Predicate<String> cacheable;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public GeminiContextCache(OkHttpClient http, String baseURL, String apiKey, Duration ttl) {
+        this(http, baseURL, apiKey, ttl, DEFAULT_MAX_ENTRIES, prompt -> true);
+    }
+
+    public GeminiContextCache(OkHttpClient http, String baseURL, String apiKey, Duration ttl, int maxEntries,
+                              Predicate<String> cacheable) {
+        this(http, baseURL, apiKey, ttl, DEFAULT_FAILURE_BACKOFF, Clock.systemUTC(), DefaultExecutor.INSTANCE,
+                maxEntries, cacheable);
+    }
+
+    public GeminiContextCache(OkHttpClient http, String baseURL, String apiKey, Duration ttl,
+                              Duration failureBackoff, Clock clock) {
+        this(http, baseURL, apiKey, ttl, failureBackoff, clock, DefaultExecutor.INSTANCE);
+    }
+
+    public GeminiContextCache(OkHttpClient http, String baseURL, String apiKey, Duration ttl,
+                              Duration failureBackoff, Clock clock, Executor executor) {
+        this(http, baseURL, apiKey, ttl, failureBackoff, clock, executor, DEFAULT_MAX_ENTRIES, prompt -> true);
+    }
+
+    /**
+     * @param executor runs {@link #refreshAsync} tasks and deletes evicted entries; they block on the network
+     * @param cacheable which system prompts to cache; the others are always sent inline
+     */
+    public GeminiContextCache(OkHttpClient http, String baseURL, String apiKey, Duration ttl,
+                              Duration failureBackoff, Clock clock, Executor executor, int maxEntries,
+                              Predicate<String> cacheable) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.cacheable = Objects.requireNonNull(cacheable);
+        this.executor = Objects.requireNonNull(executor);
+        this.httpClient = Objects.requireNonNull(http);
+        this.baseURL = Objects.requireNonNull(baseURL);
+        this.apiKey = Objects.requireNonNull(apiKey);
+        this.ttl = Objects.requireNonNull(ttl);
+        this.failureBackoff = Objects.requireNonNull(failureBackoff);
+        this.clock = Objects.requireNonNull(clock);
+        if (ttl.getSeconds() < 1) throw new IllegalArgumentException("ttl must be at least one second");
+        this.refreshMargin = ttl.dividedBy(10);
+    }
+
+    /**
+     * Name of a live cached content holding {@code systemPrompt} for {@code modelId}, creating or refreshing it
+     * if needed (blocking), or null when the prompt should be sent inline.
+     */
+    public String cachedContentFor(String modelId, String systemPrompt) {
+        return entry(new Key(modelId, systemPrompt)).resolve(modelId, systemPrompt);
+    }
+
+    /**
+     * Whether {@code systemPrompt} is one this cache holds; callers send the others inline without asking.
+     */
+    public boolean caches(String systemPrompt) {
+        return cacheable.test(systemPrompt);
+    }
+
+    /**
+     * Starts {@link #cachedContentFor} in the background unless it is already pending for this prompt, so
+     * asynchronous callers never block on it.
+     */
+    public void refreshAsync(String modelId, String systemPrompt) {
+        Entry entry = entry(new Key(modelId, systemPrompt));
+        if (!entry.pending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    entry.resolve(modelId, systemPrompt);
+                } finally {
+                    entry.pending.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            entry.pending.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Name of a cached content that is live and not yet due for refresh, without any network call, or null.
+     */
+    public String current(String modelId, String systemPrompt) {
+        Entry entry = existing(new Key(modelId, systemPrompt));
+        return entry == null ? null : entry.peek();
+    }
+
+    /**
+     * Drops a cached content that a request rejected, so the prompt goes inline until {@code failureBackoff}
+     * has passed.
+     */
+    public void invalidate(String modelId, String systemPrompt) {
+        Entry entry = existing(new Key(modelId, systemPrompt));
+        if (entry != null) entry.fail();
+    }
+
+    private Entry existing(Key key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private Entry entry(Key key) {
+        Entry entry;
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(key, k -> new Entry());
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries) {
+                evicted.add(eldest.next());
+                eldest.remove();
+            }
+        }
+        for (Entry old : evicted) {
+            try {
+                executor.execute(old::discard);
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Could not schedule deletion of an evicted cached content", e);
+            }
+        }
+        return entry;
+    }
+
+    private JsonNode create(String modelId, String systemPrompt) throws IOException {
+        Map<String, Object> payload = Map.of(
+                "model", "models/" + modelId,
+                "systemInstruction", Map.of(
+                        "role", Role.SYSTEM.Wire(),
+                        "parts", List.of(Map.of("text", systemPrompt))),
+                "ttl", ttl.getSeconds() + "s");
+        Request request = new Request.Builder()
+                .url(String.format("%s/v1beta/cachedContents?key=%s", baseURL, apiKey))
+                .post(RequestBody.create(MAPPER.writeValueAsString(payload), JSON))
+                .build();
+        return execute(request, "create");
+    }
+
+    private JsonNode refresh(String name) throws IOException {
+        Request request = new Request.Builder()
+                .url(String.format("%s/v1beta/%s?updateMask=ttl&key=%s", baseURL, name, apiKey))
+                .patch(RequestBody.create(MAPPER.writeValueAsString(Map.of("ttl", ttl.getSeconds() + "s")), JSON))
+                .build();
+        return execute(request, "refresh");
+    }
+
+    private void delete(String name) throws IOException {
+        Request request = new Request.Builder()
+                .url(String.format("%s/v1beta/%s?key=%s", baseURL, name, apiKey))
+                .delete()
+                .build();
+        execute(request, "delete");
+    }
+
+    private JsonNode execute(Request request, String operation) throws IOException {
+        try (Response response = httpClient.newCall(request).execute()) {
+            String body = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                throw new IOException("cachedContents " + operation + " failed with status code: "
+                        + response.code() + ", body: " + body);
+            }
+            return MAPPER.readTree(body);
+        }
+    }
+
+    private Instant expireTime(JsonNode node, Instant now) {
+        JsonNode expire = node.get("expireTime");
+        if (expire != null && expire.isTextual()) {
+            try {
+                return Instant.parse(expire.asText());
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+        return now.plus(ttl);
+    }
+
+    private record Key(String modelId, String systemPrompt) {
+    }
+
+    private static final class DefaultExecutor {
+        static final Executor INSTANCE = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "gemini-context-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final class Entry {
+        final AtomicBoolean pending = new AtomicBoolean();
+        private volatile String name;
+        private volatile Instant expireAt = Instant.MIN;
+        private Instant retryAt = Instant.MIN;
+        private boolean discarded;
+
+        String peek() {
+            String current = name;
+            return current != null && clock.instant().isBefore(expireAt.minus(refreshMargin)) ? current : null;
+        }
+
+        synchronized String resolve(String modelId, String systemPrompt) {
+            if (discarded) {
+                return null;
+            }
+            Instant now = clock.instant();
+            if (name != null && now.isBefore(expireAt.minus(refreshMargin))) {
+                return name;
+            }
+            if (name == null && now.isBefore(retryAt)) {
+                return null;
+            }
+            if (name != null && now.isBefore(expireAt)) {
+                try {
+                    expireAt = expireTime(refresh(name), now);
+                    return name;
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "cachedContents refresh failed, recreating", e);
+                }
+            }
+            try {
+                JsonNode created = create(modelId, systemPrompt);
+                JsonNode createdName = created.get("name");
+                if (createdName == null || !createdName.isTextual()) {
+                    throw new IOException("cachedContents create response without name: " + created);
+                }
+                expireAt = expireTime(created, now);
+                name = createdName.asText();
+                return name;
+            } catch (IOException e) {
+                if (name != null && now.isBefore(expireAt)) {
+                    return name;
+                }
+                LOG.log(Level.WARNING, "cachedContents unavailable, sending system prompt inline", e);
+                name = null;
+                retryAt = now.plus(failureBackoff);
+                return null;
+            }
+        }
+
+        synchronized void fail() {
+            name = null;
+            retryAt = clock.instant().plus(failureBackoff);
+        }
+
+        // Runs after any resolve in progress, so a content created by it is deleted too.
+        synchronized void discard() {
+            discarded = true;
+            String current = name;
+            name = null;
+            if (current == null || !clock.instant().isBefore(expireAt)) {
+                return;
+            }
+            try {
+                delete(current);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "cachedContents delete failed, leaving " + current + " to expire", e);
+            }
+        }
+    }
+}
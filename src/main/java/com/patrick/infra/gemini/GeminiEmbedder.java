@@ -0,0 +1,69 @@
+package com.patrick.infra.gemini;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.infra.cache.Embedder;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class GeminiEmbedder implements Embedder {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final OkHttpClient httpClient;
+    private final String baseURL;
+    private final String apiKey;
+    private final String modelId;
+    private final int dimensions;
+
+    public GeminiEmbedder(OkHttpClient http, String baseURL, String apiKey, String modelId, int dimensions) {
+        this.httpClient = Objects.requireNonNull(http);
+        this.baseURL = Objects.requireNonNull(baseURL);
+        this.apiKey = Objects.requireNonNull(apiKey);
+        this.modelId = Objects.requireNonNull(modelId);
+        if (dimensions < 1) throw new IllegalArgumentException("dimensions must be positive");
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) throws IOException {
+        if (text == null) throw new IllegalArgumentException("text cannot be null");
+        Map<String, Object> payload = Map.of(
+                "content", Map.of("parts", List.of(Map.of("text", text))),
+                "outputDimensionality", dimensions
+        );
+        Request request = new Request.Builder()
+                .url(String.format("%s/v1beta/models/%s:embedContent?key=%s", baseURL, modelId, apiKey))
+                .post(RequestBody.create(MAPPER.writeValueAsString(payload), JSON))
+                .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            String body = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                throw new IOException("Embedding failed with status code: " + response.code() + ", body: " + body);
+            }
+            JsonNode values = MAPPER.readTree(body).path("embedding").path("values");
+            if (!values.isArray() || values.size() != dimensions) {
+                throw new IOException("Expected " + dimensions + " embedding values, body: " + body);
+            }
+            float[] vector = new float[dimensions];
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = (float) values.get(i).asDouble();
+            }
+            return Embedder.normalize(vector);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.patrick.infra.gemini;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.patrick.domain.Message;
+import com.patrick.domain.MessageEncoder;
+import com.patrick.domain.Role;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming codec for {@code generateContent}. Requests are assembled in the OkHttp sink from per-message
+ * encoded fragments (see {@link #CONTENT}), and responses are read with a {@link JsonParser} that only looks at
+ * {@code candidates[0].content.parts[*].text}, skipping everything else without building a tree; callers that pass
+ * a {@link Usage} also get the {@code usageMetadata} token counts. Stateless; Jackson recycles its internal
+ * buffers per thread.
+ */
+public final class GeminiJson {
+    public static final String NO_CANDIDATES = "[no candidates]";
+    public static final String EMPTY = "[empty]";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+
+    private GeminiJson() {
+    }
+
+    /**
+     * Encodes one {@code contents} entry. Messages cache the result, so each history turn is encoded once per
+     * session instead of once per request.
+     */
+    public static final MessageEncoder CONTENT = GeminiJson::encodeContent;
+
+    private static final byte[] SYSTEM_OPEN = ascii("{\"systemInstruction\":");
+    private static final byte[] CACHED_OPEN = ascii("{\"cachedContent\":");
+    private static final byte[] CONTENTS_OPEN = ascii("\"contents\":[");
+    private static final byte[] FIRST_CONTENTS_OPEN = ascii("{\"contents\":[");
+    private static final byte[] CLOSE = ascii("]}");
+    private static final byte[] COMMA = ascii(",");
+
+    /**
+     * Body assembled from the cached history fragments plus freshly encoded system prompt and user input. The
+     * length is known up front, and retries write the same fragments again.
+     */
+    public static RequestBody requestBody(List<Message> history, String userInput, String systemPrompt) {
+        return requestBody(history, userInput, systemPrompt, null);
+    }
+
+    /**
+     * As above, but when {@code cachedContent} is set the system prompt is referenced by that cached content
+     * name instead of being sent inline.
+     */
+    public static RequestBody requestBody(List<Message> history, String userInput, String systemPrompt,
+                                          String cachedContent) {
+        byte[] prefix;
+        if (cachedContent != null) {
+            prefix = concat(CACHED_OPEN, encodeString(cachedContent), COMMA, CONTENTS_OPEN);
+        } else if (systemPrompt != null && !systemPrompt.isBlank()) {
+            prefix = concat(SYSTEM_OPEN, CONTENT.encode(new Message(Role.SYSTEM, systemPrompt)), COMMA, CONTENTS_OPEN);
+        } else {
+            prefix = FIRST_CONTENTS_OPEN;
+        }
+        byte[] user = CONTENT.encode(new Message(Role.USER, userInput));
+        byte[][] turns = new byte[history.size()][];
+        long length = prefix.length + user.length + CLOSE.length;
+        for (int i = 0; i < turns.length; i++) {
+            turns[i] = history.get(i).encoded(CONTENT);
+            length += turns[i].length + 1;
+        }
+        long contentLength = length;
+
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                writeRequest(sink, prefix, turns, user);
+            }
+        };
+    }
+
+    public static void writeRequest(BufferedSink sink, List<Message> history, String userInput, String systemPrompt)
+            throws IOException {
+        requestBody(history, userInput, systemPrompt).writeTo(sink);
+    }
+
+    private static void writeRequest(BufferedSink sink, byte[] prefix, byte[][] turns, byte[] user)
+            throws IOException {
+        sink.write(prefix);
+        for (byte[] turn : turns) {
+            sink.write(turn).writeByte(',');
+        }
+        sink.write(user).write(CLOSE);
+    }
+
+    private static byte[] encodeContent(Message message) {
+        String text = message.text();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(message.utf8Length() + 48);
+        try (JsonGenerator json = FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("role", message.role().Wire());
+            json.writeArrayFieldStart("parts");
+            json.writeStartObject();
+            json.writeStringField("text", text);
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeString(String value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length() + 2);
+        try (JsonGenerator json = FACTORY.createGenerator(out)) {
+            json.writeString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) length += part.length;
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static String readText(InputStream body) throws IOException {
+        return readText(body, null);
+    }
+
+    /**
+     * As above, also filling {@code usage}, when not null, with the response's token counts and size.
+     */
+    public static String readText(InputStream body, Usage usage) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(body)) {
+            String text = collect(parser, usage);
+            if (usage != null) {
+                usage.bytes += parser.currentLocation().getByteOffset();
+            }
+            return text;
+        }
+    }
+
+    public static String readText(String body) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(body)) {
+            return collect(parser, null);
+        }
+    }
+
+    /**
+     * True for the answers standing in for a response without candidates or text, which are not worth caching.
+     */
+    public static boolean isPlaceholder(String answer) {
+        return NO_CANDIDATES.equals(answer) || EMPTY.equals(answer);
+    }
+
+    /**
+     * Feeds each non-empty text part of one response (or one SSE event) to {@code onText}; returns false when the
+     * document has no {@code candidates[0].content.parts} array. Token counts found go to {@code usage}, when
+     * not null, replacing earlier ones: streamed events carry running totals.
+     */
+    static boolean readParts(String json, Consumer<String> onText, Usage usage) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            return readParts(parser, onText, usage);
+        }
+    }
+
+    private static String collect(JsonParser parser, Usage usage) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (!readParts(parser, sb::append, usage)) {
+            return NO_CANDIDATES;
+        }
+        return sb.toString().isBlank() ? EMPTY : sb.toString();
+    }
+
+    private static boolean readParts(JsonParser parser, Consumer<String> onText, Usage usage) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        boolean found = false;
+        boolean seenCandidates = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!seenCandidates && field.equals("candidates") && value == JsonToken.START_ARRAY) {
+                seenCandidates = true;
+                found = parser.nextToken() == JsonToken.START_OBJECT && readCandidate(parser, onText);
+                if (usage == null) {
+                    return found;
+                }
+                closeToResponse(parser);
+            } else if (usage != null && field.equals("usageMetadata") && value == JsonToken.START_OBJECT) {
+                readUsage(parser, usage);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads past whatever the candidate reader left open, up to the end of the {@code candidates} array.
+     */
+    private static void closeToResponse(JsonParser parser) throws IOException {
+        while (!parser.getParsingContext().getParent().inRoot()) {
+            JsonToken token = parser.nextToken();
+            if (token == null) return;
+            if (token.isStructStart()) parser.skipChildren();
+        }
+    }
+
+    private static void readUsage(JsonParser parser, Usage usage) throws IOException {
+        usage.promptTokens = 0;
+        usage.candidatesTokens = 0;
+        usage.thoughtsTokens = 0;
+        usage.cachedTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "promptTokenCount" -> usage.promptTokens = parser.getIntValue();
+                case "candidatesTokenCount" -> usage.candidatesTokens = parser.getIntValue();
+                case "thoughtsTokenCount" -> usage.thoughtsTokens = parser.getIntValue();
+                case "cachedContentTokenCount" -> usage.cachedTokens = parser.getIntValue();
+                default -> { }
+            }
+        }
+    }
+
+    private static boolean readCandidate(JsonParser parser, Consumer<String> onText) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("content") && value == JsonToken.START_OBJECT) {
+                return readContent(parser, onText);
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static boolean readContent(JsonParser parser, Consumer<String> onText) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("parts") && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readPart(parser, onText);
+                }
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private static void readPart(JsonParser parser, Consumer<String> onText) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("text") && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                String text = parser.getText();
+                if (!text.isEmpty()) onText.accept(text);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Token counts from a response's {@code usageMetadata} (zero when absent) and the bytes of body read.
+     * Filled in by the read methods that take one; not thread-safe.
+     */
+    public static final class Usage {
+        int promptTokens;
+        int candidatesTokens;
+        int thoughtsTokens;
+        int cachedTokens;
+        long bytes;
+
+        public int promptTokens() {
+            return promptTokens;
+        }
+
+        public int candidatesTokens() {
+            return candidatesTokens;
+        }
+
+        public int thoughtsTokens() {
+            return thoughtsTokens;
+        }
+
+        public int cachedTokens() {
+            return cachedTokens;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+    }
+}
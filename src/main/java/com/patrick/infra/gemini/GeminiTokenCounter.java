@@ -0,0 +1,73 @@
+package com.patrick.infra.gemini;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.domain.TokenEstimator;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Exact token counts from Gemini {@code :countTokens}. Every call is a network round-trip, so it relies on
+ * {@link com.patrick.domain.Message#estimatedTokens} caching; when the endpoint fails the fallback estimator is used.
+ */
+public class GeminiTokenCounter implements TokenEstimator {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Logger LOG = Logger.getLogger(GeminiTokenCounter.class.getName());
+
+    private final OkHttpClient httpClient;
+    private final String baseURL;
+    private final String apiKey;
+    private final String modelId;
+    private final TokenEstimator fallback;
+
+    public GeminiTokenCounter(OkHttpClient http, String baseURL, String apiKey, String modelId, TokenEstimator fallback) {
+        this.httpClient = Objects.requireNonNull(http);
+        this.baseURL = Objects.requireNonNull(baseURL);
+        this.apiKey = Objects.requireNonNull(apiKey);
+        this.modelId = Objects.requireNonNull(modelId);
+        this.fallback = Objects.requireNonNull(fallback);
+    }
+
+    @Override
+    public int estimate(String text) {
+        if (text == null) throw new IllegalArgumentException("text cannot be null");
+        if (text.isEmpty()) return 0;
+        try {
+            return count(text);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "countTokens failed, falling back to estimate", e);
+            return fallback.estimate(text);
+        }
+    }
+
+    private int count(String text) throws IOException {
+        Map<String, Object> payload = Map.of("contents", List.of(Map.of("parts", List.of(Map.of("text", text)))));
+        Request request = new Request.Builder()
+                .url(String.format("%s/v1beta/models/%s:countTokens?key=%s", baseURL, modelId, apiKey))
+                .post(RequestBody.create(MAPPER.writeValueAsString(payload), JSON))
+                .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            String body = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                throw new IOException("countTokens failed with status code: " + response.code() + ", body: " + body);
+            }
+            JsonNode total = MAPPER.readTree(body).get("totalTokens");
+            if (total == null || !total.canConvertToInt()) {
+                throw new IOException("countTokens response without totalTokens: " + body);
+            }
+            return total.asInt();
+        }
+    }
+}
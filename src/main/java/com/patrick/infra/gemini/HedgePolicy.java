@@ -0,0 +1,87 @@
+package com.patrick.infra.gemini;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * When {@link GeminiClient} sends a second copy of a slow {@code generateContent} attempt. Latencies of the
+ * last {@code window} successful attempts, measured from the first copy sent, are kept per model; once an attempt
+ * has been running longer than their {@code percentile} (and at least {@code minDelay}), an identical request is
+ * sent and the first success wins. Extra requests are capped by a {@link RetryBudget}, so hedging adds at most its
+ * ratio of traffic. Until a model has enough samples nothing is hedged. Shared and thread-safe.
+ */
+public final class HedgePolicy {
+    private static final int MIN_SAMPLES = 20;
+
+    private final double percentile;
+    private final Duration minDelay;
+    private final int window;
+    private final RetryBudget budget;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    public HedgePolicy(double percentile, Duration minDelay, int window, RetryBudget budget) {
+        if (percentile <= 0 || percentile >= 1) throw new IllegalArgumentException("percentile must be in (0, 1)");
+        if (window < MIN_SAMPLES) throw new IllegalArgumentException("window must be at least " + MIN_SAMPLES);
+        this.percentile = percentile;
+        this.minDelay = Objects.requireNonNull(minDelay);
+        this.window = window;
+        this.budget = Objects.requireNonNull(budget);
+    }
+
+    /**
+     * Hedges past the p95 of the last 1000 calls, never sooner than 50 ms, with at most 5% extra requests.
+     */
+    public static HedgePolicy defaults() {
+        return new HedgePolicy(0.95, Duration.ofMillis(50), 1000, new RetryBudget(0.05, 10));
+    }
+
+    /**
+     * How long to wait for an attempt before hedging it, in ms, or -1 while {@code modelId} has too few samples.
+     */
+    public long hedgeDelayMillis(String modelId) {
+        LatencyWindow samples = latencies.get(modelId);
+        long estimate = samples == null ? -1 : samples.percentileMillis;
+        return estimate < 0 ? -1 : Math.max(minDelay.toMillis(), estimate);
+    }
+
+    void record(String modelId, long latencyNanos) {
+        latencies.computeIfAbsent(modelId, id -> new LatencyWindow()).record(latencyNanos);
+    }
+
+    void onRequest() {
+        budget.onRequest();
+    }
+
+    boolean tryHedge() {
+        return budget.tryAcquireRetry();
+    }
+
+    /**
+     * Ring buffer of recent latencies whose percentile is recomputed every twentieth of a window, so readers
+     * only see a volatile field.
+     */
+    private final class LatencyWindow {
+        private final long[] samples = new long[window];
+        private final int recomputeEvery = Math.max(1, window / 20);
+        private int next;
+        private int count;
+        private int sinceRecompute;
+        private volatile long percentileMillis = -1;
+
+        synchronized void record(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) count++;
+            if (count >= MIN_SAMPLES && (++sinceRecompute >= recomputeEvery || percentileMillis < 0)) {
+                sinceRecompute = 0;
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+                percentileMillis = Duration.ofNanos(sorted[index]).toMillis();
+            }
+        }
+    }
+}
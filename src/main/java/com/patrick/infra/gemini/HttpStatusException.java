@@ -0,0 +1,38 @@
+package com.patrick.infra.gemini;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Non-2xx answer from Gemini. Carries the status code, whether the retry policy classified it as retryable and
+ * the server's requested delay (from {@code Retry-After} or {@code RetryInfo.retryDelay}), if any.
+ */
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final boolean retryable;
+    private final Duration retryAfter;
+
+    public HttpStatusException(int statusCode, String body, boolean retryable, Duration retryAfter) {
+        super((retryable ? "Retryable" : "Non-retryable") + " status code: " + statusCode + ", body: " + body);
+        this.statusCode = statusCode;
+        this.retryable = retryable;
+        this.retryAfter = retryAfter;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * Delay the server asked for before the next attempt, or null.
+     */
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
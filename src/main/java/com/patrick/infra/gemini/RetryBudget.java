@@ -0,0 +1,46 @@
+package com.patrick.infra.gemini;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that caps retries at a fraction of traffic. Every first attempt deposits {@code ratio} tokens
+ * (up to {@code maxTokens}) and every retry withdraws one, so in steady state at most {@code ratio} retries are
+ * sent per request, while short bursts can spend the saved-up tokens. Share one budget across every client that
+ * talks to the same backend so a brown-out isn't amplified. Lock-free.
+ */
+public final class RetryBudget {
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong tokens;
+
+    public RetryBudget(double ratio, int maxTokens) {
+        if (ratio <= 0 || ratio > 1) throw new IllegalArgumentException("ratio must be in (0, 1]");
+        if (maxTokens < 1) throw new IllegalArgumentException("maxTokens must be positive");
+        this.deposit = Math.max(1, Math.round(ratio * SCALE));
+        this.capacity = maxTokens * SCALE;
+        this.tokens = new AtomicLong(capacity);
+    }
+
+    void onRequest() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= capacity) return;
+        } while (!tokens.compareAndSet(current, Math.min(capacity, current + deposit)));
+    }
+
+    boolean tryAcquireRetry() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) return false;
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    public double available() {
+        return tokens.get() / (double) SCALE;
+    }
+}
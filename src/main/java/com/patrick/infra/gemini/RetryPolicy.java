@@ -0,0 +1,175 @@
+package com.patrick.infra.gemini;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * When and how often {@link GeminiClient} retries. Only network failures and 408/429/500/502/503/504 are
+ * retried. Delays use decorrelated jitter ({@code min(maxDelay, random(baseDelay, 3 * previous))}, with
+ * {@code previous} starting at {@code baseDelay}), so instances that failed together don't retry in lockstep,
+ * not even the first time, and never undercut a delay the server asked for.
+ * Each attempt is bounded by {@code attemptTimeout} (or the OkHttp call timeout) and by what is left of
+ * {@code overallTimeout}; a retry that can't start before the overall deadline is not made. An optional
+ * {@link RetryBudget} caps retries at a fraction of traffic. Immutable; per-request state lives in
+ * {@link Execution}.
+ */
+public final class RetryPolicy {
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final Duration attemptTimeout;
+    private final Duration overallTimeout;
+    private final RetryBudget budget;
+
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Duration attemptTimeout,
+                       Duration overallTimeout) {
+        this(maxAttempts, baseDelay, maxDelay, attemptTimeout, overallTimeout, null);
+    }
+
+    /**
+     * @param attemptTimeout per-attempt limit, or null to keep the OkHttp client's call timeout
+     * @param budget shared retry budget, or null for no cap beyond {@code maxAttempts}
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay, Duration attemptTimeout,
+                       Duration overallTimeout, RetryBudget budget) {
+        if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be positive");
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = Objects.requireNonNull(baseDelay);
+        this.maxDelay = Objects.requireNonNull(maxDelay);
+        this.attemptTimeout = attemptTimeout;
+        this.overallTimeout = Objects.requireNonNull(overallTimeout);
+        this.budget = budget;
+        if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0) {
+            throw new IllegalArgumentException("delays must satisfy 0 <= baseDelay <= maxDelay");
+        }
+    }
+
+    /**
+     * Three attempts, 250 ms base delay capped at 10 s, the client's call timeout per attempt and two minutes
+     * overall, without a budget.
+     */
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(3, Duration.ofMillis(250), Duration.ofSeconds(10), null, Duration.ofMinutes(2));
+    }
+
+    public RetryPolicy withBudget(RetryBudget budget) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay, attemptTimeout, overallTimeout,
+                Objects.requireNonNull(budget));
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isRetryableStatus(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    public Execution start() {
+        if (budget != null) budget.onRequest();
+        return new Execution(System.nanoTime() + overallTimeout.toNanos());
+    }
+
+    /**
+     * Server-requested delay from a {@code Retry-After} header (seconds or HTTP date) or, failing that, from a
+     * Google {@code RetryInfo.retryDelay} in the error body; null when there is neither.
+     */
+    static Duration parseRetryAfter(String header, String body) {
+        if (header != null && !header.isBlank()) {
+            String value = header.trim();
+            try {
+                return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+            } catch (NumberFormatException notSeconds) {
+                try {
+                    Duration until = Duration.between(Instant.now(),
+                            ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+                    return until.isNegative() ? Duration.ZERO : until;
+                } catch (DateTimeParseException ignored) {
+                }
+            }
+        }
+        if (body != null) {
+            Matcher matcher = RETRY_DELAY.matcher(body);
+            if (matcher.find()) {
+                return Duration.ofMillis(Math.round(Double.parseDouble(matcher.group(1)) * 1000));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retry state of one request. Not thread-safe; the async path hands it from one attempt to the next.
+     */
+    public final class Execution {
+        private final long deadlineNanos;
+        private int attempt = 1;
+        private long previousDelayMs;
+        private String stopReason;
+
+        private Execution(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+            this.previousDelayMs = baseDelay.toMillis();
+        }
+
+        public int attempt() {
+            return attempt;
+        }
+
+        /**
+         * Timeout for the attempt about to start, in ms: the tighter of the policy's (or else the client's)
+         * per-attempt limit and the time left overall.
+         */
+        public long attemptTimeoutMillis(long clientCallTimeoutMillis) {
+            long perAttempt = attemptTimeout != null ? attemptTimeout.toMillis() : clientCallTimeoutMillis;
+            long remaining = Math.max(1, Duration.ofNanos(deadlineNanos - System.nanoTime()).toMillis());
+            return perAttempt > 0 ? Math.min(perAttempt, remaining) : remaining;
+        }
+
+        /**
+         * Delay in ms before retrying after {@code failure}, or -1 when the request should give up; in that case
+         * {@link #failure} builds the exception to report.
+         */
+        public long nextDelayMillis(IOException failure) {
+            if (failure instanceof HttpStatusException status && !status.isRetryable()) {
+                stopReason = null;
+                return -1;
+            }
+            if (attempt >= maxAttempts) {
+                stopReason = "Failed after " + attempt + " attempts";
+                return -1;
+            }
+
+            long base = baseDelay.toMillis();
+            long upper = Math.max(base, previousDelayMs * 3);
+            long delay = Math.min(maxDelay.toMillis(), upper > base ? ThreadLocalRandom.current().nextLong(base, upper + 1) : base);
+            if (failure instanceof HttpStatusException status && status.retryAfter() != null) {
+                delay = Math.max(delay, status.retryAfter().toMillis());
+            }
+            if (System.nanoTime() + Duration.ofMillis(delay).toNanos() >= deadlineNanos) {
+                stopReason = "Retry deadline exceeded after " + attempt + " attempts";
+                return -1;
+            }
+            if (budget != null && !budget.tryAcquireRetry()) {
+                stopReason = "Retry budget exhausted after " + attempt + " attempts";
+                return -1;
+            }
+            previousDelayMs = delay;
+            attempt++;
+            return delay;
+        }
+
+        public IOException failure(IOException last) {
+            return stopReason == null ? last : new IOException(stopReason, last);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.patrick.infra.metrics;
+
+import com.patrick.infra.gemini.CallListener;
+import com.patrick.infra.gemini.GeminiJson;
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.resilience.CircuitOpenException;
+import com.patrick.infra.resilience.RateLimitExceededException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Per-model metrics of AI calls: end-to-end latency by {@link Outcome} (fed by {@link MeteredAiClient}), and
+ * what went over the wire (fed by {@code GeminiClient} as its {@link CallListener}): attempts and retries, time to
+ * response headers, status classes, request and response bytes and the {@code usageMetadata} token counts.
+ * Exposed as one MXBean per model and in the Prometheus text format. Shared and thread-safe; recording a value
+ * for a model already seen takes no lock and allocates nothing.
+ */
+public final class AiMetrics implements CallListener {
+    private static final Logger LOG = Logger.getLogger(AiMetrics.class.getName());
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    public enum Outcome {
+        SUCCESS, RATE_LIMITED, REJECTED, CLIENT_ERROR, SERVER_ERROR, FAILED;
+
+        /**
+         * Outcome of a call that ended with {@code error}, or {@link #SUCCESS} when it is null. 429s and 5xx are
+         * found through the retry policy's wrapping exception; {@link #REJECTED} means a local circuit breaker or
+         * rate limiter refused the call.
+         */
+        public static Outcome of(Throwable error) {
+            if (error == null) {
+                return SUCCESS;
+            }
+            for (Throwable e = error; e != null; e = e.getCause()) {
+                if (e instanceof CircuitOpenException || e instanceof RateLimitExceededException) {
+                    return REJECTED;
+                }
+                if (e instanceof HttpStatusException status) {
+                    int code = status.statusCode();
+                    return code == 429 ? RATE_LIMITED : code >= 500 ? SERVER_ERROR : CLIENT_ERROR;
+                }
+            }
+            return FAILED;
+        }
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Map<String, ModelMetrics> models = new ConcurrentHashMap<>();
+    private volatile MBeanServer mbeans;
+
+    public ModelMetrics model(String modelId) {
+        ModelMetrics metrics = models.get(modelId);
+        return metrics != null ? metrics : models.computeIfAbsent(modelId, this::create);
+    }
+
+    public List<ModelMetrics> models() {
+        List<ModelMetrics> all = new ArrayList<>(models.values());
+        all.sort(Comparator.comparing(ModelMetrics::getModelId));
+        return all;
+    }
+
+    public void recordCall(String modelId, Outcome outcome, long nanos) {
+        model(modelId).recordCall(outcome, nanos);
+    }
+
+    /**
+     * Registers an MXBean per model, for the models seen so far and every later one, named
+     * {@code com.patrick.chat:type=AiMetrics,model=<id>}.
+     */
+    public void registerMBeans(MBeanServer server) {
+        synchronized (this) {
+            mbeans = server;
+        }
+        for (ModelMetrics metrics : models.values()) {
+            register(server, metrics);
+        }
+    }
+
+    @Override
+    public void onAttempt(String modelId, int attempt) {
+        model(modelId).recordAttempt(attempt);
+    }
+
+    @Override
+    public void onResponse(String modelId, int statusCode, long elapsedNanos, long requestBytes) {
+        model(modelId).recordResponse(statusCode, elapsedNanos, requestBytes);
+    }
+
+    @Override
+    public void onFailure(String modelId, long elapsedNanos, long requestBytes, IOException error) {
+        model(modelId).recordFailure(requestBytes);
+    }
+
+    @Override
+    public void onBody(String modelId, GeminiJson.Usage usage) {
+        model(modelId).recordBody(usage);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format (version 0.0.4). Latencies are summaries
+     * with 0.5, 0.9 and 0.99 quantiles; everything else is a counter.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        List<ModelMetrics> all = models();
+
+        header(out, "ai_call_duration_seconds", "summary", "End-to-end duration of AI calls by outcome.");
+        for (ModelMetrics metrics : all) {
+            for (Outcome outcome : Outcome.values()) {
+                LatencyHistogram histogram = metrics.latency(outcome);
+                if (histogram.count() > 0) {
+                    summary(out, "ai_call_duration_seconds", labels(metrics, "outcome", outcome.label()), histogram);
+                }
+            }
+        }
+        header(out, "ai_time_to_first_byte_seconds", "summary", "Time from sending a request to its response headers.");
+        for (ModelMetrics metrics : all) {
+            if (metrics.timeToFirstByte().count() > 0) {
+                summary(out, "ai_time_to_first_byte_seconds", labels(metrics, null, null), metrics.timeToFirstByte());
+            }
+        }
+
+        header(out, "ai_attempts_total", "counter", "Request attempts sent, including retries.");
+        for (ModelMetrics metrics : all) {
+            sample(out, "ai_attempts_total", labels(metrics, null, null), metrics.attempts());
+        }
+        header(out, "ai_retries_total", "counter", "Attempts that retried an earlier failed one.");
+        for (ModelMetrics metrics : all) {
+            sample(out, "ai_retries_total", labels(metrics, null, null), metrics.getRetries());
+        }
+        header(out, "ai_http_responses_total", "counter", "HTTP responses by status class.");
+        for (ModelMetrics metrics : all) {
+            sample(out, "ai_http_responses_total", labels(metrics, "status", "2xx"), metrics.responses2xx());
+            sample(out, "ai_http_responses_total", labels(metrics, "status", "429"), metrics.getRateLimitedResponses());
+            sample(out, "ai_http_responses_total", labels(metrics, "status", "4xx"), metrics.clientErrorResponses());
+            sample(out, "ai_http_responses_total", labels(metrics, "status", "5xx"), metrics.getServerErrorResponses());
+        }
+        header(out, "ai_transport_errors_total", "counter", "Calls that failed without an HTTP response.");
+        for (ModelMetrics metrics : all) {
+            sample(out, "ai_transport_errors_total", labels(metrics, null, null), metrics.getTransportErrors());
+        }
+        header(out, "ai_request_bytes_total", "counter", "Request body bytes sent.");
+        for (ModelMetrics metrics : all) {
+            sample(out, "ai_request_bytes_total", labels(metrics, null, null), metrics.getRequestBytes());
+        }
+        header(out, "ai_response_bytes_total", "counter", "Response body bytes read, after decompression.");
+        for (ModelMetrics metrics : all) {
+            sample(out, "ai_response_bytes_total", labels(metrics, null, null), metrics.getResponseBytes());
+        }
+        header(out, "ai_tokens_total", "counter", "Tokens reported in usageMetadata.");
+        for (ModelMetrics metrics : all) {
+            sample(out, "ai_tokens_total", labels(metrics, "type", "prompt"), metrics.getPromptTokens());
+            sample(out, "ai_tokens_total", labels(metrics, "type", "candidates"), metrics.getCandidatesTokens());
+            sample(out, "ai_tokens_total", labels(metrics, "type", "thoughts"), metrics.getThoughtsTokens());
+            sample(out, "ai_tokens_total", labels(metrics, "type", "cached"), metrics.getCachedTokens());
+        }
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        try {
+            writePrometheus(out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    private ModelMetrics create(String modelId) {
+        ModelMetrics metrics = new ModelMetrics(modelId);
+        MBeanServer server = mbeans;
+        if (server != null) {
+            register(server, metrics);
+        }
+        return metrics;
+    }
+
+    private static void register(MBeanServer server, ModelMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName("com.patrick.chat:type=AiMetrics,model="
+                    + ObjectName.quote(metrics.getModelId()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            LOG.warning("Could not register metrics MBean for " + metrics.getModelId() + ": " + e);
+        }
+    }
+
+    private static void header(Appendable out, String name, String type, String help) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(Appendable out, String name, String labels, LatencyHistogram histogram)
+            throws IOException {
+        for (double quantile : QUANTILES) {
+            String withQuantile = labels.substring(0, labels.length() - 1) + ",quantile=\"" + quantile + "\"}";
+            out.append(name).append(withQuantile).append(' ')
+                    .append(Double.toString(histogram.valueAtQuantile(quantile) / 1e9)).append('\n');
+        }
+        out.append(name).append("_sum").append(labels).append(' ')
+                .append(Double.toString(histogram.sumNanos() / 1e9)).append('\n');
+        out.append(name).append("_count").append(labels).append(' ')
+                .append(Long.toString(histogram.count())).append('\n');
+    }
+
+    private static void sample(Appendable out, String name, String labels, long value) throws IOException {
+        out.append(name).append(labels).append(' ').append(Long.toString(value)).append('\n');
+    }
+
+    private static String labels(ModelMetrics metrics, String key, String value) {
+        String labels = "{model=\"" + escape(metrics.getModelId()) + "\"";
+        return key == null ? labels + "}" : labels + "," + key + "=\"" + escape(value) + "\"}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,64 @@
+package com.patrick.infra.metrics;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Records the duration and {@link AiMetrics.Outcome} of every call to another {@link AiClient}, per model. Put it
+ * outside the circuit breaker and rate limiter so their rejections are counted, and inside response caches so
+ * cache hits don't pass for model latency. Streaming calls are timed until the last chunk.
+ */
+public class MeteredAiClient implements AiClient {
+    private final AiClient delegate;
+    private final AiMetrics metrics;
+
+    public MeteredAiClient(AiClient delegate, AiMetrics metrics) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    @Override
+    public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String answer = delegate.generate(modelId, history, userInput, systemPrompt);
+            metrics.recordCall(modelId, AiMetrics.Outcome.SUCCESS, System.nanoTime() - start);
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            metrics.recordCall(modelId, AiMetrics.Outcome.of(e), System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public String generateStream(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                 Consumer<String> onChunk) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String answer = delegate.generateStream(modelId, history, userInput, systemPrompt, onChunk);
+            metrics.recordCall(modelId, AiMetrics.Outcome.SUCCESS, System.nanoTime() - start);
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            metrics.recordCall(modelId, AiMetrics.Outcome.of(e), System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                   String systemPrompt) {
+        long start = System.nanoTime();
+        CompletableFuture<String> upstream = delegate.generateAsync(modelId, history, userInput, systemPrompt);
+        upstream.whenComplete((answer, error) -> metrics.recordCall(modelId, AiMetrics.Outcome.of(
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error),
+                System.nanoTime() - start));
+        return upstream;
+    }
+}
@@ -0,0 +1,189 @@
+package com.patrick.infra.metrics;
+
+import com.patrick.infra.gemini.GeminiJson;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything {@link AiMetrics} records for one model. Recording is lock-free and allocation-free; getters read
+ * live counters, so a set of values read one after another may be off by the calls that ran in between.
+ */
+public final class ModelMetrics implements ModelMetricsMXBean {
+    private final String modelId;
+    private final LatencyHistogram[] latency = new LatencyHistogram[AiMetrics.Outcome.values().length];
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder responses2xx = new LongAdder();
+    private final LongAdder responses429 = new LongAdder();
+    private final LongAdder responses4xx = new LongAdder();
+    private final LongAdder responses5xx = new LongAdder();
+    private final LongAdder transportErrors = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder candidatesTokens = new LongAdder();
+    private final LongAdder thoughtsTokens = new LongAdder();
+    private final LongAdder cachedTokens = new LongAdder();
+
+    ModelMetrics(String modelId) {
+        this.modelId = modelId;
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LatencyHistogram();
+        }
+    }
+
+    void recordCall(AiMetrics.Outcome outcome, long nanos) {
+        latency[outcome.ordinal()].record(nanos);
+    }
+
+    void recordAttempt(int attempt) {
+        attempts.increment();
+        if (attempt > 1) retries.increment();
+    }
+
+    void recordResponse(int statusCode, long nanos, long bytes) {
+        timeToFirstByte.record(nanos);
+        if (bytes > 0) requestBytes.add(bytes);
+        if (statusCode == 429) {
+            responses429.increment();
+        } else if (statusCode >= 500) {
+            responses5xx.increment();
+        } else if (statusCode >= 400) {
+            responses4xx.increment();
+        } else {
+            responses2xx.increment();
+        }
+    }
+
+    void recordFailure(long bytes) {
+        if (bytes > 0) requestBytes.add(bytes);
+        transportErrors.increment();
+    }
+
+    void recordBody(GeminiJson.Usage usage) {
+        responseBytes.add(usage.bytes());
+        promptTokens.add(usage.promptTokens());
+        candidatesTokens.add(usage.candidatesTokens());
+        thoughtsTokens.add(usage.thoughtsTokens());
+        cachedTokens.add(usage.cachedTokens());
+    }
+
+    public LatencyHistogram latency(AiMetrics.Outcome outcome) {
+        return latency[outcome.ordinal()];
+    }
+
+    public LatencyHistogram timeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public long attempts() {
+        return attempts.sum();
+    }
+
+    public long responses2xx() {
+        return responses2xx.sum();
+    }
+
+    public long clientErrorResponses() {
+        return responses4xx.sum();
+    }
+
+    @Override
+    public String getModelId() {
+        return modelId;
+    }
+
+    @Override
+    public long getCalls() {
+        long calls = 0;
+        for (LatencyHistogram histogram : latency) {
+            calls += histogram.count();
+        }
+        return calls;
+    }
+
+    @Override
+    public long getFailedCalls() {
+        return getCalls() - latency(AiMetrics.Outcome.SUCCESS).count();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getRateLimitedResponses() {
+        return responses429.sum();
+    }
+
+    @Override
+    public long getServerErrorResponses() {
+        return responses5xx.sum();
+    }
+
+    @Override
+    public long getTransportErrors() {
+        return transportErrors.sum();
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return millis(latency(AiMetrics.Outcome.SUCCESS).valueAtQuantile(0.5));
+    }
+
+    @Override
+    public double getLatencyP90Millis() {
+        return millis(latency(AiMetrics.Outcome.SUCCESS).valueAtQuantile(0.9));
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return millis(latency(AiMetrics.Outcome.SUCCESS).valueAtQuantile(0.99));
+    }
+
+    @Override
+    public double getTimeToFirstByteP50Millis() {
+        return millis(timeToFirstByte.valueAtQuantile(0.5));
+    }
+
+    @Override
+    public double getTimeToFirstByteP99Millis() {
+        return millis(timeToFirstByte.valueAtQuantile(0.99));
+    }
+
+    @Override
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    @Override
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    @Override
+    public long getPromptTokens() {
+        return promptTokens.sum();
+    }
+
+    @Override
+    public long getCandidatesTokens() {
+        return candidatesTokens.sum();
+    }
+
+    @Override
+    public long getThoughtsTokens() {
+        return thoughtsTokens.sum();
+    }
+
+    @Override
+    public long getCachedTokens() {
+        return cachedTokens.sum();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
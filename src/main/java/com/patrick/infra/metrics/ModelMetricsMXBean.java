@@ -0,0 +1,43 @@
+package com.patrick.infra.metrics;
+
+/**
+ * JMX view of one model's {@link ModelMetrics}, registered by {@link AiMetrics#registerMBeans}. Latencies are
+ * of successful calls.
+ */
+public interface ModelMetricsMXBean {
+    String getModelId();
+
+    long getCalls();
+
+    long getFailedCalls();
+
+    long getRetries();
+
+    long getRateLimitedResponses();
+
+    long getServerErrorResponses();
+
+    long getTransportErrors();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getTimeToFirstByteP50Millis();
+
+    double getTimeToFirstByteP99Millis();
+
+    long getRequestBytes();
+
+    long getResponseBytes();
+
+    long getPromptTokens();
+
+    long getCandidatesTokens();
+
+    long getThoughtsTokens();
+
+    long getCachedTokens();
+}
@@ -0,0 +1,546 @@
+package com.patrick.infra.persistence;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable conversation history kept on disk instead of the heap. Turns are appended to a log split into segment
+ * files that are written and read through {@link MappedByteBuffer}s. Each record is length-prefixed and
+ * checksummed, and points back at the previous record of the same session, so the only per-session state in
+ * memory is the position of its newest turn and {@link #lastTurns} reads exactly the records it returns.
+ *
+ * <p>With {@code fsync} on, {@link #append} returns once the turn is on disk; appenders that arrive while a
+ * flush is running are covered by the next one (group commit), so concurrent sessions share flushes. On open
+ * the segments are scanned to rebuild the index and a torn record at the tail is cut off. {@link #compact}
+ * rewrites the log keeping only the newest turns of each session. Thread-safe.
+ *
+ * <p>Record layout: {@code int length, int crc32c} of the body, then {@code long previous, short sessionLength,
+ * session, byte kind, int userLength, user, int modelLength, model}, strings in UTF-8.
+ */
+public final class ConversationStore implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ConversationStore.class.getName());
+    private static final String LOG_SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String BASE_FILE = "BASE";
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_BODY_BYTES = 8 + 2 + 1 + 4 + 4;
+    private static final byte TURN = 0;
+    private static final byte DELETE = 1;
+    private static final long NONE = -1;
+
+    /**
+     * @param segmentBytes size at which a segment is sealed and a new one started; bounds the largest turn
+     * @param fsync        whether {@link #append} and {@link #delete} wait for the disk
+     */
+    public record Settings(int segmentBytes, boolean fsync) {
+        public Settings {
+            if (segmentBytes < 4096) throw new IllegalArgumentException("segmentBytes must be at least 4096");
+        }
+
+        /**
+         * 64 MiB segments, every append durable before it returns.
+         */
+        public static Settings defaults() {
+            return new Settings(64 * 1024 * 1024, true);
+        }
+    }
+
+    private final Path dir;
+    private final Settings settings;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object();
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private Log log;
+    private volatile long written;
+    private long durable;
+    private boolean closed;
+
+    private ConversationStore(Path dir, Settings settings) {
+        this.dir = dir;
+        this.settings = settings;
+    }
+
+    /**
+     * Opens the store in {@code dir}, creating it if needed, and recovers whatever a previous process left.
+     */
+    public static ConversationStore open(Path dir, Settings settings) throws IOException {
+        ConversationStore store = new ConversationStore(Objects.requireNonNull(dir), Objects.requireNonNull(settings));
+        Files.createDirectories(dir);
+        store.recover();
+        return store;
+    }
+
+    /**
+     * Appends one completed turn to {@code sessionId}.
+     */
+    public void append(String sessionId, Message user, Message model) throws IOException {
+        if (user == null || user.role() != Role.USER) throw new IllegalArgumentException("user must be a USER message");
+        if (model == null || model.role() != Role.MODEL) throw new IllegalArgumentException("model must be a MODEL message");
+        write(sessionId, TURN, utf8(user.text()), utf8(model.text()));
+    }
+
+    /**
+     * Forgets {@code sessionId}. Its records stay on disk until the next {@link #compact}.
+     */
+    public void delete(String sessionId) throws IOException {
+        write(sessionId, DELETE, new byte[0], new byte[0]);
+    }
+
+    /**
+     * The newest {@code turns} turns of {@code sessionId}, oldest first, as USER/MODEL pairs. Reads only those
+     * records, however long the session is.
+     */
+    public List<Message> lastTurns(String sessionId, int turns) throws IOException {
+        if (turns < 0) throw new IllegalArgumentException("turns cannot be negative");
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Message[] messages = new Message[turns * 2];
+            int next = messages.length;
+            long position = index.getOrDefault(sessionId, NONE);
+            while (position != NONE && next > 0) {
+                Record record = log.read(position);
+                messages[--next] = new Message(Role.MODEL, record.model);
+                messages[--next] = new Message(Role.USER, record.user);
+                position = record.previous;
+            }
+            return List.of(Arrays.copyOfRange(messages, next, messages.length));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String sessionId) {
+        return index.containsKey(sessionId);
+    }
+
+    public int sessionCount() {
+        return index.size();
+    }
+
+    /**
+     * Forces every appended record to disk. Only needed with {@code fsync} off.
+     */
+    public void sync() throws IOException {
+        sync(written);
+    }
+
+    /**
+     * Rewrites the log keeping only the newest {@code keepTurns} turns of each live session, dropping deleted
+     * sessions. Appends wait while it runs. The new segments only replace the old ones once they are on disk
+     * and a new base segment id has been recorded, so a crash part-way leaves either the old log or the new one.
+     */
+    public void compact(int keepTurns) throws IOException {
+        if (keepTurns < 1) throw new IllegalArgumentException("keepTurns must be positive");
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            log.active().buffer.force();
+            Log compacted = new Log(log.active().id + 1, COMPACT_SUFFIX);
+            Map<String, Long> compactedIndex = new HashMap<>();
+            try {
+                for (String sessionId : index.keySet()) {
+                    List<Message> turns = lastTurns(sessionId, keepTurns);
+                    long previous = NONE;
+                    for (int i = 0; i < turns.size(); i += 2) {
+                        previous = compacted.append(sessionId, TURN, previous, utf8(turns.get(i).text()),
+                                utf8(turns.get(i + 1).text()));
+                    }
+                    compactedIndex.put(sessionId, previous);
+                }
+                compacted.active().buffer.force();
+                writeBase(compacted.segments.firstKey());
+            } catch (IOException | RuntimeException e) {
+                for (Segment segment : compacted.segments.values()) {
+                    Files.deleteIfExists(segment.path);
+                }
+                throw e;
+            }
+            // The base segment goes last: while it is still .compact, recovery knows the renames are unfinished.
+            for (Segment segment : compacted.segments.descendingMap().values()) {
+                segment.rename(LOG_SUFFIX);
+            }
+            compacted.suffix = LOG_SUFFIX;
+            for (Segment segment : log.segments.values()) {
+                Files.deleteIfExists(segment.path);
+            }
+            log = compacted;
+            index.clear();
+            index.putAll(compactedIndex);
+            written = log.end();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the active segment and trims it to its written length.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            log.active().seal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(String sessionId, byte kind, byte[] user, byte[] model) throws IOException {
+        Objects.requireNonNull(sessionId);
+        long end;
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (kind == DELETE && !index.containsKey(sessionId)) {
+                return;
+            }
+            long position = log.append(sessionId, kind, index.getOrDefault(sessionId, NONE), user, model);
+            if (kind == DELETE) {
+                index.remove(sessionId);
+            } else {
+                index.put(sessionId, position);
+            }
+            end = log.end();
+            written = end;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (settings.fsync()) {
+            sync(end);
+        }
+    }
+
+    /**
+     * Group commit: whoever holds the sync lock flushes everything written so far, and callers queued behind
+     * it usually find their record already covered.
+     */
+    private void sync(long upTo) throws IOException {
+        synchronized (syncLock) {
+            if (durable >= upTo) {
+                return;
+            }
+            MappedByteBuffer active;
+            long target;
+            lock.readLock().lock();
+            try {
+                ensureOpen();
+                active = log.active().buffer;
+                target = log.end();
+            } finally {
+                lock.readLock().unlock();
+            }
+            // Sealed segments were forced when they were sealed, so only the active one can hold unflushed data.
+            // Appends carry on into it while it is being forced; they are covered by the next flush.
+            active.force();
+            durable = target;
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("ConversationStore is closed");
+    }
+
+    private void recover() throws IOException {
+        int base = readBase();
+        TreeMap<Integer, Path> logs = new TreeMap<>();
+        TreeMap<Integer, Path> compacts = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(LOG_SUFFIX)) {
+                    logs.put(segmentId(name, LOG_SUFFIX), file);
+                } else if (name.endsWith(COMPACT_SUFFIX)) {
+                    compacts.put(segmentId(name, COMPACT_SUFFIX), file);
+                }
+            }
+        }
+        // A compaction is committed once BASE names its first segment; finish it, or throw it away if not.
+        boolean committed = compacts.containsKey(base);
+        for (Map.Entry<Integer, Path> compact : compacts.entrySet()) {
+            if (committed) {
+                Path target = segmentPath(compact.getKey(), LOG_SUFFIX);
+                Files.move(compact.getValue(), target, StandardCopyOption.REPLACE_EXISTING);
+                logs.put(compact.getKey(), target);
+            } else {
+                Files.delete(compact.getValue());
+            }
+        }
+        for (Path stale : logs.headMap(base).values()) {
+            Files.delete(stale);
+        }
+
+        log = new Log(LOG_SUFFIX);
+        for (Map.Entry<Integer, Path> entry : logs.tailMap(base).entrySet()) {
+            boolean last = entry.getKey().equals(logs.lastKey());
+            log.segments.put(entry.getKey(), Segment.recover(entry.getKey(), entry.getValue(),
+                    last ? settings.segmentBytes() : -1, this::replay));
+        }
+        if (log.segments.isEmpty()) {
+            log.segments.put(base, Segment.create(base, segmentPath(base, LOG_SUFFIX), settings.segmentBytes()));
+        }
+        written = log.end();
+        durable = written;
+    }
+
+    private void replay(Record record, long position) {
+        if (record.kind == DELETE) {
+            index.remove(record.session);
+        } else {
+            index.put(record.session, position);
+        }
+    }
+
+    private int readBase() throws IOException {
+        Path file = dir.resolve(BASE_FILE);
+        return Files.exists(file) ? Integer.parseInt(Files.readString(file).trim()) : 0;
+    }
+
+    private void writeBase(int base) throws IOException {
+        Path temp = dir.resolve(BASE_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(String.valueOf(base).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, dir.resolve(BASE_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, dir.resolve(BASE_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path segmentPath(int id, String suffix) {
+        return dir.resolve(String.format("segment-%010d%s", id, suffix));
+    }
+
+    private static int segmentId(String name, String suffix) {
+        return Integer.parseInt(name.substring("segment-".length(), name.length() - suffix.length()));
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    /**
+     * Segments by id; the last one takes appends.
+     */
+    private final class Log {
+        final TreeMap<Integer, Segment> segments = new TreeMap<>();
+        String suffix;
+
+        Log(String suffix) {
+            this.suffix = suffix;
+        }
+
+        Log(int firstId, String suffix) throws IOException {
+            this.suffix = suffix;
+            segments.put(firstId, Segment.create(firstId, segmentPath(firstId, suffix), settings.segmentBytes()));
+        }
+
+        Segment active() {
+            return segments.lastEntry().getValue();
+        }
+
+        long end() {
+            Segment active = active();
+            return position(active.id, active.limit);
+        }
+
+        long append(String sessionId, byte kind, long previous, byte[] user, byte[] model) throws IOException {
+            byte[] session = utf8(sessionId);
+            if (session.length > Short.MAX_VALUE) throw new IllegalArgumentException("sessionId is too long");
+            int length = FIXED_BODY_BYTES + session.length + user.length + model.length;
+            if (HEADER_BYTES + (long) length > settings.segmentBytes()) {
+                throw new IllegalArgumentException("Turn of " + length + " bytes does not fit in a segment");
+            }
+            Segment segment = active();
+            if (segment.limit + HEADER_BYTES + length > settings.segmentBytes()) {
+                segment.seal();
+                int id = segment.id + 1;
+                segment = Segment.create(id, segmentPath(id, suffix), settings.segmentBytes());
+                segments.put(id, segment);
+            }
+            int offset = segment.limit;
+            ByteBuffer body = segment.buffer.duplicate().position(offset + HEADER_BYTES);
+            body.putLong(previous)
+                    .putShort((short) session.length).put(session)
+                    .put(kind)
+                    .putInt(user.length).put(user)
+                    .putInt(model.length).put(model);
+            CRC32C crc = new CRC32C();
+            crc.update(segment.buffer.slice(offset + HEADER_BYTES, length));
+            segment.buffer.putInt(offset, length);
+            segment.buffer.putInt(offset + 4, (int) crc.getValue());
+            segment.limit = offset + HEADER_BYTES + length;
+            return position(segment.id, offset);
+        }
+
+        Record read(long position) throws IOException {
+            Segment segment = segments.get((int) (position >>> 32));
+            Record record = segment == null ? null : Record.parse(segment.buffer, (int) position, segment.limit);
+            if (record == null) {
+                throw new IOException("Corrupt conversation record at segment " + (position >>> 32)
+                        + ", offset " + (int) position);
+            }
+            return record;
+        }
+    }
+
+    private interface Replay {
+        void apply(Record record, long position);
+    }
+
+    private static final class Segment {
+        final int id;
+        Path path;
+        MappedByteBuffer buffer;
+        int limit;
+
+        private Segment(int id, Path path, MappedByteBuffer buffer, int limit) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+            this.limit = limit;
+        }
+
+        static Segment create(int id, Path path, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), 0);
+            }
+        }
+
+        /**
+         * Replays the valid records of an existing segment and cuts the file after the last one. The active
+         * segment ({@code capacity > 0}) is mapped for appends, the others read-only.
+         */
+        static Segment recover(int id, Path path, int capacity, Replay replay) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) throw new IOException("Segment too large: " + path);
+                MappedByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                int offset = 0;
+                Record record;
+                while ((record = Record.parse(contents, offset, (int) size)) != null) {
+                    replay.apply(record, position(id, offset));
+                    offset += HEADER_BYTES + record.length;
+                }
+                if (offset + 4 <= size && contents.getInt(offset) != 0) {
+                    LOG.warning("Dropping torn conversation record at " + path + ", offset " + offset);
+                }
+                if (offset < size) {
+                    channel.truncate(offset);
+                }
+                MappedByteBuffer buffer = capacity > 0
+                        ? channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, offset))
+                        : channel.map(FileChannel.MapMode.READ_ONLY, 0, offset);
+                return new Segment(id, path, buffer, offset);
+            }
+        }
+
+        /**
+         * Flushes the segment and trims the file to what was written; the mapping shrinks to match.
+         */
+        void seal() throws IOException {
+            buffer.force();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() > limit) {
+                    MappedByteBuffer sealed = channel.map(FileChannel.MapMode.READ_ONLY, 0, limit);
+                    channel.truncate(limit);
+                    buffer = sealed;
+                }
+            }
+        }
+
+        void rename(String suffix) throws IOException {
+            String name = path.getFileName().toString();
+            Path target = path.resolveSibling(name.substring(0, name.lastIndexOf('.')) + suffix);
+            Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+            path = target;
+        }
+    }
+
+    private static final class Record {
+        final int length;
+        final long previous;
+        final String session;
+        final byte kind;
+        final String user;
+        final String model;
+
+        private Record(int length, long previous, String session, byte kind, String user, String model) {
+            this.length = length;
+            this.previous = previous;
+            this.session = session;
+            this.kind = kind;
+            this.user = user;
+            this.model = model;
+        }
+
+        /**
+         * The record at {@code offset}, or null when there is none or it is torn: a zero or impossible length,
+         * a checksum mismatch, or fields that overrun the body.
+         */
+        static Record parse(ByteBuffer buffer, int offset, int limit) {
+            if (offset + HEADER_BYTES > limit) return null;
+            int length = buffer.getInt(offset);
+            if (length < FIXED_BODY_BYTES || length > limit - offset - HEADER_BYTES) return null;
+            ByteBuffer body = buffer.slice(offset + HEADER_BYTES, length);
+            CRC32C crc = new CRC32C();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) return null;
+
+            try {
+                long previous = body.getLong();
+                String session = string(body, body.getShort());
+                byte kind = body.get();
+                String user = string(body, body.getInt());
+                String model = string(body, body.getInt());
+                return session == null || user == null || model == null ? null
+                        : new Record(length, previous, session, kind, user, model);
+            } catch (BufferUnderflowException e) {
+                return null;
+            }
+        }
+
+        private static String string(ByteBuffer body, int length) {
+            if (length < 0 || length > body.remaining()) return null;
+            byte[] bytes = new byte[length];
+            body.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.patrick.infra.resilience;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AIMD limit on calls in flight. While the limit is actually in use it grows by one per limit's worth of
+ * successes; it is halved when the upstream throttles or times out and cut by a tenth when recent latency climbs
+ * past {@code latencyTolerance} times its long-run average, which is how queueing at the provider shows up
+ * before it starts answering 429. At most one decrease is applied per limit's worth of completions, so a burst
+ * of failures from one window counts once. Callers over the limit wait in FIFO order.
+ */
+public final class AdaptiveConcurrencyLimit {
+    public enum Outcome {
+        /** Completed normally; the latency is a sample. */
+        SUCCESS,
+        /** Throttled or timed out: back off. */
+        DROPPED,
+        /** Says nothing about upstream load (client error, rejected locally, slot never used). */
+        IGNORED
+    }
+
+    private static final double RECENT_WEIGHT = 0.2;
+    private static final double BASELINE_WEIGHT = 0.01;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private double recentNanos;
+    private double baselineNanos;
+    private int completionsSinceDecrease;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= maxLimit");
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit");
+        }
+        if (latencyTolerance <= 1) throw new IllegalArgumentException("latencyTolerance must be greater than 1");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = initialLimit;
+        this.completionsSinceDecrease = initialLimit;
+    }
+
+    /**
+     * A future that completes once the caller holds a slot, immediately if one is free. Callers that give up
+     * waiting cancel it; if the cancel fails the slot was granted and must be released.
+     */
+    public CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (waiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Frees a slot and adjusts the limit by how the call went.
+     */
+    public void release(long latencyNanos, Outcome outcome) {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            int used = inFlight;
+            inFlight--;
+            completionsSinceDecrease++;
+            if (outcome == Outcome.DROPPED) {
+                decrease(0.5);
+            } else if (outcome == Outcome.SUCCESS) {
+                onSample(latencyNanos, used);
+            }
+            while (!waiters.isEmpty() && inFlight < (int) limit) {
+                CompletableFuture<Void> waiter = waiters.poll();
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    granted.add(waiter);
+                }
+            }
+        }
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                release(0, Outcome.IGNORED);
+            }
+        }
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized int waiting() {
+        return waiters.size();
+    }
+
+    private void onSample(long latencyNanos, int used) {
+        if (baselineNanos == 0) {
+            baselineNanos = latencyNanos;
+            recentNanos = latencyNanos;
+        } else {
+            recentNanos += RECENT_WEIGHT * (latencyNanos - recentNanos);
+            baselineNanos += BASELINE_WEIGHT * (latencyNanos - baselineNanos);
+        }
+        if (recentNanos > latencyTolerance * baselineNanos) {
+            decrease(0.9);
+        } else if (used * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private void decrease(double factor) {
+        if (completionsSinceDecrease < (int) limit) {
+            return;
+        }
+        limit = Math.max(minLimit, limit * factor);
+        completionsSinceDecrease = 0;
+    }
+}
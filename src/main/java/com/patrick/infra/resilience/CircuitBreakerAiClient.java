@@ -0,0 +1,278 @@
+package com.patrick.infra.resilience;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.HttpStatusException;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Circuit breaker in front of another {@link AiClient}, one per model id. While closed, the outcome of the last
+ * {@code windowSize} calls is kept; once at least {@code minimumCalls} are recorded and the failure rate or the
+ * slow-call rate reaches its threshold, the circuit opens and calls fail immediately with
+ * {@link CircuitOpenException} (or get the configured degraded answer) for {@code openDuration}. Then up to
+ * {@code halfOpenProbes} calls are let through: one failure reopens the circuit, that many successes close it.
+ * Non-retryable client errors (4xx other than 408/429) say nothing about upstream health and are not recorded at
+ * all: they neither dilute the failure rate nor count as a successful probe, and a probe that gets one is handed
+ * back. A streamed call counts as slow by the time to its first chunk, so long answers are not mistaken for slow ones.
+ */
+public class CircuitBreakerAiClient implements AiClient {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * @param slowCallDuration calls taking at least this long count as slow; for streams, until the first chunk
+     */
+    public record Settings(int windowSize, int minimumCalls, double failureRateThreshold, Duration slowCallDuration,
+                           double slowCallRateThreshold, Duration openDuration, int halfOpenProbes) {
+        public Settings {
+            if (windowSize < 1) throw new IllegalArgumentException("windowSize must be positive");
+            if (minimumCalls < 1 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("minimumCalls must be between 1 and windowSize");
+            }
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+            }
+            if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+                throw new IllegalArgumentException("slowCallRateThreshold must be in (0, 1]");
+            }
+            Objects.requireNonNull(slowCallDuration);
+            Objects.requireNonNull(openDuration);
+            if (halfOpenProbes < 1) throw new IllegalArgumentException("halfOpenProbes must be positive");
+        }
+
+        /**
+         * 20-call window, opens at 50% failures or 80% calls slower than 10 s (after 10 calls), stays open 30 s,
+         * then lets 3 probes through.
+         */
+        public static Settings defaults() {
+            return new Settings(20, 10, 0.5, Duration.ofSeconds(10), 0.8, Duration.ofSeconds(30), 3);
+        }
+    }
+
+    private final AiClient delegate;
+    private final Settings settings;
+    private final String degradedAnswer;
+    private final Clock clock;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakerAiClient(AiClient delegate, Settings settings) {
+        this(delegate, settings, null, Clock.systemUTC());
+    }
+
+    /**
+     * @param degradedAnswer returned instead of failing while the circuit is open, or null to throw
+     *                       {@link CircuitOpenException}
+     */
+    public CircuitBreakerAiClient(AiClient delegate, Settings settings, String degradedAnswer, Clock clock) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.settings = Objects.requireNonNull(settings);
+        this.degradedAnswer = degradedAnswer;
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    @Override
+    public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        Breaker breaker = breaker(modelId);
+        Permit permit = breaker.acquire();
+        if (permit == null) {
+            return rejected(modelId, breaker);
+        }
+        try {
+            String answer = delegate.generate(modelId, history, userInput, systemPrompt);
+            breaker.record(permit, null);
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            breaker.record(permit, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String generateStream(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                 Consumer<String> onChunk) throws IOException {
+        Objects.requireNonNull(onChunk);
+        Breaker breaker = breaker(modelId);
+        Permit permit = breaker.acquire();
+        if (permit == null) {
+            String answer = rejected(modelId, breaker);
+            onChunk.accept(answer);
+            return answer;
+        }
+        AtomicLong firstChunkAt = new AtomicLong(-1);
+        Consumer<String> timed = chunk -> {
+            firstChunkAt.compareAndSet(-1, clock.millis());
+            onChunk.accept(chunk);
+        };
+        try {
+            String answer = delegate.generateStream(modelId, history, userInput, systemPrompt, timed);
+            breaker.record(permit, null, firstChunkAt.get());
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            breaker.record(permit, e, firstChunkAt.get());
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                   String systemPrompt) {
+        Breaker breaker = breaker(modelId);
+        Permit permit = breaker.acquire();
+        if (permit == null) {
+            try {
+                return CompletableFuture.completedFuture(rejected(modelId, breaker));
+            } catch (CircuitOpenException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<String> upstream;
+        try {
+            upstream = delegate.generateAsync(modelId, history, userInput, systemPrompt);
+        } catch (RuntimeException e) {
+            breaker.record(permit, e);
+            throw e;
+        }
+        upstream.whenComplete((answer, error) -> breaker.record(permit,
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+        return upstream;
+    }
+
+    public State state(String modelId) {
+        Breaker breaker = breakers.get(modelId);
+        return breaker == null ? State.CLOSED : breaker.state(clock.millis());
+    }
+
+    private Breaker breaker(String modelId) {
+        if (modelId == null) throw new IllegalArgumentException("modelId cannot be null");
+        return breakers.computeIfAbsent(modelId, id -> new Breaker());
+    }
+
+    private String rejected(String modelId, Breaker breaker) throws CircuitOpenException {
+        if (degradedAnswer != null) {
+            return degradedAnswer;
+        }
+        throw new CircuitOpenException(modelId, Duration.ofMillis(breaker.remainingOpenMillis(clock.millis())));
+    }
+
+    private static boolean isClientError(Throwable error) {
+        return error instanceof HttpStatusException status && !status.isRetryable() && status.statusCode() < 500;
+    }
+
+    private record Permit(long generation, long startMillis) {
+    }
+
+    private final class Breaker {
+        private final boolean[] failed = new boolean[settings.windowSize()];
+        private final boolean[] slow = new boolean[settings.windowSize()];
+        private int next;
+        private int recorded;
+        private int failures;
+        private int slowCalls;
+
+        private State state = State.CLOSED;
+        private long generation;
+        private long openedAt;
+        private int probesStarted;
+        private int probesSucceeded;
+
+        synchronized Permit acquire() {
+            long now = clock.millis();
+            State current = state(now);
+            if (current == State.OPEN) {
+                return null;
+            }
+            if (current == State.HALF_OPEN) {
+                if (probesStarted >= settings.halfOpenProbes()) {
+                    return null;
+                }
+                probesStarted++;
+            }
+            return new Permit(generation, now);
+        }
+
+        synchronized State state(long now) {
+            if (state == State.OPEN && now - openedAt >= settings.openDuration().toMillis()) {
+                transition(State.HALF_OPEN, now);
+            }
+            return state;
+        }
+
+        synchronized long remainingOpenMillis(long now) {
+            return state == State.OPEN ? Math.max(0, openedAt + settings.openDuration().toMillis() - now) : 0;
+        }
+
+        void record(Permit permit, Throwable error) {
+            record(permit, error, -1);
+        }
+
+        /**
+         * @param respondedAt when the call started answering, or -1 to use its completion time
+         */
+        synchronized void record(Permit permit, Throwable error, long respondedAt) {
+            if (permit.generation() != generation) {
+                return;
+            }
+            if (isClientError(error)) {
+                if (state == State.HALF_OPEN) probesStarted--;
+                return;
+            }
+            long now = clock.millis();
+            boolean failure = error != null;
+            boolean slowCall = (respondedAt >= 0 ? respondedAt : now) - permit.startMillis()
+                    >= settings.slowCallDuration().toMillis();
+
+            if (state == State.HALF_OPEN) {
+                if (failure || slowCall) {
+                    transition(State.OPEN, now);
+                } else if (++probesSucceeded >= settings.halfOpenProbes()) {
+                    transition(State.CLOSED, now);
+                }
+                return;
+            }
+
+            if (recorded == failed.length) {
+                if (failed[next]) failures--;
+                if (slow[next]) slowCalls--;
+            } else {
+                recorded++;
+            }
+            failed[next] = failure;
+            slow[next] = slowCall;
+            if (failure) failures++;
+            if (slowCall) slowCalls++;
+            next = (next + 1) % failed.length;
+
+            if (recorded >= settings.minimumCalls()
+                    && (failures >= settings.failureRateThreshold() * recorded
+                    || slowCalls >= settings.slowCallRateThreshold() * recorded)) {
+                transition(State.OPEN, now);
+            }
+        }
+
+        private void transition(State to, long now) {
+            state = to;
+            generation++;
+            if (to == State.OPEN) {
+                openedAt = now;
+            } else if (to == State.HALF_OPEN) {
+                probesStarted = 0;
+                probesSucceeded = 0;
+            } else {
+                next = 0;
+                recorded = 0;
+                failures = 0;
+                slowCalls = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.patrick.infra.resilience;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Call rejected without reaching the upstream because the model's circuit is open.
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String modelId;
+    private final Duration retryAfter;
+
+    public CircuitOpenException(String modelId, Duration retryAfter) {
+        super("Circuit open for " + modelId + ", retry in " + retryAfter.toMillis() + " ms");
+        this.modelId = modelId;
+        this.retryAfter = retryAfter;
+    }
+
+    public String modelId() {
+        return modelId;
+    }
+
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
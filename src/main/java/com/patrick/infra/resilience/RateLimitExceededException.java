@@ -0,0 +1,29 @@
+package com.patrick.infra.resilience;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Call rejected before reaching the upstream because the model's quota or concurrency limit had no room within
+ * the allowed wait.
+ */
+public class RateLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String modelId;
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(String modelId, Duration retryAfter) {
+        super("Rate limit exceeded for " + modelId + ", retry in " + retryAfter.toMillis() + " ms");
+        this.modelId = modelId;
+        this.retryAfter = retryAfter;
+    }
+
+    public String modelId() {
+        return modelId;
+    }
+
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
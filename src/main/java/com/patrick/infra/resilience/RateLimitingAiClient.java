@@ -0,0 +1,294 @@
+package com.patrick.infra.resilience;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.TokenEstimator;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.resilience.AdaptiveConcurrencyLimit.Outcome;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Keeps each model under its requests-per-minute and input-tokens-per-minute quota on the client side, so
+ * traffic is paced instead of running into 429s and the retry loop. Each model gets a {@link TokenBucket} per
+ * quota, holding a tenth of the quota as burst and refilling the rest over the minute, so no one-minute window
+ * exceeds the quota; tokens are estimated from the system prompt, history and input. On top of that an
+ * {@link AdaptiveConcurrencyLimit} per model bounds calls in flight and shrinks on 429/503s, timeouts and latency
+ * growth. A caller that can't be admitted within {@code maxWait} gets {@link RateLimitExceededException}; with a
+ * zero {@code maxWait} callers are rejected instead of queued.
+ */
+public class RateLimitingAiClient implements AiClient {
+    private static final double BURST_FRACTION = 0.1;
+    private static final Duration CONCURRENCY_RETRY_AFTER = Duration.ofSeconds(1);
+
+    /**
+     * Per-model quota; zero means unlimited.
+     */
+    public record Quota(long requestsPerMinute, long tokensPerMinute) {
+        public static final Quota UNLIMITED = new Quota(0, 0);
+
+        public Quota {
+            if (requestsPerMinute < 0 || tokensPerMinute < 0) {
+                throw new IllegalArgumentException("quotas cannot be negative");
+            }
+        }
+    }
+
+    /**
+     * @param latencyTolerance recent-to-average latency ratio above which the concurrency limit shrinks
+     * @param maxWait          longest a caller queues for quota and a concurrency slot before being rejected
+     */
+    public record Settings(int initialConcurrency, int minConcurrency, int maxConcurrency, double latencyTolerance,
+                           Duration maxWait) {
+        public Settings {
+            if (minConcurrency < 1 || minConcurrency > maxConcurrency) {
+                throw new IllegalArgumentException("concurrency must satisfy 1 <= minConcurrency <= maxConcurrency");
+            }
+            if (initialConcurrency < minConcurrency || initialConcurrency > maxConcurrency) {
+                throw new IllegalArgumentException("initialConcurrency must be between minConcurrency and maxConcurrency");
+            }
+            if (latencyTolerance <= 1) throw new IllegalArgumentException("latencyTolerance must be greater than 1");
+            Objects.requireNonNull(maxWait);
+            if (maxWait.isNegative()) throw new IllegalArgumentException("maxWait cannot be negative");
+        }
+
+        /**
+         * 8 concurrent calls to start with (between 1 and 64), shrinking once latency doubles, queueing up to 10 s.
+         */
+        public static Settings defaults() {
+            return new Settings(8, 1, 64, 2.0, Duration.ofSeconds(10));
+        }
+    }
+
+    private final AiClient delegate;
+    private final Map<String, Quota> quotas;
+    private final Quota defaultQuota;
+    private final TokenEstimator estimator;
+    private final Settings settings;
+    private final Clock clock;
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    public RateLimitingAiClient(AiClient delegate, Map<String, Quota> quotas, Quota defaultQuota,
+                                TokenEstimator estimator, Settings settings) {
+        this(delegate, quotas, defaultQuota, estimator, settings, Clock.systemUTC());
+    }
+
+    /**
+     * @param quotas       quota by model id
+     * @param defaultQuota quota of models not in {@code quotas}
+     */
+    public RateLimitingAiClient(AiClient delegate, Map<String, Quota> quotas, Quota defaultQuota,
+                                TokenEstimator estimator, Settings settings, Clock clock) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.quotas = Map.copyOf(quotas);
+        this.defaultQuota = Objects.requireNonNull(defaultQuota);
+        this.estimator = Objects.requireNonNull(estimator);
+        this.settings = Objects.requireNonNull(settings);
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    @Override
+    public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        Limiter limiter = limiter(modelId);
+        limiter.admit(estimate(limiter, history, userInput, systemPrompt));
+        long start = System.nanoTime();
+        try {
+            String answer = delegate.generate(modelId, history, userInput, systemPrompt);
+            limiter.concurrency.release(System.nanoTime() - start, Outcome.SUCCESS);
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            limiter.concurrency.release(System.nanoTime() - start, outcome(e));
+            throw e;
+        }
+    }
+
+    @Override
+    public String generateStream(String modelId, List<Message> history, String userInput, String systemPrompt,
+                                 Consumer<String> onChunk) throws IOException {
+        Limiter limiter = limiter(modelId);
+        limiter.admit(estimate(limiter, history, userInput, systemPrompt));
+        long start = System.nanoTime();
+        try {
+            String answer = delegate.generateStream(modelId, history, userInput, systemPrompt, onChunk);
+            limiter.concurrency.release(System.nanoTime() - start, Outcome.SUCCESS);
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            limiter.concurrency.release(System.nanoTime() - start, outcome(e));
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                   String systemPrompt) {
+        Limiter limiter = limiter(modelId);
+        long tokens = estimate(limiter, history, userInput, systemPrompt);
+        return limiter.admitAsync(tokens).thenCompose(admitted -> {
+            long start = System.nanoTime();
+            CompletableFuture<String> upstream;
+            try {
+                upstream = delegate.generateAsync(modelId, history, userInput, systemPrompt);
+            } catch (RuntimeException e) {
+                limiter.concurrency.release(System.nanoTime() - start, outcome(e));
+                throw e;
+            }
+            return upstream.whenComplete((answer, error) ->
+                    limiter.concurrency.release(System.nanoTime() - start, outcome(error)));
+        });
+    }
+
+    /**
+     * Current concurrency limit of {@code modelId}.
+     */
+    public int concurrencyLimit(String modelId) {
+        Limiter limiter = limiters.get(modelId);
+        return limiter == null ? settings.initialConcurrency() : limiter.concurrency.limit();
+    }
+
+    private Limiter limiter(String modelId) {
+        if (modelId == null) throw new IllegalArgumentException("modelId cannot be null");
+        return limiters.computeIfAbsent(modelId, id -> new Limiter(id, quotas.getOrDefault(id, defaultQuota)));
+    }
+
+    private long estimate(Limiter limiter, List<Message> history, String userInput, String systemPrompt) {
+        if (limiter.tokens == null) {
+            return 0;
+        }
+        long tokens = 0;
+        if (systemPrompt != null) tokens += estimator.estimate(systemPrompt);
+        if (userInput != null) tokens += estimator.estimate(userInput);
+        if (history != null) {
+            for (Message msg : history) {
+                tokens += msg.estimatedTokens(estimator);
+            }
+        }
+        return tokens;
+    }
+
+    private static Outcome outcome(Throwable error) {
+        if (error == null) {
+            return Outcome.SUCCESS;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpStatusException status) {
+                return status.statusCode() == 429 || status.statusCode() == 503 ? Outcome.DROPPED : Outcome.IGNORED;
+            }
+            if (cause instanceof InterruptedIOException) {
+                return Outcome.DROPPED;
+            }
+        }
+        return Outcome.IGNORED;
+    }
+
+    private TokenBucket perMinute(long quota) {
+        if (quota == 0) {
+            return null;
+        }
+        long burst = Math.max(1, Math.round(quota * BURST_FRACTION));
+        return new TokenBucket(burst, Math.max(1, quota - burst), Duration.ofMinutes(1), clock);
+    }
+
+    private final class Limiter {
+        private final String modelId;
+        private final TokenBucket requests;
+        private final TokenBucket tokens;
+        private final AdaptiveConcurrencyLimit concurrency;
+
+        Limiter(String modelId, Quota quota) {
+            this.modelId = modelId;
+            this.requests = perMinute(quota.requestsPerMinute());
+            this.tokens = perMinute(quota.tokensPerMinute());
+            this.concurrency = new AdaptiveConcurrencyLimit(settings.initialConcurrency(),
+                    settings.minConcurrency(), settings.maxConcurrency(), settings.latencyTolerance());
+        }
+
+        void admit(long estimatedTokens) throws IOException {
+            long deadline = System.nanoTime() + settings.maxWait().toNanos();
+            long wait = reserve(estimatedTokens);
+            CompletableFuture<Void> slot = null;
+            try {
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                slot = concurrency.acquire();
+                slot.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (slot.cancel(false)) {
+                    refund(estimatedTokens);
+                    throw new RateLimitExceededException(modelId, CONCURRENCY_RETRY_AFTER);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (slot != null && !slot.cancel(false)) concurrency.release(0, Outcome.IGNORED);
+                refund(estimatedTokens);
+                throw new InterruptedIOException("Interrupted while waiting for " + modelId + " rate limit");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Concurrency slots are only granted or cancelled", e);
+            }
+        }
+
+        CompletableFuture<Void> admitAsync(long estimatedTokens) {
+            long deadline = System.nanoTime() + settings.maxWait().toNanos();
+            long wait;
+            try {
+                wait = reserve(estimatedTokens);
+            } catch (RateLimitExceededException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<Void> paced = wait > 0
+                    ? CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS))
+                    : CompletableFuture.completedFuture(null);
+            return paced.thenCompose(ready -> {
+                CompletableFuture<Void> slot = concurrency.acquire();
+                if (slot.isDone()) {
+                    return slot;
+                }
+                CompletableFuture<Void> admitted = new CompletableFuture<>();
+                slot.orTimeout(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        .whenComplete((granted, error) -> {
+                            if (error == null) {
+                                admitted.complete(null);
+                            } else {
+                                refund(estimatedTokens);
+                                admitted.completeExceptionally(
+                                        new RateLimitExceededException(modelId, CONCURRENCY_RETRY_AFTER));
+                            }
+                        });
+                return admitted;
+            });
+        }
+
+        /**
+         * Takes one request and the estimated tokens from the buckets, returning how long to wait for them.
+         */
+        private long reserve(long estimatedTokens) throws RateLimitExceededException {
+            long maxWait = settings.maxWait().toNanos();
+            long requestWait = requests == null ? 0 : requests.reserve(1, maxWait);
+            if (requestWait < 0) {
+                throw new RateLimitExceededException(modelId, Duration.ofNanos(requests.nanosUntilAvailable(1)));
+            }
+            long tokenWait = tokens == null ? 0 : tokens.reserve(estimatedTokens, maxWait);
+            if (tokenWait < 0) {
+                if (requests != null) requests.refund(1);
+                throw new RateLimitExceededException(modelId,
+                        Duration.ofNanos(tokens.nanosUntilAvailable(estimatedTokens)));
+            }
+            return Math.max(requestWait, tokenWait);
+        }
+
+        private void refund(long estimatedTokens) {
+            if (requests != null) requests.refund(1);
+            if (tokens != null) tokens.refund(estimatedTokens);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.patrick.infra.resilience;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its GCRA form: the only state is the time at which the bucket will be full again, so
+ * taking tokens is one compare-and-set and no thread refills anything. Tokens can be taken ahead of time, which
+ * is how callers queue: {@link #reserve} says how long to wait until the reserved tokens have accrued. A request
+ * for more than {@code capacity} tokens is charged as a full bucket, so it waits for the bucket but can't starve.
+ */
+public final class TokenBucket {
+    private final long capacity;
+    private final double nanosPerToken;
+    private final long burstNanos;
+    private final Clock clock;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param capacity     tokens that can be taken at once from a full bucket
+     * @param refillTokens tokens added every {@code refillPeriod}
+     */
+    public TokenBucket(long capacity, long refillTokens, Duration refillPeriod, Clock clock) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        if (refillTokens < 1) throw new IllegalArgumentException("refillTokens must be positive");
+        if (refillPeriod.isNegative() || refillPeriod.isZero()) {
+            throw new IllegalArgumentException("refillPeriod must be positive");
+        }
+        this.capacity = capacity;
+        this.nanosPerToken = (double) refillPeriod.toNanos() / refillTokens;
+        this.burstNanos = cost(capacity);
+        this.clock = Objects.requireNonNull(clock);
+        this.fullAt = new AtomicLong(now());
+    }
+
+    /**
+     * Takes {@code tokens} now or reserves them for later. Returns the nanos to wait before using them, or -1
+     * (and takes nothing) when that wait would be longer than {@code maxWaitNanos}.
+     */
+    public long reserve(long tokens, long maxWaitNanos) {
+        long cost = cost(tokens);
+        while (true) {
+            long now = now();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + cost;
+            long wait = next - burstNanos - now;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Gives back tokens reserved for a call that was not made.
+     */
+    public void refund(long tokens) {
+        fullAt.addAndGet(-cost(tokens));
+    }
+
+    /**
+     * Nanos until {@code tokens} could be taken without waiting.
+     */
+    public long nanosUntilAvailable(long tokens) {
+        long now = now();
+        return Math.max(0, Math.max(fullAt.get(), now) + cost(tokens) - burstNanos - now);
+    }
+
+    public long available() {
+        long deficit = Math.max(0, fullAt.get() - now());
+        return Math.max(0, capacity - (long) Math.ceil(deficit / nanosPerToken));
+    }
+
+    private long cost(long tokens) {
+        if (tokens < 0) throw new IllegalArgumentException("tokens cannot be negative");
+        return (long) (Math.min(tokens, capacity) * nanosPerToken);
+    }
+
+    private long now() {
+        return TimeUnit.MILLISECONDS.toNanos(clock.millis());
+    }
+}
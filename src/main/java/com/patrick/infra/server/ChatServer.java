@@ -0,0 +1,220 @@
+package com.patrick.infra.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.application.ChatService;
+import com.patrick.application.SessionManager;
+import com.patrick.domain.Message;
+import com.patrick.infra.metrics.AiMetrics;
+import com.patrick.infra.resilience.CircuitOpenException;
+import com.patrick.infra.resilience.RateLimitExceededException;
+import com.patrick.infra.tracing.RingBufferExporter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP/JSON front end serving many independent conversations over one shared {@link ChatService}, kept by a
+ * {@link SessionManager}.
+ *
+ * <ul>
+ *     <li>{@code POST /sessions/{id}/messages} with {@code {"text": "..."}} replies with {@code {"answer": "..."}}</li>
+ *     <li>{@code GET /sessions/{id}/messages} returns the session history</li>
+ *     <li>{@code DELETE /sessions/{id}} forgets the session</li>
+ *     <li>{@code GET /metrics} returns {@link AiMetrics} in the Prometheus text format, when given</li>
+ *     <li>{@code GET /traces} returns the most recent spans as OTLP/JSON, when given</li>
+ * </ul>
+ *
+ * Each exchange runs on its own virtual thread. Turns within one session are serialized; different sessions
+ * never block each other.
+ */
+public class ChatServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ChatServer.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PREFIX = "/sessions/";
+
+    private final SessionManager sessions;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Serves sessions that all stay in memory until deleted.
+     */
+    public ChatServer(ChatService service, InetSocketAddress address) throws IOException {
+        this(new SessionManager(service, Long.MAX_VALUE, Duration.ZERO), address);
+    }
+
+    public ChatServer(SessionManager sessions, InetSocketAddress address) throws IOException {
+        this(sessions, address, null);
+    }
+
+    /**
+     * @param metrics served on {@code /metrics}, or null for no metrics endpoint
+     */
+    public ChatServer(SessionManager sessions, InetSocketAddress address, AiMetrics metrics) throws IOException {
+        this(sessions, address, metrics, null);
+    }
+
+    /**
+     * @param metrics served on {@code /metrics}, or null for no metrics endpoint
+     * @param traces  served on {@code /traces}, or null for no traces endpoint
+     */
+    public ChatServer(SessionManager sessions, InetSocketAddress address, AiMetrics metrics,
+                      RingBufferExporter traces) throws IOException {
+        this.sessions = Objects.requireNonNull(sessions);
+        this.server = HttpServer.create(Objects.requireNonNull(address), 1024);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server.setExecutor(executor);
+        this.server.createContext(PREFIX, this::handle);
+        if (metrics != null) {
+            this.server.createContext("/metrics", exchange -> serveMetrics(exchange, metrics));
+        }
+        if (traces != null) {
+            this.server.createContext("/traces", exchange -> serveTraces(exchange, traces));
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public int sessionCount() {
+        return sessions.sessionCount();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] segments = exchange.getRequestURI().getPath().substring(PREFIX.length()).split("/");
+            String method = exchange.getRequestMethod();
+            if (segments.length == 1 && !segments[0].isEmpty() && method.equals("DELETE")) {
+                sessions.remove(segments[0]);
+                exchange.sendResponseHeaders(204, -1);
+            } else if (segments.length == 2 && !segments[0].isEmpty() && segments[1].equals("messages")) {
+                if (method.equals("POST")) {
+                    postMessage(exchange, segments[0]);
+                } else if (method.equals("GET")) {
+                    getMessages(exchange, segments[0]);
+                } else {
+                    send(exchange, 405, Map.of("error", "Method not allowed"));
+                }
+            } else {
+                send(exchange, 404, Map.of("error", "Not found"));
+            }
+        }
+    }
+
+    private static void serveMetrics(HttpExchange exchange, AiMetrics metrics) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, Map.of("error", "Method not allowed"));
+                return;
+            }
+            byte[] bytes = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void serveTraces(HttpExchange exchange, RingBufferExporter traces) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, Map.of("error", "Method not allowed"));
+                return;
+            }
+            byte[] bytes = traces.toOtlpJson().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private void postMessage(HttpExchange exchange, String sessionId) throws IOException {
+        JsonNode text;
+        try {
+            text = MAPPER.readTree(exchange.getRequestBody()).get("text");
+        } catch (IOException e) {
+            text = null;
+        }
+        if (text == null || !text.isTextual() || text.asText().isBlank()) {
+            send(exchange, 400, Map.of("error", "Body must be {\"text\": \"...\"}"));
+            return;
+        }
+
+        String answer;
+        try {
+            answer = sessions.converse(sessionId, text.asText().trim());
+        } catch (CircuitOpenException e) {
+            sendRetryLater(exchange, 503, e.retryAfter(), e.getMessage());
+            return;
+        } catch (RateLimitExceededException e) {
+            sendRetryLater(exchange, 429, e.retryAfter(), e.getMessage());
+            return;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Session " + sessionId + " failed to get a reply", e);
+            send(exchange, 502, Map.of("error", String.valueOf(e.getMessage())));
+            return;
+        }
+        send(exchange, 200, Map.of("answer", answer));
+    }
+
+    private void sendRetryLater(HttpExchange exchange, int status, Duration retryAfter, String message)
+            throws IOException {
+        exchange.getResponseHeaders().set("Retry-After",
+                String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+        send(exchange, status, Map.of("error", String.valueOf(message)));
+    }
+
+    private void getMessages(HttpExchange exchange, String sessionId) throws IOException {
+        List<Message> history = sessions.messages(sessionId);
+        if (history == null) {
+            send(exchange, 404, Map.of("error", "Unknown session"));
+            return;
+        }
+        List<Map<String, String>> messages = new ArrayList<>();
+        for (Message msg : history) {
+            Map<String, String> entry = new LinkedHashMap<>();
+            entry.put("role", msg.role().Wire());
+            entry.put("text", msg.text());
+            messages.add(entry);
+        }
+        send(exchange, 200, Map.of("messages", messages));
+    }
+
+    private static void send(HttpExchange exchange, int code, Object body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
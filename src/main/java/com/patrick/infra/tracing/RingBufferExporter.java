@@ -0,0 +1,134 @@
+package com.patrick.infra.tracing;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the last {@code capacity} ended spans in memory, overwriting the oldest, and dumps them as OTLP/JSON
+ * ({@code ExportTraceServiceRequest}), the body an OpenTelemetry collector accepts on {@code /v1/traces}.
+ * Exporting a span is one atomic increment and one array store.
+ */
+public final class RingBufferExporter implements SpanExporter {
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private final String serviceName;
+    private final AtomicReferenceArray<Span> spans;
+    private final AtomicLong next = new AtomicLong();
+
+    public RingBufferExporter(int capacity, String serviceName) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.spans = new AtomicReferenceArray<>(capacity);
+        this.serviceName = serviceName;
+    }
+
+    @Override
+    public void export(Span span) {
+        spans.set((int) (next.getAndIncrement() % spans.length()), span);
+    }
+
+    /**
+     * Spans currently kept, oldest first.
+     */
+    public List<Span> spans() {
+        long end = next.get();
+        long start = Math.max(0, end - spans.length());
+        List<Span> kept = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Span span = spans.get((int) (i % spans.length()));
+            if (span != null) kept.add(span);
+        }
+        return kept;
+    }
+
+    public void writeOtlpJson(OutputStream out) throws IOException {
+        try (JsonGenerator json = FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("resourceSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("resource");
+            json.writeArrayFieldStart("attributes");
+            writeAttribute(json, "service.name", serviceName);
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeArrayFieldStart("scopeSpans");
+            json.writeStartObject();
+            json.writeObjectFieldStart("scope");
+            json.writeStringField("name", Tracer.class.getPackageName());
+            json.writeEndObject();
+            json.writeArrayFieldStart("spans");
+            for (Span span : spans()) {
+                writeSpan(json, span);
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    public String toOtlpJson() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeOtlpJson(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void writeSpan(JsonGenerator json, Span span) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("traceId", span.traceId());
+        json.writeStringField("spanId", span.spanId());
+        if (span.parentSpanId() != null) {
+            json.writeStringField("parentSpanId", span.parentSpanId());
+        }
+        json.writeStringField("name", span.name());
+        json.writeNumberField("kind", span.kind().otlpCode);
+        // OTLP/JSON carries 64-bit integers as strings.
+        json.writeStringField("startTimeUnixNano", Long.toString(span.startEpochNanos()));
+        json.writeStringField("endTimeUnixNano", Long.toString(span.endEpochNanos()));
+        json.writeArrayFieldStart("attributes");
+        for (Map.Entry<String, Object> attribute : span.attributes().entrySet()) {
+            writeAttribute(json, attribute.getKey(), attribute.getValue());
+        }
+        json.writeEndArray();
+        json.writeObjectFieldStart("status");
+        String error = span.error();
+        if (error != null) {
+            json.writeNumberField("code", 2);
+            json.writeStringField("message", error);
+        }
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private static void writeAttribute(JsonGenerator json, String key, Object value) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("key", key);
+        json.writeObjectFieldStart("value");
+        if (value instanceof Long number) {
+            json.writeStringField("intValue", Long.toString(number));
+        } else {
+            json.writeStringField("stringValue", String.valueOf(value));
+        }
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+}
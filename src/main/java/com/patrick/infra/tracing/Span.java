@@ -0,0 +1,195 @@
+package com.patrick.infra.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One timed phase of a trace, with OpenTelemetry's identifiers and shape: 128-bit trace id, 64-bit span id,
+ * parent, kind, start and end in Unix epoch nanoseconds, string or long attributes and an error status. A span
+ * from {@link Tracer#start} is the thread's current span until {@link #close()}; one from
+ * {@link Tracer#startDetached} may be ended with {@link #end()} on any thread. Spans of traces that were not
+ * sampled, and {@link #NOOP}, record nothing.
+ */
+public final class Span implements AutoCloseable {
+    public enum Kind {
+        INTERNAL(1), CLIENT(3);
+
+        final int otlpCode;
+
+        Kind(int otlpCode) {
+            this.otlpCode = otlpCode;
+        }
+    }
+
+    /**
+     * Span that records nothing and is never made current; returned whenever tracing is off.
+     */
+    public static final Span NOOP = new Span(null, null, 0, 0, 0, 0, null, null, false);
+
+    private final Tracer tracer;
+    private final Span previous;
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+    private final long parentSpanId;
+    private final String name;
+    private final Kind kind;
+    private final boolean recording;
+    private final long startEpochNanos;
+    private long endEpochNanos;
+    private List<Object> attributes;
+    private String error;
+
+    Span(Tracer tracer, Span previous, long traceIdHigh, long traceIdLow, long spanId, long parentSpanId,
+         String name, Kind kind, boolean recording) {
+        this.tracer = tracer;
+        this.previous = previous;
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        this.recording = recording;
+        this.startEpochNanos = recording ? tracer.nowEpochNanos() : 0;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public Span setAttribute(String key, String value) {
+        if (recording && value != null) put(key, value);
+        return this;
+    }
+
+    public Span setAttribute(String key, long value) {
+        if (recording) put(key, value);
+        return this;
+    }
+
+    /**
+     * Marks the span as failed with {@code error}'s class and message.
+     */
+    public Span setError(Throwable error) {
+        if (recording) {
+            synchronized (this) {
+                this.error = error.getClass().getSimpleName() + ": " + error.getMessage();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ends the span and exports it; later calls do nothing.
+     */
+    public void end() {
+        if (!recording) {
+            return;
+        }
+        synchronized (this) {
+            if (endEpochNanos != 0) return;
+            endEpochNanos = tracer.nowEpochNanos();
+        }
+        tracer.exporter().export(this);
+    }
+
+    /**
+     * Ends the span and, for one made current by {@link Tracer#start}, restores the span that was current before.
+     */
+    @Override
+    public void close() {
+        if (tracer != null && tracer.current() == this) {
+            tracer.restore(previous);
+        }
+        end();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    public String traceId() {
+        return hex(traceIdHigh) + hex(traceIdLow);
+    }
+
+    public String spanId() {
+        return hex(spanId);
+    }
+
+    /**
+     * Hex id of the parent span, or null for a root span.
+     */
+    public String parentSpanId() {
+        return parentSpanId == 0 ? null : hex(parentSpanId);
+    }
+
+    public long startEpochNanos() {
+        return startEpochNanos;
+    }
+
+    public synchronized long endEpochNanos() {
+        return endEpochNanos;
+    }
+
+    public synchronized Map<String, Object> attributes() {
+        if (attributes == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (int i = 0; i < attributes.size(); i += 2) {
+            copy.put((String) attributes.get(i), attributes.get(i + 1));
+        }
+        return copy;
+    }
+
+    /**
+     * Error description set by {@link #setError}, or null when the span succeeded.
+     */
+    public synchronized String error() {
+        return error;
+    }
+
+    long traceIdHigh() {
+        return traceIdHigh;
+    }
+
+    long traceIdLow() {
+        return traceIdLow;
+    }
+
+    long id() {
+        return spanId;
+    }
+
+    private synchronized void put(String key, Object value) {
+        if (attributes == null) {
+            attributes = new ArrayList<>(8);
+        }
+        for (int i = 0; i < attributes.size(); i += 2) {
+            if (attributes.get(i).equals(key)) {
+                attributes.set(i + 1, value);
+                return;
+            }
+        }
+        attributes.add(key);
+        attributes.add(value);
+    }
+
+    private static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return "0".repeat(16 - digits.length()) + digits;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + spanId();
+    }
+}
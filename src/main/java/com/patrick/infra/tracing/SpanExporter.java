@@ -0,0 +1,10 @@
+package com.patrick.infra.tracing;
+
+/**
+ * Receives every recorded span as it ends, on the thread that ended it, so implementations must be thread-safe
+ * and must not block.
+ */
+@FunctionalInterface
+public interface SpanExporter {
+    void export(Span span);
+}
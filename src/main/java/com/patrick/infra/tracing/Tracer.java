@@ -0,0 +1,102 @@
+package com.patrick.infra.tracing;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts {@link Span}s and tracks the current one per thread, so a span started inside another becomes its
+ * child without passing it around. Whole traces are sampled at their root with probability {@code sampleRatio};
+ * spans of unsampled traces record nothing, and children of them cost no allocation. {@link #NOOP} turns tracing
+ * off entirely. Shared and thread-safe.
+ */
+public final class Tracer {
+    public static final Tracer NOOP = new Tracer(span -> { }, 0);
+
+    private final SpanExporter exporter;
+    private final double sampleRatio;
+    private final long epochNanosAtStart;
+    private final long nanoTimeAtStart;
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+
+    public Tracer(SpanExporter exporter, double sampleRatio) {
+        if (sampleRatio < 0 || sampleRatio > 1) throw new IllegalArgumentException("sampleRatio must be in [0, 1]");
+        this.exporter = Objects.requireNonNull(exporter);
+        this.sampleRatio = sampleRatio;
+        Instant now = Instant.now();
+        this.nanoTimeAtStart = System.nanoTime();
+        this.epochNanosAtStart = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    /**
+     * Starts a span that is the child of this thread's current span, or the root of a new trace, and makes it
+     * current until it is closed. Use it with try-with-resources.
+     */
+    public Span start(String name) {
+        if (this == NOOP) {
+            return Span.NOOP;
+        }
+        Span parent = current.get();
+        if (parent != null && !parent.isRecording()) {
+            return Span.NOOP;
+        }
+        Span span = create(name, Span.Kind.INTERNAL, parent, parent);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Starts a span under {@code parent}, or as a new root when it is null, without making it current, for work
+     * that ends on another thread. End it with {@link Span#end()}.
+     */
+    public Span startDetached(String name, Span parent, Span.Kind kind) {
+        if (this == NOOP || parent != null && !parent.isRecording()) {
+            return Span.NOOP;
+        }
+        Span span = create(name, kind, parent, null);
+        return span.isRecording() ? span : Span.NOOP;
+    }
+
+    /**
+     * This thread's current span, or null outside any.
+     */
+    public Span current() {
+        return current.get();
+    }
+
+    public boolean isEnabled() {
+        return this != NOOP;
+    }
+
+    SpanExporter exporter() {
+        return exporter;
+    }
+
+    long nowEpochNanos() {
+        return epochNanosAtStart + (System.nanoTime() - nanoTimeAtStart);
+    }
+
+    void restore(Span previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    private Span create(String name, Span.Kind kind, Span parent, Span previous) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long spanId = nonZero(random.nextLong());
+        if (parent != null) {
+            return new Span(this, previous, parent.traceIdHigh(), parent.traceIdLow(), spanId, parent.id(), name,
+                    kind, true);
+        }
+        boolean sampled = sampleRatio >= 1 || random.nextDouble() < sampleRatio;
+        return new Span(this, previous, random.nextLong(), nonZero(random.nextLong()), spanId, 0, name, kind,
+                sampled);
+    }
+
+    private static long nonZero(long id) {
+        return id == 0 ? 1 : id;
+    }
+}
@@ -0,0 +1,193 @@
+package com.patrick.infra.tracing;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * Traces each OkHttp call as an {@code http.call} span under the span current when the call was created, with a
+ * child per phase: {@code http.dns}, {@code http.connect}, {@code http.tls}, {@code http.request} (headers and
+ * body written), {@code http.wait} (until the first response byte, i.e. upstream processing) and
+ * {@code http.response} (until the body is consumed, so it includes the caller's parsing). Only the URL path is
+ * recorded: the Gemini API key travels in the query string.
+ */
+public final class TracingEventListener extends EventListener {
+    private final Tracer tracer;
+    private final Span call;
+    private Span dns;
+    private Span connect;
+    private Span tls;
+    private Span request;
+    private Span waiting;
+    private Span response;
+    private boolean connected;
+
+    private TracingEventListener(Tracer tracer, Span call) {
+        this.tracer = tracer;
+        this.call = call;
+    }
+
+    public static EventListener.Factory factory(Tracer tracer) {
+        return newCall -> {
+            Span call = tracer.startDetached("http.call", tracer.current(), Span.Kind.CLIENT);
+            if (!call.isRecording()) {
+                return EventListener.NONE;
+            }
+            Request request = newCall.request();
+            call.setAttribute("http.request.method", request.method())
+                    .setAttribute("server.address", request.url().host())
+                    .setAttribute("url.path", request.url().encodedPath());
+            return new TracingEventListener(tracer, call);
+        };
+    }
+
+    @Override
+    public synchronized void dnsStart(Call c, String domainName) {
+        dns = child("http.dns");
+    }
+
+    @Override
+    public synchronized void dnsEnd(Call c, String domainName, List<InetAddress> addresses) {
+        dns = end(dns);
+    }
+
+    @Override
+    public synchronized void connectStart(Call c, InetSocketAddress address, Proxy proxy) {
+        connected = true;
+        connect = child("http.connect").setAttribute("network.peer.address", address.getHostString());
+    }
+
+    @Override
+    public synchronized void secureConnectStart(Call c) {
+        tls = child("http.tls");
+    }
+
+    @Override
+    public synchronized void secureConnectEnd(Call c, Handshake handshake) {
+        if (tls != null && handshake != null) {
+            tls.setAttribute("tls.protocol.version", handshake.tlsVersion().javaName());
+        }
+        tls = end(tls);
+    }
+
+    @Override
+    public synchronized void connectEnd(Call c, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+        if (connect != null && protocol != null) connect.setAttribute("network.protocol.name", protocol.toString());
+        connect = end(connect);
+    }
+
+    @Override
+    public synchronized void connectFailed(Call c, InetSocketAddress address, Proxy proxy, Protocol protocol,
+                                           IOException e) {
+        tls = fail(tls, e);
+        connect = fail(connect, e);
+    }
+
+    @Override
+    public synchronized void connectionAcquired(Call c, Connection connection) {
+        call.setAttribute("http.connection.reused", connected ? "false" : "true")
+                .setAttribute("network.protocol.name", connection.protocol().toString());
+    }
+
+    @Override
+    public synchronized void requestHeadersStart(Call c) {
+        request = child("http.request");
+    }
+
+    @Override
+    public synchronized void requestHeadersEnd(Call c, Request sent) {
+        if (sent.body() == null) {
+            startWaiting();
+        }
+    }
+
+    @Override
+    public synchronized void requestBodyEnd(Call c, long byteCount) {
+        call.setAttribute("http.request.body.size", byteCount);
+        startWaiting();
+    }
+
+    @Override
+    public synchronized void requestFailed(Call c, IOException e) {
+        request = fail(request, e);
+    }
+
+    @Override
+    public synchronized void responseHeadersStart(Call c) {
+        waiting = end(waiting);
+        response = child("http.response");
+    }
+
+    @Override
+    public synchronized void responseHeadersEnd(Call c, Response received) {
+        call.setAttribute("http.response.status_code", received.code());
+    }
+
+    @Override
+    public synchronized void responseBodyEnd(Call c, long byteCount) {
+        call.setAttribute("http.response.body.size", byteCount);
+        response = end(response);
+    }
+
+    @Override
+    public synchronized void responseFailed(Call c, IOException e) {
+        response = fail(response, e);
+    }
+
+    @Override
+    public synchronized void callEnd(Call c) {
+        finish(null);
+    }
+
+    @Override
+    public synchronized void callFailed(Call c, IOException e) {
+        finish(e);
+    }
+
+    @Override
+    public synchronized void canceled(Call c) {
+        call.setAttribute("http.canceled", "true");
+    }
+
+    private void startWaiting() {
+        request = end(request);
+        if (waiting == null) {
+            waiting = child("http.wait");
+        }
+    }
+
+    private void finish(IOException e) {
+        dns = fail(dns, e);
+        tls = fail(tls, e);
+        connect = fail(connect, e);
+        request = fail(request, e);
+        waiting = fail(waiting, e);
+        response = fail(response, e);
+        if (e != null) call.setError(e);
+        call.end();
+    }
+
+    private Span child(String name) {
+        return tracer.startDetached(name, call, Span.Kind.INTERNAL);
+    }
+
+    private static Span end(Span span) {
+        if (span != null) span.end();
+        return null;
+    }
+
+    private static Span fail(Span span, IOException e) {
+        if (span != null && e != null) span.setError(e);
+        return end(span);
+    }
+}
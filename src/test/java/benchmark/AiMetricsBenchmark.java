@@ -0,0 +1,39 @@
+package benchmark;
+
+import com.patrick.infra.metrics.AiMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the instrumentation on every AI call: recording a call's latency and one HTTP response, from 8 threads
+ * into the same model. Run with {@code -prof gc}; {@code gc.alloc.rate.norm} should stay at 0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class AiMetricsBenchmark {
+    private final AiMetrics metrics = new AiMetrics();
+
+    @Benchmark
+    public void recordCall() {
+        long nanos = ThreadLocalRandom.current().nextLong(1_000_000, 2_000_000_000);
+        metrics.onAttempt("gemini-2.5-flash", 1);
+        metrics.onResponse("gemini-2.5-flash", 200, nanos / 4, 2048);
+        metrics.recordCall("gemini-2.5-flash", AiMetrics.Outcome.SUCCESS, nanos);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import com.patrick.application.ChatService;
+import com.patrick.domain.Conversation;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-turn history cost for a session that has already seen {@code turns} turns: append one turn and read the
+ * last five, as {@link ChatService} does on every reply. Run with {@code -prof gc} to compare allocation rates;
+ * the ring stays flat while the unbounded list grows with the session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationBenchmark {
+    private static final int KEEP_TURNS = 5;
+
+    @Param({"100", "10000", "100000"})
+    int turns;
+
+    private Conversation conversation;
+    private List<Message> history;
+    private Message user;
+    private Message model;
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        conversation = new Conversation(KEEP_TURNS);
+        history = new ArrayList<>();
+        user = new Message(Role.USER, "What's the difference between since and for?");
+        model = new Message(Role.MODEL, "Use 'for' with a duration and 'since' with a starting point.");
+        for (int i = 0; i < turns; i++) {
+            conversation.append(user, model);
+            history.add(user);
+            history.add(model);
+        }
+    }
+
+    @Benchmark
+    public void ringTurn(Blackhole blackhole) {
+        List<Message> context = conversation.lastTurns(KEEP_TURNS);
+        for (int i = 0; i < context.size(); i++) {
+            blackhole.consume(context.get(i));
+        }
+        conversation.append(user, model);
+    }
+
+    @Benchmark
+    public void listTurn(Blackhole blackhole) {
+        List<Message> context = ChatService.trim(history, KEEP_TURNS);
+        for (int i = 0; i < context.size(); i++) {
+            blackhole.consume(context.get(i));
+        }
+        history.add(user);
+        history.add(model);
+    }
+}
@@ -0,0 +1,91 @@
+package benchmark;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.persistence.ConversationStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link ConversationStore} costs. {@code append} measures turns per second from 8 threads, with and without
+ * waiting for the disk; with fsync on, group commit is what keeps it above one flush per turn.
+ * {@code coldLoad} reads the last five turns of a random session out of {@code sessions} sessions of 20 turns
+ * each, as a resumed session does; its cost should not grow with the number of sessions.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationStoreBenchmark {
+    private static final int TURNS_PER_SESSION = 20;
+    private static final Message USER = new Message(Role.USER, "What's the difference between since and for?");
+    private static final Message MODEL = new Message(Role.MODEL,
+            "Use 'for' with a duration (for two years) and 'since' with a starting point (since 2020).");
+
+    @Param({"false", "true"})
+    boolean fsync;
+
+    @Param({"1000", "100000"})
+    int sessions;
+
+    private Path dir;
+    private ConversationStore store;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        dir = Files.createTempDirectory("conversation-store-bench");
+        store = ConversationStore.open(dir, new ConversationStore.Settings(64 * 1024 * 1024, false));
+        for (int turn = 0; turn < TURNS_PER_SESSION; turn++) {
+            for (int session = 0; session < sessions; session++) {
+                store.append("session-" + session, USER, MODEL);
+            }
+        }
+        store.close();
+        store = ConversationStore.open(dir, new ConversationStore.Settings(64 * 1024 * 1024, fsync));
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    public void append() throws IOException {
+        store.append("session-" + ThreadLocalRandom.current().nextInt(sessions), USER, MODEL);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public List<Message> coldLoad() throws IOException {
+        return store.lastTurns("session-" + ThreadLocalRandom.current().nextInt(sessions), 5);
+    }
+}
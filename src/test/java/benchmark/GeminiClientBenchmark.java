@@ -0,0 +1,85 @@
+package benchmark;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.GeminiClient;
+import fake.NoDelaySockets;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * End-to-end {@link GeminiClient#generate} against an in-process MockWebServer: payload encoding, the HTTP
+ * round trip over loopback and answer parsing. Per-request logging is silenced, and Nagle is disabled on both
+ * ends so small loopback writes aren't held back by delayed ACKs, which would otherwise swamp the client-side
+ * work being measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeminiClientBenchmark {
+
+    @Param({"0", "10", "100"})
+    int turns;
+
+    @Param({"200", "200000"})
+    int answerChars;
+
+    private MockWebServer server;
+    private GeminiClient client;
+    private List<Message> history;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        Logger.getLogger(GeminiClient.class.getName()).setLevel(java.util.logging.Level.WARNING);
+        String body = GeminiCodecBenchmark.response(answerChars);
+        server = new MockWebServer();
+        server.setServerSocketFactory(NoDelaySockets.server());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200).setBody(body);
+            }
+        });
+        server.start();
+        String baseUrl = server.url("/").toString().replaceAll("/$", "");
+        OkHttpClient http = new OkHttpClient.Builder()
+                .socketFactory(NoDelaySockets.client())
+                .build();
+        client = new GeminiClient(http, baseUrl, "bench-key");
+        history = GeminiCodecBenchmark.history(turns);
+    }
+
+    @Benchmark
+    public String generate() throws IOException {
+        return client.generate("gemini-test", history, "What's the difference between since and for?",
+                GeminiCodecBenchmark.SYSTEM);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        server.shutdown();
+    }
+}
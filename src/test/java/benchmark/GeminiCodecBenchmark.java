@@ -0,0 +1,128 @@
+package benchmark;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.gemini.GeminiJson;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request payload encoding at growing history sizes, with history fragments already cached (steady state of a
+ * session) and without and answer extraction from small and very large
+ * candidates, both against raw bytes as they reach or leave the socket. Run with {@code -prof gc} to see bytes
+ * allocated per op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeminiCodecBenchmark {
+    static final String SYSTEM = "You are a specialized english tutor. Help the user learn English by answering "
+            + "their questions and providing explanations.";
+
+    @State(Scope.Benchmark)
+    public static class Request {
+        @Param({"0", "10", "100"})
+        int turns;
+
+        List<Message> history;
+        final Buffer sink = new Buffer();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            history = history(turns);
+        }
+    }
+
+    /**
+     * Fresh messages for every call, as if nothing had been encoded before: the cost every request paid before
+     * fragments were cached on messages.
+     */
+    @State(Scope.Benchmark)
+    public static class UncachedRequest {
+        @Param({"0", "10", "100"})
+        int turns;
+
+        List<Message> history;
+        final Buffer sink = new Buffer();
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            history = history(turns);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Response {
+        @Param({"200", "200000"})
+        int answerChars;
+
+        byte[] body;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            body = response(answerChars).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public long encodeRequest(Request request) throws IOException {
+        request.sink.clear();
+        GeminiJson.writeRequest(request.sink, request.history, "What's the difference between since and for?", SYSTEM);
+        return request.sink.size();
+    }
+
+    @Benchmark
+    public long encodeRequestUncached(UncachedRequest request) throws IOException {
+        request.sink.clear();
+        GeminiJson.writeRequest(request.sink, request.history, "What's the difference between since and for?", SYSTEM);
+        return request.sink.size();
+    }
+
+    @Benchmark
+    public String decodeText(Response response) throws IOException {
+        return GeminiJson.readText(new ByteArrayInputStream(response.body));
+    }
+
+    static List<Message> history(int turns) {
+        List<Message> history = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            history.add(new Message(Role.USER, "Turn " + i + ": can you explain when to use the present perfect?"));
+            history.add(new Message(Role.MODEL,
+                    "Use the present perfect for actions that started in the past and continue now. ".repeat(8)));
+        }
+        return history;
+    }
+
+    static String response(int answerChars) {
+        String sentence = "The \\\"present perfect\\\" links the past to now.\\n";
+        StringBuilder parts = new StringBuilder();
+        int chunk = Math.min(answerChars, 4000);
+        for (int written = 0; written < answerChars; written += chunk) {
+            if (parts.length() > 0) parts.append(',');
+            parts.append("{\"text\":\"").append(sentence.repeat(Math.max(1, chunk / 50))).append("\"}");
+        }
+        return "{\"candidates\":[{\"content\":{\"role\":\"model\",\"parts\":[" + parts + "]},"
+                + "\"finishReason\":\"STOP\",\"index\":0}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":120,\"candidatesTokenCount\":64,\"totalTokenCount\":184}}";
+    }
+}
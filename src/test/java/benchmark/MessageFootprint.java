@@ -0,0 +1,75 @@
+package benchmark;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.Function;
+
+/**
+ * Retained heap per message for the previous {@code String}-backed {@link Message}, the current UTF-8 form, and
+ * the compressed form older turns take. Not a JMH benchmark: it keeps {@value #COUNT} messages alive and reads
+ * used heap after full collections, which is enough to compare layouts without an object-layout library.
+ *
+ * <pre>mvn test-compile && java -cp target/classes:target/test-classes benchmark.MessageFootprint</pre>
+ */
+public class MessageFootprint {
+    private static final int COUNT = 100_000;
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private static final String[] TEXTS = {
+            "Wie geht es dir heute?",
+            "Mir geht es gut, danke! Und dir? Hast du schon gefrühstückt? Ich habe Brötchen mit Käse gegessen.",
+            "Richtig ✓ Das Perfekt von \"gehen\" ist \"ist gegangen\", weil es eine Bewegung von A nach B beschreibt.",
+            ("Sehr gut. Denk daran: \"gefrühstückt\" ist das Partizip II von \"frühstücken\", und im Perfekt "
+                    + "benutzt man \"haben\". Möchtest du noch ein paar Beispiele mit trennbaren Verben üben? ").repeat(4),
+    };
+
+    public static void main(String[] args) {
+        System.out.printf("%-10s %12s %12s %12s%n", "chars", "legacy", "utf8", "compressed");
+        for (String text : TEXTS) {
+            long legacy = retained(i -> new LegacyMessage(Role.MODEL, text + i));
+            long utf8 = retained(i -> new Message(Role.MODEL, text + i));
+            long compressed = retained(i -> {
+                Message message = new Message(Role.MODEL, text + i);
+                message.compress();
+                return message;
+            });
+            System.out.printf("%-10d %12d %12d %12d%n", text.length(), legacy, utf8, compressed);
+        }
+    }
+
+    /** Bytes retained per object built by {@code factory}. */
+    private static long retained(Function<Integer, Object> factory) {
+        Object[] keep = new Object[COUNT];
+        long before = usedAfterGc();
+        for (int i = 0; i < COUNT; i++) {
+            keep[i] = factory.apply(i % 10);
+        }
+        long after = usedAfterGc();
+        if (keep[COUNT - 1] == null) throw new AssertionError();
+        return (after - before) / COUNT;
+    }
+
+    private static long usedAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    /** The message layout before UTF-8 storage: a {@code String} plus the same two caches. */
+    @SuppressWarnings("unused")
+    private static final class LegacyMessage {
+        private final Role role;
+        private final String text;
+        private volatile Object tokens;
+        private volatile Object encoded;
+
+        LegacyMessage(Role role, String text) {
+            this.role = role;
+            this.text = text;
+        }
+    }
+}
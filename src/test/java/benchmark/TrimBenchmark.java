@@ -0,0 +1,78 @@
+package benchmark;
+
+import com.patrick.application.ApproximateTokenEstimator;
+import com.patrick.application.ChatService;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed turn-count trimming against token-budget trimming on a history where every tenth question is a pasted
+ * essay. The payload each strategy would send is printed at the end of the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrimBenchmark {
+
+    @Param({"10", "50", "200"})
+    int turns;
+
+    @Param({"2000"})
+    int budgetTokens;
+
+    private List<Message> history;
+
+    @Setup(Level.Trial)
+    public void buildHistory() {
+        history = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            String question = i % 10 == 3
+                    ? "Please correct my essay: " + "I have been living here since five years and I like it. ".repeat(140)
+                    : "Turn " + i + ": what's the difference between since and for?";
+            history.add(new Message(Role.USER, question));
+            history.add(new Message(Role.MODEL, "Use 'for' with a period of time and 'since' with a starting point. ".repeat(6)));
+        }
+    }
+
+    @Benchmark
+    public List<Message> fixedTurns() {
+        return ChatService.trim(history, 5);
+    }
+
+    @Benchmark
+    public List<Message> tokenBudget() {
+        return ChatService.trimToBudget(history, budgetTokens, ApproximateTokenEstimator.INSTANCE);
+    }
+
+    @TearDown(Level.Trial)
+    public void reportPayload() {
+        System.out.printf("%nturns=%d payload chars: fixedTurns=%d (%d messages), tokenBudget=%d (%d messages)%n",
+                turns, chars(fixedTurns()), fixedTurns().size(), chars(tokenBudget()), tokenBudget().size());
+    }
+
+    private static long chars(List<Message> messages) {
+        long total = 0;
+        for (Message message : messages) total += message.text().length();
+        return total;
+    }
+}
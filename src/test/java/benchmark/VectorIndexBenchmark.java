@@ -0,0 +1,72 @@
+package benchmark;
+
+import com.patrick.infra.cache.Embedder;
+import com.patrick.infra.cache.FlatVectorIndex;
+import com.patrick.infra.cache.HnswVectorIndex;
+import com.patrick.infra.cache.VectorIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Semantic cache lookup latency. Building the HNSW graph for 1M entries takes several minutes; narrow the run
+ * with {@code -p index=flat} when only the exact scan is of interest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class VectorIndexBenchmark {
+
+    @Param({"100000", "1000000"})
+    int entries;
+
+    @Param({"flat", "hnsw"})
+    String index;
+
+    @Param({"128"})
+    int dimensions;
+
+    private VectorIndex vectors;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void build() {
+        Random random = new Random(42);
+        vectors = index.equals("hnsw") ? new HnswVectorIndex(dimensions) : new FlatVectorIndex(dimensions, entries);
+        for (int i = 0; i < entries; i++) {
+            vectors.add(randomVector(random));
+        }
+        queries = new float[1024][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = randomVector(random);
+        }
+    }
+
+    @Benchmark
+    public VectorIndex.Match nearest() {
+        next = (next + 1) & (queries.length - 1);
+        return vectors.nearest(queries[next]);
+    }
+
+    private float[] randomVector(Random random) {
+        float[] vector = new float[dimensions];
+        for (int d = 0; d < dimensions; d++) vector[d] = (float) random.nextGaussian();
+        return Embedder.normalize(vector);
+    }
+}
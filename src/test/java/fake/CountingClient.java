@@ -0,0 +1,44 @@
+package fake;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CountingClient implements AiClient {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch gate;
+    private volatile boolean failing;
+
+    public CountingClient() {
+        this(new CountDownLatch(0));
+    }
+
+    public CountingClient(CountDownLatch gate) {
+        this.gate = gate;
+    }
+
+    @Override
+    public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        calls.incrementAndGet();
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        if (failing) throw new IOException("API error");
+        return "eco: " + userInput;
+    }
+
+    public int calls() {
+        return calls.get();
+    }
+
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+}
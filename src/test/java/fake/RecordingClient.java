@@ -0,0 +1,44 @@
+package fake;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecordingClient implements AiClient {
+    private final List<List<Message>> histories = new ArrayList<>();
+    private final List<String> systemPrompts = new ArrayList<>();
+    private final List<String> modelIds = new ArrayList<>();
+    private final List<String> userInputs = new ArrayList<>();
+
+    @Override
+    public synchronized String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+        histories.add(List.copyOf(history));
+        systemPrompts.add(systemPrompt);
+        modelIds.add(modelId);
+        userInputs.add(userInput);
+        return "eco: " + userInput;
+    }
+
+    public synchronized List<Message> lastHistory() {
+        return histories.get(histories.size() - 1);
+    }
+
+    public synchronized String lastSystemPrompt() {
+        return systemPrompts.get(systemPrompts.size() - 1);
+    }
+
+    public synchronized List<String> modelIds() {
+        return List.copyOf(modelIds);
+    }
+
+    public synchronized List<String> userInputs() {
+        return List.copyOf(userInputs);
+    }
+
+    public synchronized int calls() {
+        return histories.size();
+    }
+}
@@ -0,0 +1,156 @@
+package integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.application.ChatService;
+import com.patrick.infra.bulk.BulkRunner;
+import com.patrick.infra.gemini.GeminiClient;
+import fake.NoDelaySockets;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkRunnerIntegrationTest {
+    private static final Pattern WORD = Pattern.compile("word-\\d+");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    MockWebServer server;
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    AtomicInteger requests = new AtomicInteger();
+    ChatService service;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.setServerSocketFactory(NoDelaySockets.server());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                requests.incrementAndGet();
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Matcher matcher = WORD.matcher(request.getBody().readUtf8());
+                    String word = matcher.find() ? matcher.group() : "unknown";
+                    TimeUnit.MILLISECONDS.sleep(20);
+                    if (word.endsWith("13")) {
+                        return new MockResponse().setResponseCode(400).setBody("{\"error\": \"bad word\"}");
+                    }
+                    return new MockResponse().setResponseCode(200).setBody(
+                            "{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"about " + word + "\"} ] }} ] }");
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+        server.start();
+        OkHttpClient http = new OkHttpClient.Builder().socketFactory(NoDelaySockets.client()).build();
+        GeminiClient client = new GeminiClient(http, "http://127.0.0.1:" + server.getPort(), "test-api");
+        service = new ChatService(client, "model", "Explain the word.", 5);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    private static Stream<BulkRunner.Prompt> words(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new BulkRunner.Prompt("id-" + i, "word-" + i));
+    }
+
+    private static Map<String, JsonNode> results(Path output) throws IOException {
+        Map<String, JsonNode> byId = new HashMap<>();
+        for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            JsonNode node = MAPPER.readTree(line);
+            byId.put(node.get("id").asText(), node);
+        }
+        return byId;
+    }
+
+    @Test
+    public void answersEveryPromptWithBoundedParallelism() throws Exception {
+        Path output = dir.resolve("out.jsonl");
+
+        BulkRunner.Summary summary = new BulkRunner(service, 8).run(words(40), output);
+
+        assertEquals(new BulkRunner.Summary(39, 1, 0), summary);
+        assertEquals(8, maxInFlight.get());
+        Map<String, JsonNode> results = results(output);
+        assertEquals(40, results.size());
+        assertEquals("about word-7", results.get("id-7").get("output").asText());
+        assertTrue(results.get("id-13").has("error"));
+        assertFalse(results.get("id-13").has("output"));
+    }
+
+    @Test
+    public void resumesFromCheckpointSkippingAnsweredPromptsAndDroppingTornLine() throws Exception {
+        Path output = dir.resolve("out.jsonl");
+        Files.writeString(output, "{\"id\":\"id-0\",\"output\":\"about word-0\"}\n"
+                + "{\"id\":\"id-1\",\"error\":\"timeout\"}\n"
+                + "{\"id\":\"id-2\",\"output\":\"about word-2\"}\n"
+                + "{\"id\":\"id-3\",\"outp", StandardCharsets.UTF_8);
+
+        BulkRunner.Summary summary = new BulkRunner(service, 4).run(words(6), output);
+
+        assertEquals(new BulkRunner.Summary(4, 0, 2), summary);
+        assertEquals(4, requests.get());
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(7, lines.size());
+        for (String line : lines) {
+            MAPPER.readTree(line);
+        }
+        Map<String, JsonNode> results = results(output);
+        assertEquals("about word-1", results.get("id-1").get("output").asText());
+        assertEquals("about word-3", results.get("id-3").get("output").asText());
+    }
+
+    @Test
+    public void rerunRetriesOnlyFailedPrompts() throws Exception {
+        Path output = dir.resolve("out.jsonl");
+        new BulkRunner(service, 4).run(words(20), output);
+        requests.set(0);
+
+        BulkRunner.Summary summary = new BulkRunner(service, 4).run(words(20), output);
+
+        assertEquals(new BulkRunner.Summary(0, 1, 19), summary);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void readsPromptsFromJsonLines() {
+        BufferedReader reader = new BufferedReader(new StringReader(
+                "{\"id\": 1, \"prompt\": \"serendipity\"}\n\n{\"id\": \"b\", \"prompt\": \"ephemeral\"}\n"));
+
+        List<BulkRunner.Prompt> prompts = BulkRunner.prompts(reader).toList();
+
+        assertEquals(List.of(new BulkRunner.Prompt("1", "serendipity"), new BulkRunner.Prompt("b", "ephemeral")),
+                prompts);
+    }
+}
@@ -0,0 +1,171 @@
+package integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.application.ChatService;
+import com.patrick.application.SessionManager;
+import com.patrick.infra.metrics.AiMetrics;
+import com.patrick.infra.metrics.MeteredAiClient;
+import com.patrick.infra.resilience.CircuitBreakerAiClient;
+import com.patrick.infra.server.ChatServer;
+import com.patrick.infra.tracing.RingBufferExporter;
+import com.patrick.infra.tracing.Tracer;
+import fake.FailingClient;
+import fake.FakeClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatServerIntegrationTest {
+
+    ChatServer server;
+    HttpClient http;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new ChatServer(new ChatService(new FakeClient(), "model", "sys", 5),
+                new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        http = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.close();
+    }
+
+    @Test
+    public void repliesAndKeepsSeparateHistoryPerSession() throws Exception {
+        HttpResponse<String> first = post("alice", "{\"text\": \"Hello\"}");
+        post("bob", "{\"text\": \"Hi there\"}");
+        post("alice", "{\"text\": \"Again\"}");
+
+        assertEquals(200, first.statusCode());
+        assertEquals("{\"answer\":\"eco: Hello\"}", first.body());
+        assertEquals(2, server.sessionCount());
+
+        String alice = get("alice").body();
+        assertTrue(alice.contains("\"text\":\"Hello\""));
+        assertTrue(alice.contains("\"text\":\"eco: Again\""));
+        assertFalse(alice.contains("Hi there"));
+
+        String bob = get("bob").body();
+        assertTrue(bob.contains("{\"role\":\"user\",\"text\":\"Hi there\"}"));
+        assertTrue(bob.contains("{\"role\":\"model\",\"text\":\"eco: Hi there\"}"));
+    }
+
+    @Test
+    public void deleteForgetsSession() throws Exception {
+        post("alice", "{\"text\": \"Hello\"}");
+
+        HttpResponse<String> deleted = http.send(request("/sessions/alice").DELETE().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(204, deleted.statusCode());
+        assertEquals(0, server.sessionCount());
+        assertEquals(404, get("alice").statusCode());
+    }
+
+    @Test
+    public void rejectsInvalidRequests() throws Exception {
+        assertEquals(400, post("alice", "{}").statusCode());
+        assertEquals(400, post("alice", "not json").statusCode());
+        assertEquals(400, post("alice", "{\"text\": \"   \"}").statusCode());
+        assertEquals(404, http.send(request("/sessions/alice/other").GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(405, http.send(request("/sessions/alice/messages").DELETE().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    public void reportsUpstreamFailureAsBadGateway() throws Exception {
+        server.close();
+        server = new ChatServer(new ChatService(new FailingClient(), "model", "sys", 5),
+                new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+
+        HttpResponse<String> response = post("alice", "{\"text\": \"Hello\"}");
+
+        assertEquals(502, response.statusCode());
+        assertEquals("{\"error\":\"API error\"}", response.body());
+        assertEquals("{\"messages\":[]}", get("alice").body());
+    }
+
+    @Test
+    public void reportsOpenCircuitAsUnavailableWithRetryAfter() throws Exception {
+        server.close();
+        CircuitBreakerAiClient breaker = new CircuitBreakerAiClient(new FailingClient(),
+                new CircuitBreakerAiClient.Settings(4, 2, 0.5, Duration.ofSeconds(10), 1.0, Duration.ofSeconds(30), 1));
+        server = new ChatServer(new ChatService(breaker, "model", "sys", 5),
+                new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+
+        assertEquals(502, post("alice", "{\"text\": \"Hello\"}").statusCode());
+        assertEquals(502, post("alice", "{\"text\": \"Hello\"}").statusCode());
+        HttpResponse<String> response = post("alice", "{\"text\": \"Hello\"}");
+
+        assertEquals(503, response.statusCode());
+        assertEquals("30", response.headers().firstValue("Retry-After").orElseThrow());
+        assertTrue(response.body().contains("Circuit open for model"));
+    }
+
+    @Test
+    public void servesMetricsInPrometheusFormat() throws Exception {
+        server.close();
+        AiMetrics metrics = new AiMetrics();
+        server = new ChatServer(new SessionManager(new ChatService(new MeteredAiClient(new FakeClient(), metrics),
+                "model", "sys", 5), Long.MAX_VALUE, Duration.ZERO), new InetSocketAddress("127.0.0.1", 0), metrics);
+        server.start();
+        post("alice", "{\"text\": \"Hello\"}");
+
+        HttpResponse<String> response = http.send(request("/metrics").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain; version=0.0.4"));
+        assertTrue(response.body().contains("ai_call_duration_seconds_count{model=\"model\",outcome=\"success\"} 1\n"));
+    }
+
+    @Test
+    public void servesTracesAsOtlpJson() throws Exception {
+        server.close();
+        RingBufferExporter traces = new RingBufferExporter(16, "chat");
+        server = new ChatServer(new SessionManager(new ChatService(new FakeClient(), "model", "sys", 5)
+                .withTracer(new Tracer(traces, 1.0)), Long.MAX_VALUE, Duration.ZERO),
+                new InetSocketAddress("127.0.0.1", 0), null, traces);
+        server.start();
+        post("alice", "{\"text\": \"Hello\"}");
+
+        HttpResponse<String> response = http.send(request("/traces").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        JsonNode spans = new ObjectMapper().readTree(response.body()).at("/resourceSpans/0/scopeSpans/0/spans");
+        assertEquals("chat.turn", spans.get(spans.size() - 1).get("name").asText());
+    }
+
+    private HttpResponse<String> post(String session, String json) throws Exception {
+        return http.send(request("/sessions/" + session + "/messages")
+                        .POST(HttpRequest.BodyPublishers.ofString(json)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String session) throws Exception {
+        return http.send(request("/sessions/" + session + "/messages").GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path));
+    }
+}
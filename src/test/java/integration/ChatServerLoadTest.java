@@ -0,0 +1,121 @@
+package integration;
+
+import com.patrick.application.ChatService;
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.GeminiClient;
+import com.patrick.infra.server.ChatServer;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChatServerLoadTest {
+    private static final int SESSIONS = 2000;
+    private static final int OVERLAP = SESSIONS / 2;
+
+    MockWebServer gemini;
+    ChatServer server;
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger peakInFlight = new AtomicInteger();
+    final AtomicInteger platformThreadCalls = new AtomicInteger();
+    // Gemini holds its first OVERLAP answers until that many calls are waiting, so they are all in flight at once.
+    final CountDownLatch overlapping = new CountDownLatch(OVERLAP);
+
+    @BeforeEach
+    public void setup() throws IOException {
+        gemini = new MockWebServer();
+        gemini.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                overlapping.countDown();
+                overlapping.await(60, TimeUnit.SECONDS);
+                return new MockResponse()
+                        .setResponseCode(200)
+                        .setBody("{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"pong\"} ] }} ] }");
+            }
+        });
+        gemini.start();
+
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(SESSIONS, 1, TimeUnit.MINUTES))
+                .callTimeout(Duration.ofSeconds(60))
+                .build();
+        GeminiClient geminiClient = new GeminiClient(httpClient, "http://127.0.0.1:" + gemini.getPort(), "test-api");
+        server = new ChatServer(new ChatService(new Observed(geminiClient), "model", "sys", 5),
+                new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.close();
+        gemini.shutdown();
+    }
+
+    @Test
+    public void servesThousandsOfConcurrentSessionsOnVirtualThreads() throws Exception {
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            HttpRequest request = HttpRequest.newBuilder(
+                            URI.create("http://127.0.0.1:" + server.port() + "/sessions/s" + i + "/messages"))
+                    .timeout(Duration.ofSeconds(60))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"text\": \"ping " + i + "\"}"))
+                    .build();
+            responses.add(http.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> r = response.get(2, TimeUnit.MINUTES);
+            assertEquals(200, r.statusCode(), r.body());
+            assertEquals("{\"answer\":\"pong\"}", r.body());
+        }
+
+        assertEquals(SESSIONS, server.sessionCount());
+        assertEquals(0, platformThreadCalls.get());
+        assertTrue(peakInFlight.get() >= OVERLAP,
+                "expected sessions to overlap, peak in flight was " + peakInFlight.get());
+    }
+
+    private class Observed implements AiClient {
+        private final AiClient delegate;
+
+        Observed(AiClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) throws IOException {
+            if (!Thread.currentThread().isVirtual()) platformThreadCalls.incrementAndGet();
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                return delegate.generate(modelId, history, userInput, systemPrompt);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package integration;
+
+import com.patrick.infra.gemini.GeminiClient;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiClientConcurrencyTest {
+    private static final Pattern REQUEST_ID = Pattern.compile("req-\\d+");
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 4;
+
+    MockWebServer server;
+    GeminiClient client;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                Matcher matcher = REQUEST_ID.matcher(request.getBody().readUtf8());
+                String id = matcher.find() ? matcher.group() : "unknown";
+                if (Integer.parseInt(id.substring(4)) % 2 == 1) {
+                    return new MockResponse().setResponseCode(503).setBody("{\"failed\": \"" + id + "\"}");
+                }
+                return new MockResponse().setResponseCode(200)
+                        .setBody("{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"answer " + id + "\"} ] }} ] }");
+            }
+        });
+        server.start();
+
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .callTimeout(Duration.ofSeconds(10))
+                .build();
+        client = new GeminiClient(httpClient, "http://127.0.0.1:" + server.getPort(), "test-api");
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void sharedInstanceReportsEachCallsOwnFailure() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    for (int c = 0; c < CALLS_PER_THREAD; c++) {
+                        String id = "req-" + (thread * CALLS_PER_THREAD + c);
+                        assertOwnOutcome(id, () -> client.generate("model", List.of(), id, "sys"));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedInstanceAsyncCallsKeepTheirOwnRetryState() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS * CALLS_PER_THREAD; i++) {
+            futures.add(client.generateAsync("model", List.of(), "req-" + i, "sys"));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<String> future = futures.get(i);
+            assertOwnOutcome("req-" + i, () -> {
+                try {
+                    return future.get(1, TimeUnit.MINUTES);
+                } catch (ExecutionException e) {
+                    throw (IOException) e.getCause();
+                }
+            });
+        }
+    }
+
+    private interface Call {
+        String run() throws Exception;
+    }
+
+    private static void assertOwnOutcome(String id, Call call) throws Exception {
+        if (Integer.parseInt(id.substring(4)) % 2 == 1) {
+            IOException ex = assertThrows(IOException.class, call::run);
+            assertEquals("Failed after 3 attempts", ex.getMessage());
+            assertTrue(ex.getCause().getMessage().contains("\"failed\": \"" + id + "\""),
+                    id + " reported " + ex.getCause().getMessage());
+        } else {
+            assertEquals("answer " + id, call.run());
+        }
+    }
+}
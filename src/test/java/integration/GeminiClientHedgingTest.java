@@ -0,0 +1,206 @@
+package integration;
+
+import com.patrick.infra.gemini.GeminiClient;
+import com.patrick.infra.gemini.HedgePolicy;
+import com.patrick.infra.gemini.RetryBudget;
+import com.patrick.infra.gemini.RetryPolicy;
+import fake.NoDelaySockets;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiClientHedgingTest {
+    private static final String OK = "{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"OK\"} ] }} ] }";
+    private static final int WARM_UP = 20;
+
+    MockWebServer server;
+    DelayingDispatcher gemini;
+    OkHttpClient http;
+    String baseUrl;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        gemini = new DelayingDispatcher();
+        server = new MockWebServer();
+        server.setDispatcher(gemini);
+        server.setServerSocketFactory(NoDelaySockets.server());
+        server.start();
+        http = new OkHttpClient.Builder().socketFactory(NoDelaySockets.client()).build();
+        baseUrl = "http://127.0.0.1:" + server.getPort();
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    private GeminiClient hedged(RetryBudget budget) {
+        return new GeminiClient(http, baseUrl, "test-api")
+                .withRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100), null,
+                        Duration.ofSeconds(10)))
+                .withHedging(new HedgePolicy(0.95, Duration.ofMillis(5), 200, budget));
+    }
+
+    private static void warmUp(GeminiClient client) throws IOException {
+        for (int i = 0; i < WARM_UP; i++) {
+            client.generate("flash", List.of(), "Hi", "sys");
+        }
+    }
+
+    private static long[] latenciesMillis(GeminiClient client, int requests) throws IOException {
+        long[] latencies = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            assertEquals("OK", client.generate("flash", List.of(), "Hi", "sys"));
+            latencies[i] = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.ceil(p * sorted.length) - 1];
+    }
+
+    @Test
+    public void cutsTailLatencyWhenSomeResponsesAreSlow() throws Exception {
+        gemini.slowEvery = 25;
+        GeminiClient plain = new GeminiClient(http, baseUrl, "test-api");
+        warmUp(plain);
+        long[] unhedged = latenciesMillis(plain, 120);
+
+        GeminiClient client = hedged(new RetryBudget(0.05, 10));
+        warmUp(client);
+        int before = gemini.requests.get();
+        long[] hedged = latenciesMillis(client, 120);
+        int extra = gemini.requests.get() - before - 120;
+
+        assertTrue(percentile(unhedged, 0.99) >= 300, "p99 without hedging: " + percentile(unhedged, 0.99));
+        assertTrue(percentile(hedged, 0.99) < percentile(unhedged, 0.99) / 2,
+                "p99 with hedging: " + percentile(hedged, 0.99) + ", without: " + percentile(unhedged, 0.99));
+        assertTrue(extra <= 10 + Math.ceil(0.05 * (WARM_UP + 120)), "extra requests: " + extra);
+    }
+
+    @Test
+    public void firstResponseWinsAndTheLoserIsCancelled() throws Exception {
+        GeminiClient client = hedged(new RetryBudget(0.05, 10));
+        warmUp(client);
+        gemini.script(WARM_UP + 1, ok().setHeadersDelay(1, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        assertEquals("OK", client.generate("flash", List.of(), "Hi", "sys"));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 500);
+        assertEquals(WARM_UP + 2, gemini.requests.get());
+        for (int i = 0; i < 100 && http.dispatcher().runningCallsCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, http.dispatcher().runningCallsCount());
+    }
+
+    @Test
+    public void hedgesAsyncCalls() throws Exception {
+        GeminiClient client = hedged(new RetryBudget(0.05, 10));
+        warmUp(client);
+        gemini.script(WARM_UP + 1, ok().setHeadersDelay(1, TimeUnit.SECONDS));
+
+        assertEquals("OK", client.generateAsync("flash", List.of(), "Hi", "sys").get(500, TimeUnit.MILLISECONDS));
+        assertEquals(WARM_UP + 2, gemini.requests.get());
+    }
+
+    @Test
+    public void stopsHedgingWhenTheBudgetIsSpent() throws Exception {
+        GeminiClient client = hedged(new RetryBudget(0.01, 1));
+        warmUp(client);
+        gemini.slowEvery = 1;
+        gemini.slowMillis = 100;
+
+        for (int i = 0; i < 3; i++) {
+            client.generate("flash", List.of(), "Hi", "sys");
+        }
+
+        assertEquals(WARM_UP + 3 + 1, gemini.requests.get());
+    }
+
+    @Test
+    public void recordsLatencyFromTheFirstCopySent() throws Exception {
+        HedgePolicy policy = new HedgePolicy(0.95, Duration.ofMillis(1), 20, new RetryBudget(1.0, 100));
+        GeminiClient client = new GeminiClient(http, baseUrl, "test-api").withHedging(policy);
+        gemini.slowEvery = 1;
+        gemini.slowMillis = 100;
+        warmUp(client);
+        long warmDelay = policy.hedgeDelayMillis("flash");
+        assertTrue(warmDelay >= 100, "hedge delay after warm-up: " + warmDelay);
+
+        gemini.slowEvery = 0;
+        for (int i = 0; i < 20; i++) {
+            gemini.script(gemini.requests.get() + 1, ok().setHeadersDelay(500, TimeUnit.MILLISECONDS));
+            assertEquals("OK", client.generate("flash", List.of(), "Hi", "sys"));
+        }
+
+        // Every hedge won after waiting out the delay; recording only its own time would have collapsed it.
+        long delay = policy.hedgeDelayMillis("flash");
+        assertTrue(delay >= 100, "hedge delay after hedged calls: " + delay);
+    }
+
+    @Test
+    public void retriesOnceBothCopiesHaveFailed() throws Exception {
+        GeminiClient client = hedged(new RetryBudget(0.05, 10));
+        warmUp(client);
+        gemini.script(WARM_UP + 1, new MockResponse().setResponseCode(503).setBody("{}")
+                .setHeadersDelay(300, TimeUnit.MILLISECONDS));
+        gemini.script(WARM_UP + 2, new MockResponse().setResponseCode(503).setBody("{}"));
+
+        assertEquals("OK", client.generate("flash", List.of(), "Hi", "sys"));
+
+        // Both failing copies were sent before the retry; on a loaded machine the retry may be hedged as well,
+        // but nothing else may be.
+        assertTrue(gemini.scripted.isEmpty());
+        int requests = gemini.requests.get();
+        assertTrue(requests >= WARM_UP + 3 && requests <= WARM_UP + 4, "requests: " + requests);
+    }
+
+    private static MockResponse ok() {
+        return new MockResponse().setResponseCode(200).setBody(OK);
+    }
+
+    static final class DelayingDispatcher extends Dispatcher {
+        final Random random = new Random();
+        final AtomicInteger requests = new AtomicInteger();
+        final Map<Integer, MockResponse> scripted = new ConcurrentHashMap<>();
+        volatile int slowEvery;
+        volatile long slowMillis = 300;
+
+        void script(int request, MockResponse response) {
+            scripted.put(request, response);
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            int n = requests.incrementAndGet();
+            MockResponse response = scripted.remove(n);
+            if (response != null) {
+                return response;
+            }
+            long delay = slowEvery > 0 && n % slowEvery == 0 ? slowMillis : 1 + random.nextInt(5);
+            return ok().setHeadersDelay(delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
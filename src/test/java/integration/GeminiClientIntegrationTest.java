@@ -12,7 +12,11 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -258,4 +262,107 @@ public class GeminiClientIntegrationTest {
 
         assertFalse(body.contains("systemInstruction"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void streamsChunksAsTheyArrive() throws Exception {
+        String events = "data: { \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"Hel\"} ] }} ] }\r\n\r\n"
+                + "data: { \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"lo \"} ] }} ] }\r\n\r\n"
+                + "data: { \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"World!\"} ] }} ] }\r\n\r\n";
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(events)
+                .addHeader("Content-Type", "text/event-stream")
+        );
+
+        List<String> chunks = new ArrayList<>();
+        String result = client.generateStream("gemini-2.5-flash", List.of(), "input", "sys", chunks::add);
+
+        assertEquals(List.of("Hel", "lo ", "World!"), chunks);
+        assertEquals("Hello World!", result);
+        var recorded = server.takeRequest();
+        assertTrue(recorded.getPath().contains(":streamGenerateContent?alt=sse&key=test-api"));
+    }
+
+    @Test
+    public void streamWithoutCandidatesReportsPlaceholder() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("data: {}\n\n")
+        );
+
+        List<String> chunks = new ArrayList<>();
+        String result = client.generateStream("model", List.of(), "input", "sys", chunks::add);
+
+        assertEquals("[no candidates]", result);
+        assertEquals(List.of("[no candidates]"), chunks);
+    }
+
+    @Test
+    public void streamRetriesOn503BeforeFirstChunk() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("data: { \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"OK\"} ] }} ] }\n\n")
+        );
+
+        List<String> chunks = new ArrayList<>();
+        String result = client.generateStream("model", List.of(), "input", "sys", chunks::add);
+
+        assertEquals("OK", result);
+        assertEquals(List.of("OK"), chunks);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void asyncCompletesWithParsedText() throws Exception {
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"Async!\"} ] }} ] }")
+        );
+
+        CompletableFuture<String> future = client.generateAsync("gemini-2.5-flash", List.of(), "input", "sys");
+
+        assertEquals("Async!", future.get(5, TimeUnit.SECONDS));
+        assertTrue(server.takeRequest().getPath().contains(":generateContent?key=test-api"));
+    }
+
+    @Test
+    public void asyncRetriesOn500() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("{}"));
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody("{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"OK\"} ] }} ] }")
+        );
+
+        String result = client.generateAsync("model", List.of(), "input", "sys").get(5, TimeUnit.SECONDS);
+
+        assertEquals("OK", result);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void asyncFailsFastOn401() {
+        server.enqueue(new MockResponse().setResponseCode(401).setBody("{\"error\": \"Unauthorized\"}"));
+
+        CompletableFuture<String> future = client.generateAsync("model", List.of(), "input", "sys");
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, ex.getCause());
+        assertTrue(ex.getCause().getMessage().contains("Non-retryable status code: 401"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void asyncGivesUpAfterMaxRetries() {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503).setBody("{\"attempt\": " + i + "}"));
+        }
+
+        CompletableFuture<String> future = client.generateAsync("model", List.of(), "input", "sys");
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals("Failed after 3 attempts", ex.getCause().getMessage());
+        assertTrue(ex.getCause().getCause().getMessage().contains("\"attempt\": 2"));
+        assertEquals(3, server.getRequestCount());
+    }
+}
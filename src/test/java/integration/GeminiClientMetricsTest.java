@@ -0,0 +1,95 @@
+package integration;
+
+import com.patrick.infra.gemini.GeminiClient;
+import com.patrick.infra.gemini.RetryPolicy;
+import com.patrick.infra.metrics.AiMetrics;
+import com.patrick.infra.metrics.ModelMetrics;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiClientMetricsTest {
+    private static final String OK = "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"OK\"}]}}],"
+            + "\"usageMetadata\":{\"promptTokenCount\":10,\"candidatesTokenCount\":2,\"totalTokenCount\":12}}";
+
+    MockWebServer server;
+    AiMetrics metrics;
+    GeminiClient client;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        metrics = new AiMetrics();
+        client = new GeminiClient(new OkHttpClient(), "http://127.0.0.1:" + server.getPort(), "test-api")
+                .withRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100), null,
+                        Duration.ofSeconds(10)))
+                .withCallListener(metrics);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void recordsRetriesStatusesBytesAndTokens() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+        server.enqueue(new MockResponse().setBody(OK));
+
+        assertEquals("OK", client.generate("flash", List.of(), "Hi", "sys"));
+
+        ModelMetrics flash = metrics.model("flash");
+        assertEquals(3, flash.attempts());
+        assertEquals(2, flash.getRetries());
+        assertEquals(1, flash.getRateLimitedResponses());
+        assertEquals(1, flash.getServerErrorResponses());
+        assertEquals(1, flash.responses2xx());
+        assertEquals(3, flash.timeToFirstByte().count());
+        assertEquals(3 * server.takeRequest().getBodySize(), flash.getRequestBytes());
+        assertEquals(OK.length(), flash.getResponseBytes());
+        assertEquals(10, flash.getPromptTokens());
+        assertEquals(2, flash.getCandidatesTokens());
+    }
+
+    @Test
+    public void streamingKeepsTheFinalRunningTotals() throws IOException {
+        String events = "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"Hel\"}]}}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":10,\"candidatesTokenCount\":1}}\n\n"
+                + "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"lo\"}]}}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":10,\"candidatesTokenCount\":2}}\n\n";
+        server.enqueue(new MockResponse().setBody(events).addHeader("Content-Type", "text/event-stream"));
+
+        List<String> chunks = new ArrayList<>();
+        assertEquals("Hello", client.generateStream("flash", List.of(), "Hi", "sys", chunks::add));
+
+        ModelMetrics flash = metrics.model("flash");
+        assertEquals(10, flash.getPromptTokens());
+        assertEquals(2, flash.getCandidatesTokens());
+        assertEquals(events.length(), flash.getResponseBytes());
+    }
+
+    @Test
+    public void asyncCallsAreRecordedToo() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("{}"));
+        server.enqueue(new MockResponse().setBody(OK));
+
+        assertEquals("OK", client.generateAsync("flash", List.of(), "Hi", "sys").get());
+
+        ModelMetrics flash = metrics.model("flash");
+        assertEquals(1, flash.getRetries());
+        assertEquals(1, flash.getServerErrorResponses());
+        assertEquals(12, flash.getPromptTokens() + flash.getCandidatesTokens());
+    }
+}
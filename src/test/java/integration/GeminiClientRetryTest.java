@@ -0,0 +1,134 @@
+package integration;
+
+import com.patrick.infra.gemini.GeminiClient;
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.gemini.RetryBudget;
+import com.patrick.infra.gemini.RetryPolicy;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiClientRetryTest {
+    private static final String OK = "{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"OK\"} ] }} ] }";
+
+    MockWebServer server;
+    GeminiClient client;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        client = new GeminiClient(new OkHttpClient(), "http://127.0.0.1:" + server.getPort(), "test-api")
+                .withRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100), null,
+                        Duration.ofSeconds(10)));
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() {
+        server.enqueue(new MockResponse().setResponseCode(401).setBody("{\"error\": \"Unauthorized\"}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(OK));
+
+        HttpStatusException ex = assertThrows(HttpStatusException.class,
+                () -> client.generate("model", List.of(), "Hi", "sys"));
+
+        assertEquals(401, ex.statusCode());
+        assertTrue(ex.getMessage().startsWith("Non-retryable status code: 401"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void doesNotRetryNotImplemented() {
+        server.enqueue(new MockResponse().setResponseCode(501).setBody("{}"));
+
+        assertThrows(HttpStatusException.class, () -> client.generate("model", List.of(), "Hi", "sys"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void honorsRetryAfterHeader() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1").setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(OK));
+
+        long start = System.nanoTime();
+        assertEquals("OK", client.generate("model", List.of(), "Hi", "sys"));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 1000);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void honorsRetryDelayFromErrorBody() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setBody("{\"error\": {\"code\": 429, \"details\": "
+                + "[{\"@type\": \"type.googleapis.com/google.rpc.RetryInfo\", \"retryDelay\": \"0.4s\"}]}}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(OK));
+
+        long start = System.nanoTime();
+        String answer = client.generateAsync("model", List.of(), "Hi", "sys").get(5, TimeUnit.SECONDS);
+
+        assertEquals("OK", answer);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 400);
+    }
+
+    @Test
+    public void givesUpWhenServerDelayExceedsDeadline() {
+        GeminiClient bounded = client.withRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100),
+                null, Duration.ofSeconds(2)));
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "30").setBody("{}"));
+
+        long start = System.nanoTime();
+        IOException ex = assertThrows(IOException.class, () -> bounded.generate("model", List.of(), "Hi", "sys"));
+
+        assertEquals("Retry deadline exceeded after 1 attempts", ex.getMessage());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void retriesAttemptThatExceedsItsTimeout() throws Exception {
+        GeminiClient bounded = client.withRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100),
+                Duration.ofMillis(300), Duration.ofSeconds(10)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(OK).setHeadersDelay(2, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(OK));
+
+        long start = System.nanoTime();
+        assertEquals("OK", bounded.generate("model", List.of(), "Hi", "sys"));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1500);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void sharedBudgetStopsRetryStormAcrossRequests() {
+        GeminiClient budgeted = client.withRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100),
+                null, Duration.ofSeconds(10)).withBudget(new RetryBudget(0.1, 1)));
+        for (int i = 0; i < 10; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+        }
+
+        IOException first = assertThrows(IOException.class, () -> budgeted.generate("model", List.of(), "Hi", "sys"));
+        IOException second = assertThrows(IOException.class, () -> budgeted.generate("model", List.of(), "Hi", "sys"));
+        ExecutionException third = assertThrows(ExecutionException.class,
+                () -> budgeted.generateAsync("model", List.of(), "Hi", "sys").get(5, TimeUnit.SECONDS));
+
+        assertEquals("Retry budget exhausted after 2 attempts", first.getMessage());
+        assertEquals("Retry budget exhausted after 1 attempts", second.getMessage());
+        assertEquals("Retry budget exhausted after 1 attempts", third.getCause().getMessage());
+        assertEquals(4, server.getRequestCount());
+    }
+}
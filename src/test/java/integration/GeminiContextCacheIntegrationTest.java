@@ -0,0 +1,269 @@
+package integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.gemini.GeminiClient;
+import com.patrick.infra.gemini.GeminiContextCache;
+import fake.MutableClock;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiContextCacheIntegrationTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String RUBRIC = "You are an English tutor. Rubric: ...";
+
+    MockWebServer server;
+    MutableClock clock;
+    FakeGemini gemini;
+    GeminiClient client;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        clock = new MutableClock();
+        gemini = new FakeGemini(clock);
+        server = new MockWebServer();
+        server.setDispatcher(gemini);
+        server.start();
+
+        OkHttpClient http = new OkHttpClient();
+        String base = "http://127.0.0.1:" + server.getPort();
+        GeminiContextCache cache = new GeminiContextCache(http, base, "test-api", Duration.ofMinutes(10),
+                Duration.ofMinutes(1), clock);
+        client = new GeminiClient(http, base, "test-api").withContextCache(cache);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void createsOnceAndSendsPromptByReference() throws Exception {
+        assertEquals("ok", client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC));
+        assertEquals("ok", client.generate("gemini-2.5-flash", List.of(new Message(Role.USER, "Hi")), "Again", RUBRIC));
+
+        assertEquals(1, gemini.creates.get());
+        JsonNode create = gemini.createBodies.get(0);
+        assertEquals("models/gemini-2.5-flash", create.get("model").asText());
+        assertEquals("600s", create.get("ttl").asText());
+        assertEquals(RUBRIC, create.at("/systemInstruction/parts/0/text").asText());
+        for (JsonNode body : gemini.generateBodies) {
+            assertEquals("cachedContents/c1", body.get("cachedContent").asText());
+            assertNull(body.get("systemInstruction"));
+        }
+    }
+
+    @Test
+    public void refreshesTtlBeforeExpiryAndRecreatesAfterIt() throws Exception {
+        client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+
+        clock.advance(Duration.ofMinutes(8));
+        client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+        assertEquals(0, gemini.refreshes.get());
+
+        clock.advance(Duration.ofSeconds(90));
+        client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+        assertEquals(1, gemini.refreshes.get());
+        assertEquals(1, gemini.creates.get());
+        assertEquals("cachedContents/c1", gemini.generateBodies.get(2).get("cachedContent").asText());
+
+        clock.advance(Duration.ofMinutes(30));
+        client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+        assertEquals(2, gemini.creates.get());
+        assertEquals("cachedContents/c2", gemini.generateBodies.get(3).get("cachedContent").asText());
+    }
+
+    @Test
+    public void sendsInlineWhileCreateIsFailingAndBacksOff() throws Exception {
+        gemini.rejectCreates = true;
+
+        assertEquals("ok", client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC));
+        assertEquals("ok", client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC));
+
+        assertEquals(1, gemini.creates.get());
+        for (JsonNode body : gemini.generateBodies) {
+            assertNull(body.get("cachedContent"));
+            assertEquals(RUBRIC, body.at("/systemInstruction/parts/0/text").asText());
+        }
+
+        gemini.rejectCreates = false;
+        clock.advance(Duration.ofMinutes(2));
+        client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+        assertEquals(2, gemini.creates.get());
+        assertEquals("cachedContents/c2", gemini.generateBodies.get(2).get("cachedContent").asText());
+    }
+
+    @Test
+    public void fallsBackInlineWhenCachedContentIsRejected() throws Exception {
+        client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+        gemini.caches.clear();
+
+        assertEquals("ok", client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC));
+
+        JsonNode last = gemini.generateBodies.get(gemini.generateBodies.size() - 1);
+        assertNull(last.get("cachedContent"));
+        assertEquals(RUBRIC, last.at("/systemInstruction/parts/0/text").asText());
+
+        client.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+        assertEquals(1, gemini.creates.get());
+    }
+
+    @Test
+    public void asyncCallsCreateOnTheCacheExecutorOncePerPrompt() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        OkHttpClient http = new OkHttpClient();
+        String base = "http://127.0.0.1:" + server.getPort();
+        GeminiContextCache cache = new GeminiContextCache(http, base, "test-api", Duration.ofMinutes(10),
+                Duration.ofMinutes(1), clock, tasks::add);
+        GeminiClient async = new GeminiClient(http, base, "test-api").withContextCache(cache);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("ok", async.generateAsync("gemini-2.5-flash", List.of(), "Hi", RUBRIC).get());
+        }
+        assertEquals(1, tasks.size());
+        assertEquals(0, gemini.creates.get());
+
+        tasks.get(0).run();
+        assertEquals(1, gemini.creates.get());
+        assertEquals("ok", async.generateAsync("gemini-2.5-flash", List.of(), "Hi", RUBRIC).get());
+        assertEquals("cachedContents/c1", gemini.generateBodies.get(3).get("cachedContent").asText());
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void promptsWithoutSystemInstructionSkipTheCache() throws Exception {
+        client.generate("gemini-2.5-flash", List.of(), "Hi", " ");
+
+        assertEquals(0, gemini.creates.get());
+        assertNull(gemini.generateBodies.get(0).get("cachedContent"));
+    }
+
+    @Test
+    public void promptsTheCacheDoesNotAcceptGoInline() throws Exception {
+        OkHttpClient http = new OkHttpClient();
+        String base = "http://127.0.0.1:" + server.getPort();
+        GeminiContextCache cache = new GeminiContextCache(http, base, "test-api", Duration.ofMinutes(10),
+                Duration.ofMinutes(1), clock, Runnable::run, 4, RUBRIC::equals);
+        GeminiClient stable = new GeminiClient(http, base, "test-api").withContextCache(cache);
+        String summarized = RUBRIC + "\n\nSummary of the earlier conversation:\nThey asked about tenses.";
+
+        stable.generate("gemini-2.5-flash", List.of(), "Hi", summarized);
+        stable.generate("gemini-2.5-flash", List.of(), "Hi", RUBRIC);
+
+        assertEquals(1, gemini.creates.get());
+        assertEquals(RUBRIC, gemini.createBodies.get(0).at("/systemInstruction/parts/0/text").asText());
+        assertNull(gemini.generateBodies.get(0).get("cachedContent"));
+        assertEquals(summarized, gemini.generateBodies.get(0).at("/systemInstruction/parts/0/text").asText());
+        assertEquals("cachedContents/c1", gemini.generateBodies.get(1).get("cachedContent").asText());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPromptsAndDeletesThem() throws Exception {
+        OkHttpClient http = new OkHttpClient();
+        String base = "http://127.0.0.1:" + server.getPort();
+        GeminiContextCache cache = new GeminiContextCache(http, base, "test-api", Duration.ofMinutes(10),
+                Duration.ofMinutes(1), clock, Runnable::run, 2, prompt -> true);
+        GeminiClient bounded = new GeminiClient(http, base, "test-api").withContextCache(cache);
+
+        bounded.generate("gemini-2.5-flash", List.of(), "Hi", "first " + RUBRIC);
+        bounded.generate("gemini-2.5-flash", List.of(), "Hi", "second " + RUBRIC);
+        bounded.generate("gemini-2.5-flash", List.of(), "Hi", "first " + RUBRIC);
+        bounded.generate("gemini-2.5-flash", List.of(), "Hi", "third " + RUBRIC);
+
+        assertEquals(List.of("cachedContents/c2"), gemini.deleted);
+        assertEquals(Set.of("cachedContents/c1", "cachedContents/c3"), gemini.caches.keySet());
+        assertEquals("cachedContents/c1", cache.current("gemini-2.5-flash", "first " + RUBRIC));
+        assertNull(cache.current("gemini-2.5-flash", "second " + RUBRIC));
+
+        bounded.generate("gemini-2.5-flash", List.of(), "Hi", "second " + RUBRIC);
+        assertEquals(4, gemini.creates.get());
+        assertEquals(List.of("cachedContents/c2", "cachedContents/c3"), gemini.deleted);
+    }
+
+    static final class FakeGemini extends Dispatcher {
+        final MutableClock clock;
+        final Map<String, Instant> caches = new ConcurrentHashMap<>();
+        final List<JsonNode> createBodies = new CopyOnWriteArrayList<>();
+        final List<JsonNode> generateBodies = new CopyOnWriteArrayList<>();
+        final AtomicInteger creates = new AtomicInteger();
+        final AtomicInteger refreshes = new AtomicInteger();
+        final List<String> deleted = new CopyOnWriteArrayList<>();
+        volatile boolean rejectCreates;
+
+        FakeGemini(MutableClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            try {
+                String path = request.getPath();
+                JsonNode body = MAPPER.readTree(request.getBody().readUtf8());
+                if (path.startsWith("/v1beta/cachedContents?")) {
+                    int n = creates.incrementAndGet();
+                    createBodies.add(body);
+                    if (rejectCreates) {
+                        return new MockResponse().setResponseCode(400).setBody("{\"error\":\"too few tokens\"}");
+                    }
+                    return cache("cachedContents/c" + n, body);
+                }
+                if (path.startsWith("/v1beta/cachedContents/") && request.getMethod().equals("DELETE")) {
+                    String name = path.substring("/v1beta/".length(), path.indexOf('?'));
+                    deleted.add(name);
+                    return new MockResponse().setResponseCode(caches.remove(name) != null ? 200 : 404).setBody("{}");
+                }
+                if (path.startsWith("/v1beta/cachedContents/") && request.getMethod().equals("PATCH")) {
+                    refreshes.incrementAndGet();
+                    String name = path.substring("/v1beta/".length(), path.indexOf('?'));
+                    if (!live(name)) {
+                        return new MockResponse().setResponseCode(404).setBody("{}");
+                    }
+                    return cache(name, body);
+                }
+                generateBodies.add(body);
+                JsonNode cached = body.get("cachedContent");
+                if (cached != null && !live(cached.asText())) {
+                    return new MockResponse().setResponseCode(403).setBody("{\"error\":\"CachedContent not found\"}");
+                }
+                return new MockResponse().setResponseCode(200)
+                        .setBody("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"ok\"}]}}]}");
+            } catch (IOException e) {
+                return new MockResponse().setResponseCode(500);
+            }
+        }
+
+        private boolean live(String name) {
+            Instant expireAt = caches.get(name);
+            return expireAt != null && clock.instant().isBefore(expireAt);
+        }
+
+        private MockResponse cache(String name, JsonNode body) {
+            String ttl = body.get("ttl").asText();
+            Instant expireAt = clock.instant().plusSeconds(Long.parseLong(ttl.substring(0, ttl.length() - 1)));
+            caches.put(name, expireAt);
+            return new MockResponse().setResponseCode(200)
+                    .setBody("{\"name\":\"" + name + "\",\"expireTime\":\"" + expireAt + "\"}");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package integration;
+
+import com.patrick.infra.gemini.GeminiEmbedder;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiEmbedderIntegrationTest {
+
+    MockWebServer server;
+    GeminiEmbedder embedder;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        embedder = new GeminiEmbedder(new OkHttpClient(), "http://127.0.0.1:" + server.getPort(),
+                "test-api", "text-embedding-004", 2);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void parsesAndNormalizesValues() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"embedding\": {\"values\": [3.0, 4.0]}}"));
+
+        float[] vector = embedder.embed("since or for");
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, vector, 1e-6f);
+        var request = server.takeRequest();
+        assertTrue(request.getPath().contains("/v1beta/models/text-embedding-004:embedContent?key=test-api"));
+        String body = request.getBody().readUtf8();
+        assertTrue(body.contains("\"text\":\"since or for\""));
+        assertTrue(body.contains("\"outputDimensionality\":2"));
+    }
+
+    @Test
+    public void failsOnErrorStatusOrWrongDimensions() {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"embedding\": {\"values\": [1.0]}}"));
+
+        IOException status = assertThrows(IOException.class, () -> embedder.embed("x"));
+        assertTrue(status.getMessage().contains("500"));
+        assertThrows(IOException.class, () -> embedder.embed("x"));
+    }
+}
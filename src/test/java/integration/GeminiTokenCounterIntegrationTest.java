@@ -0,0 +1,54 @@
+package integration;
+
+import com.patrick.application.ApproximateTokenEstimator;
+import com.patrick.infra.gemini.GeminiTokenCounter;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiTokenCounterIntegrationTest {
+
+    MockWebServer server;
+    GeminiTokenCounter counter;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        counter = new GeminiTokenCounter(new OkHttpClient(), "http://127.0.0.1:" + server.getPort(),
+                "test-api", "gemini-2.5-flash", ApproximateTokenEstimator.INSTANCE);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void returnsTotalTokens() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"totalTokens\": 42}"));
+
+        assertEquals(42, counter.estimate("How are you?"));
+        var request = server.takeRequest();
+        assertTrue(request.getPath().contains("/v1beta/models/gemini-2.5-flash:countTokens?key=test-api"));
+        assertTrue(request.getBody().readUtf8().contains("\"text\":\"How are you?\""));
+    }
+
+    @Test
+    public void fallsBackToEstimateOnFailure() {
+        server.enqueue(new MockResponse().setResponseCode(500).setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{}"));
+
+        assertEquals(4, counter.estimate("Hello, you"));
+        assertEquals(4, counter.estimate("Hello, you"));
+        assertEquals(0, counter.estimate(""));
+        assertEquals(2, server.getRequestCount());
+    }
+}
@@ -0,0 +1,139 @@
+package integration;
+
+import com.patrick.infra.config.HttpTransport;
+import com.patrick.infra.gemini.GeminiClient;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpTransportIntegrationTest {
+    private static final String OK = "{ \"candidates\": [ { \"content\": { \"parts\": [ {\"text\": \"OK\"} ] }} ] }";
+
+    MockWebServer server;
+    String baseUrl;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getPort();
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    private static HttpTransport.Settings settings(int maxRequestsPerHost, long gzipMinBytes) {
+        return new HttpTransport.Settings(4, Duration.ofMinutes(1), 64, maxRequestsPerHost, Duration.ofSeconds(2),
+                Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(10), gzipMinBytes);
+    }
+
+    private static String decoded(RecordedRequest request) throws IOException {
+        Buffer body = request.getBody();
+        if (!"gzip".equals(request.getHeader("Content-Encoding"))) {
+            return body.readUtf8();
+        }
+        Buffer plain = new Buffer();
+        try (GzipSource gzip = new GzipSource(body)) {
+            while (gzip.read(plain, 8192) != -1) {
+                // drain
+            }
+        }
+        return plain.readUtf8();
+    }
+
+    @Test
+    public void gzipsLargeRequestBodiesOnly() throws Exception {
+        server.enqueue(new MockResponse().setBody(OK));
+        server.enqueue(new MockResponse().setBody(OK));
+        GeminiClient client = new GeminiClient(HttpTransport.client(settings(5, 1024)), baseUrl, "test-api");
+        String large = "explain ".repeat(1000);
+
+        client.generate("model", List.of(), "hi", "sys");
+        client.generate("model", List.of(), large, "sys");
+
+        RecordedRequest small = server.takeRequest();
+        assertNull(small.getHeader("Content-Encoding"));
+        assertTrue(decoded(small).contains("\"hi\""));
+        RecordedRequest compressed = server.takeRequest();
+        assertEquals("gzip", compressed.getHeader("Content-Encoding"));
+        assertTrue(compressed.getBodySize() < large.length() / 10);
+        assertTrue(decoded(compressed).contains(large));
+    }
+
+    @Test
+    public void dispatcherAllowsMoreThanFiveAsyncCallsPerHost() throws Exception {
+        int calls = 12;
+        CountDownLatch arrived = new CountDownLatch(calls);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                arrived.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                inFlight.decrementAndGet();
+                return new MockResponse().setBody(OK);
+            }
+        });
+        GeminiClient client = new GeminiClient(HttpTransport.client(settings(calls, 0)), baseUrl, "test-api");
+
+        List<CompletableFuture<String>> answers = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            answers.add(client.generateAsync("model", List.of(), "q" + i, "sys"));
+        }
+        boolean allArrived = arrived.await(5, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertTrue(allArrived);
+        assertEquals(calls, maxInFlight.get());
+        for (CompletableFuture<String> answer : answers) {
+            assertEquals("OK", answer.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void prewarmedConnectionIsReusedByFirstCall() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setBody(OK));
+        OkHttpClient http = HttpTransport.client(settings(5, 0));
+
+        HttpTransport.prewarm(http, baseUrl, 1).get(5, TimeUnit.SECONDS);
+        new GeminiClient(http, baseUrl, "test-api").generate("model", List.of(), "hi", "sys");
+
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        RecordedRequest first = server.takeRequest();
+        assertEquals("POST", first.getMethod());
+        assertEquals(1, first.getSequenceNumber(), "second exchange on the pre-warmed connection");
+        assertEquals(1, http.connectionPool().connectionCount());
+    }
+
+    @Test
+    public void prewarmCompletesWhenHostIsUnreachable() throws Exception {
+        server.shutdown();
+        OkHttpClient http = HttpTransport.client(settings(5, 0));
+
+        HttpTransport.prewarm(http, baseUrl, 2).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,118 @@
+package integration;
+
+import com.patrick.application.ChatService;
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.GeminiClient;
+import com.patrick.infra.gemini.RetryPolicy;
+import com.patrick.infra.tracing.RingBufferExporter;
+import com.patrick.infra.tracing.Span;
+import com.patrick.infra.tracing.Tracer;
+import com.patrick.infra.tracing.TracingEventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TracingIntegrationTest {
+    private static final String OK = "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"OK\"}]}}],"
+            + "\"usageMetadata\":{\"promptTokenCount\":10,\"candidatesTokenCount\":2,\"totalTokenCount\":12}}";
+
+    MockWebServer server;
+    RingBufferExporter exporter;
+    ChatService service;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        exporter = new RingBufferExporter(64, "test");
+        Tracer tracer = new Tracer(exporter, 1.0);
+        OkHttpClient http = new OkHttpClient.Builder()
+                .eventListenerFactory(TracingEventListener.factory(tracer))
+                .build();
+        GeminiClient client = new GeminiClient(http, "http://127.0.0.1:" + server.getPort(), "secret-key")
+                .withRetryPolicy(new RetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(100), null,
+                        Duration.ofSeconds(10)))
+                .withTracer(tracer);
+        service = new ChatService(client, "flash", "sys", 5).withTracer(tracer);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void tracesEveryPhaseOfATurn() throws IOException {
+        server.enqueue(new MockResponse().setBody(OK));
+
+        assertEquals("OK", service.reply(new ArrayList<>(), "Hi"));
+
+        Map<String, Span> spans = byName(exporter.spans());
+        assertTrue(spans.keySet().containsAll(List.of("chat.turn", "chat.trim", "gemini.generate",
+                "gemini.serialize", "gemini.parse", "http.call", "http.connect", "http.request", "http.wait",
+                "http.response")), spans.keySet().toString());
+        assertParent(spans, "chat.turn", "chat.trim", "gemini.generate");
+        assertParent(spans, "gemini.generate", "gemini.serialize", "gemini.parse", "http.call");
+        assertParent(spans, "http.call", "http.connect", "http.request", "http.wait", "http.response");
+        String traceId = spans.get("chat.turn").traceId();
+        assertTrue(spans.values().stream().allMatch(span -> span.traceId().equals(traceId)));
+
+        Map<String, Object> call = spans.get("http.call").attributes();
+        assertEquals("POST", call.get("http.request.method"));
+        assertEquals("/v1beta/models/flash:generateContent", call.get("url.path"));
+        assertEquals(200L, call.get("http.response.status_code"));
+        assertEquals("false", call.get("http.connection.reused"));
+        assertEquals(10L, spans.get("gemini.parse").attributes().get("gen_ai.usage.input_tokens"));
+        assertEquals(2L, spans.get("gemini.parse").attributes().get("gen_ai.usage.output_tokens"));
+        assertFalse(exporter.toOtlpJson().contains("secret-key"));
+    }
+
+    @Test
+    public void marksFailedAttemptsAndReusedConnections() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("{}"));
+        server.enqueue(new MockResponse().setBody(OK));
+
+        assertEquals("OK", service.reply(new ArrayList<>(), "Hi"));
+
+        List<Span> calls = exporter.spans().stream().filter(span -> span.name().equals("http.call")).toList();
+        assertEquals(2, calls.size());
+        assertEquals(503L, calls.get(0).attributes().get("http.response.status_code"));
+        assertEquals("true", calls.get(1).attributes().get("http.connection.reused"));
+        assertEquals(calls.get(0).parentSpanId(), calls.get(1).parentSpanId());
+    }
+
+    @Test
+    public void recordsTheErrorOfAFailedTurn() {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("{\"error\":\"bad\"}"));
+
+        assertThrows(IOException.class, () -> service.reply(new ArrayList<Message>(), "Hi"));
+
+        Map<String, Span> spans = byName(exporter.spans());
+        assertNotNull(spans.get("chat.turn").error());
+        assertNotNull(spans.get("gemini.generate").error());
+        assertNull(spans.get("http.call").error());
+    }
+
+    private static Map<String, Span> byName(List<Span> spans) {
+        return spans.stream().collect(Collectors.toMap(Span::name, Function.identity(), (first, second) -> first));
+    }
+
+    private static void assertParent(Map<String, Span> spans, String parent, String... children) {
+        for (String child : children) {
+            assertEquals(spans.get(parent).spanId(), spans.get(child).parentSpanId(), child);
+        }
+    }
+}
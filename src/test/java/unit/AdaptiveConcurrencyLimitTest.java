@@ -0,0 +1,101 @@
+package unit;
+
+import com.patrick.infra.resilience.AdaptiveConcurrencyLimit;
+import com.patrick.infra.resilience.AdaptiveConcurrencyLimit.Outcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimitTest {
+    private static final long MS = 1_000_000;
+
+    private static void saturate(AdaptiveConcurrencyLimit limit) {
+        while (limit.inFlight() < limit.limit()) {
+            assertTrue(limit.acquire().isDone());
+        }
+    }
+
+    @Test
+    public void growsAdditivelyWhileTheLimitIsInUse() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 4, 2.0);
+
+        for (int i = 0; i < 4; i++) {
+            saturate(limit);
+            limit.release(100 * MS, Outcome.SUCCESS);
+        }
+        assertEquals(3, limit.limit());
+
+        for (int i = 0; i < 100; i++) {
+            saturate(limit);
+            limit.release(100 * MS, Outcome.SUCCESS);
+        }
+        assertEquals(4, limit.limit());
+    }
+
+    @Test
+    public void doesNotGrowWhileIdle() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 64, 2.0);
+
+        for (int i = 0; i < 100; i++) {
+            limit.acquire();
+            limit.release(100 * MS, Outcome.SUCCESS);
+        }
+
+        assertEquals(8, limit.limit());
+    }
+
+    @Test
+    public void halvesOnDropsOncePerWindow() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 64, 2.0);
+        saturate(limit);
+
+        limit.release(0, Outcome.DROPPED);
+        assertEquals(4, limit.limit());
+        limit.release(0, Outcome.DROPPED);
+        limit.release(0, Outcome.DROPPED);
+        assertEquals(4, limit.limit());
+
+        limit.release(0, Outcome.DROPPED);
+        limit.release(0, Outcome.DROPPED);
+        assertEquals(2, limit.limit());
+    }
+
+    @Test
+    public void shrinksWhenLatencyClimbs() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 64, 2.0);
+        for (int i = 0; i < 20; i++) {
+            limit.acquire();
+            limit.release(100 * MS, Outcome.SUCCESS);
+        }
+        assertEquals(10, limit.limit());
+
+        for (int i = 0; i < 5; i++) {
+            limit.acquire();
+            limit.release(1000 * MS, Outcome.SUCCESS);
+        }
+
+        assertEquals(9, limit.limit());
+    }
+
+    @Test
+    public void grantsWaitersInOrderAndSkipsCancelledOnes() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 2.0);
+        assertTrue(limit.acquire().isDone());
+        CompletableFuture<Void> gaveUp = limit.acquire();
+        CompletableFuture<Void> first = limit.acquire();
+        CompletableFuture<Void> second = limit.acquire();
+        assertFalse(first.isDone());
+        assertTrue(gaveUp.cancel(false));
+
+        limit.release(0, Outcome.IGNORED);
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, limit.inFlight());
+
+        limit.release(0, Outcome.IGNORED);
+        assertTrue(second.isDone());
+        assertEquals(0, limit.waiting());
+    }
+}
@@ -0,0 +1,115 @@
+package unit;
+
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.metrics.AiMetrics;
+import com.patrick.infra.metrics.LatencyHistogram;
+import com.patrick.infra.metrics.MeteredAiClient;
+import com.patrick.infra.resilience.CircuitOpenException;
+import fake.FailingClient;
+import fake.FakeClient;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AiMetricsTest {
+
+    @Test
+    public void histogramQuantilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500, TimeUnit.NANOSECONDS.toMillis(histogram.valueAtQuantile(0.5)), 500 * 0.04);
+        assertEquals(990, TimeUnit.NANOSECONDS.toMillis(histogram.valueAtQuantile(0.99)), 990 * 0.04);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), histogram.valueAtQuantile(1.0));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500_500), histogram.sumNanos());
+        assertEquals(0, new LatencyHistogram().valueAtQuantile(0.99));
+    }
+
+    @Test
+    public void histogramCountsEveryConcurrentRecord() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i * 1000L);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(80_000, histogram.count());
+        assertEquals(9_999_000, histogram.maxNanos());
+    }
+
+    @Test
+    public void classifiesOutcomesThroughWrappingExceptions() {
+        assertEquals(AiMetrics.Outcome.SUCCESS, AiMetrics.Outcome.of(null));
+        assertEquals(AiMetrics.Outcome.RATE_LIMITED, AiMetrics.Outcome.of(
+                new IOException("Failed after 3 attempts", new HttpStatusException(429, "", true, null))));
+        assertEquals(AiMetrics.Outcome.SERVER_ERROR, AiMetrics.Outcome.of(new HttpStatusException(503, "", true, null)));
+        assertEquals(AiMetrics.Outcome.CLIENT_ERROR, AiMetrics.Outcome.of(new HttpStatusException(400, "", false, null)));
+        assertEquals(AiMetrics.Outcome.REJECTED, AiMetrics.Outcome.of(new CircuitOpenException("m", Duration.ZERO)));
+        assertEquals(AiMetrics.Outcome.FAILED, AiMetrics.Outcome.of(new IOException("reset")));
+    }
+
+    @Test
+    public void meteredClientRecordsCallsPerModelAndOutcome() throws IOException {
+        AiMetrics metrics = new AiMetrics();
+        new MeteredAiClient(new FakeClient(), metrics).generate("flash", List.of(), "Hi", "sys");
+        new MeteredAiClient(new FakeClient(), metrics).generateAsync("flash", List.of(), "Hi", "sys").join();
+        MeteredAiClient failing = new MeteredAiClient(new FailingClient(), metrics);
+        assertThrows(IOException.class, () -> failing.generate("pro", List.of(), "Hi", "sys"));
+
+        assertEquals(2, metrics.model("flash").getCalls());
+        assertEquals(0, metrics.model("flash").getFailedCalls());
+        assertEquals(1, metrics.model("pro").latency(AiMetrics.Outcome.FAILED).count());
+    }
+
+    @Test
+    public void writesPrometheusText() {
+        AiMetrics metrics = new AiMetrics();
+        metrics.recordCall("gemini \"x\"", AiMetrics.Outcome.SUCCESS, TimeUnit.MILLISECONDS.toNanos(250));
+        metrics.onAttempt("gemini \"x\"", 1);
+        metrics.onAttempt("gemini \"x\"", 2);
+        metrics.onResponse("gemini \"x\"", 429, TimeUnit.MILLISECONDS.toNanos(40), 100);
+
+        String text = metrics.toPrometheus();
+
+        assertTrue(text.contains("# TYPE ai_call_duration_seconds summary\n"));
+        assertTrue(text.contains("ai_call_duration_seconds_count{model=\"gemini \\\"x\\\"\",outcome=\"success\"} 1\n"));
+        assertTrue(text.contains("ai_call_duration_seconds{model=\"gemini \\\"x\\\"\",outcome=\"success\",quantile=\"0.99\"} 0.25"));
+        assertTrue(text.contains("ai_retries_total{model=\"gemini \\\"x\\\"\"} 1\n"));
+        assertTrue(text.contains("ai_http_responses_total{model=\"gemini \\\"x\\\"\",status=\"429\"} 1\n"));
+        assertTrue(text.contains("ai_request_bytes_total{model=\"gemini \\\"x\\\"\"} 100\n"));
+        assertFalse(text.contains("outcome=\"failed\""));
+    }
+
+    @Test
+    public void registersAnMBeanPerModelIncludingLaterOnes() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        AiMetrics metrics = new AiMetrics();
+        metrics.recordCall("flash", AiMetrics.Outcome.SUCCESS, 1_000_000);
+        metrics.registerMBeans(server);
+        metrics.recordCall("pro", AiMetrics.Outcome.RATE_LIMITED, 1_000_000);
+
+        assertEquals(1L, server.getAttribute(
+                new ObjectName("com.patrick.chat:type=AiMetrics,model=\"flash\""), "Calls"));
+        assertEquals(1L, server.getAttribute(
+                new ObjectName("com.patrick.chat:type=AiMetrics,model=\"pro\""), "FailedCalls"));
+    }
+}
@@ -0,0 +1,221 @@
+package unit;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.cache.CacheStats;
+import com.patrick.infra.cache.CachingAiClient;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.GeminiJson;
+import fake.CountingClient;
+import fake.MutableClock;
+import fake.RecordingClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingAiClientTest {
+    private final MutableClock clock = new MutableClock();
+    private final CountingClient upstream = new CountingClient();
+
+    private CachingAiClient cache(int maxEntries, long maxBytes) {
+        return new CachingAiClient(upstream, maxEntries, Duration.ofMinutes(10), maxBytes, clock);
+    }
+
+    @Test
+    public void identicalRequestIsServedFromCache() throws IOException {
+        CachingAiClient client = cache(10, 1 << 20);
+
+        assertEquals("eco: Hello", client.generate("model", List.of(), "Hello", "sys"));
+        assertEquals("eco: Hello", client.generate("model", List.of(), "  Hello ", "sys"));
+
+        assertEquals(1, upstream.calls());
+        CacheStats stats = client.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRate());
+    }
+
+    @Test
+    public void sendsTheTrimmedInputItIsKeyedOn() throws IOException {
+        RecordingClient recording = new RecordingClient();
+        CachingAiClient client = new CachingAiClient(recording, 10, Duration.ofMinutes(10), 1 << 20, clock);
+
+        assertEquals("eco: Hello", client.generate("model", List.of(), " Hello\n", "sys"));
+        assertEquals("eco: Hello", client.generate("model", List.of(), "Hello", "sys"));
+        assertEquals("eco: Hello", client.generateAsync("model", List.of(), "\tHello ", "sys").join());
+
+        assertEquals(List.of("Hello"), recording.userInputs());
+    }
+
+    @Test
+    public void placeholderAnswersAreNotCached() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        AiClient empty = (modelId, history, userInput, systemPrompt) ->
+                calls.incrementAndGet() % 2 == 1 ? GeminiJson.EMPTY : GeminiJson.NO_CANDIDATES;
+        CachingAiClient client = new CachingAiClient(empty, 10, Duration.ofMinutes(10), 1 << 20, clock);
+
+        assertEquals(GeminiJson.EMPTY, client.generate("model", List.of(), "Hello", "sys"));
+        assertEquals(GeminiJson.NO_CANDIDATES, client.generate("model", List.of(), "Hello", "sys"));
+        assertEquals(GeminiJson.EMPTY, client.generateAsync("model", List.of(), "Hello", "sys").join());
+
+        assertEquals(3, calls.get());
+        assertEquals(0, client.stats().entries());
+    }
+
+    @Test
+    public void keyCoversModelPromptAndHistory() throws IOException {
+        CachingAiClient client = cache(10, 1 << 20);
+        List<Message> history = List.of(new Message(Role.USER, "Hi"), new Message(Role.MODEL, "Hello!"));
+
+        client.generate("model", List.of(), "Hello", "sys");
+        client.generate("other-model", List.of(), "Hello", "sys");
+        client.generate("model", List.of(), "Hello", "other sys");
+        client.generate("model", history, "Hello", "sys");
+        client.generate("model", List.of(new Message(Role.MODEL, "Hi"), new Message(Role.USER, "Hello!")), "Hello", "sys");
+
+        assertEquals(5, upstream.calls());
+        assertEquals(0, client.stats().hits());
+    }
+
+    @Test
+    public void compressedHistoryHitsTheSameEntry() throws IOException {
+        CachingAiClient client = cache(10, 1 << 20);
+        String longTurn = "Tell me about the present perfect. ".repeat(10);
+        Message compressed = new Message(Role.USER, longTurn);
+        compressed.compress();
+
+        client.generate("model", List.of(new Message(Role.USER, longTurn), new Message(Role.MODEL, "Ok")), "Hi", "sys");
+        client.generate("model", List.of(compressed, new Message(Role.MODEL, "Ok")), "Hi", "sys");
+
+        assertTrue(compressed.isCompressed());
+        assertEquals(1, upstream.calls());
+        assertEquals(1, client.stats().hits());
+    }
+
+    @Test
+    public void entriesExpireAfterTtl() throws IOException {
+        CachingAiClient client = cache(10, 1 << 20);
+
+        client.generate("model", List.of(), "Hello", "sys");
+        clock.advance(Duration.ofMinutes(9));
+        client.generate("model", List.of(), "Hello", "sys");
+        clock.advance(Duration.ofMinutes(2));
+        client.generate("model", List.of(), "Hello", "sys");
+
+        assertEquals(2, upstream.calls());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondMaxEntries() throws IOException {
+        CachingAiClient client = cache(2, 1 << 20);
+
+        client.generate("model", List.of(), "a", "sys");
+        client.generate("model", List.of(), "b", "sys");
+        client.generate("model", List.of(), "a", "sys");
+        client.generate("model", List.of(), "c", "sys");
+        client.generate("model", List.of(), "a", "sys");
+        client.generate("model", List.of(), "b", "sys");
+
+        assertEquals(4, upstream.calls());
+        CacheStats stats = client.stats();
+        assertEquals(2, stats.entries());
+        assertEquals(2, stats.evictions());
+    }
+
+    @Test
+    public void respectsMemoryBudget() throws IOException {
+        CachingAiClient client = cache(100, 300);
+
+        client.generate("model", List.of(), "a".repeat(40), "sys");
+        client.generate("model", List.of(), "b".repeat(40), "sys");
+        client.generate("model", List.of(), "c".repeat(400), "sys");
+
+        CacheStats stats = client.stats();
+        assertEquals(1, stats.entries());
+        assertTrue(stats.bytes() <= 300);
+        assertEquals(1, stats.evictions());
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        CachingAiClient client = cache(10, 1 << 20);
+        upstream.setFailing(true);
+
+        assertThrows(IOException.class, () -> client.generate("model", List.of(), "Hello", "sys"));
+        upstream.setFailing(false);
+
+        assertDoesNotThrow(() -> client.generate("model", List.of(), "Hello", "sys"));
+        assertEquals(2, upstream.calls());
+        assertEquals(1, client.stats().entries());
+    }
+
+    @Test
+    public void coalescesConcurrentIdenticalRequests() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        CountingClient slow = new CountingClient(gate);
+        CachingAiClient client = new CachingAiClient(slow, 10, Duration.ofMinutes(10), 1 << 20, clock);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> answers = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                answers.add(pool.submit(() -> client.generate("model", List.of(), "burst", "sys")));
+            }
+            while (client.stats().misses() + client.stats().coalesced() < 8) {
+                Thread.sleep(5);
+            }
+            gate.countDown();
+            for (Future<String> answer : answers) {
+                assertEquals("eco: burst", answer.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, slow.calls());
+        assertEquals(7, client.stats().coalesced());
+    }
+
+    @Test
+    public void streamReplaysCachedAnswerAsSingleChunk() throws IOException {
+        CachingAiClient client = cache(10, 1 << 20);
+        List<String> chunks = new ArrayList<>();
+
+        client.generateStream("model", List.of(), "Hello", "sys", chunks::add);
+        client.generateStream("model", List.of(), "Hello", "sys", chunks::add);
+
+        assertEquals(List.of("eco: Hello", "eco: Hello"), chunks);
+        assertEquals(1, upstream.calls());
+    }
+
+    @Test
+    public void asyncUsesTheSameCache() throws Exception {
+        CachingAiClient client = cache(10, 1 << 20);
+
+        assertEquals("eco: Hello", client.generateAsync("model", List.of(), "Hello", "sys").get());
+        assertEquals("eco: Hello", client.generate("model", List.of(), "Hello", "sys"));
+        assertEquals("eco: Hello", client.generateAsync("model", List.of(), "Hello", "sys").get());
+
+        assertEquals(1, upstream.calls());
+        assertEquals(2, client.stats().hits());
+    }
+
+    @Test
+    public void constructorValidation() {
+        assertThrows(NullPointerException.class, () -> new CachingAiClient(null, 1, Duration.ofMinutes(1), 1));
+        assertThrows(IllegalArgumentException.class, () -> new CachingAiClient(upstream, 0, Duration.ofMinutes(1), 1));
+        assertThrows(IllegalArgumentException.class, () -> new CachingAiClient(upstream, 1, Duration.ZERO, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CachingAiClient(upstream, 1, Duration.ofMinutes(1), 0));
+    }
+}
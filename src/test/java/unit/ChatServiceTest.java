@@ -1,17 +1,23 @@
 package unit;
 
 import com.patrick.application.ChatService;
+import com.patrick.domain.Conversation;
 import com.patrick.domain.Message;
 import com.patrick.domain.Role;
+import com.patrick.infra.persistence.ConversationStore;
 import fake.FailingClient;
 import fake.FakeClient;
+import fake.RecordingClient;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -65,7 +71,8 @@ public class ChatServiceTest {
             "2, 2",
             "4, 4",
             "6, 4",
-            "8, 6",
+            "8, 4",
+            "40, 4",
             "3, 3"
     })
     public void trimHistoryBoundaries(int historySize, int expectedSize) {
@@ -98,4 +105,102 @@ public class ChatServiceTest {
         assertEquals(Role.USER, trimmed.get(1).role());
         assertEquals(Role.MODEL, trimmed.get(2).role());
     }
+
+    @Test
+    public void streamingReplyForwardsChunksAndRecordsAnswer() throws IOException {
+        ChatService chatService = new ChatService(
+                new FakeClient(), "gemini-2.5-flash", "You are a helpful assistant.", 5);
+        List<Message> history = new ArrayList<>();
+        StringBuilder printed = new StringBuilder();
+
+        String answer = chatService.reply(history, "Hello", printed::append);
+
+        assertEquals("eco: Hello", answer);
+        assertEquals("eco: Hello", printed.toString());
+        assertEquals(2, history.size());
+        assertEquals(new Message(Role.MODEL, "eco: Hello"), history.get(1));
+    }
+
+    @Test
+    public void replyAsyncRecordsAnswerOnCompletion() throws Exception {
+        ChatService chatService = new ChatService(
+                new FakeClient(), "gemini-2.5-flash", "You are a helpful assistant.", 5);
+        List<Message> history = new ArrayList<>();
+
+        String answer = chatService.replyAsync(history, "Hello").get();
+
+        assertEquals("eco: Hello", answer);
+        assertEquals(2, history.size());
+        assertEquals(new Message(Role.USER, "Hello"), history.get(0));
+    }
+
+    @Test
+    public void replyAsyncPropagatesFailureWithoutTouchingHistory() {
+        ChatService svc = new ChatService(
+                new FailingClient(), "gemini-2.5-flash", "You are a helpful assistant.", 5);
+        List<Message> history = new ArrayList<>();
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> svc.replyAsync(history, "input").get());
+        assertEquals("API error", ex.getCause().getMessage());
+        assertEquals(0, history.size());
+    }
+
+    @Test
+    public void conversationReplySendsOnlyTheLastTurns() throws IOException {
+        RecordingClient client = new RecordingClient();
+        ChatService svc = new ChatService(client, "gemini-2.5-flash", "sys", 2);
+        Conversation conversation = svc.newConversation();
+
+        for (int i = 0; i < 4; i++) {
+            svc.converse(conversation, "q" + i);
+        }
+
+        assertEquals(List.of(
+                new Message(Role.USER, "q1"), new Message(Role.MODEL, "eco: q1"),
+                new Message(Role.USER, "q2"), new Message(Role.MODEL, "eco: q2")
+        ), client.lastHistory());
+        assertEquals(2, conversation.turns());
+        assertEquals(4, conversation.totalTurns());
+    }
+
+    @Test
+    public void conversationStreamingReplyRecordsAnswer() throws IOException {
+        ChatService svc = new ChatService(new FakeClient(), "gemini-2.5-flash", "sys", 5);
+        Conversation conversation = svc.newConversation();
+        StringBuilder printed = new StringBuilder();
+
+        String answer = svc.converse(conversation, "Hello", printed::append);
+
+        assertEquals("eco: Hello", answer);
+        assertEquals("eco: Hello", printed.toString());
+        assertEquals(List.of(new Message(Role.USER, "Hello"), new Message(Role.MODEL, "eco: Hello")),
+                conversation.messages());
+    }
+
+    @Test
+    public void conversationReplyPropagatesIOException() {
+        ChatService svc = new ChatService(new FailingClient(), "gemini-2.5-flash", "sys", 5);
+        Conversation conversation = svc.newConversation();
+
+        assertThrows(IOException.class, () -> svc.converse(conversation, "input"));
+        assertTrue(conversation.isEmpty());
+        assertThrows(NullPointerException.class, () -> svc.converse(null, "input"));
+    }
+
+    @Test
+    public void resumeLoadsNewestTurnsFromStore(@TempDir Path dir) throws IOException {
+        ChatService chatService = new ChatService(new FakeClient(), "model", "system", 3);
+        try (ConversationStore store = ConversationStore.open(dir, ConversationStore.Settings.defaults())) {
+            for (int i = 0; i < 5; i++) {
+                store.append("alice", new Message(Role.USER, "q" + i), new Message(Role.MODEL, "a" + i));
+            }
+
+            Conversation conversation = chatService.resume(store, "alice");
+
+            assertEquals(3, conversation.turns());
+            assertEquals(new Message(Role.USER, "q2"), conversation.messages().get(0));
+            assertEquals("eco: next", chatService.converse(conversation, "next"));
+            assertTrue(chatService.resume(store, "bob").isEmpty());
+        }
+    }
 }
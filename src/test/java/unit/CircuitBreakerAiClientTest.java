@@ -0,0 +1,274 @@
+package unit;
+
+import com.patrick.domain.Message;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.resilience.CircuitBreakerAiClient;
+import com.patrick.infra.resilience.CircuitBreakerAiClient.State;
+import com.patrick.infra.resilience.CircuitOpenException;
+import fake.CountingClient;
+import fake.FailingClient;
+import fake.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerAiClientTest {
+    private static final CircuitBreakerAiClient.Settings SETTINGS = new CircuitBreakerAiClient.Settings(
+            10, 4, 0.5, Duration.ofSeconds(5), 0.5, Duration.ofSeconds(30), 2);
+
+    private final MutableClock clock = new MutableClock();
+
+    private static void callQuietly(AiClient client, String modelId) {
+        try {
+            client.generate(modelId, List.of(), "Hi", "sys");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void opensOnceFailureRateReachesThresholdAndFailsFast() {
+        CountingClient upstream = new CountingClient();
+        upstream.setFailing(true);
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(upstream, SETTINGS, null, clock);
+
+        for (int i = 0; i < 3; i++) callQuietly(client, "flash");
+        assertEquals(State.CLOSED, client.state("flash"));
+        callQuietly(client, "flash");
+        assertEquals(State.OPEN, client.state("flash"));
+
+        CircuitOpenException ex = assertThrows(CircuitOpenException.class,
+                () -> client.generate("flash", List.of(), "Hi", "sys"));
+        assertEquals("flash", ex.modelId());
+        assertEquals(Duration.ofSeconds(30), ex.retryAfter());
+        assertEquals(4, upstream.calls());
+        assertEquals(State.CLOSED, client.state("pro"));
+    }
+
+    @Test
+    public void staysClosedBelowThreshold() throws Exception {
+        CountingClient upstream = new CountingClient();
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(upstream, SETTINGS, null, clock);
+
+        for (int i = 0; i < 20; i++) {
+            upstream.setFailing(i % 4 == 0);
+            callQuietly(client, "flash");
+        }
+
+        assertEquals(State.CLOSED, client.state("flash"));
+        upstream.setFailing(false);
+        assertEquals("eco: Hi", client.generate("flash", List.of(), "Hi", "sys"));
+    }
+
+    @Test
+    public void halfOpenLetsLimitedProbesThroughAndClosesOnSuccess() throws Exception {
+        CountingClient upstream = new CountingClient();
+        upstream.setFailing(true);
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(upstream, SETTINGS, null, clock);
+        for (int i = 0; i < 4; i++) callQuietly(client, "flash");
+
+        clock.advance(Duration.ofSeconds(29));
+        assertEquals(State.OPEN, client.state("flash"));
+        clock.advance(Duration.ofSeconds(1));
+        assertEquals(State.HALF_OPEN, client.state("flash"));
+
+        upstream.setFailing(false);
+        assertEquals("eco: Hi", client.generate("flash", List.of(), "Hi", "sys"));
+        assertEquals(State.HALF_OPEN, client.state("flash"));
+        assertEquals("eco: Hi", client.generate("flash", List.of(), "Hi", "sys"));
+        assertEquals(State.CLOSED, client.state("flash"));
+        assertEquals(6, upstream.calls());
+    }
+
+    @Test
+    public void halfOpenRejectsCallsBeyondProbeLimit() throws Exception {
+        CountDownLatch entered = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean failing = new AtomicBoolean(true);
+        AiClient upstream = (modelId, history, userInput, systemPrompt) -> {
+            if (failing.get()) throw new IOException("down");
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return "probe";
+        };
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(upstream, SETTINGS, null, clock);
+        for (int i = 0; i < 4; i++) callQuietly(client, "flash");
+        clock.advance(Duration.ofSeconds(30));
+        failing.set(false);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<String>> probes = List.of(
+                    pool.submit(() -> client.generate("flash", List.of(), "Hi", "sys")),
+                    pool.submit(() -> client.generate("flash", List.of(), "Hi", "sys")));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            assertThrows(CircuitOpenException.class, () -> client.generate("flash", List.of(), "Hi", "sys"));
+
+            release.countDown();
+            for (Future<String> probe : probes) {
+                assertEquals("probe", probe.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(State.CLOSED, client.state("flash"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedProbeReopensCircuit() {
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(new FailingClient(), SETTINGS, null, clock);
+        for (int i = 0; i < 4; i++) callQuietly(client, "flash");
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(State.HALF_OPEN, client.state("flash"));
+
+        IOException probe = assertThrows(IOException.class, () -> client.generate("flash", List.of(), "Hi", "sys"));
+        assertEquals("API error", probe.getMessage());
+
+        assertEquals(State.OPEN, client.state("flash"));
+        assertThrows(CircuitOpenException.class, () -> client.generate("flash", List.of(), "Hi", "sys"));
+    }
+
+    @Test
+    public void opensOnSlowCalls() {
+        AiClient slow = (modelId, history, userInput, systemPrompt) -> {
+            clock.advance(Duration.ofSeconds(6));
+            return "late";
+        };
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(slow, SETTINGS, null, clock);
+
+        for (int i = 0; i < 4; i++) callQuietly(client, "flash");
+
+        assertEquals(State.OPEN, client.state("flash"));
+    }
+
+    @Test
+    public void clientErrorsDoNotOpenCircuit() {
+        AiClient badRequest = (modelId, history, userInput, systemPrompt) -> {
+            throw new HttpStatusException(400, "{}", false, null);
+        };
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(badRequest, SETTINGS, null, clock);
+
+        for (int i = 0; i < 10; i++) callQuietly(client, "flash");
+
+        assertEquals(State.CLOSED, client.state("flash"));
+    }
+
+    @Test
+    public void clientErrorsDoNotDiluteTheFailureRate() {
+        AtomicBoolean badRequest = new AtomicBoolean();
+        AiClient upstream = (modelId, history, userInput, systemPrompt) -> {
+            if (badRequest.get()) throw new HttpStatusException(400, "{}", false, null);
+            throw new IOException("API error");
+        };
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(upstream, SETTINGS, null, clock);
+
+        for (int i = 0; i < 3; i++) callQuietly(client, "flash");
+        badRequest.set(true);
+        for (int i = 0; i < 6; i++) callQuietly(client, "flash");
+        assertEquals(State.CLOSED, client.state("flash"));
+        badRequest.set(false);
+        callQuietly(client, "flash");
+
+        assertEquals(State.OPEN, client.state("flash"));
+    }
+
+    @Test
+    public void clientErrorsDuringHalfOpenNeitherCloseNorUseUpProbes() throws Exception {
+        AtomicBoolean badRequest = new AtomicBoolean();
+        CountingClient healthy = new CountingClient();
+        healthy.setFailing(true);
+        AiClient upstream = (modelId, history, userInput, systemPrompt) -> {
+            if (badRequest.get()) throw new HttpStatusException(400, "{}", false, null);
+            return healthy.generate(modelId, history, userInput, systemPrompt);
+        };
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(upstream, SETTINGS, null, clock);
+        for (int i = 0; i < 4; i++) callQuietly(client, "flash");
+        clock.advance(Duration.ofSeconds(30));
+
+        badRequest.set(true);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(HttpStatusException.class, () -> client.generate("flash", List.of(), "Hi", "sys"));
+        }
+        assertEquals(State.HALF_OPEN, client.state("flash"));
+
+        badRequest.set(false);
+        healthy.setFailing(false);
+        client.generate("flash", List.of(), "Hi", "sys");
+        client.generate("flash", List.of(), "Hi", "sys");
+        assertEquals(State.CLOSED, client.state("flash"));
+    }
+
+    @Test
+    public void streamsAreSlowOnlyWhenTheFirstChunkIsLate() throws Exception {
+        AtomicBoolean lateStart = new AtomicBoolean();
+        AiClient streaming = new AiClient() {
+            @Override
+            public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String generateStream(String modelId, List<Message> history, String userInput,
+                                         String systemPrompt, Consumer<String> onChunk) {
+                if (lateStart.get()) clock.advance(Duration.ofSeconds(6));
+                onChunk.accept("a long ");
+                clock.advance(Duration.ofSeconds(20));
+                onChunk.accept("answer");
+                return "a long answer";
+            }
+        };
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(streaming, SETTINGS, null, clock);
+
+        for (int i = 0; i < 4; i++) client.generateStream("flash", List.of(), "Hi", "sys", chunk -> {});
+        assertEquals(State.CLOSED, client.state("flash"));
+
+        lateStart.set(true);
+        for (int i = 0; i < 4; i++) client.generateStream("flash", List.of(), "Hi", "sys", chunk -> {});
+        assertEquals(State.OPEN, client.state("flash"));
+    }
+
+    @Test
+    public void servesDegradedAnswerWhileOpen() throws Exception {
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(new FailingClient(), SETTINGS,
+                "The tutor is busy, please try again shortly.", clock);
+        for (int i = 0; i < 4; i++) callQuietly(client, "flash");
+
+        List<String> chunks = new ArrayList<>();
+        assertEquals("The tutor is busy, please try again shortly.",
+                client.generateStream("flash", List.of(), "Hi", "sys", chunks::add));
+        assertEquals(List.of("The tutor is busy, please try again shortly."), chunks);
+        assertEquals("The tutor is busy, please try again shortly.",
+                client.generateAsync("flash", List.of(), "Hi", "sys").get());
+    }
+
+    @Test
+    public void asyncFailuresAreRecorded() {
+        CircuitBreakerAiClient client = new CircuitBreakerAiClient(new FailingClient(), SETTINGS, null, clock);
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ExecutionException.class, () -> client.generateAsync("flash", List.of(), "Hi", "sys").get());
+        }
+
+        assertEquals(State.OPEN, client.state("flash"));
+        ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> client.generateAsync("flash", List.of(), "Hi", "sys").get());
+        assertInstanceOf(CircuitOpenException.class, ex.getCause());
+    }
+}
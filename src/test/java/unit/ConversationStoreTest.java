@@ -0,0 +1,222 @@
+package unit;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.persistence.ConversationStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversationStoreTest {
+    private static final ConversationStore.Settings SMALL = new ConversationStore.Settings(4096, true);
+
+    @TempDir
+    Path dir;
+
+    private static Message user(String text) {
+        return new Message(Role.USER, text);
+    }
+
+    private static Message model(String text) {
+        return new Message(Role.MODEL, text);
+    }
+
+    private static void appendTurns(ConversationStore store, String session, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            store.append(session, user("q" + i), model("a" + i));
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private long logBytes() throws IOException {
+        long total = 0;
+        for (Path segment : segments()) {
+            total += Files.size(segment);
+        }
+        return total;
+    }
+
+    @Test
+    public void returnsNewestTurnsOldestFirst() throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            appendTurns(store, "alice", 0, 5);
+            store.append("bob", user("olá"), model("hello ✓"));
+
+            assertEquals(List.of(user("q3"), model("a3"), user("q4"), model("a4")), store.lastTurns("alice", 2));
+            assertEquals(10, store.lastTurns("alice", 50).size());
+            assertEquals(List.of(user("olá"), model("hello ✓")), store.lastTurns("bob", 1));
+            assertEquals(List.of(), store.lastTurns("carol", 3));
+            assertEquals(2, store.sessionCount());
+        }
+    }
+
+    @Test
+    public void reopenRecoversSessionsAcrossSegments() throws IOException {
+        String longAnswer = "x".repeat(1000);
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            for (int i = 0; i < 20; i++) {
+                store.append("s" + (i % 3), user("q" + i), model(longAnswer));
+            }
+        }
+        assertTrue(segments().size() > 1);
+
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertEquals(3, store.sessionCount());
+            List<Message> turns = store.lastTurns("s1", 7);
+            assertEquals(14, turns.size());
+            assertEquals(user("q1"), turns.get(0));
+            assertEquals(user("q19"), turns.get(12));
+            assertEquals(model(longAnswer), turns.get(13));
+        }
+    }
+
+    @Test
+    public void tornTailIsCutOffOnRecovery() throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            appendTurns(store, "alice", 0, 3);
+        }
+        Path segment = segments().get(0);
+        long valid = Files.size(segment);
+        // Header of a 200-byte record followed by only part of its body, as if the process died mid-write.
+        Files.write(segment, new byte[]{0, 0, 0, (byte) 200, 1, 2, 3, 4, 9, 9, 9}, StandardOpenOption.APPEND);
+
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertEquals(6, store.lastTurns("alice", 10).size());
+            store.append("alice", user("q3"), model("a3"));
+        }
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertEquals(List.of(user("q2"), model("a2"), user("q3"), model("a3")), store.lastTurns("alice", 2));
+        }
+        assertTrue(Files.size(segment) > valid);
+    }
+
+    @Test
+    public void corruptedRecordEndsRecovery() throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            appendTurns(store, "alice", 0, 3);
+        }
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(segment, bytes);
+
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertEquals(List.of(user("q0"), model("a0"), user("q1"), model("a1")), store.lastTurns("alice", 10));
+        }
+    }
+
+    @Test
+    public void deletedSessionStaysDeletedAfterReopen() throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            appendTurns(store, "alice", 0, 2);
+            appendTurns(store, "bob", 0, 2);
+            store.delete("alice");
+            store.delete("nobody");
+            assertFalse(store.contains("alice"));
+        }
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertFalse(store.contains("alice"));
+            assertEquals(List.of(), store.lastTurns("alice", 2));
+            assertEquals(4, store.lastTurns("bob", 2).size());
+        }
+    }
+
+    @Test
+    public void compactionKeepsNewestTurnsAndShrinksLog() throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            for (int i = 0; i < 200; i++) {
+                store.append("s" + (i % 4), user("question " + i), model("answer " + i));
+            }
+            store.delete("s3");
+        }
+        long before = logBytes();
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            store.compact(2);
+        }
+        assertTrue(logBytes() < before / 10, "log shrank from " + before + " to " + logBytes());
+
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertEquals(3, store.sessionCount());
+            assertEquals(List.of(user("question 192"), model("answer 192"), user("question 196"), model("answer 196")),
+                    store.lastTurns("s0", 5));
+            store.append("s0", user("after"), model("compaction"));
+        }
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertEquals(List.of(user("question 196"), model("answer 196"), user("after"), model("compaction")),
+                    store.lastTurns("s0", 2));
+            assertFalse(store.contains("s3"));
+        }
+    }
+
+    @Test
+    public void unfinishedCompactionIsDiscarded() throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            appendTurns(store, "alice", 0, 3);
+        }
+        Files.write(dir.resolve("segment-0000000001.compact"), new byte[]{1, 2, 3});
+
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertEquals(6, store.lastTurns("alice", 10).size());
+        }
+        assertFalse(Files.exists(dir.resolve("segment-0000000001.compact")));
+    }
+
+    @Test
+    public void concurrentAppendsAreAllDurable() throws Exception {
+        int threads = 8;
+        int turns = 50;
+        try (ConversationStore store = ConversationStore.open(dir, new ConversationStore.Settings(64 * 1024, true))) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    String session = "session-" + t;
+                    tasks.add(pool.submit(() -> {
+                        appendTurns(store, session, 0, turns);
+                        return null;
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            for (int t = 0; t < threads; t++) {
+                List<Message> all = store.lastTurns("session-" + t, turns + 1);
+                assertEquals(turns * 2, all.size());
+                assertEquals(user("q0"), all.get(0));
+                assertEquals(model("a" + (turns - 1)), all.get(all.size() - 1));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTurnLargerThanSegment() throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, SMALL)) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> store.append("alice", user("q"), model("x".repeat(5000))));
+            assertThrows(IllegalArgumentException.class,
+                    () -> store.append("alice", model("q"), user("a")));
+        }
+    }
+}
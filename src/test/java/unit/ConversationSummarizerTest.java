@@ -0,0 +1,121 @@
+package unit;
+
+import com.patrick.application.ChatService;
+import com.patrick.application.ConversationSummarizer;
+import com.patrick.domain.Conversation;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import fake.CountingClient;
+import fake.RecordingClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversationSummarizerTest {
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void foldsOlderTurnsOnceTriggerIsPassed() throws Exception {
+        RecordingClient client = new RecordingClient();
+        ConversationSummarizer summarizer = new ConversationSummarizer(client, "gemini-lite", 4, 2, DIRECT);
+        ChatService svc = new ChatService(client, "gemini-pro", "Be kind", 10).withSummarizer(summarizer);
+        Conversation conversation = svc.newConversation();
+
+        for (int i = 0; i < 4; i++) {
+            svc.converse(conversation, "q" + i);
+        }
+        assertTrue(conversation.summary().isEmpty());
+        assertEquals(4, client.calls());
+
+        svc.converse(conversation, "q4");
+
+        assertEquals(6, client.calls());
+        assertEquals("gemini-lite", client.modelIds().get(5));
+        String prompt = client.userInputs().get(5);
+        assertTrue(prompt.contains("user: q0"));
+        assertTrue(prompt.contains("model: eco: q2"));
+        assertFalse(prompt.contains("q3"));
+        assertEquals(3, conversation.summary().coveredTurns());
+        assertEquals(2, conversation.unsummarizedTurns());
+
+        svc.converse(conversation, "q5");
+
+        assertEquals("gemini-pro", client.modelIds().get(6));
+        assertEquals(List.of(
+                new Message(Role.USER, "q3"), new Message(Role.MODEL, "eco: q3"),
+                new Message(Role.USER, "q4"), new Message(Role.MODEL, "eco: q4")
+        ), client.lastHistory());
+        assertTrue(client.lastSystemPrompt().startsWith("Be kind\n\nSummary of the earlier conversation:\neco: "));
+    }
+
+    @Test
+    public void nextSummaryBuildsOnThePreviousOne() throws Exception {
+        RecordingClient client = new RecordingClient();
+        ConversationSummarizer summarizer = new ConversationSummarizer(client, "gemini-lite", 3, 1, DIRECT);
+        Conversation conversation = new Conversation(10);
+        conversation.updateSummary(new Conversation.Summary("student is B1", 0));
+        for (int i = 0; i < 4; i++) {
+            conversation.append(new Message(Role.USER, "q" + i), new Message(Role.MODEL, "a" + i));
+        }
+
+        assertTrue(summarizer.maybeSummarize(conversation));
+
+        String prompt = client.userInputs().get(0);
+        assertTrue(prompt.startsWith("Previous summary:\nstudent is B1\n\nNew turns:\n"));
+        assertTrue(prompt.contains("model: a2"));
+        assertFalse(prompt.contains("q3"));
+        assertEquals(3, conversation.summary().coveredTurns());
+    }
+
+    @Test
+    public void failedSummarizationKeepsHistoryAndRetriesLater() throws Exception {
+        CountingClient client = new CountingClient();
+        ConversationSummarizer summarizer = new ConversationSummarizer(client, "gemini-lite", 2, 1, DIRECT);
+        Conversation conversation = new Conversation(10);
+        for (int i = 0; i < 3; i++) {
+            conversation.append(new Message(Role.USER, "q" + i), new Message(Role.MODEL, "a" + i));
+        }
+
+        client.setFailing(true);
+        assertTrue(summarizer.maybeSummarize(conversation));
+        assertTrue(conversation.summary().isEmpty());
+        assertEquals(3, conversation.unsummarizedTurns());
+
+        client.setFailing(false);
+        assertTrue(summarizer.maybeSummarize(conversation));
+        assertEquals(2, conversation.summary().coveredTurns());
+        assertEquals(2, client.calls());
+    }
+
+    @Test
+    public void runsAtMostOneSummarizationPerConversation() {
+        List<Runnable> queued = new ArrayList<>();
+        CountingClient client = new CountingClient();
+        ConversationSummarizer summarizer = new ConversationSummarizer(client, "gemini-lite", 2, 1, queued::add);
+        Conversation conversation = new Conversation(10);
+        for (int i = 0; i < 3; i++) {
+            conversation.append(new Message(Role.USER, "q" + i), new Message(Role.MODEL, "a" + i));
+        }
+
+        assertTrue(summarizer.maybeSummarize(conversation));
+        assertFalse(summarizer.maybeSummarize(conversation));
+        assertEquals(1, queued.size());
+
+        queued.get(0).run();
+
+        assertEquals(1, client.calls());
+        assertEquals(2, conversation.summary().coveredTurns());
+        assertFalse(summarizer.maybeSummarize(conversation));
+    }
+
+    @Test
+    public void rejectsSummaryCoveringUnseenTurns() {
+        Conversation conversation = new Conversation(2);
+        assertThrows(IllegalArgumentException.class,
+                () -> conversation.updateSummary(new Conversation.Summary("x", 1)));
+    }
+}
@@ -0,0 +1,93 @@
+package unit;
+
+import com.patrick.domain.Conversation;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConversationTest {
+
+    private static void turn(Conversation conversation, int i) {
+        conversation.append(new Message(Role.USER, "q" + i), new Message(Role.MODEL, "a" + i));
+    }
+
+    @Test
+    public void keepsTurnsInOrderUntilFull() {
+        Conversation conversation = new Conversation(3);
+        assertTrue(conversation.isEmpty());
+        assertEquals(List.of(), conversation.messages());
+
+        turn(conversation, 0);
+        turn(conversation, 1);
+
+        assertEquals(2, conversation.turns());
+        assertEquals(List.of(
+                new Message(Role.USER, "q0"), new Message(Role.MODEL, "a0"),
+                new Message(Role.USER, "q1"), new Message(Role.MODEL, "a1")
+        ), conversation.messages());
+    }
+
+    @Test
+    public void overwritesOldestTurnWhenFull() {
+        Conversation conversation = new Conversation(3);
+        for (int i = 0; i < 10_000; i++) {
+            turn(conversation, i);
+        }
+
+        assertEquals(3, conversation.turns());
+        assertEquals(3, conversation.maxTurns());
+        assertEquals(10_000, conversation.totalTurns());
+        List<Message> messages = conversation.messages();
+        assertEquals(6, messages.size());
+        assertEquals("q9997", messages.get(0).text());
+        assertEquals("a9999", messages.get(5).text());
+    }
+
+    @Test
+    public void lastTurnsIsAViewOfTheNewestTurns() {
+        Conversation conversation = new Conversation(4);
+        for (int i = 0; i < 6; i++) {
+            turn(conversation, i);
+        }
+
+        List<Message> lastTwo = conversation.lastTurns(2);
+        assertEquals(List.of(
+                new Message(Role.USER, "q4"), new Message(Role.MODEL, "a4"),
+                new Message(Role.USER, "q5"), new Message(Role.MODEL, "a5")
+        ), lastTwo);
+        assertEquals(8, conversation.lastTurns(10).size());
+        assertEquals(0, conversation.lastTurns(0).size());
+        assertThrows(IndexOutOfBoundsException.class, () -> lastTwo.get(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> lastTwo.get(-1));
+        assertThrows(UnsupportedOperationException.class, () -> lastTwo.add(new Message(Role.USER, "x")));
+    }
+
+    @Test
+    public void validatesArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new Conversation(0));
+        Conversation conversation = new Conversation(1);
+        Message user = new Message(Role.USER, "q");
+        Message model = new Message(Role.MODEL, "a");
+        assertThrows(IllegalArgumentException.class, () -> conversation.append(model, user));
+        assertThrows(IllegalArgumentException.class, () -> conversation.append(user, null));
+        assertThrows(IllegalArgumentException.class, () -> conversation.lastTurns(-1));
+    }
+
+    @Test
+    public void compressesTurnsThatLeaveTheHotWindow() {
+        Conversation conversation = new Conversation(5, 2);
+        String filler = " und noch etwas mehr".repeat(10);
+        for (int i = 0; i < 4; i++) {
+            conversation.append(new Message(Role.USER, "q" + i + filler), new Message(Role.MODEL, "a" + i + filler));
+        }
+
+        List<Message> messages = conversation.messages();
+        assertTrue(messages.subList(0, 4).stream().allMatch(Message::isCompressed));
+        assertTrue(messages.subList(4, 8).stream().noneMatch(Message::isCompressed));
+        assertEquals("q0" + filler, messages.get(0).text());
+    }
+}
@@ -0,0 +1,108 @@
+package unit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.gemini.GeminiJson;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeminiJsonTest {
+
+    @Test
+    public void writesSystemInstructionHistoryAndUserInput() throws IOException {
+        Buffer sink = new Buffer();
+        GeminiJson.requestBody(List.of(new Message(Role.USER, "Hi \"there\""), new Message(Role.MODEL, "Olá\n")),
+                "Next?", "Be kind").writeTo(sink);
+
+        JsonNode root = new ObjectMapper().readTree(sink.readUtf8());
+        assertEquals("system", root.at("/systemInstruction/role").asText());
+        assertEquals("Be kind", root.at("/systemInstruction/parts/0/text").asText());
+        assertEquals(3, root.get("contents").size());
+        assertEquals("Hi \"there\"", root.at("/contents/0/parts/0/text").asText());
+        assertEquals("model", root.at("/contents/1/role").asText());
+        assertEquals("Olá\n", root.at("/contents/1/parts/0/text").asText());
+        assertEquals("user", root.at("/contents/2/role").asText());
+        assertEquals("Next?", root.at("/contents/2/parts/0/text").asText());
+    }
+
+    @Test
+    public void omitsBlankSystemPrompt() throws IOException {
+        Buffer sink = new Buffer();
+        GeminiJson.writeRequest(sink, List.of(), "Hi", " ");
+        assertEquals("{\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"Hi\"}]}]}", sink.readUtf8());
+    }
+
+    @Test
+    public void reusesEncodedHistoryAndReportsExactLength() throws IOException {
+        Message earlier = new Message(Role.USER, "Earlier");
+        byte[] fragment = earlier.encoded(GeminiJson.CONTENT);
+
+        RequestBody body = GeminiJson.requestBody(List.of(earlier), "Now", "Be kind");
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+
+        assertSame(fragment, earlier.encoded(GeminiJson.CONTENT));
+        assertEquals(body.contentLength(), sink.size());
+        assertEquals("{\"systemInstruction\":{\"role\":\"system\",\"parts\":[{\"text\":\"Be kind\"}]},"
+                + "\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"Earlier\"}]},"
+                + "{\"role\":\"user\",\"parts\":[{\"text\":\"Now\"}]}]}", sink.readUtf8());
+    }
+
+    @Test
+    public void referencesCachedContentInsteadOfSystemInstruction() throws IOException {
+        Buffer sink = new Buffer();
+        RequestBody body = GeminiJson.requestBody(List.of(), "Hi", "Be kind", "cachedContents/abc");
+        body.writeTo(sink);
+
+        assertEquals(body.contentLength(), sink.size());
+        assertEquals("{\"cachedContent\":\"cachedContents/abc\",\"contents\":[{\"role\":\"user\",\"parts\":[{\"text\":\"Hi\"}]}]}",
+                sink.readUtf8());
+    }
+
+    @Test
+    public void readsFirstCandidateTextSkippingOtherFields() throws IOException {
+        String body = "{\"usageMetadata\":{\"promptTokenCount\":3,\"details\":[{\"a\":[1,2]}]},"
+                + "\"candidates\":[{\"safetyRatings\":[{\"category\":\"x\"}],\"content\":{\"role\":\"model\","
+                + "\"parts\":[{\"thought\":true,\"meta\":{\"text\":\"no\"}},{\"text\":\"Hello \"},{\"text\":\"world\"}]}},"
+                + "{\"content\":{\"parts\":[{\"text\":\"second\"}]}}]}";
+
+        assertEquals("Hello world", GeminiJson.readText(body));
+    }
+
+    @Test
+    public void mapsMissingAndBlankAnswers() throws IOException {
+        assertEquals("[no candidates]", GeminiJson.readText(""));
+        assertEquals("[no candidates]", GeminiJson.readText("{\"candidates\":[]}"));
+        assertEquals("[no candidates]", GeminiJson.readText("{\"candidates\":[{\"finishReason\":\"SAFETY\"}]}"));
+        assertEquals("[empty]", GeminiJson.readText("{\"candidates\":[{\"content\":{\"parts\":[]}}]}"));
+        assertEquals("[empty]", GeminiJson.readText("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"  \"}]}}]}"));
+    }
+
+    @Test
+    public void readsUsageMetadataAfterCandidates() throws IOException {
+        String body = "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"Hi\"}]},\"finishReason\":\"STOP\"},"
+                + "{\"content\":{\"parts\":[{\"text\":\"other\"}]}}],"
+                + "\"usageMetadata\":{\"promptTokenCount\":12,\"candidatesTokenCount\":3,\"totalTokenCount\":40,"
+                + "\"thoughtsTokenCount\":25,\"promptTokensDetails\":[{\"modality\":\"TEXT\",\"tokenCount\":12}],"
+                + "\"cachedContentTokenCount\":8},\"modelVersion\":\"gemini-2.5-flash\"}";
+        GeminiJson.Usage usage = new GeminiJson.Usage();
+
+        assertEquals("Hi", GeminiJson.readText(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), usage));
+
+        assertEquals(12, usage.promptTokens());
+        assertEquals(3, usage.candidatesTokens());
+        assertEquals(25, usage.thoughtsTokens());
+        assertEquals(8, usage.cachedTokens());
+        assertEquals(body.length(), usage.bytes());
+    }
+}
@@ -1,9 +1,13 @@
 package unit;
 
 import com.patrick.domain.Message;
+import com.patrick.domain.MessageEncoder;
 import com.patrick.domain.Role;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MessageTest {
@@ -32,6 +36,27 @@ public class MessageTest {
         assertEquals("Text cannot be null", exception.getMessage());
     }
 
+    @Test
+    public void loneSurrogatesAreStoredAsQuestionMarks() {
+        Message message = new Message(Role.USER, "a\uD83Db");
+
+        assertEquals("a?b", message.text());
+        assertEquals(3, message.utf8Length());
+        assertEquals(new Message(Role.USER, "a?b"), message);
+    }
+
+    @Test
+    public void utf8IsAReadOnlyViewOfTheText() {
+        Message message = new Message(Role.USER, "caf\u00e9 " + "x".repeat(200));
+        message.compress();
+
+        ByteBuffer utf8 = message.utf8();
+
+        assertTrue(utf8.isReadOnly());
+        assertEquals(message.utf8Length(), utf8.remaining());
+        assertEquals(message.text(), StandardCharsets.UTF_8.decode(utf8).toString());
+    }
+
     @Test
     public void shouldImplementEquals(){
         Message msg1 = new Message(Role.USER, "Hello");
@@ -57,4 +82,48 @@ public class MessageTest {
         Message msg = new Message(Role.USER, "Hello");
         assertEquals("USER: Hello", msg.toString());
     }
+
+    @Test
+    public void shouldCacheEncodingPerEncoder() {
+        Message msg = new Message(Role.USER, "Hello");
+        int[] calls = new int[1];
+        MessageEncoder upper = m -> {
+            calls[0]++;
+            return m.text().toUpperCase().getBytes();
+        };
+        MessageEncoder lower = m -> m.text().toLowerCase().getBytes();
+
+        byte[] first = msg.encoded(upper);
+        assertSame(first, msg.encoded(upper));
+        assertEquals(1, calls[0]);
+        assertArrayEquals("hello".getBytes(), msg.encoded(lower));
+        assertArrayEquals("HELLO".getBytes(), msg.encoded(upper));
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void compressedMessageKeepsTextAndEquality() {
+        String text = "Ich möchte heute über das Wetter sprechen. ".repeat(20);
+        Message msg = new Message(Role.MODEL, text);
+        int hash = msg.hashCode();
+        byte[] encoded = msg.encoded(m -> m.text().getBytes());
+
+        msg.compress();
+
+        assertTrue(msg.isCompressed());
+        assertEquals(text, msg.text());
+        assertEquals(hash, msg.hashCode());
+        assertEquals(new Message(Role.MODEL, text), msg);
+        assertEquals(text.getBytes(java.nio.charset.StandardCharsets.UTF_8).length, msg.utf8Length());
+        assertArrayEquals(encoded, msg.encoded(m -> m.text().getBytes()));
+    }
+
+    @Test
+    public void shortMessagesAreNotCompressed() {
+        Message msg = new Message(Role.USER, "Hallo");
+        msg.compress();
+
+        assertFalse(msg.isCompressed());
+        assertEquals("Hallo", msg.text());
+    }
 }
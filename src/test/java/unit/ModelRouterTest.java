@@ -0,0 +1,174 @@
+package unit;
+
+import com.patrick.application.ChatService;
+import com.patrick.application.ModelRouter;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.domain.TokenEstimator;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.resilience.CircuitOpenException;
+import com.patrick.infra.resilience.RateLimitExceededException;
+import fake.MutableClock;
+import fake.RecordingClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModelRouterTest {
+    private static final TokenEstimator ONE_PER_CHAR = String::length;
+
+    private final MutableClock clock = new MutableClock();
+    private final ModelRouter router = new ModelRouter("flash", ONE_PER_CHAR, clock)
+            .withRoute("lite", 20, 100)
+            .withFallback("flash", "lite");
+
+    /**
+     * Answers with the model id, except for models in {@code unavailable}, which fail with {@code failure}.
+     */
+    private static AiClient failing(IOException failure, String... unavailable) {
+        List<String> down = List.of(unavailable);
+        return new AiClient() {
+            @Override
+            public String generate(String modelId, List<Message> history, String userInput, String systemPrompt)
+                    throws IOException {
+                if (down.contains(modelId)) throw failure;
+                return modelId;
+            }
+
+            @Override
+            public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                           String systemPrompt) {
+                return down.contains(modelId) ? CompletableFuture.failedFuture(failure)
+                        : CompletableFuture.completedFuture(modelId);
+            }
+        };
+    }
+
+    @Test
+    public void routesShortTurnsToTheLightModel() throws IOException {
+        RecordingClient client = new RecordingClient();
+        ChatService service = new ChatService(client, "flash", "sys", 5).withRouter(router);
+        List<Message> history = new ArrayList<>();
+
+        service.reply(history, "Hi");
+        service.reply(history, "Explain the present perfect continuous, please");
+        for (int i = 0; i < 10; i++) {
+            history.add(new Message(Role.USER, "x".repeat(10)));
+        }
+        service.reply(history, "Thanks");
+
+        assertEquals(List.of("lite", "flash", "flash"), client.modelIds());
+    }
+
+    @Test
+    public void failsOverWhenTheCircuitIsOpen() throws IOException {
+        AiClient client = failing(new CircuitOpenException("flash", Duration.ofSeconds(30)), "flash");
+        ChatService service = new ChatService(client, "flash", "sys", 5).withRouter(router);
+
+        assertEquals("lite", service.reply(new ArrayList<>(), "Explain the present perfect continuous, please"));
+        assertEquals(1, router.stats("flash").failures());
+        assertEquals(1, router.stats("lite").requests());
+    }
+
+    @Test
+    public void failsOverWhenRateLimitedUpstream() throws IOException {
+        IOException exhausted = new IOException("Failed after 3 attempts",
+                new HttpStatusException(429, "{}", true, null));
+        ModelRouter lightFirst = router.withFallback("lite", "flash");
+        ChatService service = new ChatService(failing(exhausted, "lite"), "flash", "sys", 5).withRouter(lightFirst);
+
+        assertEquals("flash", service.reply(new ArrayList<>(), "Hi"));
+    }
+
+    @Test
+    public void doesNotFailOverOnClientErrors() {
+        RecordingClient recorder = new RecordingClient();
+        AiClient client = (modelId, history, userInput, systemPrompt) -> {
+            recorder.generate(modelId, history, userInput, systemPrompt);
+            throw new HttpStatusException(400, "{}", false, null);
+        };
+        ChatService service = new ChatService(client, "flash", "sys", 5).withRouter(router);
+
+        assertThrows(HttpStatusException.class,
+                () -> service.reply(new ArrayList<>(), "Explain the present perfect continuous, please"));
+        assertEquals(List.of("flash"), recorder.modelIds());
+    }
+
+    @Test
+    public void reportsTheLastFailureWhenEveryModelIsUnavailable() {
+        AiClient client = (modelId, history, userInput, systemPrompt) -> {
+            throw new RateLimitExceededException(modelId, Duration.ofSeconds(1));
+        };
+        ChatService service = new ChatService(client, "flash", "sys", 5).withRouter(router);
+
+        RateLimitExceededException ex = assertThrows(RateLimitExceededException.class,
+                () -> service.reply(new ArrayList<>(), "Explain the present perfect continuous, please"));
+        assertEquals("lite", ex.modelId());
+        assertEquals(1, ex.getSuppressed().length);
+    }
+
+    @Test
+    public void streamedRepliesDoNotFailOverAfterTheFirstChunk() {
+        AiClient client = new AiClient() {
+            @Override
+            public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) {
+                return modelId;
+            }
+
+            @Override
+            public String generateStream(String modelId, List<Message> history, String userInput,
+                                         String systemPrompt, Consumer<String> onChunk)
+                    throws IOException {
+                onChunk.accept("partial ");
+                throw new HttpStatusException(503, "{}", true, null);
+            }
+        };
+        ChatService service = new ChatService(client, "flash", "sys", 5).withRouter(router);
+        List<String> chunks = new ArrayList<>();
+
+        assertThrows(HttpStatusException.class, () -> service.reply(new ArrayList<>(),
+                "Explain the present perfect continuous, please", chunks::add));
+        assertEquals(List.of("partial "), chunks);
+    }
+
+    @Test
+    public void asyncRepliesFailOver() throws Exception {
+        AiClient client = failing(new RateLimitExceededException("flash", Duration.ofSeconds(1)), "flash");
+        ChatService service = new ChatService(client, "flash", "sys", 5).withRouter(router);
+        List<Message> history = new ArrayList<>();
+
+        assertEquals("lite", service.replyAsync(history, "Explain the present perfect continuous, please").get());
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    public void steersAwayFromFailingModelsUntilTheyRecover() {
+        for (int i = 0; i < 5; i++) {
+            router.recordFailure("flash");
+        }
+
+        assertEquals(List.of("lite", "flash"), router.candidates("a longer question than twenty chars", 0));
+        clock.advance(Duration.ofSeconds(30));
+        assertEquals(List.of("flash", "lite"), router.candidates("a longer question than twenty chars", 0));
+    }
+
+    @Test
+    public void steersAwayFromModelsOverTheLatencySlo() {
+        ModelRouter withSlo = router.withFallback("lite", "flash").withLatencySlo(Duration.ofSeconds(1));
+        for (int i = 0; i < 5; i++) {
+            withSlo.recordSuccess("lite", Duration.ofSeconds(3).toNanos());
+        }
+
+        assertEquals(List.of("flash", "lite"), withSlo.candidates("Hi", 2));
+        assertEquals(Duration.ofSeconds(3), withSlo.stats("lite").latency());
+        assertEquals(0.0, withSlo.stats("lite").errorRate());
+    }
+}
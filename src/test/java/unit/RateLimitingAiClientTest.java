@@ -0,0 +1,183 @@
+package unit;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.domain.TokenEstimator;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.resilience.RateLimitExceededException;
+import com.patrick.infra.resilience.RateLimitingAiClient;
+import com.patrick.infra.resilience.RateLimitingAiClient.Quota;
+import com.patrick.infra.resilience.RateLimitingAiClient.Settings;
+import com.patrick.infra.resilience.TokenBucket;
+import fake.CountingClient;
+import fake.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitingAiClientTest {
+    private static final TokenEstimator CHARS = String::length;
+    private static final Settings NO_QUEUE = new Settings(8, 1, 64, 2.0, Duration.ZERO);
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    public void bucketAllowsBurstThenPacesAtTheRefillRate() {
+        TokenBucket bucket = new TokenBucket(6, 54, Duration.ofMinutes(1), clock);
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(0, bucket.reserve(1, 0));
+        }
+        assertEquals(-1, bucket.reserve(1, 0));
+        assertEquals(0, bucket.available());
+
+        long wait = bucket.reserve(1, Duration.ofSeconds(5).toNanos());
+        assertEquals(Duration.ofMinutes(1).toNanos() / 54, wait, 1_000);
+        assertEquals(2 * wait, bucket.nanosUntilAvailable(1), 1_000);
+
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals(6, bucket.available());
+    }
+
+    @Test
+    public void bucketRefundsAndCapsOversizedRequests() {
+        TokenBucket bucket = new TokenBucket(100, 900, Duration.ofMinutes(1), clock);
+
+        assertEquals(0, bucket.reserve(60, 0));
+        assertEquals(-1, bucket.reserve(60, 0));
+        bucket.refund(60);
+        assertEquals(100, bucket.available());
+
+        assertEquals(0, bucket.reserve(5_000, 0));
+        assertEquals(0, bucket.available());
+    }
+
+    @Test
+    public void rejectsRequestsOverTheMinuteQuotaPerModel() throws Exception {
+        CountingClient upstream = new CountingClient();
+        RateLimitingAiClient client = new RateLimitingAiClient(upstream, Map.of(), new Quota(60, 0), CHARS,
+                NO_QUEUE, clock);
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals("eco: Hi", client.generate("flash", List.of(), "Hi", "sys"));
+        }
+        RateLimitExceededException ex = assertThrows(RateLimitExceededException.class,
+                () -> client.generate("flash", List.of(), "Hi", "sys"));
+        assertEquals("flash", ex.modelId());
+        assertEquals(Duration.ofMinutes(1).dividedBy(54).toMillis(), ex.retryAfter().toMillis(), 1);
+        assertEquals(6, upstream.calls());
+
+        assertEquals("eco: Hi", client.generate("pro", List.of(), "Hi", "sys"));
+        clock.advance(Duration.ofSeconds(2));
+        assertEquals("eco: Hi", client.generate("flash", List.of(), "Hi", "sys"));
+    }
+
+    @Test
+    public void chargesEstimatedPromptTokensAgainstTheTokenQuota() throws Exception {
+        CountingClient upstream = new CountingClient();
+        RateLimitingAiClient client = new RateLimitingAiClient(upstream,
+                Map.of("pro", new Quota(0, 1_000)), Quota.UNLIMITED, CHARS, NO_QUEUE, clock);
+        List<Message> history = List.of(new Message(Role.USER, "x".repeat(40)), new Message(Role.MODEL, "y".repeat(40)));
+
+        client.generate("pro", history, "Hi", "sys");
+        assertThrows(RateLimitExceededException.class, () -> client.generate("pro", history, "Hi", "sys"));
+        assertEquals(1, upstream.calls());
+
+        for (int i = 0; i < 20; i++) {
+            client.generate("flash", history, "Hi", "sys");
+        }
+    }
+
+    @Test
+    public void queuesForAConcurrencySlotUntilTheDeadline() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AiClient upstream = (modelId, history, userInput, systemPrompt) -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return "eco: " + userInput;
+        };
+        RateLimitingAiClient client = new RateLimitingAiClient(upstream, Map.of(), Quota.UNLIMITED, CHARS,
+                new Settings(1, 1, 1, 2.0, Duration.ofSeconds(5)), clock);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = pool.submit(() -> client.generate("flash", List.of(), "first", "sys"));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            Future<String> second = pool.submit(() -> client.generate("flash", List.of(), "second", "sys"));
+            Thread.sleep(50);
+            assertFalse(second.isDone());
+
+            release.countDown();
+            assertEquals("eco: first", first.get(5, TimeUnit.SECONDS));
+            assertEquals("eco: second", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectsAsyncCallsThatCannotGetASlotInTime() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        AiClient upstream = new AiClient() {
+            @Override
+            public String generate(String modelId, List<Message> history, String userInput, String systemPrompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<String> generateAsync(String modelId, List<Message> history, String userInput,
+                                                           String systemPrompt) {
+                return pending;
+            }
+        };
+        RateLimitingAiClient client = new RateLimitingAiClient(upstream, Map.of(), Quota.UNLIMITED, CHARS,
+                new Settings(1, 1, 1, 2.0, Duration.ofMillis(50)), clock);
+
+        CompletableFuture<String> first = client.generateAsync("flash", List.of(), "Hi", "sys");
+        ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> client.generateAsync("flash", List.of(), "Hi", "sys").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RateLimitExceededException.class, ex.getCause());
+
+        pending.complete("done");
+        assertEquals("done", first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void throttlingShrinksTheConcurrencyLimit() {
+        AiClient throttled = (modelId, history, userInput, systemPrompt) -> {
+            throw new IOException("Failed after 3 attempts", new HttpStatusException(429, "{}", true, null));
+        };
+        AiClient badRequest = (modelId, history, userInput, systemPrompt) -> {
+            throw new HttpStatusException(400, "{}", false, null);
+        };
+        RateLimitingAiClient limited = new RateLimitingAiClient(throttled, Map.of(), Quota.UNLIMITED, CHARS,
+                NO_QUEUE, clock);
+        RateLimitingAiClient rejected = new RateLimitingAiClient(badRequest, Map.of(), Quota.UNLIMITED, CHARS,
+                NO_QUEUE, clock);
+
+        assertThrows(IOException.class, () -> limited.generate("flash", List.of(), "Hi", "sys"));
+        assertThrows(IOException.class, () -> rejected.generate("flash", List.of(), "Hi", "sys"));
+
+        assertEquals(4, limited.concurrencyLimit("flash"));
+        assertEquals(8, rejected.concurrencyLimit("flash"));
+    }
+}
@@ -0,0 +1,139 @@
+package unit;
+
+import com.patrick.infra.gemini.HttpStatusException;
+import com.patrick.infra.gemini.RetryBudget;
+import com.patrick.infra.gemini.RetryPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryPolicyTest {
+    private static final IOException UNAVAILABLE = new HttpStatusException(503, "{}", true, null);
+
+    private static RetryPolicy policy(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, Duration.ofMillis(100), Duration.ofSeconds(2), null, Duration.ofMinutes(5));
+    }
+
+    @Test
+    public void decorrelatedJitterStaysWithinBounds() {
+        RetryPolicy policy = policy(50);
+        for (int run = 0; run < 200; run++) {
+            RetryPolicy.Execution retry = policy.start();
+            long previous = retry.nextDelayMillis(UNAVAILABLE);
+            assertTrue(previous >= 100 && previous <= 300, "first delay " + previous);
+            for (int i = 0; i < 20; i++) {
+                long delay = retry.nextDelayMillis(UNAVAILABLE);
+                assertTrue(delay >= 100, "delay " + delay);
+                assertTrue(delay <= Math.min(2000, previous * 3), "delay " + delay + " after " + previous);
+                previous = delay;
+            }
+        }
+    }
+
+    @Test
+    public void jitterSpreadsRetriesOfSimultaneousFailures() {
+        RetryPolicy policy = policy(5);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 100; i++) {
+            RetryPolicy.Execution retry = policy.start();
+            retry.nextDelayMillis(UNAVAILABLE);
+            long second = retry.nextDelayMillis(UNAVAILABLE);
+            min = Math.min(min, second);
+            max = Math.max(max, second);
+        }
+        assertTrue(max - min > 50, "second delays between " + min + " and " + max);
+    }
+
+    @Test
+    public void firstRetryIsAlreadyJittered() {
+        RetryPolicy policy = policy(3);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 100; i++) {
+            long first = policy.start().nextDelayMillis(UNAVAILABLE);
+            min = Math.min(min, first);
+            max = Math.max(max, first);
+        }
+        assertTrue(max - min > 50, "first delays between " + min + " and " + max);
+    }
+
+    @Test
+    public void serverRequestedDelayIsNeverUndercut() {
+        RetryPolicy.Execution retry = policy(3).start();
+        assertEquals(1500, retry.nextDelayMillis(new HttpStatusException(429, "{}", true, Duration.ofMillis(1500))));
+    }
+
+    @Test
+    public void stopsAfterMaxAttempts() {
+        RetryPolicy.Execution retry = policy(3).start();
+        assertTrue(retry.nextDelayMillis(UNAVAILABLE) >= 0);
+        assertTrue(retry.nextDelayMillis(UNAVAILABLE) >= 0);
+        assertEquals(3, retry.attempt());
+        assertEquals(-1, retry.nextDelayMillis(UNAVAILABLE));
+
+        IOException failure = retry.failure(UNAVAILABLE);
+        assertEquals("Failed after 3 attempts", failure.getMessage());
+        assertSame(UNAVAILABLE, failure.getCause());
+    }
+
+    @Test
+    public void nonRetryableFailureIsReportedAsIs() {
+        HttpStatusException unauthorized = new HttpStatusException(401, "{}", false, null);
+        RetryPolicy.Execution retry = policy(3).start();
+
+        assertEquals(-1, retry.nextDelayMillis(unauthorized));
+        assertSame(unauthorized, retry.failure(unauthorized));
+        assertEquals("Non-retryable status code: 401, body: {}", unauthorized.getMessage());
+    }
+
+    @Test
+    public void classifiesStatusCodes() {
+        RetryPolicy policy = RetryPolicy.defaults();
+        for (int code : new int[]{408, 429, 500, 502, 503, 504}) {
+            assertTrue(policy.isRetryableStatus(code), "" + code);
+        }
+        for (int code : new int[]{400, 401, 403, 404, 409, 501, 505}) {
+            assertFalse(policy.isRetryableStatus(code), "" + code);
+        }
+    }
+
+    @Test
+    public void budgetCapsRetriesAtAFractionOfRequests() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+        RetryPolicy policy = policy(10).withBudget(budget);
+
+        int retries = 0;
+        for (int request = 0; request < 100; request++) {
+            RetryPolicy.Execution retry = policy.start();
+            while (retry.nextDelayMillis(UNAVAILABLE) >= 0) {
+                retries++;
+            }
+        }
+
+        assertTrue(retries >= 10 && retries <= 12, "retries " + retries);
+        assertTrue(budget.available() < 1);
+    }
+
+    @Test
+    public void exhaustedBudgetIsReported() {
+        RetryPolicy.Execution retry = policy(3).withBudget(new RetryBudget(0.5, 1)).start();
+        assertTrue(retry.nextDelayMillis(UNAVAILABLE) >= 0);
+        assertEquals(-1, retry.nextDelayMillis(UNAVAILABLE));
+        assertEquals("Retry budget exhausted after 2 attempts", retry.failure(UNAVAILABLE).getMessage());
+    }
+
+    @Test
+    public void doesNotRetryPastTheOverallDeadline() {
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofSeconds(2), null, Duration.ofSeconds(1));
+        RetryPolicy.Execution retry = policy.start();
+
+        assertEquals(-1, retry.nextDelayMillis(new HttpStatusException(429, "{}", true, Duration.ofSeconds(30))));
+        assertEquals("Retry deadline exceeded after 1 attempts", retry.failure(UNAVAILABLE).getMessage());
+        assertTrue(retry.attemptTimeoutMillis(0) <= 1000);
+        assertTrue(retry.attemptTimeoutMillis(200) <= 200);
+    }
+}
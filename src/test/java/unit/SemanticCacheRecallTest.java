@@ -0,0 +1,135 @@
+package unit;
+
+import com.patrick.infra.cache.HashingEmbedder;
+import com.patrick.infra.cache.SemanticCachingAiClient;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SemanticCacheRecallTest {
+    private static final String[][] PARAPHRASES = {
+            {"What's the difference between since and for?", "what is the difference between since and for"},
+            {"What's the difference between since and for?", "Difference between 'for' and 'since'?"},
+            {"When should I use since or for?", "when do I use since and when for"},
+            {"How do I use the present perfect?", "how to use present perfect"},
+            {"Can you explain the present perfect tense?", "Explain the present perfect tense please"},
+            {"What is a phrasal verb?", "what are phrasal verbs?"},
+            {"Difference between make and do", "what's the difference between do and make?"},
+            {"How do I pronounce 'th'?", "how to pronounce th"},
+            {"What does 'break the ice' mean?", "meaning of break the ice"},
+            {"Is it 'less' or 'fewer' people?", "less people or fewer people?"},
+    };
+    private static final String[][] DIFFERENT_QUESTIONS = {
+            {"What's the difference between since and for?", "What's the difference between make and do?"},
+            {"How do I use the present perfect?", "How do I use the past perfect?"},
+            {"What does 'break the ice' mean?", "What does 'piece of cake' mean?"},
+            {"What is a phrasal verb?", "What is a modal verb?"},
+            {"How do I pronounce 'th'?", "How do I pronounce 'r'?"},
+            {"Can you explain the present perfect tense?", "Can you explain conditional sentences?"},
+            {"When should I use since or for?", "When should I use a or an?"},
+            {"Is it 'less' or 'fewer' people?", "Is it 'who' or 'whom'?"},
+    };
+    // Held out: never used to choose the embedder's word list or the default threshold.
+    private static final String[][] HELD_OUT_PARAPHRASES = {
+            {"How do I use the word 'already'?", "how to use already"},
+            {"What is the past tense of 'go'?", "past tense of go?"},
+            {"Can you explain the passive voice?", "explain passive voice"},
+            {"What does 'once in a blue moon' mean?", "meaning of once in a blue moon"},
+            {"Is 'data' singular or plural?", "data: singular or plural?"},
+            {"How do I write a formal email?", "how to write a formal email"},
+            {"What are irregular verbs?", "what is an irregular verb"},
+            {"Difference between affect and effect", "What's the difference between effect and affect?"},
+            {"When do I use 'an' instead of 'a'?", "when to use an instead of a"},
+            {"How do I form the future continuous tense?", "how to form future continuous tense"},
+            {"What is the plural of 'mouse'?", "plural of mouse?"},
+            {"Where do I put adverbs in a sentence?", "where to put adverbs in a sentence"},
+    };
+    private static final String[][] HELD_OUT_DIFFERENT_QUESTIONS = {
+            {"What is the past tense of 'go'?", "What is the past tense of 'see'?"},
+            {"How do I use the word 'already'?", "How do I use the word 'yet'?"},
+            {"What does 'once in a blue moon' mean?", "What does 'under the weather' mean?"},
+            {"Difference between affect and effect", "Difference between accept and except"},
+            {"What is the plural of 'mouse'?", "What is the plural of 'cactus'?"},
+            {"Can you explain the passive voice?", "Can you explain reported speech?"},
+            {"How do I write a formal email?", "How do I write a cover letter?"},
+            {"What are irregular verbs?", "What are auxiliary verbs?"},
+            {"How do I form the future continuous tense?", "How do I form the past continuous tense?"},
+            {"Is 'data' singular or plural?", "Is 'news' singular or plural?"},
+    };
+    // Same wording with the part that matters changed: similarity alone ranks these with the paraphrases.
+    private static final String[][] NEAR_MISSES = {
+            {"Correct my sentence: she don't like it", "Correct my sentence: he don't like it"},
+            {"Give me 5 examples of the present perfect", "Give me 10 examples of the present perfect"},
+            {"Is 'I have went' correct?", "Is 'I have gone' correct?"},
+            {"Translate 'I am tired' to Spanish", "Translate 'I am tired' to French"},
+            {"Correct this: I goes to school", "Correct this: I go to school"},
+            {"Write 3 sentences with 'although'", "Write 3 sentences with 'however'"},
+            {"Is 'their' right in: their going home", "Is 'their' right in: they're going home"},
+            {"What is the past tense of 'swim'?", "What is the past tense of 'sing'?"},
+    };
+
+    private final HashingEmbedder embedder = new HashingEmbedder();
+
+    @Test
+    public void recallAndFalsePositivesFallAsTheThresholdRises() {
+        double previousRecall = 1.0;
+        double previousFalsePositives = 1.0;
+        for (double threshold = 0.5; threshold <= 0.96; threshold += 0.05) {
+            double recall = matchRate(PARAPHRASES, threshold);
+            double falsePositives = matchRate(DIFFERENT_QUESTIONS, threshold);
+            assertTrue(recall <= previousRecall);
+            assertTrue(falsePositives <= previousFalsePositives);
+            previousRecall = recall;
+            previousFalsePositives = falsePositives;
+        }
+    }
+
+    @Test
+    public void defaultThresholdRecallsMostParaphrasesWithoutFalsePositives() {
+        double threshold = SemanticCachingAiClient.DEFAULT_THRESHOLD;
+
+        assertTrue(matchRate(PARAPHRASES, threshold) >= 0.9);
+        assertEquals(0.0, matchRate(DIFFERENT_QUESTIONS, threshold));
+        assertTrue(matchRate(HELD_OUT_PARAPHRASES, threshold) >= 0.75);
+        assertEquals(0.0, matchRate(HELD_OUT_DIFFERENT_QUESTIONS, threshold));
+    }
+
+    @Test
+    public void nearMissesAreRejectedThoughTheirSimilarityIsHigh() {
+        double threshold = SemanticCachingAiClient.DEFAULT_THRESHOLD;
+        int similar = 0;
+        for (String[] pair : NEAR_MISSES) {
+            if (similarity(embedder.embed(pair[0]), embedder.embed(pair[1])) >= threshold) similar++;
+        }
+
+        assertTrue(similar >= 2, "some fixtures should score above the threshold: " + similar);
+        assertEquals(0.0, matchRate(NEAR_MISSES, threshold));
+        assertTrue(embedder.compatible("Give me 5 examples of since", "5 examples of since"));
+        assertFalse(embedder.compatible("Give me 5 examples of since", "Give me 6 examples of since"));
+    }
+
+    @Test
+    public void embeddingsAreNormalized() {
+        float[] vector = embedder.embed("How do I use the present perfect?");
+        assertEquals(512, vector.length);
+        assertEquals(1.0, similarity(vector, vector), 1e-5);
+        assertEquals(0.0, similarity(embedder.embed(""), embedder.embed("")), 1e-5);
+    }
+
+    private double matchRate(String[][] pairs, double threshold) {
+        int matched = 0;
+        for (String[] pair : pairs) {
+            if (similarity(embedder.embed(pair[0]), embedder.embed(pair[1])) >= threshold
+                    && embedder.compatible(pair[0], pair[1])) {
+                matched++;
+            }
+        }
+        return (double) matched / pairs.length;
+    }
+
+    private static double similarity(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) dot += a[i] * b[i];
+        return dot;
+    }
+}
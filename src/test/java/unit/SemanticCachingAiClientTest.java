@@ -0,0 +1,203 @@
+package unit;
+
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.cache.FlatVectorIndex;
+import com.patrick.infra.cache.HashingEmbedder;
+import com.patrick.infra.cache.HnswVectorIndex;
+import com.patrick.infra.cache.SemanticCachingAiClient;
+import com.patrick.infra.gemini.AiClient;
+import com.patrick.infra.gemini.GeminiJson;
+import fake.CountingClient;
+import fake.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SemanticCachingAiClientTest {
+    private final CountingClient upstream = new CountingClient();
+    private final SemanticCachingAiClient client = new SemanticCachingAiClient(
+            upstream, new HashingEmbedder(), SemanticCachingAiClient.DEFAULT_THRESHOLD, 100);
+
+    @Test
+    public void paraphraseIsServedFromCache() throws IOException {
+        String first = client.generate("model", List.of(), "What's the difference between since and for?", "sys");
+        String second = client.generate("model", List.of(), "difference between for and since", "sys");
+
+        assertEquals(first, second);
+        assertEquals(1, upstream.calls());
+        assertEquals(1, client.hits());
+        assertEquals(1, client.misses());
+    }
+
+    @Test
+    public void differentQuestionGoesUpstream() throws IOException {
+        client.generate("model", List.of(), "What's the difference between since and for?", "sys");
+        String answer = client.generate("model", List.of(), "What's the difference between make and do?", "sys");
+
+        assertEquals("eco: What's the difference between make and do?", answer);
+        assertEquals(2, upstream.calls());
+        assertEquals(2, client.size());
+    }
+
+    @Test
+    public void nearMissWithAChangedWordOrNumberGoesUpstream() throws IOException {
+        client.generate("model", List.of(), "Correct my sentence: she don't like it", "sys");
+        String he = client.generate("model", List.of(), "Correct my sentence: he don't like it", "sys");
+        client.generate("model", List.of(), "Give me 5 examples of the present perfect", "sys");
+        String ten = client.generate("model", List.of(), "Give me 10 examples of the present perfect", "sys");
+
+        assertEquals("eco: Correct my sentence: he don't like it", he);
+        assertEquals("eco: Give me 10 examples of the present perfect", ten);
+        assertEquals(4, upstream.calls());
+        assertEquals(4, client.size());
+        assertEquals("eco: Correct my sentence: she don't like it",
+                client.generate("model", List.of(), "correct my sentence: she don't like it!", "sys"));
+    }
+
+    @Test
+    public void partitionsByModelAndSystemPrompt() throws IOException {
+        client.generate("model", List.of(), "How do I use the present perfect?", "sys");
+        client.generate("other", List.of(), "How do I use the present perfect?", "sys");
+        client.generate("model", List.of(), "How do I use the present perfect?", "other sys");
+
+        assertEquals(3, upstream.calls());
+    }
+
+    @Test
+    public void turnsWithHistoryBypassTheCache() throws IOException {
+        List<Message> history = List.of(new Message(Role.USER, "Hi"), new Message(Role.MODEL, "Hello!"));
+        client.generate("model", history, "How do I use the present perfect?", "sys");
+        client.generate("model", history, "How do I use the present perfect?", "sys");
+
+        assertEquals(2, upstream.calls());
+        assertEquals(2, client.bypassed());
+        assertEquals(0, client.size());
+    }
+
+    @Test
+    public void placeholderAnswersAreNotCached() throws IOException {
+        SemanticCachingAiClient blocked = placeholderCache();
+
+        assertEquals(GeminiJson.NO_CANDIDATES, blocked.generate("model", List.of(), "What is a phrasal verb?", "sys"));
+        assertEquals(GeminiJson.EMPTY, blocked.generate("model", List.of(), "what is a phrasal verb", "sys"));
+
+        assertEquals(0, blocked.size());
+        assertEquals(0, blocked.hits());
+    }
+
+    @Test
+    public void placeholderStreamedAnswersAreNotCached() throws IOException {
+        SemanticCachingAiClient blocked = placeholderCache();
+        List<String> chunks = new ArrayList<>();
+
+        blocked.generateStream("model", List.of(), "What is a phrasal verb?", "sys", chunks::add);
+        blocked.generateStream("model", List.of(), "what is a phrasal verb", "sys", chunks::add);
+
+        assertEquals(List.of(GeminiJson.NO_CANDIDATES, GeminiJson.EMPTY), chunks);
+        assertEquals(0, blocked.size());
+    }
+
+    @Test
+    public void placeholderAsyncAnswersAreNotCached() {
+        SemanticCachingAiClient blocked = placeholderCache();
+
+        assertEquals(GeminiJson.NO_CANDIDATES,
+                blocked.generateAsync("model", List.of(), "What is a phrasal verb?", "sys").join());
+        assertEquals(GeminiJson.EMPTY,
+                blocked.generateAsync("model", List.of(), "what is a phrasal verb", "sys").join());
+
+        assertEquals(0, blocked.size());
+    }
+
+    private static SemanticCachingAiClient placeholderCache() {
+        AtomicInteger calls = new AtomicInteger();
+        AiClient placeholders = (modelId, history, userInput, systemPrompt) ->
+                calls.incrementAndGet() % 2 == 1 ? GeminiJson.NO_CANDIDATES : GeminiJson.EMPTY;
+        return new SemanticCachingAiClient(placeholders, new HashingEmbedder(),
+                SemanticCachingAiClient.DEFAULT_THRESHOLD, 100);
+    }
+
+    @Test
+    public void replacesOldestEntriesBeyondCapacity() throws IOException {
+        SemanticCachingAiClient small = new SemanticCachingAiClient(
+                upstream, new HashingEmbedder(), SemanticCachingAiClient.DEFAULT_THRESHOLD, 1);
+        small.generate("model", List.of(), "What is a phrasal verb?", "sys");
+        small.generate("model", List.of(), "What is a modal verb?", "sys");
+        small.generate("model", List.of(), "what is a modal verb", "sys");
+        small.generate("model", List.of(), "what are phrasal verbs", "sys");
+
+        assertEquals(3, upstream.calls());
+        assertEquals(1, small.size());
+        assertEquals(2, small.evictions());
+    }
+
+    @Test
+    public void expiredAnswersAreRefreshedInPlace() throws IOException {
+        MutableClock clock = new MutableClock();
+        SemanticCachingAiClient expiring = new SemanticCachingAiClient(upstream, new HashingEmbedder(),
+                SemanticCachingAiClient.DEFAULT_THRESHOLD, 100, Duration.ofMinutes(10), 8, FlatVectorIndex::new,
+                clock);
+        expiring.generate("model", List.of(), "What is a phrasal verb?", "sys");
+
+        clock.advance(Duration.ofMinutes(11));
+        expiring.generate("model", List.of(), "what are phrasal verbs", "sys");
+        expiring.generate("model", List.of(), "What is a phrasal verb?", "sys");
+
+        assertEquals(2, upstream.calls());
+        assertEquals(1, expiring.hits());
+        assertEquals(1, expiring.size());
+    }
+
+    @Test
+    public void keepsOnlyTheMostRecentlyUsedPartitions() throws IOException {
+        SemanticCachingAiClient few = new SemanticCachingAiClient(upstream, new HashingEmbedder(),
+                SemanticCachingAiClient.DEFAULT_THRESHOLD, 100, Duration.ofMinutes(10), 2, FlatVectorIndex::new,
+                new MutableClock());
+        few.generate("a", List.of(), "What is a phrasal verb?", "sys");
+        few.generate("b", List.of(), "What is a phrasal verb?", "sys");
+        few.generate("a", List.of(), "What is a phrasal verb?", "sys");
+        few.generate("c", List.of(), "What is a phrasal verb?", "sys");
+        few.generate("a", List.of(), "What is a phrasal verb?", "sys");
+        few.generate("b", List.of(), "What is a phrasal verb?", "sys");
+
+        assertEquals(4, upstream.calls());
+        assertEquals(2, few.size());
+        assertEquals(2, few.evictions());
+    }
+
+    @Test
+    public void streamAndAsyncShareEntries() throws Exception {
+        SemanticCachingAiClient hnsw = new SemanticCachingAiClient(upstream, new HashingEmbedder(),
+                SemanticCachingAiClient.DEFAULT_THRESHOLD, 100, HnswVectorIndex::new);
+        List<String> chunks = new ArrayList<>();
+
+        hnsw.generateStream("model", List.of(), "How do I pronounce 'th'?", "sys", chunks::add);
+        String async = hnsw.generateAsync("model", List.of(), "how to pronounce th", "sys").get();
+        hnsw.generateStream("model", List.of(), "How to pronounce TH", "sys", chunks::add);
+
+        assertEquals("eco: How do I pronounce 'th'?", async);
+        assertEquals(List.of("eco: How do I pronounce 'th'?", "eco: How do I pronounce 'th'?"), chunks);
+        assertEquals(1, upstream.calls());
+    }
+
+    @Test
+    public void constructorValidation() {
+        HashingEmbedder embedder = new HashingEmbedder();
+        assertThrows(NullPointerException.class, () -> new SemanticCachingAiClient(null, embedder, 0.9, 1));
+        assertThrows(NullPointerException.class, () -> new SemanticCachingAiClient(upstream, null, 0.9, 1));
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCachingAiClient(upstream, embedder, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCachingAiClient(upstream, embedder, 1.1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCachingAiClient(upstream, embedder, 0.9, 0));
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCachingAiClient(upstream, embedder, 0.9, 1,
+                Duration.ZERO, 1, FlatVectorIndex::new, new MutableClock()));
+        assertThrows(IllegalArgumentException.class, () -> new SemanticCachingAiClient(upstream, embedder, 0.9, 1,
+                Duration.ofMinutes(1), 0, FlatVectorIndex::new, new MutableClock()));
+    }
+}
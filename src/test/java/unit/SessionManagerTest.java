@@ -0,0 +1,169 @@
+package unit;
+
+import com.patrick.application.ChatService;
+import com.patrick.application.ConversationSummarizer;
+import com.patrick.application.SessionManager;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.infra.persistence.ConversationStore;
+import fake.FailingClient;
+import fake.FakeClient;
+import fake.MutableClock;
+import fake.RecordingClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionManagerTest {
+    private final MutableClock clock = new MutableClock();
+    private final ChatService service = new ChatService(new FakeClient(), "model", "sys", 5);
+
+    @Test
+    public void idleSessionsAreEvictedAndRehydratedOnNextMessage() throws IOException {
+        SessionManager sessions = new SessionManager(service, Long.MAX_VALUE, Duration.ofMinutes(10), clock);
+        sessions.converse("alice", "Hello");
+        sessions.converse("alice", "Again");
+        clock.advance(Duration.ofMinutes(5));
+        sessions.converse("bob", "Hi");
+        clock.advance(Duration.ofMinutes(6));
+
+        assertEquals(1, sessions.evictIdle());
+
+        assertEquals(1, sessions.residentCount());
+        assertEquals(1, sessions.evictedCount());
+        assertEquals(List.of(new Message(Role.USER, "Hello"), new Message(Role.MODEL, "eco: Hello"),
+                new Message(Role.USER, "Again"), new Message(Role.MODEL, "eco: Again")), sessions.messages("alice"));
+        assertEquals(2, sessions.residentCount());
+    }
+
+    @Test
+    public void idleSessionsAreEvictedOnScheduleWithoutRequests() throws Exception {
+        SessionManager sessions = new SessionManager(service, Long.MAX_VALUE, Duration.ofMillis(40), clock);
+        sessions.converse("alice", "Hello");
+        clock.advance(Duration.ofMinutes(1));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            sessions.scheduleIdleEviction(scheduler);
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (sessions.residentCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            scheduler.shutdownNow();
+        }
+
+        assertEquals(0, sessions.residentCount());
+        assertEquals(1, sessions.evictedCount());
+        assertThrows(IllegalArgumentException.class,
+                () -> new SessionManager(service, 0, Duration.ZERO, clock).scheduleIdleEviction());
+    }
+
+    @Test
+    public void sessionIsNotEvictedWhileItsSummaryIsPending() throws IOException {
+        RecordingClient client = new RecordingClient();
+        List<Runnable> pending = new ArrayList<>();
+        ChatService summarizing = new ChatService(client, "model", "sys", 5)
+                .withSummarizer(new ConversationSummarizer(client, "lite", 2, 1, pending::add));
+        SessionManager sessions = new SessionManager(summarizing, Long.MAX_VALUE, Duration.ofMinutes(10), clock);
+        for (String input : List.of("one", "two", "three")) {
+            sessions.converse("alice", input);
+        }
+        clock.advance(Duration.ofMinutes(11));
+
+        assertEquals(1, pending.size());
+        assertEquals(0, sessions.evictIdle());
+
+        pending.remove(0).run();
+
+        assertEquals(1, sessions.evictIdle());
+        sessions.converse("alice", "four");
+        assertTrue(client.lastSystemPrompt().startsWith("sys\n\nSummary of the earlier conversation:\neco: "));
+    }
+
+    @Test
+    public void rehydratedSessionSendsSameHistory() throws IOException {
+        RecordingClient client = new RecordingClient();
+        SessionManager sessions = new SessionManager(new ChatService(client, "model", "sys", 5), 0,
+                Duration.ZERO, clock);
+        sessions.converse("alice", "one");
+        sessions.converse("alice", "two");
+        assertEquals(0, sessions.residentCount());
+
+        sessions.converse("alice", "three");
+
+        assertEquals(List.of(new Message(Role.USER, "one"), new Message(Role.MODEL, "eco: one"),
+                new Message(Role.USER, "two"), new Message(Role.MODEL, "eco: two")), client.lastHistory());
+    }
+
+    @Test
+    public void memoryBudgetEvictsLeastRecentlyUsedFirst() throws IOException {
+        SessionManager sessions = new SessionManager(service, Long.MAX_VALUE, Duration.ZERO, clock);
+        sessions.converse("probe", "x".repeat(100));
+        long perSession = sessions.residentBytes();
+        sessions.remove("probe");
+
+        SessionManager bounded = new SessionManager(service, perSession * 3, Duration.ZERO, clock);
+        for (String id : List.of("a", "b", "c")) {
+            bounded.converse(id, "x".repeat(100));
+        }
+        bounded.messages("a");
+        bounded.converse("d", "x".repeat(100));
+
+        assertEquals(3, bounded.residentCount());
+        assertEquals(1, bounded.evictedCount());
+        assertTrue(bounded.residentBytes() <= perSession * 3);
+        assertEquals(2, bounded.messages("b").size());
+        assertEquals(3, bounded.residentCount());
+        assertEquals(1, bounded.evictedCount());
+    }
+
+    @Test
+    public void failedReplyLeavesSessionAccounted() {
+        SessionManager sessions = new SessionManager(new ChatService(new FailingClient(), "model", "sys", 5),
+                Long.MAX_VALUE, Duration.ZERO, clock);
+
+        assertThrows(IOException.class, () -> sessions.converse("alice", "Hello"));
+
+        assertEquals(1, sessions.residentCount());
+    }
+
+    @Test
+    public void removeForgetsResidentAndEvictedSessions() throws IOException {
+        SessionManager sessions = new SessionManager(service, 0, Duration.ZERO, clock);
+        sessions.converse("alice", "Hello");
+        sessions.remove("alice");
+        sessions.remove("nobody");
+
+        assertNull(sessions.messages("alice"));
+        assertEquals(0, sessions.sessionCount());
+        assertEquals(0, sessions.residentBytes());
+    }
+
+    @Test
+    public void storeBackedSessionsSurviveEvictionAndRestart(@TempDir Path dir) throws IOException {
+        try (ConversationStore store = ConversationStore.open(dir, ConversationStore.Settings.defaults())) {
+            SessionManager sessions = new SessionManager(service, 0, Duration.ZERO, clock).withStore(store);
+            sessions.converse("alice", "Hello");
+            sessions.converse("alice", "Again");
+            assertEquals(0, sessions.residentCount());
+            assertEquals(4, sessions.messages("alice").size());
+        }
+        try (ConversationStore store = ConversationStore.open(dir, ConversationStore.Settings.defaults())) {
+            SessionManager restarted = new SessionManager(service, Long.MAX_VALUE, Duration.ZERO, clock)
+                    .withStore(store);
+
+            assertEquals(new Message(Role.MODEL, "eco: Again"), restarted.messages("alice").get(3));
+            restarted.remove("alice");
+            assertFalse(store.contains("alice"));
+        }
+    }
+}
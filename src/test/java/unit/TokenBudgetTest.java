@@ -0,0 +1,115 @@
+package unit;
+
+import com.patrick.application.ApproximateTokenEstimator;
+import com.patrick.application.ChatService;
+import com.patrick.application.TokenBudget;
+import com.patrick.domain.Message;
+import com.patrick.domain.Role;
+import com.patrick.domain.TokenEstimator;
+import fake.RecordingClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBudgetTest {
+    private static final TokenEstimator ONE_PER_CHAR = String::length;
+
+    @Test
+    public void approximateEstimatorCountsWordsDigitsAndPunctuation() {
+        TokenEstimator estimator = ApproximateTokenEstimator.INSTANCE;
+        assertEquals(0, estimator.estimate(""));
+        assertEquals(0, estimator.estimate("   "));
+        assertEquals(1, estimator.estimate("Hi"));
+        assertEquals(4, estimator.estimate("Hello, you"));
+        assertEquals(5, estimator.estimate("internationalization"));
+        assertEquals(2, estimator.estimate("2024"));
+        assertEquals(1, estimator.estimate("ação"));
+        assertEquals(2, estimator.estimate("日本"));
+        assertThrows(IllegalArgumentException.class, () -> estimator.estimate(null));
+    }
+
+    @Test
+    public void approximateEstimatorCountsUtf8BytesLikeTheDecodedText() {
+        TokenEstimator estimator = ApproximateTokenEstimator.INSTANCE;
+        for (String text : List.of("", "   ", "Hi", "Hello, you", "ação 2024", "日本語\u3000テキスト", "naïve café!",
+                "ship it \uD83D\uDE80\uD83D\uDE80 now", "x\u00A0y\u2028z", "Ωμέγα, 123456789")) {
+            assertEquals(estimator.estimate(text), estimator.estimateUtf8(text.getBytes(StandardCharsets.UTF_8)), text);
+        }
+        assertEquals(2, estimator.estimateUtf8(new byte[]{(byte) 0xE6, 'a'}));
+        assertThrows(IllegalArgumentException.class, () -> estimator.estimateUtf8(null));
+    }
+
+    @Test
+    public void keepsAsManyRecentPairsAsFit() {
+        List<Message> history = List.of(
+                new Message(Role.USER, "aaaa"), new Message(Role.MODEL, "bbbb"),
+                new Message(Role.USER, "c".repeat(50)), new Message(Role.MODEL, "d"),
+                new Message(Role.USER, "ee"), new Message(Role.MODEL, "ff"),
+                new Message(Role.USER, "gg"), new Message(Role.MODEL, "hh")
+        );
+
+        assertEquals(history.subList(4, 8), ChatService.trimToBudget(history, 10, ONE_PER_CHAR));
+        assertEquals(history.subList(4, 8), ChatService.trimToBudget(history, 50, ONE_PER_CHAR));
+        assertEquals(history.subList(2, 8), ChatService.trimToBudget(history, 59, ONE_PER_CHAR));
+        assertEquals(history, ChatService.trimToBudget(history, 1000, ONE_PER_CHAR));
+        assertEquals(List.of(), ChatService.trimToBudget(history, 3, ONE_PER_CHAR));
+        assertEquals(List.of(), ChatService.trimToBudget(List.of(), 100, ONE_PER_CHAR));
+    }
+
+    @Test
+    public void keepsManyShortTurnsBeyondFiveTurnLimit() {
+        List<Message> history = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            history.add(new Message(Role.USER, "q" + i));
+            history.add(new Message(Role.MODEL, "a" + i));
+        }
+        assertEquals(40, ChatService.trimToBudget(history, 1000, ApproximateTokenEstimator.INSTANCE).size());
+    }
+
+    @Test
+    public void replySubtractsSystemPromptAndInputFromModelBudget() throws IOException {
+        RecordingClient client = new RecordingClient();
+        TokenBudget budget = new TokenBudget(ONE_PER_CHAR, 20).withModel("big", 1000);
+        ChatService small = new ChatService(client, "small", "sys", budget);
+        List<Message> history = new ArrayList<>(List.of(
+                new Message(Role.USER, "12345"), new Message(Role.MODEL, "12345"),
+                new Message(Role.USER, "123"), new Message(Role.MODEL, "123")
+        ));
+
+        small.reply(history, "1234");
+        assertEquals(history.subList(2, 4), client.lastHistory());
+
+        new ChatService(client, "big", "sys", budget).reply(history, "1234");
+        assertEquals(history.subList(0, 6), client.lastHistory());
+        assertEquals(1000, budget.tokensFor("big"));
+        assertEquals(20, budget.tokensFor("other"));
+    }
+
+    @Test
+    public void messageCachesEstimatePerEstimator() {
+        int[] calls = new int[1];
+        TokenEstimator counting = text -> {
+            calls[0]++;
+            return text.length();
+        };
+        Message message = new Message(Role.USER, "Hello");
+
+        assertEquals(5, message.estimatedTokens(counting));
+        assertEquals(5, message.estimatedTokens(counting));
+        assertEquals(1, calls[0]);
+        assertEquals(2, message.estimatedTokens(ApproximateTokenEstimator.INSTANCE));
+    }
+
+    @Test
+    public void budgetValidation() {
+        assertThrows(NullPointerException.class, () -> new TokenBudget(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBudget(ONE_PER_CHAR, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBudget(ONE_PER_CHAR, 10).withModel("m", 0));
+        assertThrows(NullPointerException.class, () -> new ChatService(new RecordingClient(), "m", "s", (TokenBudget) null));
+    }
+}
@@ -0,0 +1,125 @@
+package unit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.patrick.application.ChatService;
+import com.patrick.domain.Message;
+import com.patrick.infra.tracing.RingBufferExporter;
+import com.patrick.infra.tracing.Span;
+import com.patrick.infra.tracing.Tracer;
+import fake.FailingClient;
+import fake.FakeClient;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TracerTest {
+
+    @Test
+    public void nestedSpansShareTheTraceAndPointAtTheirParent() {
+        RingBufferExporter exporter = new RingBufferExporter(16, "test");
+        Tracer tracer = new Tracer(exporter, 1.0);
+
+        try (Span root = tracer.start("root")) {
+            try (Span child = tracer.start("child")) {
+                assertSame(child, tracer.current());
+            }
+            assertSame(root, tracer.current());
+            tracer.startDetached("detached", root, Span.Kind.CLIENT).end();
+        }
+        assertNull(tracer.current());
+
+        List<Span> spans = exporter.spans();
+        assertEquals(List.of("child", "detached", "root"), spans.stream().map(Span::name).toList());
+        Span root = spans.get(2);
+        assertNull(root.parentSpanId());
+        assertEquals(32, root.traceId().length());
+        for (Span child : spans.subList(0, 2)) {
+            assertEquals(root.traceId(), child.traceId());
+            assertEquals(root.spanId(), child.parentSpanId());
+            assertTrue(child.startEpochNanos() >= root.startEpochNanos());
+            assertTrue(child.endEpochNanos() <= root.endEpochNanos());
+        }
+    }
+
+    @Test
+    public void unsampledAndDisabledTracesRecordNothing() {
+        RingBufferExporter exporter = new RingBufferExporter(16, "test");
+        Tracer unsampled = new Tracer(exporter, 0);
+
+        try (Span root = unsampled.start("root")) {
+            assertFalse(root.isRecording());
+            assertSame(Span.NOOP, unsampled.start("child"));
+            assertSame(Span.NOOP, unsampled.startDetached("http", root, Span.Kind.CLIENT));
+        }
+        assertNull(unsampled.current());
+        try (Span span = Tracer.NOOP.start("root")) {
+            assertSame(Span.NOOP, span);
+        }
+
+        assertTrue(exporter.spans().isEmpty());
+    }
+
+    @Test
+    public void ringBufferKeepsTheNewestSpans() {
+        RingBufferExporter exporter = new RingBufferExporter(3, "test");
+        Tracer tracer = new Tracer(exporter, 1.0);
+
+        for (int i = 0; i < 5; i++) {
+            tracer.start("span-" + i).close();
+        }
+
+        assertEquals(List.of("span-2", "span-3", "span-4"), exporter.spans().stream().map(Span::name).toList());
+    }
+
+    @Test
+    public void dumpsOtlpJson() throws IOException {
+        RingBufferExporter exporter = new RingBufferExporter(16, "chat");
+        Tracer tracer = new Tracer(exporter, 1.0);
+        try (Span span = tracer.start("chat.turn")) {
+            span.setAttribute("chat.model", "flash").setAttribute("chat.context.messages", 4)
+                    .setError(new IOException("boom"));
+        }
+
+        JsonNode json = new ObjectMapper().readTree(exporter.toOtlpJson());
+        JsonNode resource = json.get("resourceSpans").get(0);
+        assertEquals("service.name", resource.at("/resource/attributes/0/key").asText());
+        assertEquals("chat", resource.at("/resource/attributes/0/value/stringValue").asText());
+        JsonNode span = resource.at("/scopeSpans/0/spans/0");
+        assertEquals("chat.turn", span.get("name").asText());
+        assertEquals(32, span.get("traceId").asText().length());
+        assertEquals(16, span.get("spanId").asText().length());
+        assertFalse(span.has("parentSpanId"));
+        assertEquals(1, span.get("kind").asInt());
+        assertTrue(span.get("startTimeUnixNano").isTextual());
+        assertTrue(span.get("endTimeUnixNano").asLong() >= span.get("startTimeUnixNano").asLong());
+        assertEquals("flash", span.at("/attributes/0/value/stringValue").asText());
+        assertEquals("4", span.at("/attributes/1/value/intValue").asText());
+        assertEquals(2, span.at("/status/code").asInt());
+        assertEquals("IOException: boom", span.at("/status/message").asText());
+    }
+
+    @Test
+    public void chatServiceTracesTurnsAndTrims() throws IOException {
+        RingBufferExporter exporter = new RingBufferExporter(16, "test");
+        Tracer tracer = new Tracer(exporter, 1.0);
+        List<Message> history = new ArrayList<>();
+
+        new ChatService(new FakeClient(), "flash", "sys", 5).withTracer(tracer).reply(history, "Hi");
+        assertThrows(IOException.class,
+                () -> new ChatService(new FailingClient(), "flash", "sys", 5).withTracer(tracer).reply(history, "Hi"));
+
+        List<Span> spans = exporter.spans();
+        assertEquals(List.of("chat.trim", "chat.turn", "chat.trim", "chat.turn"),
+                spans.stream().map(Span::name).toList());
+        assertEquals(spans.get(1).spanId(), spans.get(0).parentSpanId());
+        assertEquals("flash", spans.get(1).attributes().get("chat.model"));
+        assertNull(spans.get(1).error());
+        assertEquals(2L, spans.get(2).attributes().get("chat.history.messages"));
+        assertEquals("IOException: API error", spans.get(3).error());
+    }
+}
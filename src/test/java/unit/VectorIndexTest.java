@@ -0,0 +1,73 @@
+package unit;
+
+import com.patrick.infra.cache.Embedder;
+import com.patrick.infra.cache.FlatVectorIndex;
+import com.patrick.infra.cache.HnswVectorIndex;
+import com.patrick.infra.cache.VectorIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VectorIndexTest {
+    private static final int DIMENSIONS = 32;
+
+    @Test
+    public void flatIndexFindsExactNearest() {
+        VectorIndex index = new FlatVectorIndex(3, 1);
+        assertNull(index.nearest(new float[]{1, 0, 0}));
+
+        assertEquals(0, index.add(Embedder.normalize(new float[]{1, 0, 0})));
+        assertEquals(1, index.add(Embedder.normalize(new float[]{0, 1, 0})));
+        assertEquals(2, index.add(Embedder.normalize(new float[]{1, 1, 0})));
+
+        VectorIndex.Match match = index.nearest(Embedder.normalize(new float[]{0.1f, 1, 0}));
+        assertEquals(1, match.id());
+        assertTrue(match.similarity() > 0.99f);
+        assertEquals(3, index.size());
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[2]));
+    }
+
+    @Test
+    public void hnswAgreesWithExactSearchOnRandomVectors() {
+        Random random = new Random(7);
+        FlatVectorIndex exact = new FlatVectorIndex(DIMENSIONS);
+        HnswVectorIndex approximate = new HnswVectorIndex(DIMENSIONS);
+        for (int i = 0; i < 5000; i++) {
+            float[] vector = randomVector(random);
+            assertEquals(exact.add(vector), approximate.add(vector));
+        }
+
+        int agree = 0;
+        int queries = 200;
+        for (int i = 0; i < queries; i++) {
+            float[] query = randomVector(random);
+            if (exact.nearest(query).id() == approximate.nearest(query).id()) agree++;
+        }
+        assertTrue(agree >= queries * 0.95, "recall@1 was " + agree + "/" + queries);
+        assertEquals(5000, approximate.size());
+    }
+
+    @Test
+    public void hnswFindsStoredVectorsThemselves() {
+        Random random = new Random(11);
+        HnswVectorIndex index = new HnswVectorIndex(DIMENSIONS, 8, 100, 32, 1);
+        float[][] stored = new float[500][];
+        for (int i = 0; i < stored.length; i++) {
+            stored[i] = randomVector(random);
+            index.add(stored[i]);
+        }
+        for (int i = 0; i < stored.length; i++) {
+            VectorIndex.Match match = index.nearest(stored[i]);
+            assertEquals(i, match.id());
+            assertEquals(1.0f, match.similarity(), 1e-4f);
+        }
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) vector[d] = (float) random.nextGaussian();
+        return Embedder.normalize(vector);
+    }
+}